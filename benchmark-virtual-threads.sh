@@ -0,0 +1,46 @@
+#!/bin/bash
+
+# Virtual vs platform thread upload benchmark
+# Starts the application in each threading mode and runs the same concurrent
+# upload load against it. Requires the docker-compose infrastructure.
+#
+# Usage: ./benchmark-virtual-threads.sh [concurrency] [requests] [archiveBytes] [clientKbps]
+
+set -e
+
+CONCURRENCY=${1:-200}
+REQUESTS=${2:-2000}
+ARCHIVE_BYTES=${3:-1048576}
+CLIENT_KBPS=${4:-512}
+
+YELLOW='\033[1;33m'
+GREEN='\033[0;32m'
+NC='\033[0m' # No Color
+
+./gradlew bootJar -x test --no-daemon -q
+JAR=$(ls build/libs/*-SNAPSHOT.jar | grep -v plain | head -n 1)
+
+for VIRTUAL in false true; do
+    echo -e "${YELLOW}Threading mode: spring.threads.virtual.enabled=${VIRTUAL}${NC}"
+
+    # Virus scanning is disabled so the measurement isolates the upload path
+    java -jar "$JAR" \
+        --spring.threads.virtual.enabled=${VIRTUAL} \
+        --clamav.enabled=false \
+        --spring.jpa.show-sql=false > "benchmark-app-${VIRTUAL}.log" 2>&1 &
+    APP_PID=$!
+
+    until curl -s -o /dev/null http://localhost:8080/api/submissions -H "API-Version: 1"; do
+        sleep 1
+    done
+
+    ./gradlew uploadBenchmark --no-daemon -q \
+        -PbenchmarkArgs="http://localhost:8080 ${CONCURRENCY} ${REQUESTS} ${ARCHIVE_BYTES} ${CLIENT_KBPS}" \
+        | tee "benchmark-result-${VIRTUAL}.txt"
+
+    kill $APP_PID
+    wait $APP_PID 2>/dev/null || true
+    echo ""
+done
+
+echo -e "${GREEN}Results: benchmark-result-false.txt (platform) vs benchmark-result-true.txt (virtual)${NC}"
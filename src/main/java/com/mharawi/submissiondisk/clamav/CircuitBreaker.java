@@ -0,0 +1,96 @@
+package com.mharawi.submissiondisk.clamav;
+
+/**
+ * Circuit breaker in front of one clamd endpoint.
+ *
+ * After {@code failureThreshold} consecutive failed or too slow scans the
+ * circuit opens and the endpoint receives no scans for {@code openNanos}.
+ * Then a single trial scan is let through: if it succeeds the circuit closes,
+ * otherwise it opens again. A daemon reloading its signatures thereby stops
+ * receiving work after a few slow scans instead of stalling every scan sent
+ * to it.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialRunning;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1_000_000;
+    }
+
+    /**
+     * @return true if a scan may be sent now, without claiming the half-open trial
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN -> !trialRunning;
+        };
+    }
+
+    /**
+     * Claim permission to send a scan. Every successful claim must be followed
+     * by {@link #onSuccess()}, {@link #onFailure()} or {@link #onAbandoned()}.
+     *
+     * @return true if the scan may be sent
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (trialRunning) {
+                    yield false;
+                }
+                trialRunning = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialRunning = false;
+    }
+
+    public synchronized void onFailure() {
+        trialRunning = false;
+        if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * The scan was cancelled for reasons unrelated to the endpoint, so it
+     * tells nothing about its health.
+     */
+    public synchronized void onAbandoned() {
+        trialRunning = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,326 @@
+package com.mharawi.submissiondisk.clamav;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Scans files on a volume clamd shares with us in micro-batches, by path
+ * instead of streaming their content.
+ *
+ * Files to scan are collected for up to {@code maxWaitMillis} or until
+ * {@code maxBatchSize} are waiting. The batch is hard-linked into a
+ * directory of its own under {@code .clamd-batches} and that directory is
+ * scanned with a single MULTISCAN (or CONTSCAN) command, which clamd spreads
+ * over its own thread pool. Links are named by their position in the batch,
+ * so each line of the reply maps back to one file.
+ *
+ * clamd only lists infected files and errors, plus a final
+ * {@code <directory>: OK} if there were neither. Files are therefore only
+ * reported clean when that line arrives. The rest of a batch that found
+ * something, and any file that couldn't be linked or that clamd couldn't
+ * read, is scanned on its own with INSTREAM, as is the whole batch if the
+ * command failed.
+ *
+ * clamd sends nothing until the whole batch is scanned, so the wait for the
+ * reply is {@code timeoutMillis} plus {@code timeoutPerMibMillis} for every
+ * MiB in the batch, but never more than {@code maxTimeoutMillis}. That must
+ * stay below the time the caller gives a scan: a batch that runs past its
+ * wait isn't sent to another daemon or scanned again file by file, its files
+ * fail with {@link ClamdUnavailableException} so they are scanned later.
+ */
+@Slf4j
+public final class ClamdBatchScanner {
+
+    static final String BATCH_DIRECTORY = ".clamd-batches";
+
+    private static final String FOUND_SUFFIX = " FOUND";
+    private static final String ERROR_SUFFIX = " ERROR";
+    // Batch directories left behind by a crash; older than any batch can run
+    private static final Duration STALE_BATCH_AGE = Duration.ofHours(1);
+    private static final long MIB = 1024 * 1024;
+
+    private final ClamdClient client;
+    private final Path batchRoot;
+    private final String remoteBatchRoot;
+    private final String command;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long timeoutMillis;
+    private final long timeoutPerMibMillis;
+    private final long maxTimeoutMillis;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("clamd-batch-", 0).factory());
+    private final Thread dispatcher;
+    private final DistributionSummary batchSizes;
+    private final Timer batchLatency;
+
+    /**
+     * @param localRoot  Directory on the shared volume, as this node sees it
+     * @param remoteRoot The same directory as clamd sees it
+     * @param command    MULTISCAN or CONTSCAN
+     */
+    public ClamdBatchScanner(ClamdClient client, Path localRoot, String remoteRoot, String command,
+                             int maxBatchSize, long maxWaitMillis, long timeoutMillis, long timeoutPerMibMillis,
+                             long maxTimeoutMillis, MeterRegistry meterRegistry) {
+        if (!command.equals("MULTISCAN") && !command.equals("CONTSCAN")) {
+            throw new IllegalArgumentException("Batch scan command must be MULTISCAN or CONTSCAN: " + command);
+        }
+        this.client = client;
+        this.batchRoot = localRoot.toAbsolutePath().normalize().resolve(BATCH_DIRECTORY);
+        this.remoteBatchRoot = (remoteRoot.endsWith("/") ? remoteRoot : remoteRoot + "/") + BATCH_DIRECTORY;
+        this.command = command;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.timeoutMillis = timeoutMillis;
+        this.timeoutPerMibMillis = timeoutPerMibMillis;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+        this.batchSizes = DistributionSummary.builder("submission.virus-scan.batch-size")
+                .description("Files scanned with one " + command)
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("submission.virus-scan.batch-latency")
+                .description("Time clamd took to " + command + " a batch")
+                .register(meterRegistry);
+
+        purgeStaleBatches();
+        this.dispatcher = Thread.ofVirtual().name("clamd-batch-dispatcher").start(this::dispatch);
+    }
+
+    /**
+     * Scan a file as part of the next batch.
+     *
+     * @throws ClamdException            if clamd rejected the content
+     * @throws ClamdUnavailableException if no clamd could scan the file
+     * @throws IOException               if the file can't be read
+     */
+    public ClamdVerdict scan(Path path) throws IOException {
+        Request request = new Request(path, new CompletableFuture<>());
+        queue.add(request);
+        try {
+            return request.verdict().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Batch scan of " + path + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            // The batch may already be running; its verdict for this file is dropped
+            request.verdict().cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning " + path);
+        }
+    }
+
+    public void close() {
+        dispatcher.interrupt();
+        executor.shutdownNow();
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.verdict().completeExceptionally(new ClamdUnavailableException("Batch scanner closed", null));
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (true) {
+                List<Request> batch = new ArrayList<>(maxBatchSize);
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    Request next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                executor.execute(() -> scanBatch(batch));
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void scanBatch(List<Request> requests) {
+        List<Request> batch = new ArrayList<>(requests.size());
+        List<Request> singly = new ArrayList<>();
+        Path directory = batchRoot.resolve(UUID.randomUUID().toString());
+        long bytes = 0;
+        try {
+            Files.createDirectories(directory);
+            for (Request request : requests) {
+                if (request.verdict().isDone()) {
+                    continue;
+                }
+                try {
+                    long size = Files.size(request.path());
+                    // Named by position; the link keeps the file alive even if it is deleted meanwhile
+                    Files.createLink(directory.resolve(Integer.toString(batch.size())), request.path());
+                    batch.add(request);
+                    bytes += size;
+                } catch (IOException | UnsupportedOperationException e) {
+                    log.debug("Unable to link {} into batch, scanning it on its own: {}", request.path(),
+                            e.getMessage());
+                    singly.add(request);
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                batchSizes.record(batch.size());
+                String remoteDirectory = remoteBatchRoot + "/" + directory.getFileName();
+                long start = System.nanoTime();
+                int timeout = timeout(bytes);
+                try {
+                    ClamdClient.Reply reply = client.execute(command + " " + remoteDirectory, timeout);
+                    batchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    singly.addAll(resolve(command, batch, remoteDirectory, reply));
+                } catch (SocketTimeoutException e) {
+                    // Scanning each file now would take longer still
+                    log.warn("{} of a batch of {} files ({} bytes) got no reply within {} ms", command,
+                            batch.size(), bytes, timeout);
+                    ClamdUnavailableException unavailable = new ClamdUnavailableException(
+                            "clamd did not scan a batch of " + batch.size() + " files within " + timeout + " ms", e);
+                    batch.forEach(request -> request.verdict().completeExceptionally(unavailable));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("{} of a batch of {} files failed, scanning them on their own: {}",
+                    command, requests.size(), e.getMessage());
+            singly.clear();
+            requests.stream().filter(request -> !request.verdict().isDone()).forEach(singly::add);
+        } finally {
+            deleteBatch(directory);
+        }
+
+        for (Request request : singly) {
+            executor.execute(() -> scanSingly(request));
+        }
+    }
+
+    int timeout(long bytes) {
+        return (int) Math.min(Math.min(Integer.MAX_VALUE, maxTimeoutMillis),
+                timeoutMillis + (bytes + MIB - 1) / MIB * timeoutPerMibMillis);
+    }
+
+    /**
+     * Complete the requests the reply has a verdict for.
+     *
+     * @return Requests that still need a scan of their own
+     */
+    static List<Request> resolve(String command, List<Request> batch, String remoteDirectory,
+                                 ClamdClient.Reply reply) {
+        boolean clean = false;
+        boolean[] failed = new boolean[batch.size()];
+        String filePrefix = remoteDirectory + "/";
+        for (String line : reply.lines()) {
+            if (line.equals(remoteDirectory + ": OK")) {
+                clean = true;
+                continue;
+            }
+            int index = line.startsWith(filePrefix) ? fileIndex(line, filePrefix.length()) : -1;
+            if (index < 0 || index >= batch.size()) {
+                log.warn("Unexpected {} reply line from clamd {}: {}", command, reply.endpoint(), line);
+                continue;
+            }
+            String result = line.substring(line.indexOf(": ", filePrefix.length()) + 2);
+            if (result.endsWith(FOUND_SUFFIX)) {
+                batch.get(index).verdict().complete(new ClamdVerdict(reply.endpoint(),
+                        result.substring(0, result.length() - FOUND_SUFFIX.length())));
+            } else if (result.endsWith(ERROR_SUFFIX)) {
+                failed[index] = true;
+            } else {
+                log.warn("Unexpected {} result for {} from clamd {}: {}", command, batch.get(index).path(),
+                        reply.endpoint(), result);
+            }
+        }
+
+        List<Request> unresolved = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Request request = batch.get(i);
+            if (clean && !failed[i]) {
+                request.verdict().complete(new ClamdVerdict(reply.endpoint(), null));
+            } else if (!request.verdict().isDone()) {
+                unresolved.add(request);
+            }
+        }
+        return unresolved;
+    }
+
+    /**
+     * @return The number a link was named with, or -1 if the line doesn't start with one followed by ": "
+     */
+    static int fileIndex(String line, int from) {
+        int index = 0;
+        int i = from;
+        while (i < line.length() && i - from < 9 && Character.isDigit(line.charAt(i))) {
+            index = index * 10 + (line.charAt(i++) - '0');
+        }
+        return i > from && line.startsWith(": ", i) ? index : -1;
+    }
+
+    private void scanSingly(Request request) {
+        if (request.verdict().isDone()) {
+            return;
+        }
+        try {
+            request.verdict().complete(client.scan(request.path()));
+        } catch (IOException | RuntimeException e) {
+            request.verdict().completeExceptionally(e);
+        }
+    }
+
+    private void deleteBatch(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            if (Files.exists(directory)) {
+                log.warn("Unable to remove batch directory {}", directory, e);
+            }
+        }
+    }
+
+    private void purgeStaleBatches() {
+        if (!Files.isDirectory(batchRoot)) {
+            return;
+        }
+        FileTime staleBefore = FileTime.from(Instant.now().minus(STALE_BATCH_AGE));
+        try (DirectoryStream<Path> batches = Files.newDirectoryStream(batchRoot)) {
+            for (Path batch : batches) {
+                // Other nodes sharing the volume may have batches of their own running
+                if (Files.getLastModifiedTime(batch).compareTo(staleBefore) < 0) {
+                    deleteBatch(batch);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to purge stale batch directories in {}", batchRoot, e);
+        }
+    }
+
+    record Request(Path path, CompletableFuture<ClamdVerdict> verdict) {
+    }
+}
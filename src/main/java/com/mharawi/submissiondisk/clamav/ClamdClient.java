@@ -0,0 +1,495 @@
+package com.mharawi.submissiondisk.clamav;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scans content on a set of clamd endpoints.
+ *
+ * Each scan goes to the healthy endpoint with the fewest outstanding
+ * commands, so a slow or saturated daemon receives less work. If an endpoint
+ * cannot be reached the scan moves on to the next one; only when every
+ * endpoint failed is the error reported. Unhealthy endpoints are still tried
+ * when no healthy one is left, since they may have recovered since the last
+ * health check. Endpoints whose {@link CircuitBreaker} is open are skipped.
+ *
+ * A scan still running once it takes longer than the hedge percentile of
+ * recent scans of the same size is hedged: a second copy is sent to another
+ * endpoint and whichever answers first wins. Losing a hedge race counts as a
+ * failure for the circuit of the slow endpoint. Hedges are limited to
+ * {@code hedgeMaxRatio} of all scans, so a general slowdown can't double the
+ * load on clamd.
+ */
+@Slf4j
+public class ClamdClient {
+
+    private static final String STREAM_PREFIX = "stream: ";
+    private static final String OK = "OK";
+    private static final String FOUND_SUFFIX = " FOUND";
+    private static final int LATENCY_WINDOW = 1024;
+    private static final int LATENCY_MIN_SAMPLES = 50;
+    // Hedges that may be sent back to back after a quiet period
+    private static final double HEDGE_BURST = 10;
+
+    private final List<ClamdEndpoint> endpoints;
+    private final int chunkSize;
+    private final MeterRegistry meterRegistry;
+    private final LatencyTracker latencies;
+    private final long hedgeMinDelayNanos;
+    private final double hedgeMaxRatio;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("clamd-scan-", 0).factory());
+    private final Counter hedges;
+    private final Counter hedgeWins;
+    // Rotates the starting point, so ties don't always go to the first endpoint
+    private final AtomicInteger nextEndpoint = new AtomicInteger();
+
+    private double hedgeTokens = HEDGE_BURST;
+
+    /**
+     * @param hedgePercentile     Percentile of recent scan latencies after which a scan is hedged
+     * @param hedgeMinDelayMillis Shortest time a scan runs before it is hedged
+     * @param hedgeMaxRatio       Largest share of scans that are hedged, 0 to disable hedging
+     */
+    public ClamdClient(List<ClamdEndpoint> endpoints, int chunkSize, double hedgePercentile,
+                       long hedgeMinDelayMillis, double hedgeMaxRatio, MeterRegistry meterRegistry) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one clamd endpoint is required");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.chunkSize = chunkSize;
+        this.meterRegistry = meterRegistry;
+        this.latencies = new LatencyTracker(LATENCY_WINDOW, hedgePercentile, LATENCY_MIN_SAMPLES);
+        this.hedgeMinDelayNanos = hedgeMinDelayMillis * 1_000_000;
+        this.hedgeMaxRatio = hedgeMaxRatio;
+        this.hedges = Counter.builder("submission.virus-scan.hedges")
+                .description("Scans sent to a second clamd because the first was slow")
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("submission.virus-scan.hedge-wins")
+                .description("Hedged scans answered first by the second clamd")
+                .register(meterRegistry);
+
+        for (ClamdEndpoint endpoint : this.endpoints) {
+            Gauge.builder("submission.virus-scan.queued", endpoint, ClamdEndpoint::getQueued)
+                    .description("Scans waiting for a connection to clamd")
+                    .tag("endpoint", endpoint.getAddress())
+                    .register(meterRegistry);
+            Gauge.builder("submission.virus-scan.outstanding", endpoint, ClamdEndpoint::getOutstanding)
+                    .description("Scans queued for or running on clamd")
+                    .tag("endpoint", endpoint.getAddress())
+                    .register(meterRegistry);
+            Gauge.builder("submission.virus-scan.connections", endpoint, ClamdEndpoint::getOpenConnections)
+                    .description("Open session connections to clamd")
+                    .tag("endpoint", endpoint.getAddress())
+                    .register(meterRegistry);
+            Gauge.builder("submission.virus-scan.healthy", endpoint, e -> e.isHealthy() ? 1 : 0)
+                    .description("Whether clamd answered its last command")
+                    .tag("endpoint", endpoint.getAddress())
+                    .register(meterRegistry);
+            Gauge.builder("submission.virus-scan.circuit", endpoint, e -> e.getCircuitBreaker().getState().ordinal())
+                    .description("Circuit state of clamd: 0 closed, 1 open, 2 half-open")
+                    .tag("endpoint", endpoint.getAddress())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Scan a file, streaming it to clamd. Every attempt reads the file on a
+     * channel of its own, so cancelling the slower of two hedged attempts
+     * can't close the channel of the other.
+     *
+     * @throws ClamdException            if clamd rejected the content, e.g. because it exceeds StreamMaxLength
+     * @throws ClamdUnavailableException if no endpoint could scan it
+     * @throws IOException               if the file can't be read
+     */
+    public ClamdVerdict scan(Path path) throws IOException {
+        long size = Files.size(path);
+        return scan(path.toString(), size, connection -> {
+            FileChannel file;
+            try {
+                file = FileChannel.open(path, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new ContentReadException(e);
+            }
+            try (file) {
+                return connection.instream(file, 0, size, chunkSize);
+            }
+        });
+    }
+
+    /**
+     * Scan content that isn't a file of its own, e.g. an entry of an archive.
+     *
+     * @param name    Name of the content, for logging
+     * @param size    Size of the content in bytes, used to judge how long the scan should take
+     * @param content Opens the content for each attempt
+     * @throws ClamdException            if clamd rejected the content, e.g. because it exceeds StreamMaxLength
+     * @throws ClamdUnavailableException if no endpoint could scan it
+     * @throws IOException               if the content can't be read
+     */
+    public ClamdVerdict scan(String name, long size, ClamdContent content) throws IOException {
+        return scan(name, size, connection -> {
+            InputStream input;
+            try {
+                input = content.open();
+            } catch (IOException e) {
+                throw new ContentReadException(e);
+            }
+            try (input) {
+                return connection.instream(input, chunkSize);
+            }
+        });
+    }
+
+    private ClamdVerdict scan(String name, long size, ClamdEndpoint.Command<String> instream) throws IOException {
+        CompletionService<ClamdVerdict> completions = new ExecutorCompletionService<>(executor);
+        Map<Future<ClamdVerdict>, Attempt> running = new HashMap<>();
+        Set<ClamdEndpoint> tried = new HashSet<>();
+        IOException failure = null;
+        long hedgeDelay = hedgeDelayNanos(size);
+        boolean hedged = false;
+
+        try {
+            start(instream, size, false, tried, running, completions);
+            while (!running.isEmpty()) {
+                Future<ClamdVerdict> done = hedged || hedgeDelay < 0
+                        ? completions.take()
+                        : completions.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    hedged = true;
+                    if (takeHedgeToken()) {
+                        if (start(instream, size, true, tried, running, completions)) {
+                            hedges.increment();
+                            log.debug("Scan of {} is slower than {} ms, hedged on a second clamd",
+                                    name, TimeUnit.NANOSECONDS.toMillis(hedgeDelay));
+                        } else {
+                            returnHedgeToken();
+                        }
+                    }
+                    continue;
+                }
+
+                Attempt attempt = running.remove(done);
+                try {
+                    ClamdVerdict verdict = done.get();
+                    if (attempt.hedge()) {
+                        hedgeWins.increment();
+                    }
+                    // Whatever is still running lost the race
+                    running.values().forEach(loser -> loser.lost().set(true));
+                    return verdict;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof ClamdException clamdException) {
+                        throw clamdException;
+                    }
+                    if (e.getCause() instanceof ContentReadException contentReadException) {
+                        throw contentReadException.unwrap();
+                    }
+                    IOException attemptFailure = e.getCause() instanceof IOException io
+                            ? io : new IOException(e.getCause());
+                    if (failure == null) {
+                        failure = attemptFailure;
+                    } else {
+                        failure.addSuppressed(attemptFailure);
+                    }
+                    // Fail over unless a hedge is still going
+                    if (running.isEmpty()) {
+                        start(instream, size, false, tried, running, completions);
+                    }
+                }
+            }
+            throw new ClamdUnavailableException(failure == null
+                    ? "No clamd endpoint is available, all circuits are open"
+                    : "No clamd endpoint could scan the content", failure);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning " + name);
+        } finally {
+            running.keySet().forEach(attempt -> attempt.cancel(true));
+        }
+    }
+
+    /**
+     * Run a command that reads files from a volume clamd shares with us, e.g.
+     * MULTISCAN of a directory, on a connection of its own. Fails over like
+     * {@link #scan} but isn't hedged: such commands carry many files, and a
+     * second copy would double the work of a whole batch. For the same
+     * reason a command that runs past {@code timeoutMillis} isn't tried on
+     * another endpoint, and doesn't count against the circuit: the daemon is
+     * busy with the command, not down.
+     *
+     * @param timeoutMillis Longest wait for the reply
+     * @throws java.net.SocketTimeoutException if the reply took longer than {@code timeoutMillis}
+     * @throws ClamdUnavailableException       if no endpoint could run the command
+     */
+    Reply execute(String command, int timeoutMillis) throws IOException {
+        Set<ClamdEndpoint> tried = new HashSet<>();
+        IOException failure = null;
+
+        ClamdEndpoint endpoint;
+        while ((endpoint = choose(tried)) != null) {
+            tried.add(endpoint);
+            CircuitBreaker circuitBreaker = endpoint.getCircuitBreaker();
+            if (!circuitBreaker.tryAcquire()) {
+                continue;
+            }
+            try {
+                List<String> lines = endpoint.executeOnce(command, timeoutMillis);
+                circuitBreaker.onSuccess();
+                return new Reply(endpoint.getAddress(), lines);
+            } catch (IOException e) {
+                if (ClamdEndpoint.isInterruption(e) || e instanceof SocketTimeoutException) {
+                    circuitBreaker.onAbandoned();
+                    throw e;
+                }
+                circuitBreaker.onFailure();
+                log.warn("{} on clamd {} failed: {}", command, endpoint, e.getMessage());
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        throw new ClamdUnavailableException(failure == null
+                ? "No clamd endpoint is available, all circuits are open"
+                : "No clamd endpoint could run " + command, failure);
+    }
+
+    /**
+     * @return The engine and signature version all healthy endpoints report,
+     * or null if they disagree (e.g. during a signature update) or none answered
+     */
+    public String version() {
+        String agreed = null;
+        for (ClamdEndpoint endpoint : endpoints) {
+            try {
+                String version = endpoint.version().trim();
+                if (agreed != null && !agreed.equals(version)) {
+                    log.info("clamd endpoints report different versions: {} and {}", agreed, version);
+                    return null;
+                }
+                agreed = version;
+            } catch (IOException e) {
+                log.warn("Unable to read the version of clamd {}: {}", endpoint, e.getMessage());
+            }
+        }
+        return agreed;
+    }
+
+    /**
+     * Ping every endpoint, updating its health, and drop idle connections
+     * clamd is about to close.
+     */
+    public void checkHealth() {
+        for (ClamdEndpoint endpoint : endpoints) {
+            endpoint.evictIdle();
+            boolean wasHealthy = endpoint.isHealthy();
+            try {
+                String reply = endpoint.ping();
+                if (!"PONG".equals(reply)) {
+                    throw new IOException("Unexpected reply to PING: " + reply);
+                }
+                if (!wasHealthy) {
+                    log.info("clamd {} is healthy again", endpoint);
+                }
+            } catch (IOException e) {
+                endpoint.markUnhealthy();
+                if (wasHealthy) {
+                    log.warn("clamd {} failed its health check: {}", endpoint, e.getMessage());
+                }
+            }
+        }
+    }
+
+    public List<ClamdEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+        endpoints.forEach(ClamdEndpoint::close);
+    }
+
+    /**
+     * Start an attempt on the best endpoint not tried yet.
+     *
+     * @return false if no endpoint is left or all remaining circuits are open
+     */
+    private boolean start(ClamdEndpoint.Command<String> instream, long size, boolean hedge, Set<ClamdEndpoint> tried,
+                          Map<Future<ClamdVerdict>, Attempt> running,
+                          CompletionService<ClamdVerdict> completions) {
+        ClamdEndpoint endpoint;
+        while ((endpoint = choose(tried)) != null) {
+            tried.add(endpoint);
+            // Another scan may have claimed the half-open trial since choose() looked
+            if (endpoint.getCircuitBreaker().tryAcquire()) {
+                ClamdEndpoint target = endpoint;
+                AtomicBoolean lost = new AtomicBoolean();
+                running.put(completions.submit(() -> attempt(target, instream, size, lost)), new Attempt(hedge, lost));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One scan on one endpoint, reporting its outcome to the endpoint's circuit.
+     *
+     * @param lost Set once another attempt of the same scan has answered first
+     */
+    private ClamdVerdict attempt(ClamdEndpoint endpoint, ClamdEndpoint.Command<String> instream, long size,
+                                 AtomicBoolean lost) throws IOException {
+        CircuitBreaker circuitBreaker = endpoint.getCircuitBreaker();
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            ClamdVerdict verdict = endpoint.execute(connection -> parseScanReply(instream.execute(connection)));
+            verdict = new ClamdVerdict(endpoint.getAddress(), verdict.virus());
+            outcome = verdict.isInfected() ? "infected" : "clean";
+            circuitBreaker.onSuccess();
+            latencies.record(System.nanoTime() - start, size);
+            return verdict;
+        } catch (ClamdException e) {
+            // clamd answered, it is the content that's at fault
+            circuitBreaker.onSuccess();
+            throw e;
+        } catch (ContentReadException e) {
+            circuitBreaker.onAbandoned();
+            throw e;
+        } catch (IOException e) {
+            if (ClamdEndpoint.isInterruption(e)) {
+                if (lost.get()) {
+                    outcome = "lost";
+                    circuitBreaker.onFailure();
+                } else {
+                    outcome = "cancelled";
+                    circuitBreaker.onAbandoned();
+                }
+                throw e;
+            }
+            circuitBreaker.onFailure();
+            // A timeout only means the daemon is busy
+            if (!(e instanceof SocketTimeoutException)) {
+                endpoint.markUnhealthy();
+            }
+            log.warn("Scan on clamd {} failed: {}", endpoint, e.getMessage());
+            throw e;
+        } catch (RuntimeException | Error e) {
+            circuitBreaker.onAbandoned();
+            throw e;
+        } finally {
+            Timer.builder("submission.virus-scan.latency")
+                    .description("Time to scan content on clamd, including the wait for a connection")
+                    .tag("endpoint", endpoint.getAddress())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return How long a scan of this size runs before it is hedged, or -1 if
+     * scans aren't hedged (yet)
+     */
+    private long hedgeDelayNanos(long size) {
+        if (hedgeMaxRatio <= 0 || endpoints.size() < 2) {
+            return -1;
+        }
+        synchronized (this) {
+            hedgeTokens = Math.min(HEDGE_BURST, hedgeTokens + hedgeMaxRatio);
+        }
+        long expected = latencies.expectedNanos(size);
+        return expected < 0 ? -1 : Math.max(hedgeMinDelayNanos, expected);
+    }
+
+    private synchronized boolean takeHedgeToken() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens--;
+        return true;
+    }
+
+    private synchronized void returnHedgeToken() {
+        hedgeTokens++;
+    }
+
+    /**
+     * @return Healthy endpoint with the fewest outstanding commands, or an
+     * unhealthy one if no healthy one is left, or null if all were tried or
+     * have an open circuit
+     */
+    private ClamdEndpoint choose(Set<ClamdEndpoint> tried) {
+        int start = Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.size());
+        ClamdEndpoint best = null;
+        for (int i = 0; i < endpoints.size(); i++) {
+            ClamdEndpoint candidate = endpoints.get((start + i) % endpoints.size());
+            if (tried.contains(candidate) || !candidate.getCircuitBreaker().isCallPermitted()) {
+                continue;
+            }
+            if (best == null
+                    || candidate.isHealthy() && !best.isHealthy()
+                    || candidate.isHealthy() == best.isHealthy() && candidate.getOutstanding() < best.getOutstanding()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @throws ClamdException if the reply is an error
+     */
+    private static ClamdVerdict parseScanReply(String reply) throws ClamdException {
+        if (reply.startsWith(STREAM_PREFIX)) {
+            String result = reply.substring(STREAM_PREFIX.length());
+            if (result.equals(OK)) {
+                return new ClamdVerdict(null, null);
+            }
+            if (result.endsWith(FOUND_SUFFIX)) {
+                return new ClamdVerdict(null, result.substring(0, result.length() - FOUND_SUFFIX.length()));
+            }
+        }
+        throw new ClamdException("clamd could not scan the content: " + reply);
+    }
+
+    /**
+     * @param endpoint Endpoint that ran the command, as host:port
+     * @param lines    Lines of clamd's reply
+     */
+    record Reply(String endpoint, List<String> lines) {
+    }
+
+    /**
+     * @param hedge Whether the attempt was started as a hedge
+     * @param lost  Set once another attempt has answered first
+     */
+    private record Attempt(boolean hedge, AtomicBoolean lost) {
+    }
+}
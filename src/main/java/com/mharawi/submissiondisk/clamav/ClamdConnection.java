@@ -0,0 +1,310 @@
+package com.mharawi.submissiondisk.clamav;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One socket to clamd, kept open across commands in an IDSESSION.
+ *
+ * Replies in a session are prefixed with the number of the command they
+ * answer, which is checked, so a reply can never be attributed to the wrong
+ * command. INSTREAM content is sent straight from the file channel to the
+ * socket with {@link FileChannel#transferTo}, without passing through the
+ * heap. Not thread-safe: a connection serves one command at a time.
+ *
+ * The socket's read timeout doesn't cover writes, which would block for good
+ * on a clamd that stops reading, e.g. while it reloads its signatures. While
+ * a connection sends, a watchdog closes it once a single write has blocked for
+ * {@code writeTimeoutMillis}, and the send fails with a
+ * {@link SocketTimeoutException}.
+ */
+final class ClamdConnection implements Closeable {
+
+    private static final byte[] SESSION = "zIDSESSION\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "zEND\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INSTREAM = "zINSTREAM\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final long WATCHDOG_INTERVAL_MILLIS = 250;
+
+    // Connections in the middle of a send
+    private static final Set<ClamdConnection> SENDING = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService WRITE_WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofVirtual().name("clamd-write-watchdog").factory());
+
+    static {
+        WRITE_WATCHDOG.scheduleWithFixedDelay(ClamdConnection::closeStalledSends,
+                WATCHDOG_INTERVAL_MILLIS, WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private final SocketChannel channel;
+    // Reads through the socket adaptor, which honours the read timeout; the channel itself would block forever.
+    // Buffering is safe because clamd sends nothing between a reply and the next command.
+    private final InputStream input;
+    private final ByteBuffer chunkHeader = ByteBuffer.allocateDirect(Integer.BYTES);
+    private final ByteArrayOutputStream reply = new ByteArrayOutputStream(128);
+    private final long writeTimeoutNanos;
+
+    private int lastCommand;
+    private long idleSince = System.nanoTime();
+    // When the blocking write in progress started, 0 between writes
+    private volatile long writeStartedAt;
+    private volatile boolean sendStalled;
+
+    @FunctionalInterface
+    private interface Send {
+        void run() throws IOException;
+    }
+
+    private ClamdConnection(SocketChannel channel, int writeTimeoutMillis) throws IOException {
+        this.channel = channel;
+        this.input = new BufferedInputStream(channel.socket().getInputStream(), 256);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+    }
+
+    static ClamdConnection open(InetSocketAddress address, int connectTimeoutMillis, int readTimeoutMillis,
+                                int writeTimeoutMillis) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(address, connectTimeoutMillis);
+            channel.socket().setSoTimeout(readTimeoutMillis);
+            channel.socket().setTcpNoDelay(true);
+
+            ClamdConnection connection = new ClamdConnection(channel, writeTimeoutMillis);
+            connection.send(() -> connection.write(ByteBuffer.wrap(SESSION)));
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Run one command on a connection of its own, outside a session. Used for
+     * MULTISCAN and CONTSCAN, whose reply has a line per finding and only
+     * ends when clamd closes the connection.
+     *
+     * @return The lines of the reply
+     */
+    static List<String> exchange(InetSocketAddress address, int connectTimeoutMillis, int readTimeoutMillis,
+                                 String command) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(address, connectTimeoutMillis);
+            socket.setSoTimeout(readTimeoutMillis);
+            OutputStream output = socket.getOutputStream();
+            output.write(("z" + command + "\0").getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            List<String> lines = new ArrayList<>();
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = input.read()) >= 0) {
+                if (b == 0) {
+                    lines.add(line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+            if (line.size() > 0) {
+                throw new EOFException("clamd closed the connection in the middle of a reply");
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * Send a command without arguments, e.g. PING or VERSION.
+     *
+     * @return The reply, without the command number
+     */
+    String command(String command) throws IOException {
+        send(() -> write(ByteBuffer.wrap(("z" + command + "\0").getBytes(StandardCharsets.US_ASCII))));
+        return readReply();
+    }
+
+    /**
+     * Stream part of a file to clamd with INSTREAM.
+     *
+     * @return The reply, e.g. {@code stream: OK}, without the command number
+     */
+    String instream(FileChannel file, long position, long size, int chunkSize) throws IOException {
+        send(() -> {
+            write(ByteBuffer.wrap(INSTREAM));
+
+            long sent = 0;
+            while (sent < size) {
+                int chunk = (int) Math.min(chunkSize, size - sent);
+                writeChunkHeader(chunk);
+                long chunkSent = 0;
+                while (chunkSent < chunk) {
+                    long transferred;
+                    writeStartedAt = System.nanoTime();
+                    try {
+                        transferred = file.transferTo(position + sent + chunkSent, chunk - chunkSent, channel);
+                    } finally {
+                        writeStartedAt = 0;
+                    }
+                    if (transferred <= 0 && position + sent + chunkSent >= file.size()) {
+                        throw new EOFException("File shrank while it was being scanned");
+                    }
+                    chunkSent += transferred;
+                }
+                sent += chunk;
+            }
+            writeChunkHeader(0);
+        });
+
+        return readReply();
+    }
+
+    /**
+     * Stream content that isn't a file, e.g. an inflated archive entry, to
+     * clamd with INSTREAM.
+     *
+     * @return The reply, e.g. {@code stream: OK}, without the command number
+     */
+    String instream(InputStream content, int chunkSize) throws IOException {
+        send(() -> {
+            write(ByteBuffer.wrap(INSTREAM));
+
+            byte[] chunk = new byte[Math.min(chunkSize, STREAM_BUFFER_SIZE)];
+            int length;
+            while ((length = read(content, chunk)) > 0) {
+                writeChunkHeader(length);
+                write(ByteBuffer.wrap(chunk, 0, length));
+            }
+            writeChunkHeader(0);
+        });
+
+        return readReply();
+    }
+
+    /**
+     * @return Nanoseconds since the connection last finished a command
+     */
+    long idleNanos() {
+        return System.nanoTime() - idleSince;
+    }
+
+    void markIdle() {
+        idleSince = System.nanoTime();
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (channel.isOpen()) {
+                send(() -> write(ByteBuffer.wrap(END)));
+            }
+        } catch (IOException ignored) {
+            // The session ends with the socket either way
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    private static int read(InputStream content, byte[] chunk) throws ContentReadException {
+        try {
+            return content.readNBytes(chunk, 0, chunk.length);
+        } catch (IOException e) {
+            throw new ContentReadException(e);
+        }
+    }
+
+    private void writeChunkHeader(int length) throws IOException {
+        chunkHeader.clear();
+        chunkHeader.putInt(length).flip();
+        write(chunkHeader);
+    }
+
+    /**
+     * Send to clamd under the watch of the write watchdog. Only time blocked
+     * in a write counts, not time spent reading the content.
+     *
+     * @throws SocketTimeoutException if clamd stopped reading what was sent
+     */
+    private void send(Send send) throws IOException {
+        SENDING.add(this);
+        try {
+            send.run();
+        } catch (ClosedChannelException e) {
+            if (sendStalled) {
+                throw new SocketTimeoutException("clamd read nothing sent to it for "
+                        + TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos) + " ms");
+            }
+            throw e;
+        } finally {
+            SENDING.remove(this);
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            writeStartedAt = System.nanoTime();
+            try {
+                channel.write(buffer);
+            } finally {
+                writeStartedAt = 0;
+            }
+        }
+    }
+
+    private static void closeStalledSends() {
+        long now = System.nanoTime();
+        for (ClamdConnection connection : SENDING) {
+            long writeStartedAt = connection.writeStartedAt;
+            if (writeStartedAt != 0 && now - writeStartedAt > connection.writeTimeoutNanos) {
+                connection.sendStalled = true;
+                try {
+                    connection.channel.close();
+                } catch (IOException ignored) {
+                    // The blocked write fails either way
+                }
+            }
+        }
+    }
+
+    private String readReply() throws IOException {
+        int command = ++lastCommand;
+        reply.reset();
+        int b;
+        while ((b = input.read()) > 0) {
+            reply.write(b);
+        }
+        if (b < 0) {
+            throw new EOFException("clamd closed the connection");
+        }
+
+        String text = reply.toString(StandardCharsets.UTF_8);
+        String prefix = command + ": ";
+        if (!text.startsWith(prefix)) {
+            throw new IOException("Unexpected clamd reply to command " + command + ": " + text);
+        }
+        return text.substring(prefix.length());
+    }
+}
@@ -0,0 +1,17 @@
+package com.mharawi.submissiondisk.clamav;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content to scan that isn't a file of its own, e.g. one entry of an archive.
+ */
+@FunctionalInterface
+public interface ClamdContent {
+
+    /**
+     * Open the content from the start. Called once per attempt, possibly from
+     * several threads at once when a scan is hedged.
+     */
+    InputStream open() throws IOException;
+}
@@ -0,0 +1,283 @@
+package com.mharawi.submissiondisk.clamav;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One clamd daemon, with a bounded pool of session connections to it.
+ *
+ * At most {@code maxConnections} commands run against the daemon at once;
+ * further callers queue for a connection. Idle connections are reused most
+ * recent first and dropped before clamd's own idle timeout would close them.
+ *
+ * The endpoint is marked unhealthy when a connection to it fails, and healthy
+ * again when a command on it succeeds, including the periodic
+ * {@link #ping()}. Its {@link CircuitBreaker} is separate from that: it is
+ * fed by the outcome and speed of scans, and decides whether scans are sent
+ * to the endpoint at all.
+ */
+public final class ClamdEndpoint {
+
+    private final String host;
+    private final int port;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int writeTimeoutMillis;
+    private final long maxIdleNanos;
+    private final Semaphore permits;
+    private final CircuitBreaker circuitBreaker;
+    private final Deque<ClamdConnection> idle = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private volatile boolean healthy = true;
+
+    @FunctionalInterface
+    interface Command<T> {
+        T execute(ClamdConnection connection) throws IOException;
+    }
+
+    /**
+     * @param writeTimeoutMillis Longest a send may go without clamd reading any of it
+     */
+    public ClamdEndpoint(String host, int port, int maxConnections, int connectTimeoutMillis, int readTimeoutMillis,
+                         int writeTimeoutMillis, long maxIdleMillis, CircuitBreaker circuitBreaker) {
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.maxIdleNanos = maxIdleMillis * 1_000_000;
+        this.permits = new Semaphore(maxConnections, true);
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @param address host:port
+     */
+    public static ClamdEndpoint parse(String address, int maxConnections, int connectTimeoutMillis,
+                                      int readTimeoutMillis, int writeTimeoutMillis, long maxIdleMillis,
+                                      CircuitBreaker circuitBreaker) {
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0 || separator == address.length() - 1) {
+            throw new IllegalArgumentException("clamd endpoint must be host:port: " + address);
+        }
+        return new ClamdEndpoint(address.substring(0, separator).trim(),
+                Integer.parseInt(address.substring(separator + 1).trim()),
+                maxConnections, connectTimeoutMillis, readTimeoutMillis, writeTimeoutMillis, maxIdleMillis,
+                circuitBreaker);
+    }
+
+    /**
+     * @return clamd's reply, PONG if it is alive
+     */
+    public String ping() throws IOException {
+        return execute(connection -> connection.command("PING"));
+    }
+
+    public String version() throws IOException {
+        return execute(connection -> connection.command("VERSION"));
+    }
+
+    /**
+     * Run a command on a pooled connection. A reused connection that turns
+     * out to have been closed by clamd is replaced and the command retried
+     * once, so commands must be repeatable.
+     */
+    <T> T execute(Command<T> command) throws IOException {
+        outstanding.incrementAndGet();
+        try {
+            acquirePermit();
+            try {
+                ClamdConnection connection = borrow();
+                boolean reused = connection != null;
+                if (!reused) {
+                    connection = connect();
+                }
+
+                try {
+                    return run(command, connection);
+                } catch (IOException e) {
+                    // A timeout means clamd is busy, not that the connection went stale
+                    if (!reused || e instanceof ClamdException || e instanceof ContentReadException
+                            || e instanceof SocketTimeoutException || isInterruption(e)) {
+                        throw e;
+                    }
+                }
+                return run(command, connect());
+            } finally {
+                permits.release();
+            }
+        } finally {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Run a command on a connection of its own rather than a pooled session
+     * connection (see {@link ClamdConnection#exchange}). It still counts
+     * against {@code maxConnections}.
+     *
+     * @param readTimeoutMillis Longest wait for the reply, for commands that
+     *                          answer only once a lot of work is done
+     * @return The lines of the reply
+     */
+    List<String> executeOnce(String command, int readTimeoutMillis) throws IOException {
+        outstanding.incrementAndGet();
+        try {
+            acquirePermit();
+            try {
+                List<String> lines = ClamdConnection.exchange(new InetSocketAddress(host, port),
+                        connectTimeoutMillis, readTimeoutMillis, command);
+                healthy = true;
+                return lines;
+            } catch (IOException e) {
+                if (!(e instanceof SocketTimeoutException) && !isInterruption(e)) {
+                    healthy = false;
+                }
+                throw e;
+            } finally {
+                permits.release();
+            }
+        } finally {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Close idle connections that clamd is about to drop.
+     */
+    public void evictIdle() {
+        for (ClamdConnection connection : idle) {
+            if (connection.idleNanos() > maxIdleNanos && idle.removeFirstOccurrence(connection)) {
+                discard(connection);
+            }
+        }
+    }
+
+    public void close() {
+        ClamdConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            discard(connection);
+        }
+    }
+
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return Commands queued for or running on this endpoint
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return Commands waiting for a connection
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    void markUnhealthy() {
+        healthy = false;
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    @Override
+    public String toString() {
+        return getAddress();
+    }
+
+    private <T> T run(Command<T> command, ClamdConnection connection) throws IOException {
+        boolean keep = false;
+        try {
+            T result = command.execute(connection);
+            healthy = true;
+            keep = true;
+            return result;
+        } catch (ClamdException e) {
+            // clamd may end the session after an error reply; don't bet on it staying usable
+            healthy = true;
+            throw e;
+        } finally {
+            if (keep) {
+                connection.markIdle();
+                idle.offerFirst(connection);
+            } else {
+                discard(connection);
+            }
+        }
+    }
+
+    private ClamdConnection borrow() {
+        ClamdConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (connection.idleNanos() <= maxIdleNanos) {
+                return connection;
+            }
+            discard(connection);
+        }
+        return null;
+    }
+
+    private ClamdConnection connect() throws IOException {
+        try {
+            ClamdConnection connection = ClamdConnection.open(new InetSocketAddress(host, port),
+                    connectTimeoutMillis, readTimeoutMillis, writeTimeoutMillis);
+            openConnections.incrementAndGet();
+            return connection;
+        } catch (IOException e) {
+            if (!isInterruption(e)) {
+                healthy = false;
+            }
+            throw e;
+        }
+    }
+
+    private void discard(ClamdConnection connection) {
+        connection.close();
+        openConnections.decrementAndGet();
+    }
+
+    private void acquirePermit() throws InterruptedIOException {
+        queued.incrementAndGet();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to clamd " + getAddress());
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return true if the failure was caused by the calling thread being interrupted, e.g. a cancelled scan
+     */
+    static boolean isInterruption(IOException e) {
+        return e instanceof ClosedByInterruptException || Thread.currentThread().isInterrupted()
+                || (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException));
+    }
+}
@@ -0,0 +1,14 @@
+package com.mharawi.submissiondisk.clamav;
+
+import java.io.IOException;
+
+/**
+ * clamd answered, but with an error (e.g. the stream exceeded its
+ * StreamMaxLength). Retrying on another endpoint would not help.
+ */
+public class ClamdException extends IOException {
+
+    public ClamdException(String message) {
+        super(message);
+    }
+}
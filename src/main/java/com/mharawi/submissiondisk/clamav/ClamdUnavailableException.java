@@ -0,0 +1,15 @@
+package com.mharawi.submissiondisk.clamav;
+
+import java.io.IOException;
+
+/**
+ * No clamd endpoint could scan the content: all of them are unreachable,
+ * failed or behind an open circuit. The content itself may be fine, so the
+ * scan is worth repeating later.
+ */
+public class ClamdUnavailableException extends IOException {
+
+    public ClamdUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
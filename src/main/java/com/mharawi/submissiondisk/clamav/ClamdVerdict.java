@@ -0,0 +1,14 @@
+package com.mharawi.submissiondisk.clamav;
+
+/**
+ * Outcome of one scan.
+ *
+ * @param endpoint Endpoint that scanned the content, as host:port
+ * @param virus    Name of the signature that matched, or null if the content is clean
+ */
+public record ClamdVerdict(String endpoint, String virus) {
+
+    public boolean isInfected() {
+        return virus != null;
+    }
+}
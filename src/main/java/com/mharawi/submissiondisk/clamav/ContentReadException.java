@@ -0,0 +1,18 @@
+package com.mharawi.submissiondisk.clamav;
+
+import java.io.IOException;
+
+/**
+ * The content to scan could not be read. Says nothing about clamd, so it
+ * neither counts against an endpoint nor is retried on another one.
+ */
+final class ContentReadException extends IOException {
+
+    ContentReadException(IOException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    IOException unwrap() {
+        return (IOException) getCause();
+    }
+}
@@ -0,0 +1,72 @@
+package com.mharawi.submissiondisk.clamav;
+
+import java.util.Arrays;
+
+/**
+ * Percentiles of recent scan latencies, normalized by content size.
+ *
+ * Latencies are recorded per MiB (content smaller than 1 MiB counts as
+ * 1 MiB, since fixed costs dominate there), so one distribution covers
+ * uploads of every size. The window holds the most recent samples; the
+ * percentile is recomputed every {@code window / 16} samples rather than
+ * on every lookup.
+ */
+final class LatencyTracker {
+
+    static final long UNIT_BYTES = 1024 * 1024;
+
+    private final long[] samples;
+    private final double percentile;
+    private final int minSamples;
+    private final int refreshEvery;
+
+    private int count;
+    private int next;
+    private int sinceRefresh;
+    private long cached = -1;
+
+    LatencyTracker(int window, double percentile, int minSamples) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1: " + percentile);
+        }
+        this.samples = new long[window];
+        this.percentile = percentile;
+        this.minSamples = Math.min(minSamples, window);
+        this.refreshEvery = Math.max(1, window / 16);
+    }
+
+    synchronized void record(long nanos, long bytes) {
+        samples[next] = (long) ((double) nanos * UNIT_BYTES / units(bytes));
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        if (++sinceRefresh >= refreshEvery || cached < 0) {
+            refresh();
+        }
+    }
+
+    /**
+     * @return Expected latency at the tracked percentile for content of this
+     * size, or -1 until enough scans were recorded
+     */
+    synchronized long expectedNanos(long bytes) {
+        if (cached < 0) {
+            return -1;
+        }
+        return (long) ((double) cached * units(bytes) / UNIT_BYTES);
+    }
+
+    private void refresh() {
+        sinceRefresh = 0;
+        if (count < minSamples) {
+            cached = -1;
+            return;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        cached = sorted[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)];
+    }
+
+    private static long units(long bytes) {
+        return Math.max(bytes, UNIT_BYTES);
+    }
+}
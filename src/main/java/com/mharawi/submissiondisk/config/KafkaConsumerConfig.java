@@ -6,26 +6,37 @@ import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 @EnableKafka
 @Configuration
 public class KafkaConsumerConfig {
 
+    public static final String BATCH_LISTENER_CONTAINER_FACTORY = "batchKafkaListenerContainerFactory";
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${submission.pipeline.batch.max-records:100}")
+    private int batchMaxRecords;
+
     @Bean
     public ConsumerFactory<String, SubmissionEvent> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -44,15 +55,41 @@ public class KafkaConsumerConfig {
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, SubmissionEvent> kafkaListenerContainerFactory(
             ConsumerFactory<String, SubmissionEvent> consumerFactory) {
+        return listenerContainerFactory(consumerFactory);
+    }
+
+    /**
+     * Hands listeners everything a poll returned, up to
+     * {@code submission.pipeline.batch.max-records}, and commits the offsets
+     * once the listener has returned.
+     */
+    @Bean(BATCH_LISTENER_CONTAINER_FACTORY)
+    public ConcurrentKafkaListenerContainerFactory<String, SubmissionEvent> batchKafkaListenerContainerFactory(
+            ConsumerFactory<String, SubmissionEvent> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<String, SubmissionEvent> factory =
+                listenerContainerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+
+        Properties consumerProperties = new Properties();
+        consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchMaxRecords));
+        factory.getContainerProperties().setKafkaConsumerProperties(consumerProperties);
+        return factory;
+    }
+
+    private ConcurrentKafkaListenerContainerFactory<String, SubmissionEvent> listenerContainerFactory(
+            ConsumerFactory<String, SubmissionEvent> consumerFactory) {
         ConcurrentKafkaListenerContainerFactory<String, SubmissionEvent> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
         factory.setConcurrency(3);
+
+        // Our own factory bypasses Boot's auto-configuration, so apply the threading mode here
+        if (virtualThreadsEnabled) {
+            SimpleAsyncTaskExecutor listenerExecutor = new SimpleAsyncTaskExecutor("kafka-listener-");
+            listenerExecutor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(listenerExecutor);
+        }
         return factory;
     }
 }
-
-
-
-
-
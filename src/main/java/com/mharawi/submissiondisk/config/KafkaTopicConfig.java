@@ -15,6 +15,7 @@ public class KafkaTopicConfig {
     public static final String SUBMISSION_NOTIFICATION = "submission.notification";
     public static final String SUBMISSION_FAILED = "submission.failed";
     public static final String SUBMISSION_COMPLETED = "submission.completed";
+    public static final String SUBMISSION_DELETED = "submission.deleted";
 
     @Bean
     public NewTopic submissionReceivedTopic() {
@@ -71,5 +72,12 @@ public class KafkaTopicConfig {
                 .replicas(1)
                 .build();
     }
-}
 
+    @Bean
+    public NewTopic submissionDeletedTopic() {
+        return TopicBuilder.name(SUBMISSION_DELETED)
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+}
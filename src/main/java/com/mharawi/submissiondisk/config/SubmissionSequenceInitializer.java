@@ -0,0 +1,44 @@
+package com.mharawi.submissiondisk.config;
+
+import com.mharawi.submissiondisk.entity.Submission;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the submission ID sequence past IDs that already exist.
+ *
+ * Submissions used to take IDs from an identity column. When the schema is
+ * updated to the sequence, the new sequence starts at 1 and would hand out
+ * IDs that are already taken, so it is advanced once at startup, before the
+ * application accepts uploads.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SubmissionSequenceInitializer {
+
+    private static final String ALIGN_SEQUENCE_SQL =
+            "SELECT setval('" + Submission.ID_SEQUENCE + "', m.max_id + ?) "
+                    + "FROM (SELECT COALESCE(MAX(id), 0) AS max_id FROM submissions) m "
+                    + "WHERE (SELECT last_value FROM " + Submission.ID_SEQUENCE + ") < m.max_id + ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Schema update runs when the entity manager factory is created
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void alignSequence() {
+        Long value = jdbcTemplate.query(ALIGN_SEQUENCE_SQL,
+                rs -> rs.next() ? rs.getLong(1) : null,
+                Submission.ID_ALLOCATION_SIZE, Submission.ID_ALLOCATION_SIZE);
+
+        if (value != null) {
+            log.info("Advanced {} past existing submission IDs (now {})", Submission.ID_SEQUENCE, value);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mharawi.submissiondisk.config;
+
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Recreates the check constraint on the submission status column when it
+ * does not allow every {@link SubmissionStatus}.
+ *
+ * Hibernate creates the column with a {@code check (status in (...))}
+ * constraint but never updates it on an existing table, so on a database
+ * created before a status was added, writing that status fails. The
+ * constraint is replaced once at startup, before the application accepts
+ * uploads.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SubmissionStatusConstraintInitializer {
+
+    private static final String CONSTRAINT = "submissions_status_check";
+
+    private static final String FIND_CONSTRAINT_SQL =
+            "SELECT pg_get_constraintdef(oid) FROM pg_constraint "
+                    + "WHERE conname = '" + CONSTRAINT + "' AND conrelid = 'submissions'::regclass";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Schema update runs when the entity manager factory is created
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void alignConstraint() {
+        List<String> definitions = jdbcTemplate.queryForList(FIND_CONSTRAINT_SQL, String.class);
+        if (!definitions.isEmpty() && Arrays.stream(SubmissionStatus.values())
+                .allMatch(status -> definitions.getFirst().contains("'" + status.name() + "'"))) {
+            return;
+        }
+
+        String statuses = Arrays.stream(SubmissionStatus.values())
+                .map(status -> "'" + status.name() + "'")
+                .collect(Collectors.joining(", "));
+        // One statement, so nodes starting together can't interleave the drop and the add
+        jdbcTemplate.execute("ALTER TABLE submissions DROP CONSTRAINT IF EXISTS " + CONSTRAINT
+                + ", ADD CONSTRAINT " + CONSTRAINT + " CHECK (status IN (" + statuses + "))");
+        log.info("Recreated {} to allow statuses {}", CONSTRAINT, statuses);
+    }
+}
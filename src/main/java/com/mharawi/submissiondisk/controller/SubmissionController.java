@@ -1,15 +1,29 @@
 package com.mharawi.submissiondisk.controller;
 
+import com.mharawi.submissiondisk.dto.BulkSubmissionResponse;
 import com.mharawi.submissiondisk.dto.SubmissionResponse;
+import com.mharawi.submissiondisk.dto.UploadPreflightRequest;
+import com.mharawi.submissiondisk.dto.UploadPreflightResponse;
+import com.mharawi.submissiondisk.dto.UploadSessionRequest;
+import com.mharawi.submissiondisk.dto.UploadSessionResponse;
+import com.mharawi.submissiondisk.dto.ValidatorStatsResponse;
 import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.service.AdmissionService;
+import com.mharawi.submissiondisk.service.BulkSubmissionService;
 import com.mharawi.submissiondisk.service.SubmissionService;
+import com.mharawi.submissiondisk.service.UploadSessionService;
+import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -19,17 +33,52 @@ import java.util.List;
 public class SubmissionController {
 
     private final SubmissionService submissionService;
+    private final BulkSubmissionService bulkSubmissionService;
+    private final UploadSessionService uploadSessionService;
+    private final AdmissionService admissionService;
+    private final ValidationOrchestrator validationOrchestrator;
 
     @PostMapping
     public ResponseEntity<SubmissionResponse> uploadSubmission(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "description", required = false) String description,
-            @RequestParam(value = "submittedBy", required = false) String submittedBy) {
+            @RequestParam(value = "submittedBy", required = false) String submittedBy,
+            @RequestParam(value = "checksum", required = false) String checksum) {
 
         log.info("Received submission upload request: {}", file.getOriginalFilename());
+        admissionService.admit(submittedBy, file.getSize());
+
+        try {
+            SubmissionResponse response = submissionService.createSubmission(file, description, submittedBy, checksum);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid submission: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Upload an archive as the raw request body, with metadata in headers.
+     * The body is streamed straight into storage, so the servlet container
+     * never spools it to a multipart temp file.
+     */
+    @PostMapping(value = "/stream", consumes = {"application/zip", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<SubmissionResponse> uploadSubmissionStream(
+            InputStream body,
+            @RequestHeader(HttpHeaders.CONTENT_DISPOSITION) String contentDisposition,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            @RequestHeader(value = "X-Description", required = false) String description,
+            @RequestHeader(value = "X-Submitted-By", required = false) String submittedBy,
+            @RequestHeader(value = "X-Checksum-SHA256", required = false) String checksum) {
+
+        String fileName = ContentDisposition.parse(contentDisposition).getFilename();
+        log.info("Received streamed submission upload request: {}", fileName);
+        admissionService.admit(submittedBy, contentLength);
 
         try {
-            SubmissionResponse response = submissionService.createSubmission(file, description, submittedBy);
+            SubmissionResponse response = submissionService.createSubmission(
+                    body, fileName, contentType, contentLength, description, submittedBy, checksum);
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
         } catch (IllegalArgumentException e) {
             log.error("Invalid submission: {}", e.getMessage());
@@ -37,6 +86,68 @@ public class SubmissionController {
         }
     }
 
+    /**
+     * Upload many archives in one request. Every archive gets its own result;
+     * the request succeeds even when some of the archives are rejected.
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<BulkSubmissionResponse> uploadSubmissions(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "description", required = false) String description,
+            @RequestParam(value = "submittedBy", required = false) String submittedBy) {
+
+        log.info("Received bulk submission upload request: {} files", files.size());
+        admissionService.admit(submittedBy, files.stream().mapToLong(MultipartFile::getSize).sum());
+
+        return ResponseEntity.ok(bulkSubmissionService.createSubmissions(files, description, submittedBy));
+    }
+
+    /**
+     * Ask whether content with the given checksum and size already exists,
+     * before spending an upload on it.
+     */
+    @PostMapping("/preflight")
+    public ResponseEntity<UploadPreflightResponse> preflight(@RequestBody UploadPreflightRequest request) {
+        return ResponseEntity.ok(submissionService.preflight(request));
+    }
+
+    @PostMapping("/sessions")
+    public ResponseEntity<UploadSessionResponse> createUploadSession(@RequestBody UploadSessionRequest request) {
+        log.info("Received upload session request: {} ({} bytes)", request.getFileName(), request.getFileSize());
+        admissionService.admit(request.getSubmittedBy(), request.getFileSize());
+        return ResponseEntity.status(HttpStatus.CREATED).body(uploadSessionService.createSession(request));
+    }
+
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<UploadSessionResponse> getUploadSession(@PathVariable String sessionId) {
+        return ResponseEntity.ok(uploadSessionService.getSession(sessionId));
+    }
+
+    @PutMapping(value = "/sessions/{sessionId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionResponse> uploadChunk(
+            @PathVariable String sessionId,
+            @PathVariable int index,
+            InputStream body) {
+        return ResponseEntity.ok(uploadSessionService.writeChunk(sessionId, index, body));
+    }
+
+    @PostMapping("/sessions/{sessionId}/commit")
+    public ResponseEntity<SubmissionResponse> commitUploadSession(@PathVariable String sessionId) {
+        SubmissionResponse response = uploadSessionService.commitSession(sessionId);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<Void> abortUploadSession(@PathVariable String sessionId) {
+        uploadSessionService.abortSession(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/validators/stats")
+    public ResponseEntity<List<ValidatorStatsResponse>> getValidatorStats() {
+        return ResponseEntity.ok(validationOrchestrator.getValidatorStats());
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<SubmissionResponse> getSubmission(@PathVariable Long id) {
         return submissionService.getSubmissionById(id)
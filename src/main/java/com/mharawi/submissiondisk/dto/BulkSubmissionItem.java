@@ -0,0 +1,19 @@
+package com.mharawi.submissiondisk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkSubmissionItem {
+
+    private int index;
+    private String fileName;
+    private boolean accepted;
+    private SubmissionResponse submission;
+    private String error;
+}
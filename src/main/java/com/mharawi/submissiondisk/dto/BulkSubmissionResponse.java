@@ -0,0 +1,19 @@
+package com.mharawi.submissiondisk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkSubmissionResponse {
+
+    private int accepted;
+    private int rejected;
+    private List<BulkSubmissionItem> items;
+}
@@ -0,0 +1,16 @@
+package com.mharawi.submissiondisk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadPreflightResponse {
+
+    private boolean exists;
+    private Long submissionId;
+}
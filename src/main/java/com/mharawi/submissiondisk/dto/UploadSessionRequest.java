@@ -0,0 +1,20 @@
+package com.mharawi.submissiondisk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSessionRequest {
+
+    private String fileName;
+    private Long fileSize;
+    private String contentType;
+    private String description;
+    private String submittedBy;
+    private String checksum;
+}
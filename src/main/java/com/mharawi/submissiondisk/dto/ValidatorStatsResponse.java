@@ -0,0 +1,26 @@
+package com.mharawi.submissiondisk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Live statistics of one validator, listed in the order the chain currently runs.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ValidatorStatsResponse {
+
+    private int position;
+    private String validatorName;
+    private double order;
+    private boolean concurrent;
+    private long evaluations;
+    private long rejections;
+    private double averageLatencyMillis;
+    private double rejectionRate;
+    private double expectedCostPerRejectionMillis;
+}
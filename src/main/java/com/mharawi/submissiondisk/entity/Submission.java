@@ -9,15 +9,24 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "submissions")
+@Table(name = "submissions", indexes = {
+        @Index(name = "idx_submissions_checksum", columnList = "checksum"),
+        @Index(name = "idx_submissions_status", columnList = "status")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Submission {
 
+    public static final String ID_SEQUENCE = "submissions_seq";
+
+    // IDs are reserved this many at a time, so inserts can be batched
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "submission_id")
+    @SequenceGenerator(name = "submission_id", sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Column(nullable = false)
@@ -51,9 +60,17 @@ public class Submission {
     @Column
     private LocalDateTime processedAt;
 
+    // When validation was last postponed, null unless PARKED
+    @Column
+    private LocalDateTime parkedAt;
+
     @Column
     private String checksum;
 
+    // XXH64 of the content. Not used to rule out duplicates, as rows stored before it was recorded have none
+    @Column
+    private Long contentHash;
+
     @PrePersist
     protected void onCreate() {
         submittedAt = LocalDateTime.now();
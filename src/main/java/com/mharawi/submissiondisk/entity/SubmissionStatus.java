@@ -2,11 +2,15 @@ package com.mharawi.submissiondisk.entity;
 
 public enum SubmissionStatus {
     PENDING,
+    // Waiting for a validator that could not run, e.g. because ClamAV is down
+    PARKED,
     VALIDATED,
     STORED,
     PROCESSING,
     COMPLETED,
     FAILED,
-    REJECTED
+    REJECTED,
+    // Passed validation, then found infected when re-scanned with newer virus signatures
+    INFECTED
 }
 
@@ -23,6 +23,7 @@ public class SubmissionEvent {
     private String submittedBy;
     private SubmissionStatus status;
     private String checksum;
+    private Long contentHash;
     private LocalDateTime timestamp;
     private String errorMessage;
     
@@ -0,0 +1,17 @@
+package com.mharawi.submissiondisk.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when an upload declares the checksum of content that has already been submitted.
+ */
+@Getter
+public class DuplicateSubmissionException extends RuntimeException {
+
+    private final Long existingSubmissionId;
+
+    public DuplicateSubmissionException(Long existingSubmissionId) {
+        super("This file has already been submitted (Submission ID: " + existingSubmissionId + ")");
+        this.existingSubmissionId = existingSubmissionId;
+    }
+}
@@ -0,0 +1,18 @@
+package com.mharawi.submissiondisk.exception;
+
+import com.mharawi.submissiondisk.validator.ValidationResult;
+import lombok.Getter;
+
+/**
+ * Thrown when a streaming validator rejects an upload while it is being received.
+ */
+@Getter
+public class UploadRejectedException extends IllegalArgumentException {
+
+    private final String validatorName;
+
+    public UploadRejectedException(ValidationResult result) {
+        super(result.getErrorMessage());
+        this.validatorName = result.getValidatorName();
+    }
+}
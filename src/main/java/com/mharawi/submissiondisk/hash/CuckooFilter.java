@@ -0,0 +1,249 @@
+package com.mharawi.submissiondisk.hash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Scalable cuckoo filter over 64-bit hashes: approximate set membership with
+ * deletion, in about two bytes per item.
+ *
+ * Each item is stored as a 16-bit fingerprint in one of two buckets of four
+ * slots (partial-key cuckoo hashing). A lookup never misses an item that was
+ * added and not removed; it reports an absent item with a probability of
+ * roughly 1 in 8000 per table. Items may be added more than once and
+ * {@link #count} reports how many copies match, up to {@link #MAX_COPIES}:
+ * two buckets hold no more copies of one fingerprint, so further copies are
+ * not stored rather than growing the filter, and a saturated count is never
+ * decremented. When a table fills up, a new table of twice the size is added,
+ * so the filter grows without rehashing; size the first table for the
+ * expected load to keep to one or two tables.
+ *
+ * Only remove items that were added: removing an absent item can remove the
+ * fingerprint of another item that collides with it. Thread-safe.
+ */
+public final class CuckooFilter {
+
+    private static final int BUCKET_SIZE = 4;
+    private static final int MAX_KICKS = 500;
+    private static final double TARGET_LOAD = 0.95;
+
+    // Copies of one item that fit in its two buckets
+    public static final int MAX_COPIES = 2 * BUCKET_SIZE;
+
+    private final List<Table> tables = new ArrayList<>();
+    private final SplittableRandom random = new SplittableRandom(0x5DEECE66DL);
+    private long size;
+
+    /**
+     * @param expectedItems Items the first table is sized for
+     */
+    public CuckooFilter(long expectedItems) {
+        long buckets = Math.max(1, (long) Math.ceil(expectedItems / (BUCKET_SIZE * TARGET_LOAD)));
+        if (buckets > 1 << 28) {
+            throw new IllegalArgumentException("Too many expected items: " + expectedItems);
+        }
+        tables.add(new Table(Integer.highestOneBit((int) buckets - 1 | 1) << 1));
+    }
+
+    /**
+     * Add a copy of an item.
+     *
+     * @return false if the item already has {@link #MAX_COPIES} copies, so none was added
+     */
+    public synchronized boolean add(long hash) {
+        if (count(hash) >= MAX_COPIES) {
+            return false;
+        }
+        Table table = tables.getLast();
+        if (!table.add(hash)) {
+            table = new Table(table.bucketMask + 1 << 1);
+            tables.add(table);
+            table.add(hash);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove one copy of an item that was added.
+     *
+     * @return false if no copy was found, or the count is saturated and kept
+     */
+    public synchronized boolean remove(long hash) {
+        // Copies beyond the saturated count were never stored, so it can't tell how many remain
+        if (count(hash) >= MAX_COPIES) {
+            return false;
+        }
+        for (int i = tables.size() - 1; i >= 0; i--) {
+            if (tables.get(i).remove(hash)) {
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of stored copies matching the item, at most {@link #MAX_COPIES};
+     * 0 means the item was never added
+     */
+    public synchronized int count(long hash) {
+        int count = 0;
+        for (Table table : tables) {
+            count += table.count(hash);
+        }
+        return Math.min(count, MAX_COPIES);
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return Bytes held by the fingerprint tables
+     */
+    public synchronized long memoryBytes() {
+        long bytes = 0;
+        for (Table table : tables) {
+            bytes += (long) table.slots.length * Short.BYTES;
+        }
+        return bytes;
+    }
+
+    private static int fingerprint(long hash) {
+        int fingerprint = (int) (hash >>> 48);
+        // 0 marks an empty slot
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private final class Table {
+
+        private final short[] slots;
+        private final int bucketMask;
+
+        // An item displaced by the last failed insertion; a table holding one is full
+        private boolean hasVictim;
+        private int victimBucket;
+        private int victimFingerprint;
+
+        Table(int buckets) {
+            this.slots = new short[buckets * BUCKET_SIZE];
+            this.bucketMask = buckets - 1;
+        }
+
+        boolean add(long hash) {
+            if (hasVictim) {
+                return false;
+            }
+            int fingerprint = fingerprint(hash);
+            int bucket = (int) hash & bucketMask;
+            if (insert(bucket, fingerprint) || insert(alternate(bucket, fingerprint), fingerprint)) {
+                return true;
+            }
+
+            // Evict random residents along the chain until one finds a free slot
+            if (random.nextBoolean()) {
+                bucket = alternate(bucket, fingerprint);
+            }
+            for (int kick = 0; kick < MAX_KICKS; kick++) {
+                int slot = bucket * BUCKET_SIZE + random.nextInt(BUCKET_SIZE);
+                int evicted = slots[slot] & 0xffff;
+                slots[slot] = (short) fingerprint;
+                fingerprint = evicted;
+                bucket = alternate(bucket, fingerprint);
+                if (insert(bucket, fingerprint)) {
+                    return true;
+                }
+            }
+
+            hasVictim = true;
+            victimBucket = bucket;
+            victimFingerprint = fingerprint;
+            return true;
+        }
+
+        boolean remove(long hash) {
+            int fingerprint = fingerprint(hash);
+            int bucket = (int) hash & bucketMask;
+            int alternate = alternate(bucket, fingerprint);
+
+            if (hasVictim && victimFingerprint == fingerprint
+                    && (victimBucket == bucket || victimBucket == alternate)) {
+                hasVictim = false;
+                return true;
+            }
+            if (delete(bucket, fingerprint) || delete(alternate, fingerprint)) {
+                // A slot just became free, the victim may fit again
+                if (hasVictim) {
+                    hasVictim = false;
+                    reinsert(victimBucket, victimFingerprint);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        int count(long hash) {
+            int fingerprint = fingerprint(hash);
+            int bucket = (int) hash & bucketMask;
+            int alternate = alternate(bucket, fingerprint);
+
+            int count = countIn(bucket, fingerprint);
+            if (alternate != bucket) {
+                count += countIn(alternate, fingerprint);
+            }
+            if (hasVictim && victimFingerprint == fingerprint
+                    && (victimBucket == bucket || victimBucket == alternate)) {
+                count++;
+            }
+            return count;
+        }
+
+        private void reinsert(int bucket, int fingerprint) {
+            if (!insert(bucket, fingerprint) && !insert(alternate(bucket, fingerprint), fingerprint)) {
+                hasVictim = true;
+                victimBucket = bucket;
+                victimFingerprint = fingerprint;
+            }
+        }
+
+        private int alternate(int bucket, int fingerprint) {
+            // Involution: the alternate of the alternate bucket is the original bucket
+            return (bucket ^ fingerprint * 0x5BD1E995) & bucketMask;
+        }
+
+        private boolean insert(int bucket, int fingerprint) {
+            int start = bucket * BUCKET_SIZE;
+            for (int slot = start; slot < start + BUCKET_SIZE; slot++) {
+                if (slots[slot] == 0) {
+                    slots[slot] = (short) fingerprint;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean delete(int bucket, int fingerprint) {
+            int start = bucket * BUCKET_SIZE;
+            for (int slot = start; slot < start + BUCKET_SIZE; slot++) {
+                if ((slots[slot] & 0xffff) == fingerprint) {
+                    slots[slot] = 0;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int countIn(int bucket, int fingerprint) {
+            int count = 0;
+            int start = bucket * BUCKET_SIZE;
+            for (int slot = start; slot < start + BUCKET_SIZE; slot++) {
+                if ((slots[slot] & 0xffff) == fingerprint) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
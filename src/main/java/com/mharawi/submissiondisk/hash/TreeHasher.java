@@ -0,0 +1,133 @@
+package com.mharawi.submissiondisk.hash;
+
+import com.mharawi.submissiondisk.io.ChannelIO;
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import com.mharawi.submissiondisk.io.PooledBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel SHA-256 tree digest of a file.
+ *
+ * The file is split into fixed-size chunks that are hashed concurrently on a
+ * fork/join pool with positional reads, then combined pairwise into a Merkle
+ * root (RFC 6962 layout: leaves are {@code SHA-256(0x00 || chunk)}, inner
+ * nodes {@code SHA-256(0x01 || left || right)}, left subtrees hold the largest
+ * power of two of chunks). The root depends on the chunk size and is not the
+ * plain SHA-256 of the file, so it does not replace {@code Submission.checksum}.
+ * Chunks are read through buffers borrowed from a {@link DirectBufferPool}.
+ */
+public final class TreeHasher {
+
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+
+    private final int chunkSize;
+    private final DirectBufferPool bufferPool;
+    private final ForkJoinPool pool;
+
+    public TreeHasher(int chunkSize, DirectBufferPool bufferPool) {
+        this(chunkSize, bufferPool, ForkJoinPool.commonPool());
+    }
+
+    public TreeHasher(int chunkSize, DirectBufferPool bufferPool, ForkJoinPool pool) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+        this.bufferPool = bufferPool;
+        this.pool = pool;
+    }
+
+    /**
+     * @param file File to hash
+     * @return Merkle root of the file's chunks
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] digest(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunks = Math.max(1, (size + chunkSize - 1) / chunkSize);
+            return pool.invoke(new SubtreeTask(channel, size, 0, chunks));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class SubtreeTask extends RecursiveTask<byte[]> {
+
+        private final FileChannel channel;
+        private final long size;
+        private final long firstChunk;
+        private final long chunkCount;
+
+        SubtreeTask(FileChannel channel, long size, long firstChunk, long chunkCount) {
+            this.channel = channel;
+            this.size = size;
+            this.firstChunk = firstChunk;
+            this.chunkCount = chunkCount;
+        }
+
+        @Override
+        protected byte[] compute() {
+            if (chunkCount == 1) {
+                return leaf();
+            }
+
+            long leftCount = Long.highestOneBit(chunkCount - 1);
+            SubtreeTask left = new SubtreeTask(channel, size, firstChunk, leftCount);
+            SubtreeTask right = new SubtreeTask(channel, size, firstChunk + leftCount, chunkCount - leftCount);
+            left.fork();
+            byte[] rightDigest = right.compute();
+            byte[] leftDigest = left.join();
+
+            MessageDigest digest = newSha256Digest();
+            digest.update(NODE_PREFIX);
+            digest.update(leftDigest);
+            digest.update(rightDigest);
+            return digest.digest();
+        }
+
+        private byte[] leaf() {
+            long position = firstChunk * chunkSize;
+            long end = Math.min(position + chunkSize, size);
+
+            MessageDigest digest = newSha256Digest();
+            digest.update(LEAF_PREFIX);
+
+            try (PooledBuffer pooledBuffer = bufferPool.acquire()) {
+                ByteBuffer buffer = pooledBuffer.buffer();
+                while (position < end) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = ChannelIO.readFully(channel, buffer, position);
+                    if (read < buffer.limit()) {
+                        throw new IOException("File shrank while hashing");
+                    }
+                    buffer.flip();
+                    digest.update(buffer);
+                    position += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return digest.digest();
+        }
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.mharawi.submissiondisk.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming XXH64, a fast non-cryptographic 64-bit hash.
+ *
+ * Several times faster than SHA-256 and fine for spotting content that is
+ * certainly new, but not collision resistant: a match has to be confirmed
+ * with the SHA-256 checksum. Not thread-safe.
+ */
+public final class XxHash64 {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE_SIZE = 32;
+
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Direct buffers are hashed through this many bytes at a time
+    private static final int COPY_SIZE = 4096;
+
+    private final long seed;
+    private byte[] copyBuffer;
+    private final byte[] pending = new byte[STRIPE_SIZE];
+    private int pendingLength;
+    private long totalLength;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    public static long hash(byte[] bytes) {
+        XxHash64 hash = new XxHash64();
+        hash.update(bytes, 0, bytes.length);
+        return hash.getValue();
+    }
+
+    public void reset() {
+        v1 = seed + PRIME_1 + PRIME_2;
+        v2 = seed + PRIME_2;
+        v3 = seed;
+        v4 = seed - PRIME_1;
+        pendingLength = 0;
+        totalLength = 0;
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        totalLength += length;
+
+        if (pendingLength + length < STRIPE_SIZE) {
+            System.arraycopy(bytes, offset, pending, pendingLength, length);
+            pendingLength += length;
+            return;
+        }
+
+        if (pendingLength > 0) {
+            int fill = STRIPE_SIZE - pendingLength;
+            System.arraycopy(bytes, offset, pending, pendingLength, fill);
+            processStripe(pending, 0);
+            offset += fill;
+            length -= fill;
+            pendingLength = 0;
+        }
+
+        int end = offset + length - STRIPE_SIZE;
+        while (offset <= end) {
+            processStripe(bytes, offset);
+            offset += STRIPE_SIZE;
+        }
+
+        pendingLength = end + STRIPE_SIZE - offset;
+        System.arraycopy(bytes, offset, pending, 0, pendingLength);
+    }
+
+    /**
+     * Hash the remaining bytes of the buffer, leaving its position at its limit.
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        if (copyBuffer == null) {
+            copyBuffer = new byte[COPY_SIZE];
+        }
+        while (buffer.hasRemaining()) {
+            int length = Math.min(COPY_SIZE, buffer.remaining());
+            buffer.get(copyBuffer, 0, length);
+            update(copyBuffer, 0, length);
+        }
+    }
+
+    public long getValue() {
+        long hash;
+        if (totalLength >= STRIPE_SIZE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME_5;
+        }
+        hash += totalLength;
+
+        int position = 0;
+        while (position + 8 <= pendingLength) {
+            hash ^= round(0, (long) LONG_LE.get(pending, position));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+            position += 8;
+        }
+        if (position + 4 <= pendingLength) {
+            hash ^= ((int) INT_LE.get(pending, position) & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            position += 4;
+        }
+        while (position < pendingLength) {
+            hash ^= (pending[position] & 0xFF) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+            position++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void processStripe(byte[] bytes, int offset) {
+        v1 = round(v1, (long) LONG_LE.get(bytes, offset));
+        v2 = round(v2, (long) LONG_LE.get(bytes, offset + 8));
+        v3 = round(v3, (long) LONG_LE.get(bytes, offset + 16));
+        v4 = round(v4, (long) LONG_LE.get(bytes, offset + 24));
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME_1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME_1 + PRIME_4;
+    }
+}
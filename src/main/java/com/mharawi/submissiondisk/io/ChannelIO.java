@@ -0,0 +1,135 @@
+package com.mharawi.submissiondisk.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Small {@link FileChannel} helpers working on pooled buffers.
+ */
+public final class ChannelIO {
+
+    private ChannelIO() {
+    }
+
+    /**
+     * Read from the given position until the buffer is full or the file ends.
+     *
+     * @return Number of bytes read, 0 at end of file
+     */
+    public static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Write all remaining bytes of the buffer at the given position.
+     */
+    public static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Open a file as an input stream that reads through a buffer borrowed
+     * from the pool. Closing the stream closes the file and returns the buffer.
+     */
+    public static InputStream newInputStream(Path path, DirectBufferPool bufferPool) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new PooledChannelInputStream(channel, bufferPool.acquire());
+    }
+
+    private static final class PooledChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final PooledBuffer pooledBuffer;
+        private final ByteBuffer buffer;
+        private boolean endOfFile;
+
+        PooledChannelInputStream(FileChannel channel, PooledBuffer pooledBuffer) {
+            this.channel = channel;
+            this.pooledBuffer = pooledBuffer;
+            this.buffer = pooledBuffer.buffer().flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            if (count <= 0) {
+                return 0;
+            }
+            int buffered = (int) Math.min(count, buffer.remaining());
+            buffer.position(buffer.position() + buffered);
+            long remaining = count - buffered;
+            if (remaining > 0 && !endOfFile) {
+                long position = channel.position();
+                long skipped = Math.min(remaining, Math.max(0, channel.size() - position));
+                channel.position(position + skipped);
+                return buffered + skipped;
+            }
+            return buffered;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                pooledBuffer.close();
+            }
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            if (endOfFile) {
+                return false;
+            }
+            buffer.clear();
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read == 0);
+            buffer.flip();
+            if (read == -1) {
+                endOfFile = true;
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.mharawi.submissiondisk.io;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of fixed-size off-heap buffers for file I/O.
+ *
+ * Reading a file channel into a direct buffer skips the copy through the
+ * heap, and reusing the buffers keeps per-request allocations out of the
+ * young generation. Buffers are allocated lazily, up to the configured
+ * maximum. When the pool stays exhausted for longer than the acquire timeout,
+ * a plain heap buffer is handed out instead, so callers never stall behind a
+ * slow scan.
+ */
+@Component
+@Slf4j
+public class DirectBufferPool implements MeterBinder {
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final long acquireTimeoutMillis;
+
+    private final Queue<ByteBuffer> idleBuffers = new ConcurrentLinkedQueue<>();
+    private final Semaphore permits;
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public DirectBufferPool(
+            @Value("${submission.io.buffer-size:65536}") int bufferSize,
+            @Value("${submission.io.max-buffers:256}") int maxBuffers,
+            @Value("${submission.io.acquire-timeout:50}") long acquireTimeoutMillis) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxBuffers);
+    }
+
+    /**
+     * Borrow a cleared buffer; release it by closing the returned handle.
+     */
+    public PooledBuffer acquire() {
+        acquisitions.incrementAndGet();
+
+        if (!tryAcquirePermit()) {
+            fallbacks.incrementAndGet();
+            log.debug("Direct buffer pool exhausted, using a heap buffer");
+            return new PooledBuffer(this, ByteBuffer.allocate(bufferSize), false);
+        }
+
+        ByteBuffer buffer = idleBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            allocatedBuffers.incrementAndGet();
+        }
+        return new PooledBuffer(this, buffer.clear(), true);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    void release(ByteBuffer buffer) {
+        idleBuffers.offer(buffer.clear());
+        permits.release();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("submission.io.buffers.in-use", this, pool -> pool.maxBuffers - pool.permits.availablePermits())
+                .description("Direct buffers currently lent out")
+                .register(registry);
+        Gauge.builder("submission.io.buffers.allocated", allocatedBuffers, AtomicInteger::get)
+                .description("Direct buffers allocated so far")
+                .register(registry);
+        Gauge.builder("submission.io.buffers.max", this, pool -> pool.maxBuffers)
+                .description("Maximum number of direct buffers")
+                .register(registry);
+        FunctionCounter.builder("submission.io.buffers.acquisitions", acquisitions, AtomicLong::get)
+                .description("Buffer requests")
+                .register(registry);
+        FunctionCounter.builder("submission.io.buffers.fallbacks", fallbacks, AtomicLong::get)
+                .description("Buffer requests served from the heap because the pool was exhausted")
+                .register(registry);
+    }
+
+    private boolean tryAcquirePermit() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        try {
+            return permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
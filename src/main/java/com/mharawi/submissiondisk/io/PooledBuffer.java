@@ -0,0 +1,35 @@
+package com.mharawi.submissiondisk.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A buffer borrowed from a {@link DirectBufferPool}, returned on close.
+ * The buffer must not be used after the handle is closed.
+ */
+public final class PooledBuffer implements AutoCloseable {
+
+    private final DirectBufferPool pool;
+    private final ByteBuffer buffer;
+    private final boolean pooled;
+    private boolean released;
+
+    PooledBuffer(DirectBufferPool pool, ByteBuffer buffer, boolean pooled) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.pooled = pooled;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public void close() {
+        if (!released) {
+            released = true;
+            if (pooled) {
+                pool.release(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.mharawi.submissiondisk.pipeline;
+
+import com.mharawi.submissiondisk.config.KafkaTopicConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Periodically measures how far the pipeline stages are behind, as the total
+ * consumer lag of our group on the stage topics.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConsumerLagMonitor {
+
+    private static final Set<String> MONITORED_TOPICS = Set.of(
+            KafkaTopicConfig.SUBMISSION_VALIDATION,
+            KafkaTopicConfig.SUBMISSION_STORAGE,
+            KafkaTopicConfig.SUBMISSION_PROCESSING
+    );
+
+    private static final long ADMIN_TIMEOUT_SECONDS = 5;
+
+    private final KafkaAdmin kafkaAdmin;
+
+    @Value("${spring.kafka.consumer.group-id}")
+    private String groupId;
+
+    private AdminClient adminClient;
+
+    // -1 until the first successful measurement
+    private volatile long currentLag = -1;
+
+    /**
+     * @return Total lag on the stage topics, or -1 if it is not known
+     */
+    public long getCurrentLag() {
+        return currentLag;
+    }
+
+    @Scheduled(fixedDelayString = "${submission.admission.refresh-interval:5000}")
+    public void refresh() {
+        try {
+            AdminClient admin = adminClient();
+
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(groupId)
+                    .partitionsToOffsetAndMetadata()
+                    .get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .entrySet().stream()
+                    .filter(entry -> MONITORED_TOPICS.contains(entry.getKey().topic()) && entry.getValue() != null)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+            Map<TopicPartition, OffsetSpec> latestRequest = committed.keySet().stream()
+                    .collect(Collectors.toMap(partition -> partition, partition -> OffsetSpec.latest()));
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> latest = admin.listOffsets(latestRequest)
+                    .all()
+                    .get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            long lag = 0;
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : committed.entrySet()) {
+                ListOffsetsResult.ListOffsetsResultInfo end = latest.get(entry.getKey());
+                if (end != null) {
+                    lag += Math.max(0, end.offset() - entry.getValue().offset());
+                }
+            }
+
+            currentLag = lag;
+            log.debug("Pipeline consumer lag: {}", lag);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Unable to measure consumer lag: {}", e.getMessage());
+            currentLag = -1;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+
+    private synchronized AdminClient adminClient() {
+        if (adminClient == null) {
+            adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+        }
+        return adminClient;
+    }
+}
@@ -1,28 +1,56 @@
 package com.mharawi.submissiondisk.pipeline;
 
+import com.mharawi.submissiondisk.config.KafkaConsumerConfig;
 import com.mharawi.submissiondisk.config.KafkaTopicConfig;
 import com.mharawi.submissiondisk.entity.SubmissionStatus;
 import com.mharawi.submissiondisk.event.SubmissionEvent;
 import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ProcessingPipeline {
 
+    // Statuses a submission is processed from; a submission in any other status makes the event stale
+    private static final Set<SubmissionStatus> EXPECTED_STATUSES =
+            EnumSet.of(SubmissionStatus.STORED, SubmissionStatus.PROCESSING);
+
     private final SubmissionRepository submissionRepository;
     private final SubmissionProducer submissionProducer;
 
-    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_PROCESSING, groupId = "${spring.kafka.consumer.group-id}")
-    @Transactional
+    @Value("${submission.pipeline.batch.parallelism:8}")
+    private int batchParallelism;
+
+    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_PROCESSING, groupId = "${spring.kafka.consumer.group-id}",
+            autoStartup = "#{!${submission.pipeline.batch.enabled:true}}")
     public void processSubmission(SubmissionEvent event) {
+        StageBatch batch = new StageBatch();
+        process(event, batch);
+        batch.apply(submissionRepository, submissionProducer);
+    }
+
+    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_PROCESSING, groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = KafkaConsumerConfig.BATCH_LISTENER_CONTAINER_FACTORY,
+            autoStartup = "${submission.pipeline.batch.enabled:true}")
+    public void processSubmissions(List<SubmissionEvent> events) {
+        log.info("PROCESSING PIPELINE: Processing batch of {} submissions", events.size());
+        StageBatch batch = new StageBatch();
+        batch.handle("PROCESSING PIPELINE", events, batchParallelism, event -> process(event, batch));
+        batch.apply(submissionRepository, submissionProducer);
+    }
+
+    private void process(SubmissionEvent event, StageBatch batch) {
         log.info("PROCESSING PIPELINE: Processing submission ID: {}", event.getSubmissionId());
 
         try {
@@ -44,16 +72,10 @@ public class ProcessingPipeline {
             event.setCurrentStage("PROCESSING");
             event.setNextStage("NOTIFICATION");
 
-            // Update submission status in DB
-            submissionRepository.findById(event.getSubmissionId()).ifPresent(submission -> {
-                submission.setStatus(SubmissionStatus.COMPLETED);
-                submission.setProcessedAt(LocalDateTime.now());
-                submissionRepository.save(submission);
-            });
-
-            // Send to notification pipeline
-            submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_NOTIFICATION, event);
-            submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_COMPLETED, event);
+            // Update submission status in DB and send to notification pipeline
+            StatusUpdate update = StatusUpdate.processed(event.getSubmissionId(), EXPECTED_STATUSES,
+                    SubmissionStatus.COMPLETED, LocalDateTime.now());
+            batch.add(update, event, KafkaTopicConfig.SUBMISSION_NOTIFICATION, KafkaTopicConfig.SUBMISSION_COMPLETED);
 
         } catch (Exception e) {
             log.error("PROCESSING PIPELINE: Error processing submission {}", event.getSubmissionId(), e);
@@ -62,14 +84,9 @@ public class ProcessingPipeline {
             event.setCurrentStage("PROCESSING");
             event.setNextStage("FAILED");
 
-            submissionRepository.findById(event.getSubmissionId()).ifPresent(submission -> {
-                submission.setStatus(SubmissionStatus.FAILED);
-                submission.setProcessedAt(LocalDateTime.now());
-                submissionRepository.save(submission);
-            });
-
-            submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_FAILED, event);
+            StatusUpdate update = StatusUpdate.processed(event.getSubmissionId(), EXPECTED_STATUSES,
+                    SubmissionStatus.FAILED, LocalDateTime.now());
+            batch.add(update, event, KafkaTopicConfig.SUBMISSION_FAILED);
         }
     }
 }
-
@@ -0,0 +1,101 @@
+package com.mharawi.submissiondisk.pipeline;
+
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Outcome of a pipeline stage for a batch of events: the status each
+ * submission moves to and the events to publish next.
+ *
+ * Events are handled one by one, possibly concurrently, and only record
+ * their outcome here. {@link #apply} then writes all status changes in one
+ * transaction and publishes the events together, so a batch costs a few
+ * round trips instead of a few per event. Each change only applies while
+ * the submission is still in a status the stage expects.
+ */
+@Slf4j
+final class StageBatch {
+
+    private final List<Transition> transitions = new ArrayList<>();
+
+    /**
+     * Handle each event on up to {@code parallelism} virtual threads.
+     * Records that could not be deserialized arrive as null and are skipped;
+     * a handler that throws only loses its own event.
+     */
+    void handle(String stage, List<SubmissionEvent> records, int parallelism, Consumer<SubmissionEvent> handler) {
+        List<SubmissionEvent> present = records.stream().filter(Objects::nonNull).toList();
+        if (present.size() < records.size()) {
+            log.warn("{}: skipping {} records that could not be read", stage, records.size() - present.size());
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < Math.min(Math.max(1, parallelism), present.size()); worker++) {
+                executor.execute(() -> {
+                    int index;
+                    while ((index = next.getAndIncrement()) < present.size()) {
+                        SubmissionEvent event = present.get(index);
+                        try {
+                            handler.accept(event);
+                        } catch (RuntimeException e) {
+                            log.error("{}: Unexpected error handling submission {}", stage,
+                                    event.getSubmissionId(), e);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Record a status change, and the event to publish on each of {@code topics}
+     * once the change is applied.
+     */
+    synchronized void add(StatusUpdate update, SubmissionEvent event, String... topics) {
+        transitions.add(new Transition(update, event, topics));
+    }
+
+    /**
+     * Write the status changes, then publish the events of those that
+     * applied. A change whose submission is already in the target status
+     * applies again, so an event redelivered after the write committed but
+     * before its events went out publishes them then. A change that found its
+     * submission gone or moved elsewhere publishes nothing. If the write fails
+     * nothing is published and the exception fails the batch, so it is
+     * delivered again.
+     */
+    synchronized void apply(SubmissionRepository submissionRepository, SubmissionProducer submissionProducer) {
+        int[] counts = submissionRepository.updateStatuses(
+                transitions.stream().map(Transition::update).toList());
+
+        Map<String, List<SubmissionEvent>> events = new LinkedHashMap<>();
+        for (int i = 0; i < transitions.size(); i++) {
+            Transition transition = transitions.get(i);
+            if (counts[i] == 0) {
+                log.info("Submission {} is no longer in {} nor {}, skipping its move",
+                        transition.update().id(), transition.update().expected(), transition.update().status());
+                continue;
+            }
+            for (String topic : transition.topics()) {
+                events.computeIfAbsent(topic, t -> new ArrayList<>()).add(transition.event());
+            }
+        }
+        events.forEach(submissionProducer::sendEvents);
+    }
+
+    private record Transition(StatusUpdate update, SubmissionEvent event, String[] topics) {
+    }
+}
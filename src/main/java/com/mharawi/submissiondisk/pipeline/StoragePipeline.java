@@ -1,26 +1,54 @@
 package com.mharawi.submissiondisk.pipeline;
 
+import com.mharawi.submissiondisk.config.KafkaConsumerConfig;
 import com.mharawi.submissiondisk.config.KafkaTopicConfig;
 import com.mharawi.submissiondisk.entity.SubmissionStatus;
 import com.mharawi.submissiondisk.event.SubmissionEvent;
 import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class StoragePipeline {
 
+    // Statuses a submission is stored from; a submission in any other status makes the event stale
+    private static final Set<SubmissionStatus> EXPECTED_STATUSES = EnumSet.of(SubmissionStatus.VALIDATED);
+
     private final SubmissionRepository submissionRepository;
     private final SubmissionProducer submissionProducer;
 
-    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_STORAGE, groupId = "${spring.kafka.consumer.group-id}")
-    @Transactional
+    @Value("${submission.pipeline.batch.parallelism:8}")
+    private int batchParallelism;
+
+    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_STORAGE, groupId = "${spring.kafka.consumer.group-id}",
+            autoStartup = "#{!${submission.pipeline.batch.enabled:true}}")
     public void processStorage(SubmissionEvent event) {
+        StageBatch batch = new StageBatch();
+        store(event, batch);
+        batch.apply(submissionRepository, submissionProducer);
+    }
+
+    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_STORAGE, groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = KafkaConsumerConfig.BATCH_LISTENER_CONTAINER_FACTORY,
+            autoStartup = "${submission.pipeline.batch.enabled:true}")
+    public void processStorageBatch(List<SubmissionEvent> events) {
+        log.info("STORAGE PIPELINE: Processing batch of {} submissions", events.size());
+        StageBatch batch = new StageBatch();
+        batch.handle("STORAGE PIPELINE", events, batchParallelism, event -> store(event, batch));
+        batch.apply(submissionRepository, submissionProducer);
+    }
+
+    private void store(SubmissionEvent event, StageBatch batch) {
         log.info("STORAGE PIPELINE: Processing submission ID: {}", event.getSubmissionId());
 
         try {
@@ -36,14 +64,9 @@ public class StoragePipeline {
             event.setCurrentStage("STORAGE");
             event.setNextStage("PROCESSING");
 
-            // Update submission status in DB
-            submissionRepository.findById(event.getSubmissionId()).ifPresent(submission -> {
-                submission.setStatus(SubmissionStatus.STORED);
-                submissionRepository.save(submission);
-            });
-
-            // Send to processing pipeline
-            submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_PROCESSING, event);
+            // Update submission status in DB and send to processing pipeline
+            batch.add(StatusUpdate.to(event.getSubmissionId(), EXPECTED_STATUSES, SubmissionStatus.STORED), event,
+                    KafkaTopicConfig.SUBMISSION_PROCESSING);
 
         } catch (Exception e) {
             log.error("STORAGE PIPELINE: Error processing storage for submission {}", event.getSubmissionId(), e);
@@ -52,13 +75,8 @@ public class StoragePipeline {
             event.setCurrentStage("STORAGE");
             event.setNextStage("FAILED");
 
-            submissionRepository.findById(event.getSubmissionId()).ifPresent(submission -> {
-                submission.setStatus(SubmissionStatus.FAILED);
-                submissionRepository.save(submission);
-            });
-
-            submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_FAILED, event);
+            batch.add(StatusUpdate.to(event.getSubmissionId(), EXPECTED_STATUSES, SubmissionStatus.FAILED), event,
+                    KafkaTopicConfig.SUBMISSION_FAILED);
         }
     }
 }
-
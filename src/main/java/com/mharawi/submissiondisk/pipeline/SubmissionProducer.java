@@ -6,6 +6,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -17,6 +19,27 @@ public class SubmissionProducer {
         log.info("Sending event to topic {}: submissionId={}, stage={}",
                 topic, event.getSubmissionId(), event.getCurrentStage());
 
+        send(topic, event);
+    }
+
+    /**
+     * Send many events at once. The records are handed to the producer
+     * back-to-back and flushed together, so they go out in as few produce
+     * requests as the partitioning allows instead of one per event.
+     */
+    public void sendEvents(String topic, List<SubmissionEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        log.info("Sending {} events to topic {}", events.size(), topic);
+
+        for (SubmissionEvent event : events) {
+            send(topic, event);
+        }
+        kafkaTemplate.flush();
+    }
+
+    private void send(String topic, SubmissionEvent event) {
         kafkaTemplate.send(topic, String.valueOf(event.getSubmissionId()), event)
                 .whenComplete((result, ex) -> {
                     if (ex == null) {
@@ -29,4 +52,3 @@ public class SubmissionProducer {
                 });
     }
 }
-
@@ -1,46 +1,85 @@
 package com.mharawi.submissiondisk.pipeline;
 
+import com.mharawi.submissiondisk.config.KafkaConsumerConfig;
 import com.mharawi.submissiondisk.config.KafkaTopicConfig;
 import com.mharawi.submissiondisk.entity.SubmissionStatus;
 import com.mharawi.submissiondisk.event.SubmissionEvent;
 import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
 import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
 import com.mharawi.submissiondisk.validator.ValidationResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ValidationPipeline {
 
+    // Statuses a submission is validated in; a submission in any other status makes the event stale
+    private static final Set<SubmissionStatus> EXPECTED_STATUSES = EnumSet.of(SubmissionStatus.PENDING);
+
     private final SubmissionRepository submissionRepository;
     private final SubmissionProducer submissionProducer;
     private final ValidationOrchestrator validationOrchestrator;
 
+    @Value("${submission.pipeline.batch.parallelism:8}")
+    private int batchParallelism;
+
     @PostConstruct
     public void init() {
         validationOrchestrator.logValidatorInfo();
     }
 
-    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_VALIDATION, groupId = "${spring.kafka.consumer.group-id}")
-    @Transactional
+    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_VALIDATION, groupId = "${spring.kafka.consumer.group-id}",
+            autoStartup = "#{!${submission.pipeline.batch.enabled:true}}")
     public void validateSubmission(SubmissionEvent event) {
+        StageBatch batch = new StageBatch();
+        validate(event, batch);
+        batch.apply(submissionRepository, submissionProducer);
+    }
+
+    /**
+     * Validate a batch of submissions concurrently, then record all their
+     * outcomes in one transaction.
+     */
+    @KafkaListener(topics = KafkaTopicConfig.SUBMISSION_VALIDATION, groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = KafkaConsumerConfig.BATCH_LISTENER_CONTAINER_FACTORY,
+            autoStartup = "${submission.pipeline.batch.enabled:true}")
+    public void validateSubmissions(List<SubmissionEvent> events) {
+        log.info("VALIDATION PIPELINE: Processing batch of {} submissions", events.size());
+        StageBatch batch = new StageBatch();
+        batch.handle("VALIDATION PIPELINE", events, batchParallelism, event -> validate(event, batch));
+        batch.apply(submissionRepository, submissionProducer);
+    }
+
+    private void validate(SubmissionEvent event, StageBatch batch) {
         log.info("VALIDATION PIPELINE: Processing submission ID: {}", event.getSubmissionId());
 
         try {
             // Execute all validators through orchestrator
             ValidationResult result = validationOrchestrator.validateAll(event);
 
+            if (result.isRetryable()) {
+                log.warn("VALIDATION PIPELINE: Submission {} parked, {} could not run: {}",
+                        event.getSubmissionId(), result.getValidatorName(), result.getErrorMessage());
+                parkSubmission(event, batch);
+                return;
+            }
+
             if (!result.isValid()) {
                 log.warn("VALIDATION PIPELINE: Validation failed for submission {}: {} - {}",
                         event.getSubmissionId(), result.getValidatorName(), result.getErrorMessage());
-                handleValidationFailure(event, result.getErrorMessage());
+                handleValidationFailure(event, result.getErrorMessage(), batch);
                 return;
             }
 
@@ -49,30 +88,30 @@ public class ValidationPipeline {
             event.setCurrentStage("VALIDATION");
             event.setNextStage("STORAGE");
 
-            submissionRepository.findById(event.getSubmissionId()).ifPresent(submission -> {
-                submission.setStatus(SubmissionStatus.VALIDATED);
-                submissionRepository.save(submission);
-            });
-
-            submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_STORAGE, event);
+            batch.add(StatusUpdate.to(event.getSubmissionId(), EXPECTED_STATUSES, SubmissionStatus.VALIDATED), event,
+                    KafkaTopicConfig.SUBMISSION_STORAGE);
         } catch (Exception e) {
             log.error("VALIDATION PIPELINE: Error validating submission {}", event.getSubmissionId(), e);
-            handleValidationFailure(event, "Validation error: " + e.getMessage());
+            handleValidationFailure(event, "Validation error: " + e.getMessage(), batch);
         }
     }
 
-    private void handleValidationFailure(SubmissionEvent event, String errorMessage) {
+    /**
+     * Leave the submission for {@code SubmissionService} to validate again
+     * once the missing validator is back, rather than failing a file nothing
+     * was found wrong with.
+     */
+    private void parkSubmission(SubmissionEvent event, StageBatch batch) {
+        batch.add(StatusUpdate.parked(event.getSubmissionId(), EXPECTED_STATUSES, LocalDateTime.now()), event);
+    }
+
+    private void handleValidationFailure(SubmissionEvent event, String errorMessage, StageBatch batch) {
         event.setStatus(SubmissionStatus.FAILED);
         event.setErrorMessage(errorMessage);
         event.setCurrentStage("VALIDATION");
         event.setNextStage("FAILED");
 
-        submissionRepository.findById(event.getSubmissionId()).ifPresent(submission -> {
-            submission.setStatus(SubmissionStatus.FAILED);
-            submissionRepository.save(submission);
-        });
-
-        submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_FAILED, event);
+        batch.add(StatusUpdate.to(event.getSubmissionId(), EXPECTED_STATUSES, SubmissionStatus.FAILED), event,
+                KafkaTopicConfig.SUBMISSION_FAILED);
     }
 }
-
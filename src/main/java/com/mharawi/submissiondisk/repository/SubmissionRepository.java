@@ -2,16 +2,19 @@ package com.mharawi.submissiondisk.repository;
 
 import com.mharawi.submissiondisk.entity.Submission;
 import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
-public interface SubmissionRepository extends JpaRepository<Submission, Long> {
+public interface SubmissionRepository extends JpaRepository<Submission, Long>, SubmissionStatusOperations {
 
     List<Submission> findByStatus(SubmissionStatus status);
 
@@ -19,11 +22,58 @@ public interface SubmissionRepository extends JpaRepository<Submission, Long> {
 
     List<Submission> findBySubmittedAtBetween(LocalDateTime start, LocalDateTime end);
 
-    Optional<Submission> findByChecksum(String checksum);
+    // Only earlier submissions count, so of two copies the first one submitted is kept
+    @Query("SELECT s.id FROM Submission s WHERE s.checksum = ?1 AND s.id < ?2 AND s.status NOT IN ?3 ORDER BY s.id")
+    List<Long> findEarlierIdsByChecksum(String checksum, Long submissionId,
+                                        Collection<SubmissionStatus> excludedStatuses, Limit limit);
+
+    @Query("SELECT s.id FROM Submission s WHERE s.checksum = ?1 AND s.fileSize = ?2 AND s.status IN ?3 "
+            + "ORDER BY s.id")
+    List<Long> findIdsByChecksumAndFileSize(String checksum, Long fileSize, Collection<SubmissionStatus> statuses,
+                                            Limit limit);
+
+    @Query("SELECT MIN(s.id) FROM Submission s")
+    Long findMinId();
+
+    @Query("SELECT MAX(s.id) FROM Submission s")
+    Long findMaxId();
+
+    @Query("SELECT s.checksum FROM Submission s WHERE s.id BETWEEN ?1 AND ?2 AND s.checksum IS NOT NULL")
+    List<String> findChecksumsByIdBetween(long fromId, long toId);
+
+    @Query("SELECT COALESCE(SUM(s.fileSize), 0) FROM Submission s WHERE s.status IN ?1")
+    long sumFileSizeByStatusIn(Collection<SubmissionStatus> statuses);
 
     @Query("SELECT s FROM Submission s WHERE s.status = ?1 ORDER BY s.submittedAt DESC")
     List<Submission> findByStatusOrderBySubmittedAtDesc(SubmissionStatus status);
 
+    List<Submission> findByStatusAndParkedAtBeforeOrderByParkedAt(SubmissionStatus status, LocalDateTime cutoff,
+                                                                  Limit limit);
+
+    // Keyset pagination: pass the last ID of the previous page
+    List<Submission> findByIdGreaterThanAndIdLessThanEqualAndStatusInOrderById(
+            Long afterId, Long untilId, Collection<SubmissionStatus> statuses, Limit limit);
+
+    /**
+     * Move a submission to another status, unless someone else already moved it.
+     *
+     * @return 1 if the status was changed, 0 if the submission wasn't in the expected status
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Submission s SET s.status = ?3, s.parkedAt = NULL WHERE s.id = ?1 AND s.status = ?2")
+    int updateStatusIfCurrent(Long id, SubmissionStatus expected, SubmissionStatus status);
+
+    /**
+     * Move a submission to another status if it is in one of the expected ones.
+     *
+     * @return 1 if the status was changed, 0 if the submission wasn't in an expected status
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Submission s SET s.status = ?3 WHERE s.id = ?1 AND s.status IN ?2")
+    int updateStatusIfIn(Long id, Collection<SubmissionStatus> expected, SubmissionStatus status);
+
     @Query("SELECT s FROM Submission s WHERE s.submittedBy = ?1 AND s.status = ?2")
     List<Submission> findBySubmittedByAndStatus(String submittedBy, SubmissionStatus status);
 }
@@ -0,0 +1,49 @@
+package com.mharawi.submissiondisk.repository;
+
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Status changes of many submissions at once, written without loading the
+ * entities.
+ */
+public interface SubmissionStatusOperations {
+
+    /**
+     * Apply status changes in one transaction, sent as JDBC batches. Each
+     * change is a single conditional UPDATE that only applies while the
+     * submission is in one of the statuses it expects, so an out-of-order
+     * event changes nothing. A submission already in the target status counts
+     * as changed: an event redelivered after its change was committed, but
+     * before the next stage was told, must still be passed on.
+     *
+     * @return For each update, the number of rows it changed: 1, or 0 if the
+     * submission is gone or in neither an expected nor the target status
+     */
+    int[] updateStatuses(List<StatusUpdate> updates);
+
+    /**
+     * @param expected    Statuses the submission may be moved from
+     * @param processedAt Set if not null, otherwise left as it is
+     * @param parkedAt    Only set while PARKED, cleared otherwise
+     */
+    record StatusUpdate(Long id, Set<SubmissionStatus> expected, SubmissionStatus status,
+                        LocalDateTime processedAt, LocalDateTime parkedAt) {
+
+        public static StatusUpdate to(Long id, Set<SubmissionStatus> expected, SubmissionStatus status) {
+            return new StatusUpdate(id, expected, status, null, null);
+        }
+
+        public static StatusUpdate processed(Long id, Set<SubmissionStatus> expected, SubmissionStatus status,
+                                             LocalDateTime processedAt) {
+            return new StatusUpdate(id, expected, status, processedAt, null);
+        }
+
+        public static StatusUpdate parked(Long id, Set<SubmissionStatus> expected, LocalDateTime parkedAt) {
+            return new StatusUpdate(id, expected, SubmissionStatus.PARKED, null, parkedAt);
+        }
+    }
+}
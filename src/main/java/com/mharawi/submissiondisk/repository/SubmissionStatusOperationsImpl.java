@@ -0,0 +1,45 @@
+package com.mharawi.submissiondisk.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+class SubmissionStatusOperationsImpl implements SubmissionStatusOperations {
+
+    private static final String UPDATE_STATUS_SQL = "UPDATE submissions "
+            + "SET status = ?, processed_at = COALESCE(?, processed_at), parked_at = ? "
+            + "WHERE id = ? AND status = ANY (?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @Override
+    @Transactional
+    public int[] updateStatuses(List<StatusUpdate> updates) {
+        if (updates.isEmpty()) {
+            return new int[0];
+        }
+
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_STATUS_SQL, updates, batchSize,
+                (statement, update) -> {
+                    statement.setString(1, update.status().name());
+                    statement.setObject(2, update.processedAt(), Types.TIMESTAMP);
+                    statement.setObject(3, update.parkedAt(), Types.TIMESTAMP);
+                    statement.setLong(4, update.id());
+                    // A change already made, e.g. before a crash, applies again so its events are resent
+                    statement.setArray(5, statement.getConnection().createArrayOf("varchar",
+                            Stream.concat(update.expected().stream(), Stream.of(update.status()))
+                                    .map(Enum::name).distinct().toArray()));
+                });
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).toArray();
+    }
+}
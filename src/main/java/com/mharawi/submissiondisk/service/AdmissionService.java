@@ -0,0 +1,155 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.exception.AdmissionRejectedException;
+import com.mharawi.submissiondisk.pipeline.ConsumerLagMonitor;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides at ingest whether an upload may enter the pipeline.
+ *
+ * Uploads are turned away with 503 while the pipeline is saturated (consumer
+ * lag on the stage topics, or bytes of unfinished submissions on disk) and
+ * with 429 when a submitter exceeds their rate. Per-submitter token buckets
+ * live in Redis so the limits hold across nodes.
+ *
+ * When Kafka or Redis cannot be reached the corresponding check is skipped
+ * rather than blocking all uploads.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdmissionService {
+
+    private static final Set<SubmissionStatus> IN_FLIGHT_STATUSES = EnumSet.of(
+            SubmissionStatus.PENDING,
+            SubmissionStatus.PARKED,
+            SubmissionStatus.VALIDATED,
+            SubmissionStatus.STORED,
+            SubmissionStatus.PROCESSING
+    );
+
+    private static final String RATE_LIMIT_KEY_PREFIX = "submission:rate-limit:";
+    private static final String ANONYMOUS_SUBMITTER = "anonymous";
+
+    private static final RedisScript<List> TOKEN_BUCKET_SCRIPT = tokenBucketScript();
+
+    private final SubmissionRepository submissionRepository;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final StringRedisTemplate redisTemplate;
+
+    // Bytes of unfinished submissions as of the last refresh, plus what was admitted since
+    private volatile long inFlightBytes;
+    private final AtomicLong admittedSinceRefresh = new AtomicLong();
+
+    @Value("${submission.admission.enabled:true}")
+    private boolean admissionEnabled;
+
+    @Value("${submission.admission.max-consumer-lag:1000}")
+    private long maxConsumerLag;
+
+    @Value("${submission.admission.max-in-flight-bytes:10737418240}") // Default 10GB
+    private long maxInFlightBytes;
+
+    @Value("${submission.admission.retry-after:30}")
+    private long overloadRetryAfterSeconds;
+
+    @Value("${submission.admission.rate-limit.burst:20}")
+    private long rateLimitBurst;
+
+    @Value("${submission.admission.rate-limit.per-minute:60}")
+    private long rateLimitPerMinute;
+
+    // Reserved for an upload whose size is not declared, e.g. a chunked /stream body
+    @Value("${submission.max-file-size:104857600}") // Default 100MB
+    private long maxFileSize;
+
+    /**
+     * Admit an upload or reject it with a retry hint.
+     *
+     * @param submittedBy   Submitter the rate limit applies to
+     * @param declaredSize  Size of the upload, or null if unknown; an upload of
+     *                      unknown size counts as the largest one accepted
+     * @throws AdmissionRejectedException if the upload must be retried later
+     */
+    public void admit(String submittedBy, Long declaredSize) {
+        if (!admissionEnabled) {
+            return;
+        }
+        long declaredBytes = declaredSize != null ? declaredSize : maxFileSize;
+
+        long lag = consumerLagMonitor.getCurrentLag();
+        if (lag > maxConsumerLag) {
+            throw new AdmissionRejectedException(HttpStatus.SERVICE_UNAVAILABLE, overloadRetryAfterSeconds,
+                    "Submission pipeline is behind (" + lag + " pending events), please retry later");
+        }
+
+        if (inFlightBytes + admittedSinceRefresh.get() + declaredBytes > maxInFlightBytes) {
+            throw new AdmissionRejectedException(HttpStatus.SERVICE_UNAVAILABLE, overloadRetryAfterSeconds,
+                    "Too many submissions awaiting processing, please retry later");
+        }
+
+        long retryAfterMillis = takeToken(submittedBy != null ? submittedBy : ANONYMOUS_SUBMITTER);
+        if (retryAfterMillis > 0) {
+            throw new AdmissionRejectedException(HttpStatus.TOO_MANY_REQUESTS, (retryAfterMillis + 999) / 1000,
+                    "Submission rate limit exceeded");
+        }
+
+        admittedSinceRefresh.addAndGet(declaredBytes);
+    }
+
+    @Scheduled(fixedDelayString = "${submission.admission.refresh-interval:5000}")
+    public void refreshInFlightBytes() {
+        try {
+            long admitted = admittedSinceRefresh.get();
+            inFlightBytes = submissionRepository.sumFileSizeByStatusIn(IN_FLIGHT_STATUSES);
+            admittedSinceRefresh.addAndGet(-admitted);
+        } catch (Exception e) {
+            log.warn("Unable to measure in-flight submission bytes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise milliseconds until one is available
+     */
+    private long takeToken(String submittedBy) {
+        try {
+            double refillPerMillisecond = rateLimitPerMinute / 60_000.0;
+            List<?> result = redisTemplate.execute(TOKEN_BUCKET_SCRIPT,
+                    List.of(RATE_LIMIT_KEY_PREFIX + submittedBy),
+                    String.valueOf(rateLimitBurst), String.valueOf(refillPerMillisecond), "1");
+
+            if (result == null || ((Number) result.get(0)).longValue() == 1) {
+                return 0;
+            }
+            return Math.max(1, ((Number) result.get(1)).longValue());
+
+        } catch (Exception e) {
+            log.warn("Rate limiter unavailable, admitting upload from {}: {}", submittedBy, e.getMessage());
+            return 0;
+        }
+    }
+
+    private static RedisScript<List> tokenBucketScript() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/token-bucket.lua")));
+        script.setResultType(List.class);
+        return script;
+    }
+}
@@ -0,0 +1,215 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.dto.BulkSubmissionItem;
+import com.mharawi.submissiondisk.dto.BulkSubmissionResponse;
+import com.mharawi.submissiondisk.dto.SubmissionResponse;
+import com.mharawi.submissiondisk.entity.Submission;
+import com.mharawi.submissiondisk.validator.StreamingValidation;
+import com.mharawi.submissiondisk.validator.UploadMetadata;
+import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Creates many submissions from one request.
+ *
+ * The archives are stored concurrently, then every stored archive is
+ * registered in a single transaction (batched inserts) and published to the
+ * validation pipeline as one producer batch. Each archive succeeds or fails
+ * on its own; a rejected archive does not affect the others.
+ */
+@Service
+@Slf4j
+public class BulkSubmissionService {
+
+    private final SubmissionService submissionService;
+    private final FileStorageService fileStorageService;
+    private final ValidationOrchestrator validationOrchestrator;
+    private final ExecutorService storageExecutor;
+
+    @Value("${submission.bulk.max-archives:500}")
+    private int maxArchives;
+
+    public BulkSubmissionService(SubmissionService submissionService,
+                                 FileStorageService fileStorageService,
+                                 ValidationOrchestrator validationOrchestrator,
+                                 @Value("${submission.bulk.max-concurrent-stores:8}") int maxConcurrentStores) {
+        this.submissionService = submissionService;
+        this.fileStorageService = fileStorageService;
+        this.validationOrchestrator = validationOrchestrator;
+        this.storageExecutor = Executors.newFixedThreadPool(maxConcurrentStores,
+                Thread.ofVirtual().name("bulk-store-", 0).factory());
+    }
+
+    public BulkSubmissionResponse createSubmissions(List<MultipartFile> files, String description,
+                                                    String submittedBy) {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("At least one file is required");
+        }
+        if (files.size() > maxArchives) {
+            throw new IllegalArgumentException("Too many files in one request (maximum: " + maxArchives + ")");
+        }
+
+        StoredFiles stored = new StoredFiles(files.size());
+        List<Future<StoredFile>> pending = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            int index = i;
+            pending.add(storageExecutor.submit(() -> stored.put(index, store(files.get(index), submittedBy))));
+        }
+
+        BulkSubmissionItem[] items = new BulkSubmissionItem[files.size()];
+        List<Integer> storedIndexes = new ArrayList<>();
+        List<StoredFile> storedFiles = new ArrayList<>();
+        List<Submission> submissions = new ArrayList<>();
+
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            try {
+                StoredFile storedFile = pending.get(i).get();
+                storedIndexes.add(i);
+                storedFiles.add(storedFile);
+                submissions.add(submissionService.newSubmission(storedFile, file.getOriginalFilename(),
+                        file.getContentType(), description, submittedBy));
+
+            } catch (ExecutionException e) {
+                items[i] = rejected(i, file, errorMessage(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // The rest won't be registered: stop storing them and delete what was stored
+                stored.abandonFrom(i);
+                for (int j = i; j < files.size(); j++) {
+                    pending.get(j).cancel(true);
+                    items[j] = rejected(j, files.get(j), "Upload interrupted");
+                }
+                break;
+            }
+        }
+
+        if (!submissions.isEmpty()) {
+            try {
+                List<SubmissionResponse> responses = submissionService.registerSubmissions(submissions);
+                for (int i = 0; i < responses.size(); i++) {
+                    int index = storedIndexes.get(i);
+                    items[index] = BulkSubmissionItem.builder()
+                            .index(index)
+                            .fileName(files.get(index).getOriginalFilename())
+                            .accepted(true)
+                            .submission(responses.get(i))
+                            .build();
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to register {} bulk submissions", submissions.size(), e);
+                for (int i = 0; i < storedIndexes.size(); i++) {
+                    int index = storedIndexes.get(i);
+                    discard(storedFiles.get(i));
+                    items[index] = rejected(index, files.get(index), "Failed to register submission");
+                }
+            }
+        }
+
+        int accepted = (int) Arrays.stream(items).filter(BulkSubmissionItem::isAccepted).count();
+        log.info("Bulk upload from {}: {} accepted, {} rejected", submittedBy, accepted, items.length - accepted);
+
+        return BulkSubmissionResponse.builder()
+                .accepted(accepted)
+                .rejected(items.length - accepted)
+                .items(List.of(items))
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        storageExecutor.shutdownNow();
+    }
+
+    private StoredFile store(MultipartFile file, String submittedBy) throws Exception {
+        StreamingValidation validation = validationOrchestrator.beginUpload(UploadMetadata.builder()
+                .fileName(file.getOriginalFilename())
+                .declaredSize(file.getSize())
+                .contentType(file.getContentType())
+                .submittedBy(submittedBy)
+                .build());
+        return fileStorageService.ingest(file, null, validation);
+    }
+
+    private void discard(StoredFile storedFile) {
+        try {
+            fileStorageService.deleteFile(storedFile.getStoragePath());
+        } catch (IOException e) {
+            log.warn("Failed to delete unregistered file {}: {}", storedFile.getStoragePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * Files stored for one request, by index. Once the request abandons the
+     * files from some index on, those already stored are deleted, and a task
+     * that finishes storing one afterwards deletes it itself.
+     */
+    private final class StoredFiles {
+
+        private final StoredFile[] files;
+        private int abandonedFrom = Integer.MAX_VALUE;
+
+        StoredFiles(int size) {
+            this.files = new StoredFile[size];
+        }
+
+        StoredFile put(int index, StoredFile storedFile) {
+            synchronized (this) {
+                if (index < abandonedFrom) {
+                    files[index] = storedFile;
+                    return storedFile;
+                }
+            }
+            discard(storedFile);
+            throw new CancellationException("Bulk upload abandoned");
+        }
+
+        void abandonFrom(int from) {
+            List<StoredFile> abandoned = new ArrayList<>();
+            synchronized (this) {
+                abandonedFrom = from;
+                for (int i = from; i < files.length; i++) {
+                    if (files[i] != null) {
+                        abandoned.add(files[i]);
+                    }
+                }
+            }
+            abandoned.forEach(BulkSubmissionService.this::discard);
+        }
+    }
+
+    private static BulkSubmissionItem rejected(int index, MultipartFile file, String error) {
+        return BulkSubmissionItem.builder()
+                .index(index)
+                .fileName(file.getOriginalFilename())
+                .accepted(false)
+                .error(error)
+                .build();
+    }
+
+    private static String errorMessage(Throwable cause) {
+        if (cause instanceof IllegalArgumentException) {
+            return cause.getMessage();
+        }
+        if (cause instanceof MaxUploadSizeExceededException) {
+            return "File size exceeds maximum allowed limit";
+        }
+        log.error("Error storing file in bulk upload", cause);
+        return "Failed to store file";
+    }
+}
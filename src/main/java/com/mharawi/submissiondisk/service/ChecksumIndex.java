@@ -0,0 +1,226 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.config.KafkaTopicConfig;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.hash.CuckooFilter;
+import com.mharawi.submissiondisk.hash.XxHash64;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of submission checksums that answers "no other submission
+ * has this content" without a database query.
+ *
+ * Checksums are kept in a {@link CuckooFilter}, so a negative answer is exact
+ * and a positive one may be a false positive that the caller confirms in
+ * Postgres. The filter is warmed by a parallel scan of the submissions table
+ * and kept current by a listener that reads every creation and deletion
+ * event in a consumer group of its own, so each node holds the full index.
+ *
+ * A submission is only vouched for once its own creation event has been
+ * indexed, so the index is at least as recent as the submission itself.
+ * Until the warm-up completes, and for a grace period after it, deletions
+ * are not applied: a stale entry only costs a database query, while removing
+ * a checksum the scan never saw could hide a colliding one.
+ */
+@Service
+@Slf4j
+public class ChecksumIndex implements ConsumerSeekAware, MeterBinder {
+
+    private final SubmissionRepository submissionRepository;
+    private final CuckooFilter filter;
+
+    // Submissions whose creation event was indexed, oldest first
+    private final Map<Long, Boolean> recentlyIndexed;
+
+    private final AtomicBoolean warmUpStarted = new AtomicBoolean();
+    private volatile boolean ready;
+    private volatile long removalsAppliedAfter = Long.MAX_VALUE;
+
+    private final AtomicLong uniqueLookups = new AtomicLong();
+    private final AtomicLong possibleDuplicates = new AtomicLong();
+    private final AtomicLong unavailable = new AtomicLong();
+
+    @Value("${submission.checksum-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${submission.checksum-index.warm-up.slice-size:50000}")
+    private long sliceSize;
+
+    @Value("${submission.checksum-index.warm-up.parallelism:4}")
+    private int parallelism;
+
+    @Value("${submission.checksum-index.removal-grace:60s}")
+    private Duration removalGrace;
+
+    public ChecksumIndex(SubmissionRepository submissionRepository,
+                         @Value("${submission.checksum-index.expected-submissions:1000000}") long expectedSubmissions,
+                         @Value("${submission.checksum-index.recent-ids:100000}") int recentIds) {
+        this.submissionRepository = submissionRepository;
+        this.filter = new CuckooFilter(expectedSubmissions);
+        this.recentlyIndexed = new LinkedHashMap<>(1024) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > recentIds;
+            }
+        };
+    }
+
+    /**
+     * @param checksum     SHA-256 of the submission, may be null
+     * @param submissionId Submission the checksum belongs to
+     * @return true if no other submission has this checksum; false if one may have
+     * or the index can't tell, in which case the database must be asked
+     */
+    public boolean isCertainlyUnique(String checksum, Long submissionId) {
+        if (!enabled || !ready || checksum == null || !isIndexed(submissionId)) {
+            unavailable.incrementAndGet();
+            return false;
+        }
+
+        // The submission itself accounts for one copy
+        if (filter.count(hash(checksum)) <= 1) {
+            uniqueLookups.incrementAndGet();
+            return true;
+        }
+        possibleDuplicates.incrementAndGet();
+        return false;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @KafkaListener(
+            topics = {KafkaTopicConfig.SUBMISSION_VALIDATION, KafkaTopicConfig.SUBMISSION_DELETED},
+            groupId = "#{'${spring.kafka.consumer.group-id}-checksum-index-' + T(java.util.UUID).randomUUID()}",
+            concurrency = "1",
+            properties = "auto.offset.reset=latest",
+            autoStartup = "${submission.checksum-index.enabled:true}")
+    public void onSubmissionEvent(SubmissionEvent event, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
+        if (event.getChecksum() == null) {
+            return;
+        }
+
+        long hash = hash(event.getChecksum());
+        if (KafkaTopicConfig.SUBMISSION_DELETED.equals(topic)) {
+            if (System.nanoTime() - removalsAppliedAfter > 0 && filter.count(hash) > 0) {
+                filter.remove(hash);
+            }
+            return;
+        }
+
+        // Parked submissions are republished to validation on every retry, count each one once
+        if (isIndexed(event.getSubmissionId())) {
+            return;
+        }
+
+        // Into the filter before the ID is vouched for
+        filter.add(hash);
+        synchronized (recentlyIndexed) {
+            recentlyIndexed.put(event.getSubmissionId(), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * The listener's positions are resolved by the time partitions are
+     * assigned, so every submission is either in the table when the scan
+     * reads it or arrives as an event afterwards.
+     */
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (enabled && warmUpStarted.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("checksum-index-warm-up").start(this::warmUp);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("submission.checksum-index.lookups", uniqueLookups, AtomicLong::get)
+                .description("Duplicate checks answered by the checksum index")
+                .tag("result", "unique")
+                .register(registry);
+        FunctionCounter.builder("submission.checksum-index.lookups", possibleDuplicates, AtomicLong::get)
+                .description("Duplicate checks answered by the checksum index")
+                .tag("result", "possible-duplicate")
+                .register(registry);
+        FunctionCounter.builder("submission.checksum-index.lookups", unavailable, AtomicLong::get)
+                .description("Duplicate checks answered by the checksum index")
+                .tag("result", "unavailable")
+                .register(registry);
+        Gauge.builder("submission.checksum-index.entries", filter, CuckooFilter::size)
+                .description("Checksums held by the checksum index")
+                .register(registry);
+        Gauge.builder("submission.checksum-index.memory", filter, CuckooFilter::memoryBytes)
+                .description("Bytes held by the checksum index")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        try {
+            Long minId = submissionRepository.findMinId();
+            Long maxId = submissionRepository.findMaxId();
+            if (minId != null) {
+                try (ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                        Thread.ofVirtual().name("checksum-index-warm-up-", 0).factory())) {
+                    List<Future<?>> slices = new ArrayList<>();
+                    for (long from = minId; from <= maxId; from += sliceSize) {
+                        long sliceFrom = from;
+                        long sliceTo = Math.min(maxId, from + sliceSize - 1);
+                        slices.add(executor.submit(() -> submissionRepository.findChecksumsByIdBetween(sliceFrom, sliceTo)
+                                .forEach(checksum -> filter.add(hash(checksum)))));
+                    }
+                    for (Future<?> slice : slices) {
+                        slice.get();
+                    }
+                }
+            }
+
+            long now = System.nanoTime();
+            removalsAppliedAfter = now + removalGrace.toNanos();
+            ready = true;
+            log.info("Checksum index warmed up with {} checksums in {} ms ({} KB)",
+                    filter.size(), (now - start) / 1_000_000, filter.memoryBytes() / 1024);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Checksum index warm-up failed, duplicate checks will query the database", e);
+        }
+    }
+
+    private boolean isIndexed(Long submissionId) {
+        synchronized (recentlyIndexed) {
+            return recentlyIndexed.containsKey(submissionId);
+        }
+    }
+
+    private static long hash(String checksum) {
+        return XxHash64.hash(checksum.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,99 +1,338 @@
 package com.mharawi.submissiondisk.service;
 
+import com.mharawi.submissiondisk.hash.XxHash64;
+import com.mharawi.submissiondisk.io.ChannelIO;
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import com.mharawi.submissiondisk.io.PooledBuffer;
+import com.mharawi.submissiondisk.validator.StreamingValidation;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.UUID;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 @Service
+@RequiredArgsConstructor
 public class FileStorageService {
 
+    // ZIP local file header: 4-byte signature followed by 26 bytes of fixed fields
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int FILE_NAME_LENGTH_OFFSET = 26;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Chunked uploads are assembled here, on the same volume as their final location
+    private static final String PARTS_DIRECTORY = ".parts";
+
+    private final DirectBufferPool bufferPool;
+
     @Value("${submission.storage.path:uploads}")
     private String storageBasePath;
 
-    public String storeFile(MultipartFile file) throws IOException {
-        validateZipFile(file);
+    @Value("${submission.max-file-size:104857600}") // Default 100MB
+    private long maxFileSize;
 
-        String fileName = UUID.randomUUID() + "_" + file.getOriginalFilename();
-        Path storagePath = Paths.get(storageBasePath);
+    // Also record the XXH64 content hash next to the SHA-256 checksum
+    @Value("${submission.hashing.fast-hash.enabled:true}")
+    private boolean fastHashEnabled;
 
-        // Create directory if it doesn't exist
-        if (!Files.exists(storagePath)) {
-            Files.createDirectories(storagePath);
-        }
+    /**
+     * Store an uploaded ZIP archive while computing its SHA-256 checksum (and
+     * XXH64 content hash) and checking the ZIP local header, reading the upload exactly once.
+     *
+     * @param file The uploaded file
+     * @return Storage path, size and checksum of the stored file
+     * @throws IOException if the upload cannot be read or written
+     */
+    public StoredFile ingest(MultipartFile file) throws IOException {
+        return ingest(file, null, StreamingValidation.NONE);
+    }
 
-        Path filePath = storagePath.resolve(fileName);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Store an uploaded ZIP archive in a single pass, feeding its bytes to the
+     * given streaming validation before they are written.
+     *
+     * @param file             The uploaded file
+     * @param expectedChecksum SHA-256 declared by the client, or null
+     * @param validation       Streaming validation for this upload
+     * @return Storage path, size and checksum of the stored file
+     * @throws IOException if the upload cannot be read or written
+     */
+    public StoredFile ingest(MultipartFile file, String expectedChecksum, StreamingValidation validation)
+            throws IOException {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty");
+        }
 
-        return filePath.toString();
+        try (InputStream inputStream = file.getInputStream()) {
+            return ingest(inputStream, file.getOriginalFilename(), expectedChecksum, validation);
+        }
     }
 
-    public void deleteFile(String filePath) throws IOException {
-        Path path = Paths.get(filePath);
-        Files.deleteIfExists(path);
+    /**
+     * Stream a ZIP archive into storage in a single pass. The digest, the ZIP
+     * header check and the write to the final location all happen on the same
+     * buffer; a partially written file is removed if anything fails.
+     *
+     * @param inputStream      Source of the archive bytes (not closed by this method)
+     * @param originalFilename Client supplied filename
+     * @return Storage path, size and checksum of the stored file
+     * @throws IOException if the stream cannot be read or the file cannot be written
+     */
+    public StoredFile ingest(InputStream inputStream, String originalFilename) throws IOException {
+        return ingest(inputStream, originalFilename, null, StreamingValidation.NONE);
     }
 
-    public String calculateChecksum(MultipartFile file) throws IOException, NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        try (InputStream inputStream = file.getInputStream()) {
-            byte[] buffer = new byte[8192];
+    /**
+     * Stream a ZIP archive into storage in a single pass. Every buffer is
+     * handed to the streaming validation before it is written, so a rejected
+     * upload is aborted without reading the rest of it.
+     *
+     * @param inputStream      Source of the archive bytes (not closed by this method)
+     * @param originalFilename Client supplied filename
+     * @param expectedChecksum SHA-256 declared by the client, verified once the stream ends; may be null
+     * @param validation       Streaming validation for this upload
+     * @return Storage path, size and checksum of the stored file
+     * @throws IOException if the stream cannot be read or the file cannot be written
+     */
+    public StoredFile ingest(InputStream inputStream, String originalFilename, String expectedChecksum,
+                             StreamingValidation validation) throws IOException {
+        validateFilename(originalFilename);
+
+        Path filePath = resolveStoragePath(originalFilename);
+        MessageDigest digest = newSha256Digest();
+        XxHash64 fastHash = fastHashEnabled ? new XxHash64() : null;
+        byte[] header = new byte[LOCAL_HEADER_SIZE];
+        int headerLength = 0;
+        long size = 0;
+        String checksum;
+        boolean stored = false;
+
+        try (FileChannel channel = FileChannel.open(filePath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
             int bytesRead;
             while ((bytesRead = inputStream.read(buffer)) != -1) {
+                // Raw-body uploads are not bounded by the multipart limits
+                if (size + bytesRead > maxFileSize) {
+                    throw new MaxUploadSizeExceededException(maxFileSize);
+                }
+
+                if (headerLength < LOCAL_HEADER_SIZE) {
+                    int copied = Math.min(bytesRead, LOCAL_HEADER_SIZE - headerLength);
+                    System.arraycopy(buffer, 0, header, headerLength, copied);
+                    headerLength += copied;
+                    checkZipHeader(header, headerLength, false);
+                }
+
+                validation.update(buffer, 0, bytesRead);
                 digest.update(buffer, 0, bytesRead);
+                if (fastHash != null) {
+                    fastHash.update(buffer, 0, bytesRead);
+                }
+
+                byteBuffer.clear().limit(bytesRead);
+                while (byteBuffer.hasRemaining()) {
+                    channel.write(byteBuffer);
+                }
+                size += bytesRead;
             }
-        }
 
-        byte[] hashBytes = digest.digest();
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hashBytes) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
+            if (size == 0) {
+                throw new IllegalArgumentException("File is empty");
+            }
+            checkZipHeader(header, headerLength, true);
+            validation.complete(size);
+            checksum = verifyChecksum(digest, expectedChecksum);
+            stored = true;
+        } finally {
+            if (!stored) {
+                Files.deleteIfExists(filePath);
             }
-            hexString.append(hex);
         }
-        return hexString.toString();
+
+        return StoredFile.builder()
+                .storagePath(filePath.toString())
+                .size(size)
+                .checksum(checksum)
+                .contentHash(fastHash != null ? fastHash.getValue() : null)
+                .build();
     }
 
-    private void validateZipFile(MultipartFile file) throws IOException {
-        if (file.isEmpty()) {
+    /**
+     * Create a preallocated part file for a chunked upload. Chunks are written
+     * into it with positional writes, in any order, before it is committed.
+     *
+     * @param size Declared size of the complete archive
+     * @return Path of the part file
+     * @throws IOException if the part file cannot be created
+     */
+    public Path createUploadPart(long size) throws IOException {
+        if (size <= 0) {
             throw new IllegalArgumentException("File is empty");
         }
+        if (size > maxFileSize) {
+            throw new MaxUploadSizeExceededException(maxFileSize);
+        }
+
+        Path partsPath = Paths.get(storageBasePath).resolve(PARTS_DIRECTORY);
+        Files.createDirectories(partsPath);
+
+        Path partPath = partsPath.resolve(UUID.randomUUID() + ".part");
+        try (RandomAccessFile partFile = new RandomAccessFile(partPath.toFile(), "rw")) {
+            partFile.setLength(size);
+        }
+        return partPath;
+    }
+
+    /**
+     * Verify a fully written part file, compute its checksum in a final pass
+     * and move it to its storage location.
+     *
+     * @param partPath         Part file created by {@link #createUploadPart(long)}
+     * @param originalFilename Client supplied filename
+     * @param expectedChecksum SHA-256 declared by the client, or null
+     * @return Storage path, size and checksum of the stored file
+     * @throws IOException if the part file cannot be read or moved
+     */
+    public StoredFile commitUploadPart(Path partPath, String originalFilename, String expectedChecksum)
+            throws IOException {
+        validateFilename(originalFilename);
+
+        MessageDigest digest = newSha256Digest();
+        XxHash64 fastHash = fastHashEnabled ? new XxHash64() : null;
+        long size;
+        try (FileChannel channel = FileChannel.open(partPath, StandardOpenOption.READ);
+             PooledBuffer pooledBuffer = bufferPool.acquire()) {
+            size = channel.size();
+
+            ByteBuffer buffer = pooledBuffer.buffer();
+            buffer.limit(LOCAL_HEADER_SIZE);
+            byte[] header = new byte[LOCAL_HEADER_SIZE];
+            int headerLength = ChannelIO.readFully(channel, buffer, 0);
+            buffer.flip().get(header, 0, headerLength);
+            checkZipHeader(header, headerLength, true);
+
+            long position = 0;
+            while (position < size) {
+                buffer.clear();
+                int read = ChannelIO.readFully(channel, buffer, position);
+                if (read == 0) {
+                    break;
+                }
+                buffer.flip();
+                if (fastHash != null) {
+                    fastHash.update(buffer.duplicate());
+                }
+                digest.update(buffer);
+                position += read;
+            }
+        }
+        String checksum = verifyChecksum(digest, expectedChecksum);
+
+        Path filePath = resolveStoragePath(originalFilename);
+        Files.move(partPath, filePath, StandardCopyOption.ATOMIC_MOVE);
+
+        return StoredFile.builder()
+                .storagePath(filePath.toString())
+                .size(size)
+                .checksum(checksum)
+                .contentHash(fastHash != null ? fastHash.getValue() : null)
+                .build();
+    }
 
-        String originalFilename = file.getOriginalFilename();
+    public String storeFile(MultipartFile file) throws IOException {
+        return ingest(file).getStoragePath();
+    }
+
+    public void deleteFile(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        Files.deleteIfExists(path);
+    }
+
+    private Path resolveStoragePath(String originalFilename) throws IOException {
+        String fileName = UUID.randomUUID() + "_" + originalFilename;
+        Path storagePath = Paths.get(storageBasePath);
+
+        // Create directory if it doesn't exist
+        if (!Files.exists(storagePath)) {
+            Files.createDirectories(storagePath);
+        }
+
+        return storagePath.resolve(fileName);
+    }
+
+    private String verifyChecksum(MessageDigest digest, String expectedChecksum) {
+        String checksum = HexFormat.of().formatHex(digest.digest());
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            throw new IllegalArgumentException("Checksum mismatch (declared: " + expectedChecksum
+                    + ", received: " + checksum + ")");
+        }
+        return checksum;
+    }
+
+    private void validateFilename(String originalFilename) {
         if (originalFilename == null || !originalFilename.toLowerCase().endsWith(".zip")) {
             throw new IllegalArgumentException("File must be a ZIP archive");
         }
+    }
 
-        // Validate that it's actually a ZIP file by trying to read it
-        try (ZipInputStream zipInputStream = new ZipInputStream(file.getInputStream())) {
-            ZipEntry entry = zipInputStream.getNextEntry();
-            if (entry == null) {
+    /**
+     * Check as much of the ZIP local file header as has been received so far.
+     * Fails as soon as the signature is wrong; the full header is only required
+     * once the stream is complete.
+     */
+    private void checkZipHeader(byte[] header, int length, boolean complete) {
+        if (length >= 4) {
+            int signature = readInt(header, 0);
+            if (signature == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
                 throw new IllegalArgumentException("ZIP file is empty or corrupted");
             }
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Invalid ZIP file format", e);
+            if (signature != LOCAL_HEADER_SIGNATURE) {
+                throw new IllegalArgumentException("Invalid ZIP file format");
+            }
+        }
+
+        if (length == LOCAL_HEADER_SIZE && readShort(header, FILE_NAME_LENGTH_OFFSET) == 0) {
+            throw new IllegalArgumentException("Invalid ZIP file format");
+        }
+
+        if (complete && length < LOCAL_HEADER_SIZE) {
+            throw new IllegalArgumentException("ZIP file is empty or corrupted");
         }
     }
 
-    public boolean isValidZipFile(MultipartFile file) {
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return readShort(bytes, offset) | readShort(bytes, offset + 2) << 16;
+    }
+
+    private static MessageDigest newSha256Digest() {
         try {
-            validateZipFile(file);
-            return true;
-        } catch (Exception e) {
-            return false;
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
 }
-
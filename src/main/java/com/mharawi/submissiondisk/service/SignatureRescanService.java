@@ -0,0 +1,442 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.clamav.ClamdUnavailableException;
+import com.mharawi.submissiondisk.clamav.ClamdVerdict;
+import com.mharawi.submissiondisk.entity.Submission;
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.pipeline.ConsumerLagMonitor;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.validator.InspectionContext;
+import com.mharawi.submissiondisk.validator.VerdictCache;
+import com.mharawi.submissiondisk.validator.VirusValidator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-scans stored submissions when the ClamAV signature database changes,
+ * and flags those the new signatures find infected as {@code INFECTED}.
+ *
+ * A pass walks the submissions that passed validation in ID order, a page at
+ * a time, from the lowest ID up to the highest one that existed when the
+ * signatures changed; later submissions were validated with the new
+ * signatures anyway. Progress is checkpointed in Redis after every page, so
+ * a pass interrupted by a restart resumes where it stopped, and a Redis lease
+ * keeps the pass on a single node.
+ *
+ * Signatures change several times a day, more often than a pass over a large
+ * store completes. A change doesn't start the pass over: it carries on from
+ * where it is with the new signatures, up to the current highest ID, then
+ * wraps around to re-scan the submissions it had already passed.
+ *
+ * The pass gives way to live validation: it scans at most
+ * {@code submission.rescan.parallelism} files at a time, reads at most
+ * {@code submission.rescan.max-bytes-per-second}, and pauses while the
+ * pipeline stages are behind. Scans go through {@link VirusValidator}, so
+ * archives already known clean under the new signatures, by checksum or
+ * entry by entry, cost no scan. When no clamd can scan, the pass stops and
+ * resumes from its checkpoint at the next check.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SignatureRescanService implements MeterBinder {
+
+    // Submissions that passed validation and whose files are kept
+    private static final Set<SubmissionStatus> RESCANNED_STATUSES = EnumSet.of(
+            SubmissionStatus.VALIDATED,
+            SubmissionStatus.STORED,
+            SubmissionStatus.PROCESSING,
+            SubmissionStatus.COMPLETED
+    );
+
+    private static final String CHECKPOINT_KEY = "submission:rescan:checkpoint";
+    private static final String LEASE_KEY = "submission:rescan:lease";
+    private static final String VERSION_FIELD = "version";
+    private static final String LAST_ID_FIELD = "last-id";
+    private static final String UNTIL_ID_FIELD = "until-id";
+    private static final String WRAP_UNTIL_ID_FIELD = "wrap-until-id";
+    private static final String COMPLETED_AT_FIELD = "completed-at";
+
+    private static final RedisScript<Long> RENEW_LEASE_SCRIPT = leaseScript("scripts/lease-renew.lua");
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = leaseScript("scripts/lease-release.lua");
+
+    private final SubmissionRepository submissionRepository;
+    private final SubmissionService submissionService;
+    private final VirusScanService virusScanService;
+    private final VirusValidator virusValidator;
+    private final VerdictCache verdictCache;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final StringRedisTemplate redisTemplate;
+
+    // Identifies this node as the holder of the lease
+    private final String leaseToken = UUID.randomUUID().toString();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Thread passThread;
+
+    // Last checkpointed submission ID of the pass this node runs
+    private final AtomicLong position = new AtomicLong();
+    private final AtomicLong clean = new AtomicLong();
+    private final AtomicLong infected = new AtomicLong();
+    private final AtomicLong cached = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    // When the next file may be read, to stay within the byte rate
+    private long nextReadNanos = System.nanoTime();
+
+    @Value("${submission.rescan.enabled:true}")
+    private boolean enabled;
+
+    @Value("${submission.rescan.batch-size:100}")
+    private int batchSize;
+
+    @Value("${submission.rescan.parallelism:2}")
+    private int parallelism;
+
+    @Value("${submission.rescan.max-bytes-per-second:52428800}") // Default 50MB/s, 0 for no limit
+    private long maxBytesPerSecond;
+
+    @Value("${submission.rescan.max-consumer-lag:100}")
+    private long maxConsumerLag;
+
+    @Value("${submission.rescan.pause:10000}") // Default 10 seconds
+    private long pauseMillis;
+
+    // Must outlast the scan of one page
+    @Value("${submission.rescan.lease-duration:10m}")
+    private Duration leaseDuration;
+
+    /**
+     * Start a pass on this node if the signatures changed since the last
+     * completed one and no other node is running it. Until a first pass has
+     * completed, every stored submission is due for one.
+     */
+    @Scheduled(fixedDelayString = "${submission.rescan.check-interval:60000}")
+    public void startPassIfSignaturesChanged() {
+        String version = virusScanService.getSignatureVersion();
+        if (!enabled || version == null || !running.compareAndSet(false, true)) {
+            return;
+        }
+
+        boolean started = false;
+        try {
+            Checkpoint checkpoint = readCheckpoint();
+            if (checkpoint != null && checkpoint.completed() && checkpoint.version().equals(version)) {
+                return;
+            }
+            if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LEASE_KEY, leaseToken, leaseDuration))) {
+                log.debug("Re-scan of stored submissions is running on another node");
+                return;
+            }
+            passThread = Thread.ofVirtual().name("signature-rescan").start(this::runPass);
+            started = true;
+        } catch (Exception e) {
+            log.warn("Unable to check whether stored submissions need a re-scan: {}", e.getMessage());
+        } finally {
+            if (!started) {
+                running.set(false);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        Thread thread = passThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("submission.rescan.submissions", clean, AtomicLong::get)
+                .description("Stored submissions re-scanned and found clean")
+                .tag("result", "clean")
+                .register(registry);
+        FunctionCounter.builder("submission.rescan.submissions", infected, AtomicLong::get)
+                .description("Stored submissions re-scanned and flagged infected")
+                .tag("result", "infected")
+                .register(registry);
+        FunctionCounter.builder("submission.rescan.submissions", cached, AtomicLong::get)
+                .description("Stored submissions whose content already passed the current signatures")
+                .tag("result", "cached")
+                .register(registry);
+        FunctionCounter.builder("submission.rescan.submissions", errors, AtomicLong::get)
+                .description("Stored submissions that could not be re-scanned")
+                .tag("result", "error")
+                .register(registry);
+        Gauge.builder("submission.rescan.position", position, AtomicLong::get)
+                .description("Last submission ID checkpointed by the re-scan running on this node")
+                .register(registry);
+    }
+
+    private void runPass() {
+        try {
+            String version = virusScanService.getSignatureVersion();
+            if (version == null) {
+                return;
+            }
+            Checkpoint checkpoint = readCheckpoint();
+            if (checkpoint == null || checkpoint.completed() && !checkpoint.version().equals(version)) {
+                checkpoint = new Checkpoint(version, 0, maxId(0), 0, false);
+                writeCheckpoint(checkpoint);
+                log.info("ClamAV signatures changed to {}, re-scanning stored submissions up to ID {}",
+                        version, checkpoint.untilId());
+            } else if (!checkpoint.version().equals(version)) {
+                checkpoint = continueWith(checkpoint, version);
+            } else {
+                log.info("Resuming re-scan of stored submissions after ID {} (up to ID {})",
+                        checkpoint.lastId(), checkpoint.untilId());
+            }
+            position.set(checkpoint.lastId());
+
+            while (true) {
+                if (!renewLease()) {
+                    log.warn("Lost the re-scan lease, stopping after submission {}", checkpoint.lastId());
+                    return;
+                }
+                String currentVersion = virusScanService.getSignatureVersion();
+                if (currentVersion != null && !currentVersion.equals(checkpoint.version())) {
+                    checkpoint = continueWith(checkpoint, currentVersion);
+                }
+                long lag = consumerLagMonitor.getCurrentLag();
+                if (lag > maxConsumerLag) {
+                    log.debug("Pipeline is behind ({} pending events), pausing re-scan", lag);
+                    Thread.sleep(pauseMillis);
+                    continue;
+                }
+
+                List<Submission> page = submissionRepository
+                        .findByIdGreaterThanAndIdLessThanEqualAndStatusInOrderById(checkpoint.lastId(),
+                                checkpoint.untilId(), RESCANNED_STATUSES, Limit.of(batchSize));
+                if (page.isEmpty() && checkpoint.wrapUntilId() > 0) {
+                    checkpoint = checkpoint.wrapAround();
+                    writeCheckpoint(checkpoint);
+                    log.info("Re-scan reached ID {}, re-scanning submissions up to ID {} with signatures {}",
+                            checkpoint.lastId(), checkpoint.untilId(), checkpoint.version());
+                    continue;
+                }
+                if (page.isEmpty()) {
+                    writeCheckpoint(checkpoint.complete());
+                    log.info("Re-scan of stored submissions with signatures {} complete", checkpoint.version());
+                    return;
+                }
+                if (!scanPage(page, checkpoint.version())) {
+                    return;
+                }
+
+                checkpoint = checkpoint.advanceTo(page.getLast().getId());
+                writeCheckpoint(checkpoint);
+                position.set(checkpoint.lastId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Re-scan of stored submissions failed, it resumes at the next check", e);
+        } finally {
+            releaseLease();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Carry on with the submissions after the checkpoint under newer
+     * signatures, then wrap around to re-scan those already passed.
+     */
+    private Checkpoint continueWith(Checkpoint checkpoint, String version) {
+        Checkpoint continued = new Checkpoint(version, checkpoint.lastId(), maxId(checkpoint.lastId()),
+                checkpoint.lastId(), false);
+        writeCheckpoint(continued);
+        log.info("ClamAV signatures changed to {}, continuing the re-scan after ID {} up to ID {}, "
+                + "then from the start", version, continued.lastId(), continued.untilId());
+        return continued;
+    }
+
+    private long maxId(long atLeast) {
+        Long maxId = submissionRepository.findMaxId();
+        return maxId != null ? Math.max(maxId, atLeast) : atLeast;
+    }
+
+    /**
+     * @return false if the pass has to stop before the page is done
+     */
+    private boolean scanPage(List<Submission> page, String version) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean stop = new AtomicBoolean();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < Math.min(parallelism, page.size()); worker++) {
+                executor.execute(() -> {
+                    int index;
+                    while (!stop.get() && (index = next.getAndIncrement()) < page.size()) {
+                        if (!rescan(page.get(index), version)) {
+                            stop.set(true);
+                        }
+                    }
+                });
+            }
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return !stop.get();
+    }
+
+    /**
+     * @return false if no clamd could scan the submission or the pass was interrupted
+     */
+    private boolean rescan(Submission submission, String version) {
+        String validatorName = virusValidator.getValidatorName();
+        if (verdictCache.hasPassed(validatorName, version, submission.getChecksum())) {
+            cached.incrementAndGet();
+            return true;
+        }
+
+        SubmissionEvent event = SubmissionEvent.builder()
+                .submissionId(submission.getId())
+                .storagePath(submission.getStoragePath())
+                .checksum(submission.getChecksum())
+                .build();
+        try (InspectionContext context = InspectionContext.of(event)) {
+            pace(submission.getFileSize());
+            ClamdVerdict verdict = virusValidator.scan(event, context);
+            if (verdict != null && verdict.isInfected()) {
+                if (submissionService.markInfected(submission, RESCANNED_STATUSES, verdict.virus())) {
+                    infected.incrementAndGet();
+                }
+            } else {
+                clean.incrementAndGet();
+                verdictCache.recordPass(validatorName, version, submission.getChecksum());
+            }
+            return true;
+        } catch (ClamdUnavailableException e) {
+            log.warn("ClamAV is unavailable, pausing re-scan at submission {}: {}", submission.getId(),
+                    e.getMessage());
+            return false;
+        } catch (InterruptedIOException | InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException | RuntimeException e) {
+            errors.incrementAndGet();
+            log.warn("Unable to re-scan submission {}: {}", submission.getId(), e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Wait until reading {@code bytes} more keeps the pass within its byte rate.
+     */
+    private void pace(long bytes) throws InterruptedException {
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = nextReadNanos - now > 0 ? nextReadNanos : now;
+            nextReadNanos = start + (long) (bytes * 1_000_000_000.0 / maxBytesPerSecond);
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private Checkpoint readCheckpoint() {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(CHECKPOINT_KEY);
+        if (fields.get(VERSION_FIELD) == null) {
+            return null;
+        }
+        return new Checkpoint(
+                (String) fields.get(VERSION_FIELD),
+                Long.parseLong((String) fields.get(LAST_ID_FIELD)),
+                Long.parseLong((String) fields.get(UNTIL_ID_FIELD)),
+                Long.parseLong((String) fields.getOrDefault(WRAP_UNTIL_ID_FIELD, "0")),
+                fields.get(COMPLETED_AT_FIELD) != null);
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(VERSION_FIELD, checkpoint.version());
+        fields.put(LAST_ID_FIELD, Long.toString(checkpoint.lastId()));
+        fields.put(UNTIL_ID_FIELD, Long.toString(checkpoint.untilId()));
+        fields.put(WRAP_UNTIL_ID_FIELD, Long.toString(checkpoint.wrapUntilId()));
+        if (checkpoint.completed()) {
+            fields.put(COMPLETED_AT_FIELD, Instant.now().toString());
+        } else {
+            redisTemplate.opsForHash().delete(CHECKPOINT_KEY, COMPLETED_AT_FIELD);
+        }
+        redisTemplate.opsForHash().putAll(CHECKPOINT_KEY, fields);
+    }
+
+    private boolean renewLease() {
+        Long renewed = redisTemplate.execute(RENEW_LEASE_SCRIPT, List.of(LEASE_KEY), leaseToken,
+                Long.toString(leaseDuration.toMillis()));
+        return renewed != null && renewed == 1;
+    }
+
+    private void releaseLease() {
+        try {
+            redisTemplate.execute(RELEASE_LEASE_SCRIPT, List.of(LEASE_KEY), leaseToken);
+        } catch (Exception e) {
+            log.warn("Unable to release the re-scan lease, it expires in {}: {}", leaseDuration, e.getMessage());
+        }
+    }
+
+    private static RedisScript<Long> leaseScript(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    /**
+     * @param lastId      Every submission after the start of the current stretch up to this ID has been re-scanned
+     * @param untilId     Highest ID the current stretch covers
+     * @param wrapUntilId Once past {@code untilId}, re-scan from the lowest ID up to this one; 0 if nothing is left
+     */
+    private record Checkpoint(String version, long lastId, long untilId, long wrapUntilId, boolean completed) {
+
+        Checkpoint advanceTo(long id) {
+            return new Checkpoint(version, id, untilId, wrapUntilId, false);
+        }
+
+        Checkpoint wrapAround() {
+            return new Checkpoint(version, 0, wrapUntilId, 0, false);
+        }
+
+        Checkpoint complete() {
+            return new Checkpoint(version, lastId, untilId, wrapUntilId, true);
+        }
+    }
+}
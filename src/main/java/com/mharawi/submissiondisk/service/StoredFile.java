@@ -0,0 +1,25 @@
+package com.mharawi.submissiondisk.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of ingesting an upload: where it was written, how many bytes it has
+ * and its SHA-256 checksum and XXH64 content hash, all gathered in the same
+ * pass over the bytes.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredFile {
+
+    private String storagePath;
+    private long size;
+    private String checksum;
+
+    // Null when the fast hash is disabled
+    private Long contentHash;
+}
@@ -2,22 +2,37 @@ package com.mharawi.submissiondisk.service;
 
 import com.mharawi.submissiondisk.config.KafkaTopicConfig;
 import com.mharawi.submissiondisk.dto.SubmissionResponse;
+import com.mharawi.submissiondisk.dto.UploadPreflightRequest;
+import com.mharawi.submissiondisk.dto.UploadPreflightResponse;
 import com.mharawi.submissiondisk.entity.Submission;
 import com.mharawi.submissiondisk.entity.SubmissionStatus;
 import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.exception.DuplicateSubmissionException;
 import com.mharawi.submissiondisk.pipeline.SubmissionProducer;
 import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
+import com.mharawi.submissiondisk.validator.StreamingValidation;
+import com.mharawi.submissiondisk.validator.UploadMetadata;
+import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,72 +40,194 @@ import java.util.stream.Collectors;
 @Slf4j
 public class SubmissionService {
 
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
+    // Submissions that hold on to their content; a rejected or parked one must not block an upload
+    private static final Set<SubmissionStatus> EXISTING_STATUSES = EnumSet.of(SubmissionStatus.PENDING,
+            SubmissionStatus.VALIDATED, SubmissionStatus.STORED, SubmissionStatus.PROCESSING,
+            SubmissionStatus.COMPLETED);
+
     private final SubmissionRepository submissionRepository;
     private final FileStorageService fileStorageService;
     private final SubmissionProducer submissionProducer;
+    private final ValidationOrchestrator validationOrchestrator;
 
-    @Transactional
-    public SubmissionResponse createSubmission(MultipartFile file, String description, String submittedBy) {
-        try {
-            // Validate file
-            if (!fileStorageService.isValidZipFile(file)) {
-                throw new IllegalArgumentException("Invalid ZIP file");
-            }
+    @Value("${submission.validation.parking.retry-delay:60000}") // Default 1 minute
+    private long parkedRetryDelayMillis;
 
-            // Calculate checksum
-            String checksum = fileStorageService.calculateChecksum(file);
+    @Value("${submission.validation.parking.max-age:86400000}") // Default 1 day
+    private long parkedMaxAgeMillis;
 
-            // Store file immediately (async processing will handle validation)
-            String storagePath = fileStorageService.storeFile(file);
+    @Value("${submission.validation.parking.batch-size:100}")
+    private int parkedBatchSize;
 
-            // Create submission entity with PENDING status
-            Submission submission = Submission.builder()
+    @Transactional
+    public SubmissionResponse createSubmission(MultipartFile file, String description, String submittedBy,
+                                               String declaredChecksum) {
+        // A duplicate declared up front costs nothing but this lookup
+        String expectedChecksum = checkDeclaredChecksum(declaredChecksum, file.getSize());
+
+        try {
+            // Reject bad uploads while reading them, then hash, check and store
+            // in a single pass (async processing will handle full validation)
+            StreamingValidation validation = validationOrchestrator.beginUpload(UploadMetadata.builder()
                     .fileName(file.getOriginalFilename())
-                    .originalFileName(file.getOriginalFilename())
-                    .fileSize(file.getSize())
+                    .declaredSize(file.getSize())
                     .contentType(file.getContentType())
-                    .storagePath(storagePath)
-                    .description(description)
                     .submittedBy(submittedBy)
-                    .status(SubmissionStatus.PENDING)
-                    .checksum(checksum)
-                    .build();
-
-            Submission savedSubmission = submissionRepository.save(submission);
-            log.info("Submission created successfully with ID: {}", savedSubmission.getId());
-
-            // Create event and send to Kafka validation pipeline
-            SubmissionEvent event = SubmissionEvent.builder()
-                    .submissionId(savedSubmission.getId())
-                    .fileName(savedSubmission.getFileName())
-                    .originalFileName(savedSubmission.getOriginalFileName())
-                    .fileSize(savedSubmission.getFileSize())
-                    .contentType(savedSubmission.getContentType())
-                    .storagePath(savedSubmission.getStoragePath())
-                    .description(savedSubmission.getDescription())
-                    .submittedBy(savedSubmission.getSubmittedBy())
-                    .status(SubmissionStatus.PENDING)
-                    .checksum(savedSubmission.getChecksum())
-                    .timestamp(LocalDateTime.now())
-                    .currentStage("RECEIVED")
-                    .nextStage("VALIDATION")
-                    .build();
-
-            // Send to Kafka pipeline for async processing
-            submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_VALIDATION, event);
-            log.info("Submission {} sent to Kafka pipeline for processing", savedSubmission.getId());
+                    .build());
+            StoredFile storedFile = fileStorageService.ingest(file, expectedChecksum, validation);
 
-            return mapToResponse(savedSubmission);
+            return registerSubmission(storedFile, file.getOriginalFilename(), file.getContentType(),
+                    description, submittedBy);
 
         } catch (IOException e) {
             log.error("Error storing file", e);
             throw new RuntimeException("Failed to store file", e);
-        } catch (NoSuchAlgorithmException e) {
-            log.error("Error calculating checksum", e);
-            throw new RuntimeException("Failed to calculate checksum", e);
         }
     }
 
+    /**
+     * Create a submission from a raw request body, streaming it straight into
+     * storage without the servlet container spooling it to a temp file first.
+     *
+     * Not transactional: a transaction would hold a pooled connection for as
+     * long as the client takes to send the body. Only the insert, through the
+     * repository's own transaction, touches the database.
+     */
+    public SubmissionResponse createSubmission(InputStream inputStream, String originalFilename, String contentType,
+                                               Long declaredSize, String description, String submittedBy,
+                                               String declaredChecksum) {
+        String expectedChecksum = checkDeclaredChecksum(declaredChecksum, declaredSize);
+
+        try {
+            StreamingValidation validation = validationOrchestrator.beginUpload(UploadMetadata.builder()
+                    .fileName(originalFilename)
+                    .declaredSize(declaredSize)
+                    .contentType(contentType)
+                    .submittedBy(submittedBy)
+                    .build());
+            StoredFile storedFile = fileStorageService.ingest(inputStream, originalFilename, expectedChecksum,
+                    validation);
+
+            return registerSubmission(storedFile, originalFilename, contentType, description, submittedBy);
+
+        } catch (IOException e) {
+            log.error("Error storing streamed file", e);
+            throw new RuntimeException("Failed to store file", e);
+        }
+    }
+
+    /**
+     * Look up an existing submission with the given content, without loading it.
+     * Only submissions in progress or accepted count: content that was rejected,
+     * or parked and possibly never accepted, can be uploaded again.
+     *
+     * @param checksum SHA-256 of the content
+     * @param fileSize Size of the content in bytes
+     * @return ID of an existing submission with that content, if any
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> findExistingSubmissionId(String checksum, Long fileSize) {
+        return submissionRepository.findIdsByChecksumAndFileSize(normalizeChecksum(checksum), fileSize,
+                EXISTING_STATUSES, Limit.of(1)).stream().findFirst();
+    }
+
+    @Transactional(readOnly = true)
+    public UploadPreflightResponse preflight(UploadPreflightRequest request) {
+        if (request.getFileSize() == null) {
+            throw new IllegalArgumentException("File size is required");
+        }
+
+        Optional<Long> existingId = findExistingSubmissionId(request.getChecksum(), request.getFileSize());
+        return UploadPreflightResponse.builder()
+                .exists(existingId.isPresent())
+                .submissionId(existingId.orElse(null))
+                .build();
+    }
+
+    /**
+     * Reject an upload up front when the client declares content we already have.
+     *
+     * @param declaredChecksum SHA-256 declared by the client, or null
+     * @param fileSize         Declared size of the upload, or null if unknown
+     * @return The normalized checksum to verify while streaming, or null if none was declared
+     * @throws DuplicateSubmissionException if the content has already been submitted
+     */
+    public String checkDeclaredChecksum(String declaredChecksum, Long fileSize) {
+        if (declaredChecksum == null) {
+            return null;
+        }
+
+        String checksum = normalizeChecksum(declaredChecksum);
+        if (fileSize != null) {
+            Optional<Long> existingId = findExistingSubmissionId(checksum, fileSize);
+            if (existingId.isPresent()) {
+                throw new DuplicateSubmissionException(existingId.get());
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Persist a submission for an already stored file and send it to the
+     * validation pipeline.
+     */
+    @Transactional
+    public SubmissionResponse registerSubmission(StoredFile storedFile, String originalFilename, String contentType,
+                                                 String description, String submittedBy) {
+        Submission savedSubmission = submissionRepository.save(
+                newSubmission(storedFile, originalFilename, contentType, description, submittedBy));
+        log.info("Submission created successfully with ID: {}", savedSubmission.getId());
+
+        // Send to Kafka pipeline for async processing
+        submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_VALIDATION, toValidationEvent(savedSubmission));
+        log.info("Submission {} sent to Kafka pipeline for processing", savedSubmission.getId());
+
+        return mapToResponse(savedSubmission);
+    }
+
+    /**
+     * Persist many submissions for already stored files in one transaction and
+     * send them to the validation pipeline as one producer batch. The rows are
+     * inserted in JDBC batches (see {@code hibernate.jdbc.batch_size}).
+     *
+     * @param submissions Unsaved submissions built with {@link #newSubmission}
+     * @return The saved submissions, in the given order
+     */
+    @Transactional
+    public List<SubmissionResponse> registerSubmissions(List<Submission> submissions) {
+        List<Submission> savedSubmissions = submissionRepository.saveAll(submissions);
+        log.info("{} submissions created successfully", savedSubmissions.size());
+
+        submissionProducer.sendEvents(KafkaTopicConfig.SUBMISSION_VALIDATION, savedSubmissions.stream()
+                .map(this::toValidationEvent)
+                .toList());
+
+        return savedSubmissions.stream()
+                .map(this::mapToResponse)
+                .toList();
+    }
+
+    /**
+     * Build an unsaved PENDING submission for an already stored file.
+     */
+    public Submission newSubmission(StoredFile storedFile, String originalFilename, String contentType,
+                                    String description, String submittedBy) {
+        return Submission.builder()
+                .fileName(originalFilename)
+                .originalFileName(originalFilename)
+                .fileSize(storedFile.getSize())
+                .contentType(contentType)
+                .storagePath(storedFile.getStoragePath())
+                .description(description)
+                .submittedBy(submittedBy)
+                .status(SubmissionStatus.PENDING)
+                .checksum(storedFile.getChecksum())
+                .contentHash(storedFile.getContentHash())
+                .build();
+    }
+
     @Transactional(readOnly = true)
     public Optional<SubmissionResponse> getSubmissionById(Long id) {
         return submissionRepository.findById(id)
@@ -118,17 +255,17 @@ public class SubmissionService {
                 .collect(Collectors.toList());
     }
 
-    @Transactional
     public void updateSubmissionStatus(Long id, SubmissionStatus status) {
-        Submission submission = submissionRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Submission not found"));
+        LocalDateTime processedAt = status == SubmissionStatus.COMPLETED || status == SubmissionStatus.FAILED
+                ? LocalDateTime.now()
+                : null;
 
-        submission.setStatus(status);
-        if (status == SubmissionStatus.COMPLETED || status == SubmissionStatus.FAILED) {
-            submission.setProcessedAt(LocalDateTime.now());
+        // An explicit status change applies whatever the current status is
+        int[] updated = submissionRepository.updateStatuses(List.of(StatusUpdate.processed(
+                id, EnumSet.allOf(SubmissionStatus.class), status, processedAt)));
+        if (updated[0] == 0) {
+            throw new IllegalArgumentException("Submission not found");
         }
-
-        submissionRepository.save(submission);
         log.info("Submission {} status updated to {}", id, status);
     }
 
@@ -140,6 +277,14 @@ public class SubmissionService {
         try {
             fileStorageService.deleteFile(submission.getStoragePath());
             submissionRepository.delete(submission);
+            // Only announce the deletion once the row is really gone
+            submissionRepository.flush();
+            submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_DELETED, SubmissionEvent.builder()
+                    .submissionId(submission.getId())
+                    .checksum(submission.getChecksum())
+                    .timestamp(LocalDateTime.now())
+                    .currentStage("DELETED")
+                    .build());
             log.info("Submission {} deleted successfully", id);
         } catch (IOException e) {
             log.error("Error deleting file for submission {}", id, e);
@@ -147,6 +292,90 @@ public class SubmissionService {
         }
     }
 
+    /**
+     * Send parked submissions through validation again, or fail those that
+     * have been waiting longer than {@code submission.validation.parking.max-age}.
+     *
+     * Each submission is claimed with a conditional update before its event is
+     * sent, so with several nodes running this only one of them retries it.
+     */
+    @Scheduled(fixedDelayString = "${submission.validation.parking.retry-interval:30000}")
+    public void retryParkedSubmissions() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiredBefore = now.minus(Duration.ofMillis(parkedMaxAgeMillis));
+        List<Submission> parked = submissionRepository.findByStatusAndParkedAtBeforeOrderByParkedAt(
+                SubmissionStatus.PARKED, now.minus(Duration.ofMillis(parkedRetryDelayMillis)),
+                Limit.of(parkedBatchSize));
+
+        for (Submission submission : parked) {
+            if (submission.getSubmittedAt().isBefore(expiredBefore)) {
+                if (submissionRepository.updateStatusIfCurrent(submission.getId(), SubmissionStatus.PARKED,
+                        SubmissionStatus.FAILED) == 1) {
+                    log.warn("Submission {} failed, it could not be validated within {} ms",
+                            submission.getId(), parkedMaxAgeMillis);
+                    SubmissionEvent event = toValidationEvent(submission);
+                    event.setStatus(SubmissionStatus.FAILED);
+                    event.setErrorMessage("Validation could not be completed in time");
+                    event.setCurrentStage("VALIDATION");
+                    event.setNextStage("FAILED");
+                    submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_FAILED, event);
+                }
+            } else if (submissionRepository.updateStatusIfCurrent(submission.getId(), SubmissionStatus.PARKED,
+                    SubmissionStatus.PENDING) == 1) {
+                log.info("Retrying validation of parked submission {}", submission.getId());
+                submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_VALIDATION, toValidationEvent(submission));
+            }
+        }
+    }
+
+    /**
+     * Flag a submission that a re-scan found infected, unless it has left
+     * the statuses it was re-scanned in meanwhile.
+     *
+     * @return true if the submission was flagged
+     */
+    public boolean markInfected(Submission submission, Collection<SubmissionStatus> expected, String virus) {
+        if (submissionRepository.updateStatusIfIn(submission.getId(), expected, SubmissionStatus.INFECTED) != 1) {
+            return false;
+        }
+
+        log.error("Submission {} is INFECTED with {}, found by a re-scan with new signatures",
+                submission.getId(), virus);
+        SubmissionEvent event = toValidationEvent(submission);
+        event.setStatus(SubmissionStatus.INFECTED);
+        event.setErrorMessage("Virus detected by re-scan: " + virus);
+        event.setCurrentStage("RESCAN");
+        event.setNextStage("INFECTED");
+        submissionProducer.sendEvent(KafkaTopicConfig.SUBMISSION_FAILED, event);
+        return true;
+    }
+
+    private String normalizeChecksum(String checksum) {
+        if (checksum == null || !SHA256_HEX.matcher(checksum).matches()) {
+            throw new IllegalArgumentException("Checksum must be a hex-encoded SHA-256 digest");
+        }
+        return checksum.toLowerCase();
+    }
+
+    private SubmissionEvent toValidationEvent(Submission submission) {
+        return SubmissionEvent.builder()
+                .submissionId(submission.getId())
+                .fileName(submission.getFileName())
+                .originalFileName(submission.getOriginalFileName())
+                .fileSize(submission.getFileSize())
+                .contentType(submission.getContentType())
+                .storagePath(submission.getStoragePath())
+                .description(submission.getDescription())
+                .submittedBy(submission.getSubmittedBy())
+                .status(SubmissionStatus.PENDING)
+                .checksum(submission.getChecksum())
+                .contentHash(submission.getContentHash())
+                .timestamp(LocalDateTime.now())
+                .currentStage("RECEIVED")
+                .nextStage("VALIDATION")
+                .build();
+    }
+
     private SubmissionResponse mapToResponse(Submission submission) {
         return SubmissionResponse.builder()
                 .id(submission.getId())
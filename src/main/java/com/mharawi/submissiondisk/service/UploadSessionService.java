@@ -0,0 +1,333 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.dto.SubmissionResponse;
+import com.mharawi.submissiondisk.dto.UploadSessionRequest;
+import com.mharawi.submissiondisk.dto.UploadSessionResponse;
+import com.mharawi.submissiondisk.io.ChannelIO;
+import com.mharawi.submissiondisk.validator.UploadMetadata;
+import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable, chunked uploads. A session owns a preallocated part file; chunks
+ * are written into it with positional writes, in parallel and in any order,
+ * and committing the session turns it into a regular submission.
+ *
+ * Sessions are held in memory, so chunks of one session must reach the node
+ * that created it. A session expires once no chunk has arrived for the
+ * session TTL; a failed commit keeps it, so the client can re-send chunks
+ * and commit again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final SubmissionService submissionService;
+    private final ValidationOrchestrator validationOrchestrator;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${submission.upload-session.chunk-size:8388608}") // Default 8MB
+    private int chunkSize;
+
+    @Value("${submission.upload-session.ttl:3600000}") // Default 1 hour
+    private long sessionTtlMillis;
+
+    public UploadSessionResponse createSession(UploadSessionRequest request) {
+        if (request.getFileSize() == null) {
+            throw new IllegalArgumentException("File size is required");
+        }
+        if (request.getFileName() == null || !request.getFileName().toLowerCase().endsWith(".zip")) {
+            throw new IllegalArgumentException("File must be a ZIP archive");
+        }
+
+        // Chunks arrive out of order, so only the metadata can be checked up front
+        validationOrchestrator.validateUpload(UploadMetadata.builder()
+                .fileName(request.getFileName())
+                .declaredSize(request.getFileSize())
+                .contentType(request.getContentType())
+                .submittedBy(request.getSubmittedBy())
+                .build());
+
+        // Normalize the declared checksum so commit verifies the same value
+        request.setChecksum(submissionService.checkDeclaredChecksum(request.getChecksum(), request.getFileSize()));
+
+        try {
+            Path partPath = fileStorageService.createUploadPart(request.getFileSize());
+            FileChannel channel = FileChannel.open(partPath, StandardOpenOption.WRITE);
+
+            int chunkCount = (int) ((request.getFileSize() + chunkSize - 1) / chunkSize);
+            UploadSession session = new UploadSession(UUID.randomUUID().toString(), request, partPath, channel,
+                    chunkCount, expiry());
+            sessions.put(session.id, session);
+
+            log.info("Upload session {} created for {} ({} bytes, {} chunks)",
+                    session.id, request.getFileName(), request.getFileSize(), chunkCount);
+            return toResponse(session);
+
+        } catch (IOException e) {
+            log.error("Error creating upload session for {}", request.getFileName(), e);
+            throw new RuntimeException("Failed to create upload session", e);
+        }
+    }
+
+    public UploadSessionResponse getSession(String sessionId) {
+        return toResponse(findSession(sessionId));
+    }
+
+    /**
+     * Write one chunk at its position in the part file. Chunks may arrive
+     * concurrently and in any order; re-sending a chunk simply overwrites it.
+     */
+    public UploadSessionResponse writeChunk(String sessionId, int index, InputStream inputStream) {
+        UploadSession session = findSession(sessionId);
+        if (index < 0 || index >= session.chunkCount) {
+            throw new IllegalArgumentException("Chunk index out of range: " + index);
+        }
+
+        long position = (long) index * chunkSize;
+        long expectedLength = Math.min(chunkSize, session.request.getFileSize() - position);
+
+        session.beginWrite(expiry());
+        boolean written = false;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long received = 0;
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                if (received + bytesRead > expectedLength) {
+                    throw new IllegalArgumentException("Chunk " + index + " exceeds expected length " + expectedLength);
+                }
+
+                byteBuffer.clear().limit(bytesRead);
+                ChannelIO.writeFully(session.channel, byteBuffer, position + received);
+                received += bytesRead;
+            }
+
+            if (received != expectedLength) {
+                throw new IllegalArgumentException("Chunk " + index + " is incomplete (expected "
+                        + expectedLength + " bytes, received " + received + ")");
+            }
+            written = true;
+
+        } catch (IOException e) {
+            log.error("Error writing chunk {} of upload session {}", index, sessionId, e);
+            throw new RuntimeException("Failed to write chunk", e);
+        } finally {
+            session.endWrite(index, written, expiry());
+        }
+
+        log.debug("Upload session {}: chunk {} received", sessionId, index);
+        return toResponse(session);
+    }
+
+    /**
+     * Verify that every chunk has arrived, checksum the assembled archive and
+     * hand it over to the regular submission pipeline.
+     */
+    public SubmissionResponse commitSession(String sessionId) {
+        UploadSession session = findSession(sessionId);
+        session.beginCommit();
+
+        StoredFile storedFile;
+        try {
+            session.channel.close();
+            storedFile = fileStorageService.commitUploadPart(session.partPath, session.request.getFileName(),
+                    session.request.getChecksum());
+        } catch (IOException e) {
+            log.error("Error committing upload session {}", sessionId, e);
+            abortCommit(session);
+            throw new RuntimeException("Failed to commit upload session", e);
+        } catch (RuntimeException e) {
+            // A checksum mismatch or a broken archive: the chunks at fault can be re-sent
+            abortCommit(session);
+            throw e;
+        }
+
+        sessions.remove(sessionId);
+        log.info("Upload session {} committed", sessionId);
+
+        UploadSessionRequest request = session.request;
+        return submissionService.registerSubmission(storedFile, request.getFileName(),
+                request.getContentType(), request.getDescription(), request.getSubmittedBy());
+    }
+
+    public void abortSession(String sessionId) {
+        discard(findSession(sessionId));
+        log.info("Upload session {} aborted", sessionId);
+    }
+
+    @Scheduled(fixedDelayString = "${submission.upload-session.cleanup-interval:60000}")
+    public void expireSessions() {
+        LocalDateTime now = LocalDateTime.now();
+        sessions.values().stream()
+                .filter(session -> session.isExpired(now))
+                .forEach(session -> {
+                    log.info("Upload session {} expired", session.id);
+                    discard(session);
+                });
+    }
+
+    /**
+     * Close the part files on shutdown but keep them, so the chunks received
+     * so far are not lost with the node.
+     */
+    @PreDestroy
+    public void closeSessions() {
+        sessions.values().forEach(session -> {
+            try {
+                session.channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing part file {} of upload session {}", session.partPath, session.id, e);
+            }
+        });
+        sessions.clear();
+    }
+
+    private UploadSession findSession(String sessionId) {
+        UploadSession session = sessions.get(sessionId);
+        if (session == null) {
+            throw new IllegalArgumentException("Upload session not found");
+        }
+        return session;
+    }
+
+    /**
+     * Reopen the part file of a session whose commit failed and accept chunks
+     * for it again. A part file that cannot be reopened ends the session.
+     */
+    private void abortCommit(UploadSession session) {
+        try {
+            session.endCommit(FileChannel.open(session.partPath, StandardOpenOption.WRITE), expiry());
+        } catch (IOException e) {
+            log.error("Error reopening part file {} of upload session {}", session.partPath, session.id, e);
+            discard(session);
+        }
+    }
+
+    private LocalDateTime expiry() {
+        return LocalDateTime.now().plus(Duration.ofMillis(sessionTtlMillis));
+    }
+
+    private void discard(UploadSession session) {
+        sessions.remove(session.id);
+        try {
+            session.channel.close();
+            Files.deleteIfExists(session.partPath);
+        } catch (IOException e) {
+            log.warn("Error removing part file {} of upload session {}", session.partPath, session.id, e);
+        }
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session) {
+        List<Integer> receivedChunks = session.receivedChunks();
+        return UploadSessionResponse.builder()
+                .sessionId(session.id)
+                .fileName(session.request.getFileName())
+                .fileSize(session.request.getFileSize())
+                .chunkSize(chunkSize)
+                .chunkCount(session.chunkCount)
+                .receivedChunks(receivedChunks)
+                .complete(receivedChunks.size() == session.chunkCount)
+                .expiresAt(session.expiresAt())
+                .build();
+    }
+
+    private static class UploadSession {
+
+        private final String id;
+        private final UploadSessionRequest request;
+        private final Path partPath;
+        private final int chunkCount;
+
+        private final BitSet received = new BitSet();
+        // Replaced when a failed commit reopens the part file, while no chunk is being written
+        private FileChannel channel;
+        private LocalDateTime expiresAt;
+        private int activeWrites;
+        private boolean committing;
+
+        UploadSession(String id, UploadSessionRequest request, Path partPath, FileChannel channel,
+                      int chunkCount, LocalDateTime expiresAt) {
+            this.id = id;
+            this.request = request;
+            this.partPath = partPath;
+            this.channel = channel;
+            this.chunkCount = chunkCount;
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized void beginWrite(LocalDateTime expiresAt) {
+            if (committing) {
+                throw new IllegalArgumentException("Upload session is already being committed");
+            }
+            activeWrites++;
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized void endWrite(int index, boolean written, LocalDateTime expiresAt) {
+            activeWrites--;
+            // A failed re-send may have clobbered an earlier good copy of the chunk
+            received.set(index, written);
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized void beginCommit() {
+            if (committing) {
+                throw new IllegalArgumentException("Upload session is already being committed");
+            }
+            if (activeWrites > 0 || received.cardinality() != chunkCount) {
+                throw new IllegalArgumentException("Upload session is incomplete ("
+                        + received.cardinality() + " of " + chunkCount + " chunks received)");
+            }
+            committing = true;
+        }
+
+        synchronized void endCommit(FileChannel reopened, LocalDateTime expiresAt) {
+            channel = reopened;
+            committing = false;
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized boolean isExpired(LocalDateTime now) {
+            return activeWrites == 0 && !committing && expiresAt.isBefore(now);
+        }
+
+        synchronized LocalDateTime expiresAt() {
+            return expiresAt;
+        }
+
+        synchronized List<Integer> receivedChunks() {
+            List<Integer> chunks = new ArrayList<>(received.cardinality());
+            received.stream().forEach(chunks::add);
+            return chunks;
+        }
+    }
+}
@@ -1,75 +1,204 @@
 package com.mharawi.submissiondisk.service;
 
+import com.mharawi.submissiondisk.clamav.CircuitBreaker;
+import com.mharawi.submissiondisk.clamav.ClamdBatchScanner;
+import com.mharawi.submissiondisk.clamav.ClamdClient;
+import com.mharawi.submissiondisk.clamav.ClamdContent;
+import com.mharawi.submissiondisk.clamav.ClamdEndpoint;
+import com.mharawi.submissiondisk.clamav.ClamdException;
+import com.mharawi.submissiondisk.clamav.ClamdUnavailableException;
+import com.mharawi.submissiondisk.clamav.ClamdVerdict;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import xyz.capybara.clamav.ClamavClient;
-import xyz.capybara.clamav.commands.scan.result.ScanResult;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.List;
 
+/**
+ * Scans files with ClamAV on one or more clamd daemons ({@code clamav.endpoints}).
+ *
+ * Scans are balanced across the daemons by outstanding requests, each daemon
+ * behind a bounded pool of session connections, so a restart of one daemon
+ * only shifts its share of the load to the others. File content is sent to
+ * clamd straight from the page cache.
+ *
+ * A daemon that stalls, typically while it reloads its signatures, costs
+ * little latency: slow scans are hedged on a second daemon, and after a few
+ * failed or slow scans the daemon's circuit opens and it gets no scans until
+ * a trial scan succeeds. When no daemon can scan at all,
+ * {@link ClamdUnavailableException} tells callers to try again later.
+ *
+ * If clamd can read the storage volume ({@code clamav.shared-volume.enabled}),
+ * files are scanned by path in micro-batches with MULTISCAN instead of being
+ * streamed one at a time; INSTREAM remains the fallback.
+ */
 @Service
 @Slf4j
 public class VirusScanService {
 
-    private final ClamavClient clamavClient;
+    private final ClamdClient clamdClient;
+    private final ClamdBatchScanner batchScanner;
     private final boolean clamavEnabled;
 
+    // clamd version banner including the signature database version, null while unknown
+    private volatile String signatureVersion;
+
     public VirusScanService(
-            @Value("${clamav.host:localhost}") String clamavHost,
-            @Value("${clamav.port:3310}") int clamavPort,
-            @Value("${clamav.enabled:true}") boolean clamavEnabled) {
+            @Value("${clamav.endpoints:${clamav.host:localhost}:${clamav.port:3310}}") List<String> endpoints,
+            @Value("${clamav.enabled:true}") boolean clamavEnabled,
+            // Bounds concurrent scans (and sockets) per daemon; on virtual threads nothing else does
+            @Value("${clamav.max-connections-per-endpoint:${clamav.max-concurrent-scans:8}}") int maxConnections,
+            @Value("${clamav.connect-timeout:2000}") int connectTimeout,
+            @Value("${clamav.timeout:60000}") int readTimeout,
+            // How long clamd may stop reading a scan being sent to it
+            @Value("${clamav.write-timeout:10000}") int writeTimeout,
+            @Value("${clamav.idle-timeout:20000}") long idleTimeout, // clamd drops idle sessions after 30s by default
+            @Value("${clamav.chunk-size:1048576}") int chunkSize,
+            @Value("${clamav.hedge.percentile:0.95}") double hedgePercentile,
+            @Value("${clamav.hedge.min-delay:500}") long hedgeMinDelay,
+            @Value("${clamav.hedge.max-ratio:0.1}") double hedgeMaxRatio, // 0 disables hedging
+            @Value("${clamav.circuit-breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${clamav.circuit-breaker.open-duration:30000}") long openDuration,
+            @Value("${clamav.shared-volume.enabled:false}") boolean sharedVolume,
+            @Value("${submission.storage.path:uploads}") String storagePath,
+            // Where clamd sees submission.storage.path
+            @Value("${clamav.shared-volume.path:/data/uploads}") String clamdStoragePath,
+            @Value("${clamav.batch.command:MULTISCAN}") String batchCommand,
+            @Value("${clamav.batch.max-size:32}") int batchMaxSize,
+            @Value("${clamav.batch.max-wait:20}") long batchMaxWait,
+            // A batch is answered only once all of it is scanned
+            @Value("${clamav.batch.timeout-per-mib:1000}") long batchTimeoutPerMib,
+            // Below submission.validation.timeouts.VirusValidator, so a stalled batch parks its submissions
+            @Value("${clamav.batch.max-timeout:75000}") long batchMaxTimeout,
+            MeterRegistry meterRegistry) {
         this.clamavEnabled = clamavEnabled;
         if (clamavEnabled) {
-            this.clamavClient = new ClamavClient(clamavHost, clamavPort);
-            log.info("ClamAV client initialized: {}:{}", clamavHost, clamavPort);
+            this.clamdClient = new ClamdClient(endpoints.stream()
+                    .map(endpoint -> ClamdEndpoint.parse(endpoint, maxConnections, connectTimeout, readTimeout,
+                            writeTimeout, idleTimeout, new CircuitBreaker(failureThreshold, openDuration)))
+                    .toList(), chunkSize, hedgePercentile, hedgeMinDelay, hedgeMaxRatio, meterRegistry);
+            log.info("ClamAV client initialized: {}", clamdClient.getEndpoints());
+            this.batchScanner = sharedVolume
+                    ? new ClamdBatchScanner(clamdClient, Path.of(storagePath), clamdStoragePath, batchCommand,
+                    batchMaxSize, batchMaxWait, readTimeout, batchTimeoutPerMib, batchMaxTimeout, meterRegistry)
+                    : null;
+            if (sharedVolume) {
+                log.info("ClamAV scans {} by path as {}, in batches of up to {}", storagePath, clamdStoragePath,
+                        batchMaxSize);
+            }
         } else {
-            this.clamavClient = null;
+            this.clamdClient = null;
+            this.batchScanner = null;
             log.warn("ClamAV scanning is DISABLED");
         }
     }
 
     /**
-     * Scan a file for viruses using ClamAV
-     *
-     * @param filePath Path to the file to scan
-     * @return ScanResult containing the scan outcome
-     * @throws IOException if there's an error reading the file or connecting to ClamAV
+     * @return Version of the engine and signature database clamd scans with,
+     * or null if ClamAV is disabled, the version is not known or the daemons disagree
      */
-    public ScanResult scanFile(String filePath) throws IOException {
+    public String getSignatureVersion() {
+        return signatureVersion;
+    }
+
+    @Scheduled(fixedDelayString = "${clamav.signature-check-interval:300000}")
+    public void refreshSignatureVersion() {
         if (!clamavEnabled) {
-            log.warn("ClamAV is disabled, skipping virus scan for: {}", filePath);
-            // Return null when disabled - caller should handle null as OK/skipped
-            return null;
+            return;
+        }
+        String version = clamdClient.version();
+        if (version != null && !version.equals(signatureVersion)) {
+            log.info("ClamAV signature version: {}", version);
         }
+        signatureVersion = version;
+    }
 
-        Path path = Paths.get(filePath);
-        if (!Files.exists(path)) {
-            throw new IOException("File not found: " + filePath);
+    @Scheduled(fixedDelayString = "${clamav.health-check-interval:10000}")
+    public void checkHealth() {
+        if (clamavEnabled) {
+            clamdClient.checkHealth();
         }
+    }
 
-        log.info("Starting virus scan for file: {}", filePath);
+    @PreDestroy
+    public void close() {
+        if (batchScanner != null) {
+            batchScanner.close();
+        }
+        if (clamdClient != null) {
+            clamdClient.close();
+        }
+    }
 
-        try (InputStream inputStream = Files.newInputStream(path)) {
-            ScanResult result = clamavClient.scan(inputStream);
+    /**
+     * Scan a file for viruses using ClamAV.
+     *
+     * The file is opened on channels of its own: cancelling the scan closes
+     * those channels, not one that other validators are reading.
+     *
+     * @param path File to scan
+     * @return Verdict of the scan, or null if ClamAV is disabled
+     * @throws ClamdUnavailableException if no clamd could scan the file
+     * @throws IOException               if there's an error reading the file
+     */
+    public ClamdVerdict scanFile(Path path) throws IOException {
+        if (!clamavEnabled) {
+            log.warn("ClamAV is disabled, skipping virus scan for: {}", path);
+            return null;
+        }
+
+        log.info("Starting virus scan for file: {}", path);
 
-            if (result instanceof ScanResult.OK) {
-                log.info("Virus scan PASSED for file: {}", filePath);
-            } else if (result instanceof ScanResult.VirusFound virusFound) {
-                log.error("VIRUS DETECTED in file {}: {}", filePath, virusFound);
+        try {
+            ClamdVerdict verdict = batchScanner != null ? batchScanner.scan(path) : clamdClient.scan(path);
+
+            if (verdict.isInfected()) {
+                log.error("VIRUS DETECTED in file {} by clamd {}: {}", path, verdict.endpoint(), verdict.virus());
             } else {
-                log.warn("Virus scan returned unexpected result for file {}: {}", filePath, result);
+                log.info("Virus scan PASSED for file: {}", path);
             }
-
-            return result;
-        } catch (Exception e) {
-            log.error("Error scanning file {} with ClamAV", filePath, e);
+            return verdict;
+        } catch (ClamdException e) {
+            log.warn("ClamAV could not scan file {}: {}", path, e.getMessage());
+            throw e;
+        } catch (ClamdUnavailableException e) {
+            log.warn("ClamAV is unavailable, file {} was not scanned: {}", path, e.getMessage());
+            throw e;
+        } catch (IOException e) {
+            if (!Files.exists(path)) {
+                throw new IOException("File not found: " + path, e);
+            }
+            log.error("Error scanning file {} with ClamAV", path, e);
             throw new IOException("Virus scan failed: " + e.getMessage(), e);
         }
     }
-}
 
+    /**
+     * Scan content that isn't a file of its own, e.g. one entry of an archive,
+     * always streaming it to clamd.
+     *
+     * @param name    Name of the content, for logging
+     * @param size    Size of the content in bytes
+     * @param content Opens the content; may be called more than once
+     * @return Verdict of the scan, or null if ClamAV is disabled
+     * @throws ClamdUnavailableException if no clamd could scan the content
+     * @throws IOException               if there's an error reading the content
+     */
+    public ClamdVerdict scan(String name, long size, ClamdContent content) throws IOException {
+        if (!clamavEnabled) {
+            return null;
+        }
+
+        ClamdVerdict verdict = clamdClient.scan(name, size, content);
+        if (verdict.isInfected()) {
+            log.error("VIRUS DETECTED in {} by clamd {}: {}", name, verdict.endpoint(), verdict.virus());
+        }
+        return verdict;
+    }
+}
@@ -1,37 +1,57 @@
 package com.mharawi.submissiondisk.validator;
 
-import com.mharawi.submissiondisk.entity.Submission;
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
 import com.mharawi.submissiondisk.event.SubmissionEvent;
 import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.service.ChecksumIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Component;
 
-import java.util.Optional;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Validates that a submission is not a duplicate based on checksum.
  * Prevents the same file from being submitted multiple times.
+ *
+ * Only an earlier submission that was not rejected makes a later one a
+ * duplicate, so when a parked submission is retried after its content was
+ * uploaded again, the first copy passes and the second fails rather than both.
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class DuplicateValidator implements SubmissionValidator {
 
+    // Submissions that were rejected don't hold on to their content
+    private static final Set<SubmissionStatus> REJECTED_STATUSES =
+            EnumSet.of(SubmissionStatus.FAILED, SubmissionStatus.INFECTED);
+
     private final SubmissionRepository submissionRepository;
+    private final ChecksumIndex checksumIndex;
 
     @Override
     public ValidationResult validate(SubmissionEvent event) {
         log.debug("Checking for duplicate submission with checksum: {}", event.getChecksum());
 
-        Optional<Submission> existingSubmission = submissionRepository.findByChecksum(event.getChecksum());
+        // Most submissions are new; the in-memory checksum index proves that without a query
+        if (checksumIndex.isCertainlyUnique(event.getChecksum(), event.getSubmissionId())) {
+            log.debug("No duplicate found in checksum index for submission {}", event.getSubmissionId());
+            return ValidationResult.success(getValidatorName());
+        }
+
+        List<Long> existingIds = submissionRepository.findEarlierIdsByChecksum(
+                event.getChecksum(), event.getSubmissionId(), REJECTED_STATUSES, Limit.of(1));
 
-        if (existingSubmission.isPresent() && !existingSubmission.get().getId().equals(event.getSubmissionId())) {
+        if (!existingIds.isEmpty()) {
             log.warn("Duplicate submission detected - checksum: {}, existing submission ID: {}, new submission ID: {}",
-                    event.getChecksum(), existingSubmission.get().getId(), event.getSubmissionId());
+                    event.getChecksum(), existingIds.getFirst(), event.getSubmissionId());
             return ValidationResult.failure(
                     getValidatorName(),
-                    "This file has already been submitted (Submission ID: " + existingSubmission.get().getId() + ")"
+                    "This file has already been submitted (Submission ID: " + existingIds.getFirst() + ")"
             );
         }
 
@@ -48,5 +68,10 @@ public class DuplicateValidator implements SubmissionValidator {
     public double getOrder() {
         return 10;
     }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
 }
 
@@ -0,0 +1,209 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.hash.XxHash64;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which ZIP entries clamd found clean, by the SHA-256 of their
+ * uncompressed content, so resubmitted projects only have their new files
+ * scanned.
+ *
+ * Digests of clean entries live in one Redis set per signature version,
+ * looked up for a whole archive in a single round trip. A new signature
+ * version starts an empty set and the old one expires through its TTL. In
+ * front sits a direct-mapped near-cache of digests: a flat {@code long[]} of
+ * four longs per slot, where a new digest simply replaces whatever shared its
+ * slot. It is cleared when the signature version changes.
+ *
+ * Full digests are compared everywhere. A shorter key would let a crafted
+ * file collide with a clean one and skip its scan.
+ */
+@Component
+@Slf4j
+public class EntryVerdictIndex implements MeterBinder {
+
+    private static final String KEY_PREFIX = "submission:entry-verdict:";
+    private static final int DIGEST_LONGS = 4;
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final Duration ttl;
+
+    private final long[] nearCache;
+    private final int nearCacheMask;
+    private String nearCacheVersion;
+
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public EntryVerdictIndex(
+            StringRedisTemplate redisTemplate,
+            @Value("${submission.entry-index.enabled:true}") boolean enabled,
+            @Value("${submission.entry-index.ttl:2d}") Duration ttl,
+            @Value("${submission.entry-index.near-cache.max-size:65536}") int nearCacheMaxSize) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        int slots = Integer.highestOneBit(Math.max(1, nearCacheMaxSize));
+        this.nearCache = new long[slots * DIGEST_LONGS];
+        this.nearCacheMask = slots - 1;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param version Signature version the verdicts must come from
+     * @param digests SHA-256 of each entry
+     * @return For each entry, whether it is known to be clean
+     */
+    public boolean[] findClean(String version, List<byte[]> digests) {
+        boolean[] clean = new boolean[digests.size()];
+        List<Integer> missed = new ArrayList<>();
+        synchronized (this) {
+            resetNearCacheIfStale(version);
+            for (int i = 0; i < digests.size(); i++) {
+                clean[i] = nearCacheContains(digests.get(i));
+                if (clean[i]) {
+                    nearHits.incrementAndGet();
+                } else {
+                    missed.add(i);
+                }
+            }
+        }
+
+        String key = key(version);
+        try {
+            for (int from = 0; from < missed.size(); from += LOOKUP_BATCH_SIZE) {
+                List<Integer> batch = missed.subList(from, Math.min(missed.size(), from + LOOKUP_BATCH_SIZE));
+                Object[] members = batch.stream().map(i -> encode(digests.get(i))).toArray();
+                Map<Object, Boolean> found = redisTemplate.opsForSet().isMember(key, members);
+                if (found == null) {
+                    continue;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    if (Boolean.TRUE.equals(found.get(members[i]))) {
+                        clean[batch.get(i)] = true;
+                        redisHits.incrementAndGet();
+                        rememberNear(version, digests.get(batch.get(i)));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.warn("Entry verdict index unavailable, scanning all entries: {}", e.getMessage());
+        }
+
+        for (boolean known : clean) {
+            if (!known) {
+                misses.incrementAndGet();
+            }
+        }
+        return clean;
+    }
+
+    /**
+     * Record that entries were scanned and found clean.
+     */
+    public void recordClean(String version, List<byte[]> digests) {
+        if (digests.isEmpty()) {
+            return;
+        }
+
+        digests.forEach(digest -> rememberNear(version, digest));
+        String key = key(version);
+        try {
+            redisTemplate.opsForSet().add(key, digests.stream().map(EntryVerdictIndex::encode).toArray(String[]::new));
+            redisTemplate.expire(key, ttl);
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.warn("Unable to record entry verdicts: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("submission.entry-index.hits", nearHits, AtomicLong::get)
+                .description("ZIP entries found clean in the in-process near-cache")
+                .tag("tier", "near")
+                .register(registry);
+        FunctionCounter.builder("submission.entry-index.hits", redisHits, AtomicLong::get)
+                .description("ZIP entries found clean in Redis")
+                .tag("tier", "redis")
+                .register(registry);
+        FunctionCounter.builder("submission.entry-index.misses", misses, AtomicLong::get)
+                .description("ZIP entries that had to be scanned")
+                .register(registry);
+        FunctionCounter.builder("submission.entry-index.errors", errors, AtomicLong::get)
+                .description("Entry index operations that failed to reach Redis")
+                .register(registry);
+        Gauge.builder("submission.entry-index.near.memory", nearCache, table -> (double) table.length * Long.BYTES)
+                .description("Bytes held by the near-cache table")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private static String key(String version) {
+        // Versions are long clamd banners, so the key holds their hash
+        return KEY_PREFIX + Long.toHexString(XxHash64.hash(version.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String encode(byte[] digest) {
+        return Base64.getEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private synchronized void rememberNear(String version, byte[] digest) {
+        resetNearCacheIfStale(version);
+        ByteBuffer words = ByteBuffer.wrap(digest);
+        int slot = slot(words.getLong(0));
+        for (int i = 0; i < DIGEST_LONGS; i++) {
+            nearCache[slot + i] = words.getLong(i * Long.BYTES);
+        }
+    }
+
+    private boolean nearCacheContains(byte[] digest) {
+        ByteBuffer words = ByteBuffer.wrap(digest);
+        int slot = slot(words.getLong(0));
+        for (int i = 0; i < DIGEST_LONGS; i++) {
+            if (nearCache[slot + i] != words.getLong(i * Long.BYTES)) {
+                return false;
+            }
+        }
+        // An empty slot is all zeros, which is no digest
+        return nearCache[slot] != 0 || nearCache[slot + 1] != 0 || nearCache[slot + 2] != 0
+                || nearCache[slot + 3] != 0;
+    }
+
+    private int slot(long firstWord) {
+        // Digest bits are uniform already, the low ones do as an index
+        return ((int) firstWord & nearCacheMask) * DIGEST_LONGS;
+    }
+
+    private void resetNearCacheIfStale(String version) {
+        if (!version.equals(nearCacheVersion)) {
+            Arrays.fill(nearCache, 0);
+            nearCacheVersion = version;
+        }
+    }
+}
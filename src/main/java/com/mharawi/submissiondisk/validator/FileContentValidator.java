@@ -1,29 +1,34 @@
 package com.mharawi.submissiondisk.validator;
 
 import com.mharawi.submissiondisk.event.SubmissionEvent;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.zip.ZipEntry;
+import java.util.List;
 import java.util.zip.ZipException;
-import java.util.zip.ZipInputStream;
 
 /**
  * Validates ZIP file structure and content.
  * Checks for:
  * - Valid ZIP format
- * - Zip bombs (excessive compression ratio)
+ * - Zip bombs (excessive compression ratio, declared and actual)
  * - Path traversal in entries
  * - Maximum entry count
+ * - Overlapping entries
  */
 @Component
+@RequiredArgsConstructor
 @Slf4j
-public class FileContentValidator implements SubmissionValidator {
+public class FileContentValidator implements StreamingSubmissionValidator {
+
+    // Bump when the checks below change, so cached verdicts are not reused
+    private static final int RULES_VERSION = 2;
+
+    private final ZipInflationScanner inflationScanner;
+    private final NamePolicies namePolicies;
 
     @Value("${submission.max-zip-entries:10000}")
     private int maxZipEntries;
@@ -31,56 +36,66 @@ public class FileContentValidator implements SubmissionValidator {
     @Value("${submission.max-compression-ratio:100}")
     private int maxCompressionRatio;
 
+    // Inflate entries under a budget instead of trusting their declared sizes
+    @Value("${submission.zip.inflation-scan.enabled:true}")
+    private boolean inflationScanEnabled;
+
     @Override
     public ValidationResult validate(SubmissionEvent event) {
+        try (InspectionContext context = InspectionContext.of(event)) {
+            return validate(event, context);
+        }
+    }
+
+    @Override
+    public ValidationResult validate(SubmissionEvent event, InspectionContext context) {
         log.debug("Validating file content for submission: {}", event.getSubmissionId());
 
-        Path filePath = Paths.get(event.getStoragePath());
+        // The structural checks below come from the central directory; only the inflation scan reads entry data
+        try {
+            ZipCentralDirectory directory = context.getZipDirectory();
 
-        try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(filePath))) {
+            // Check maximum entry count (prevent zip bombs) before parsing the directory
+            if (directory.getEntryCount() > maxZipEntries) {
+                log.warn("Too many ZIP entries in submission {}: {}", event.getSubmissionId(),
+                        directory.getEntryCount());
+                return ValidationResult.failure(
+                        getValidatorName(),
+                        "ZIP file contains too many entries (maximum: " + maxZipEntries + ")"
+                );
+            }
 
-            int entryCount = 0;
+            // Check if ZIP is empty
+            if (directory.getEntryCount() == 0) {
+                return ValidationResult.failure(
+                        getValidatorName(),
+                        "ZIP file is empty"
+                );
+            }
+
+            List<ZipCentralDirectory.Entry> entries = context.getZipEntries();
             long totalUncompressedSize = 0;
             long totalCompressedSize = event.getFileSize();
 
-            ZipEntry entry;
-            while ((entry = zipInputStream.getNextEntry()) != null) {
-                entryCount++;
-
-                // Check maximum entry count (prevent zip bombs)
-                if (entryCount > maxZipEntries) {
-                    log.warn("Too many ZIP entries in submission {}: {}", event.getSubmissionId(), entryCount);
-                    return ValidationResult.failure(
-                            getValidatorName(),
-                            "ZIP file contains too many entries (maximum: " + maxZipEntries + ")"
-                    );
-                }
-
-                // Check for path traversal in entry names
-                String entryName = entry.getName();
-                if (entryName.contains("..") || entryName.startsWith("/") || entryName.contains("\\")) {
-                    log.warn("Suspicious entry name detected in submission {}: {}", event.getSubmissionId(), entryName);
+            for (ZipCentralDirectory.Entry entry : entries) {
+                // Check for path traversal in entry names, on the bytes as stored in the directory
+                byte[] rawName = entry.rawName();
+                if (namePolicies.zipEntry().check(rawName, 0, rawName.length) != null) {
+                    log.warn("Suspicious entry name detected in submission {}: {}", event.getSubmissionId(), entry.name());
                     return ValidationResult.failure(
                             getValidatorName(),
-                            "ZIP contains invalid entry path: " + entryName
+                            "ZIP contains invalid entry path: " + entry.name()
                     );
                 }
 
-                // Track uncompressed size for compression ratio check
+                // Declared sizes are always present in the central directory, even for streamed entries
                 if (!entry.isDirectory()) {
-                    totalUncompressedSize += entry.getSize();
+                    totalUncompressedSize += entry.uncompressedSize();
                 }
-
-                zipInputStream.closeEntry();
             }
 
-            // Check if ZIP is empty
-            if (entryCount == 0) {
-                return ValidationResult.failure(
-                        getValidatorName(),
-                        "ZIP file is empty"
-                );
-            }
+            // Overlapping entries can make a small archive expand many times over
+            directory.verifyLayout(entries);
 
             // Check compression ratio (detect zip bombs)
             if (totalCompressedSize > 0 && totalUncompressedSize > 0) {
@@ -95,7 +110,16 @@ public class FileContentValidator implements SubmissionValidator {
                 }
             }
 
-            log.debug("File content validation passed: {} entries", entryCount);
+            // Declared sizes are chosen by whoever built the archive; measure what it really expands to
+            if (inflationScanEnabled) {
+                String rejection = inflationScanner.scan(context.getChannel(), entries);
+                if (rejection != null) {
+                    log.warn("ZIP inflation scan rejected submission {}: {}", event.getSubmissionId(), rejection);
+                    return ValidationResult.failure(getValidatorName(), rejection);
+                }
+            }
+
+            log.debug("File content validation passed: {} entries", entries.size());
             return ValidationResult.success(getValidatorName());
 
         } catch (ZipException e) {
@@ -113,6 +137,18 @@ public class FileContentValidator implements SubmissionValidator {
         }
     }
 
+    @Override
+    public ValidationResult validateUpload(UploadMetadata upload) {
+        return ValidationResult.success(getValidatorName());
+    }
+
+    @Override
+    public UploadInspector newInspector(UploadMetadata upload) {
+        long declaredSize = upload.getDeclaredSize() != null ? upload.getDeclaredSize() : 0;
+        return new ZipStreamInspector(getValidatorName(), namePolicies.zipEntry(), maxZipEntries, maxCompressionRatio,
+                declaredSize);
+    }
+
     @Override
     public String getValidatorName() {
         return "FileContentValidator";
@@ -122,5 +158,16 @@ public class FileContentValidator implements SubmissionValidator {
     public double getOrder() {
         return 15;
     }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    public String getVerdictVersion() {
+        return RULES_VERSION + ":" + maxZipEntries + ":" + maxCompressionRatio + ":" + namePolicies.zipEntry() + ":"
+                + (inflationScanEnabled ? inflationScanner.getMaxUncompressedSize() : "no-scan");
+    }
 }
 
@@ -6,16 +6,15 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Validates file size limits and file existence.
  */
 @Component
 @Slf4j
-public class FileSizeValidator implements SubmissionValidator {
+public class FileSizeValidator implements StreamingSubmissionValidator {
 
     @Value("${submission.max-file-size:104857600}") // Default 100MB
     private long maxFileSize;
@@ -25,30 +24,28 @@ public class FileSizeValidator implements SubmissionValidator {
 
     @Override
     public ValidationResult validate(SubmissionEvent event) {
+        try (InspectionContext context = InspectionContext.of(event)) {
+            return validate(event, context);
+        }
+    }
+
+    @Override
+    public ValidationResult validate(SubmissionEvent event, InspectionContext context) {
         log.debug("Validating file size for submission: {}", event.getSubmissionId());
 
         long fileSize = event.getFileSize();
 
-        // Check minimum size
-        if (fileSize < minFileSize) {
-            return ValidationResult.failure(
-                    getValidatorName(),
-                    "File is empty or too small (minimum: " + minFileSize + " bytes)"
-            );
-        }
-
-        // Check maximum size
-        if (fileSize > maxFileSize) {
-            return ValidationResult.failure(
-                    getValidatorName(),
-                    "File too large (maximum: " + formatBytes(maxFileSize) + ", received: " + formatBytes(fileSize) + ")"
-            );
+        ValidationResult sizeResult = validateSize(fileSize);
+        if (!sizeResult.isValid()) {
+            return sizeResult;
         }
 
         // Verify file exists on disk
         try {
-            Path filePath = Paths.get(event.getStoragePath());
-            if (!Files.exists(filePath)) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = context.getAttributes();
+            } catch (NoSuchFileException e) {
                 log.error("File not found at storage path: {}", event.getStoragePath());
                 return ValidationResult.failure(
                         getValidatorName(),
@@ -57,7 +54,7 @@ public class FileSizeValidator implements SubmissionValidator {
             }
 
             // Verify actual file size matches reported size
-            long actualSize = Files.size(filePath);
+            long actualSize = attributes.size();
             if (actualSize != fileSize) {
                 log.warn("File size mismatch for submission {}: reported={}, actual={}",
                         event.getSubmissionId(), fileSize, actualSize);
@@ -79,6 +76,35 @@ public class FileSizeValidator implements SubmissionValidator {
         return ValidationResult.success(getValidatorName());
     }
 
+    @Override
+    public ValidationResult validateUpload(UploadMetadata upload) {
+        // Uploads without a declared length are checked by the inspector instead
+        if (upload.getDeclaredSize() == null) {
+            return ValidationResult.success(getValidatorName());
+        }
+        return validateSize(upload.getDeclaredSize());
+    }
+
+    @Override
+    public UploadInspector newInspector(UploadMetadata upload) {
+        ValidationResult success = ValidationResult.success(getValidatorName());
+        return new UploadInspector() {
+            private long received;
+
+            @Override
+            public ValidationResult inspect(byte[] buffer, int offset, int length) {
+                received += length;
+                // Abort as soon as the upload outgrows the limit, whatever was declared
+                return received > maxFileSize ? validateSize(received) : success;
+            }
+
+            @Override
+            public ValidationResult complete(long size) {
+                return validateSize(size);
+            }
+        };
+    }
+
     @Override
     public String getValidatorName() {
         return "FileSizeValidator";
@@ -89,6 +115,26 @@ public class FileSizeValidator implements SubmissionValidator {
         return 3;
     }
 
+    private ValidationResult validateSize(long fileSize) {
+        // Check minimum size
+        if (fileSize < minFileSize) {
+            return ValidationResult.failure(
+                    getValidatorName(),
+                    "File is empty or too small (minimum: " + minFileSize + " bytes)"
+            );
+        }
+
+        // Check maximum size
+        if (fileSize > maxFileSize) {
+            return ValidationResult.failure(
+                    getValidatorName(),
+                    "File too large (maximum: " + formatBytes(maxFileSize) + ", received: " + formatBytes(fileSize) + ")"
+            );
+        }
+
+        return ValidationResult.success(getValidatorName());
+    }
+
     private String formatBytes(long bytes) {
         if (bytes < 1024) return bytes + " B";
         int exp = (int) (Math.log(bytes) / Math.log(1024));
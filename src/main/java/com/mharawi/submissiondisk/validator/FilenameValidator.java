@@ -1,10 +1,11 @@
 package com.mharawi.submissiondisk.validator;
 
 import com.mharawi.submissiondisk.event.SubmissionEvent;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Validates submission filename for security and format requirements.
@@ -13,79 +14,60 @@ import java.util.regex.Pattern;
  * - Path traversal attempts
  * - Suspicious patterns
  * - Required extensions
+ *
+ * The rules are configured under {@code submission.name-policy.filename}.
  */
 @Component
+@RequiredArgsConstructor
 @Slf4j
-public class FilenameValidator implements SubmissionValidator {
+public class FilenameValidator implements StreamingSubmissionValidator {
 
-    // Pattern to detect path traversal attempts
-    private static final Pattern PATH_TRAVERSAL_PATTERN = Pattern.compile(".*[/\\\\]\\.\\.[\\\\/].*");
-
-    // Pattern for invalid characters in filenames
-    private static final Pattern INVALID_CHARS_PATTERN = Pattern.compile(".*[<>:\"|?*\\x00-\\x1F].*");
-
-    // Allowed file extensions
-    private static final Pattern ALLOWED_EXTENSIONS = Pattern.compile(".*\\.(zip|ZIP)$");
-
-    // Maximum filename length
-    private static final int MAX_FILENAME_LENGTH = 255;
+    private final NamePolicies namePolicies;
 
     @Override
     public ValidationResult validate(SubmissionEvent event) {
-        String originalFilename = event.getOriginalFileName();
-
-        log.debug("Validating filename: {}", originalFilename);
-
-        // Check for null or empty filename
-        if (originalFilename == null || originalFilename.trim().isEmpty()) {
-            return ValidationResult.failure(getValidatorName(), "Filename cannot be empty");
-        }
+        return validateFilename(event.getOriginalFileName());
+    }
 
-        // Check filename length
-        if (originalFilename.length() > MAX_FILENAME_LENGTH) {
-            return ValidationResult.failure(
-                    getValidatorName(),
-                    "Filename too long (max " + MAX_FILENAME_LENGTH + " characters)"
-            );
-        }
+    @Override
+    public ValidationResult validateUpload(UploadMetadata upload) {
+        return validateFilename(upload.getFileName());
+    }
 
-        // Check for path traversal attempts
-        if (PATH_TRAVERSAL_PATTERN.matcher(originalFilename).matches()) {
-            log.warn("Path traversal attempt detected in filename: {}", originalFilename);
-            return ValidationResult.failure(
-                    getValidatorName(),
-                    "Invalid filename: path traversal attempt detected"
-            );
-        }
+    private ValidationResult validateFilename(String originalFilename) {
+        log.debug("Validating filename: {}", originalFilename);
 
-        // Check for invalid characters
-        if (INVALID_CHARS_PATTERN.matcher(originalFilename).matches()) {
-            log.warn("Invalid characters detected in filename: {}", originalFilename);
-            return ValidationResult.failure(
-                    getValidatorName(),
-                    "Invalid characters in filename"
-            );
+        NamePolicy policy = namePolicies.filename();
+        NamePolicy.Violation violation = policy.check(originalFilename);
+        if (violation == null) {
+            log.debug("Filename validation passed for: {}", originalFilename);
+            return ValidationResult.success(getValidatorName());
         }
 
-        // Check file extension
-        if (!ALLOWED_EXTENSIONS.matcher(originalFilename).matches()) {
-            return ValidationResult.failure(
+        return switch (violation) {
+            case EMPTY -> ValidationResult.failure(getValidatorName(), "Filename cannot be empty");
+            case TOO_LONG -> ValidationResult.failure(
                     getValidatorName(),
-                    "Invalid file extension. Only .zip files are allowed"
+                    "Filename too long (max " + policy.getMaxLength() + " characters)"
             );
-        }
-
-        // Check for suspicious patterns (null bytes, control characters)
-        if (originalFilename.contains("\0")) {
-            log.warn("Null byte detected in filename: {}", originalFilename);
-            return ValidationResult.failure(
+            case ABSOLUTE_PATH, TRAVERSAL -> {
+                log.warn("Path traversal attempt detected in filename: {}", originalFilename);
+                yield ValidationResult.failure(
+                        getValidatorName(),
+                        "Invalid filename: path traversal attempt detected"
+                );
+            }
+            case FORBIDDEN_CHARACTER -> {
+                log.warn("Invalid characters detected in filename: {}", originalFilename);
+                yield ValidationResult.failure(getValidatorName(), "Invalid characters in filename");
+            }
+            case EXTENSION -> ValidationResult.failure(
                     getValidatorName(),
-                    "Invalid filename: contains null bytes"
+                    "Invalid file extension. Only " + policy.getAllowedExtensions().stream()
+                            .map(extension -> "." + extension)
+                            .collect(Collectors.joining(", ")) + " files are allowed"
             );
-        }
-
-        log.debug("Filename validation passed for: {}", originalFilename);
-        return ValidationResult.success(getValidatorName());
+        };
     }
 
     @Override
@@ -98,5 +80,3 @@ public class FilenameValidator implements SubmissionValidator {
         return 5;
     }
 }
-
-
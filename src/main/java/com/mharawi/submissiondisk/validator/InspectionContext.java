@@ -0,0 +1,178 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * What the validators of one submission learn about its stored file, shared
+ * between them so the file is opened, stat'ed and parsed at most once.
+ *
+ * Every part is computed on first use and safe to use from the concurrently
+ * running validators. The channel is only used for positional reads. Closing
+ * the context closes the channel; mapped buffers are released by the garbage
+ * collector.
+ *
+ * Interrupting a thread blocked on the channel closes it. A validator that
+ * may be cancelled mid-read and that only streams the file should read it
+ * through {@link #newInputStream()}, which reads from a mapping and is
+ * unaffected. A channel closed that way is reopened for later callers.
+ */
+public final class InspectionContext implements AutoCloseable {
+
+    private final Path path;
+
+    private BasicFileAttributes attributes;
+    private FileChannel channel;
+    private ZipCentralDirectory zipDirectory;
+    private List<ZipCentralDirectory.Entry> zipEntries;
+    private MappedByteBuffer mappedBuffer;
+    private boolean closed;
+
+    public InspectionContext(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @return Context for the stored file of the given submission
+     */
+    public static InspectionContext of(SubmissionEvent event) {
+        return new InspectionContext(Paths.get(event.getStoragePath()));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @throws java.nio.file.NoSuchFileException if the file does not exist
+     */
+    public synchronized BasicFileAttributes getAttributes() throws IOException {
+        if (attributes == null) {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        }
+        return attributes;
+    }
+
+    /**
+     * @return Read-only channel for positional reads; do not close it
+     */
+    public synchronized FileChannel getChannel() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            // The directory reads through the channel it was located on
+            zipDirectory = null;
+        }
+        return channel;
+    }
+
+    /**
+     * @throws java.util.zip.ZipException if the file is not a ZIP archive
+     */
+    public synchronized ZipCentralDirectory getZipDirectory() throws IOException {
+        if (zipDirectory == null) {
+            zipDirectory = ZipCentralDirectory.locate(getChannel());
+        }
+        return zipDirectory;
+    }
+
+    /**
+     * @return Entries of the central directory, parsed once
+     */
+    public synchronized List<ZipCentralDirectory.Entry> getZipEntries() throws IOException {
+        if (zipEntries == null) {
+            zipEntries = getZipDirectory().readEntries();
+        }
+        return zipEntries;
+    }
+
+    /**
+     * @return Read-only mapping of the whole file; use a duplicate to read it
+     */
+    public synchronized MappedByteBuffer getMappedBuffer() throws IOException {
+        if (mappedBuffer == null) {
+            FileChannel fileChannel = getChannel();
+            mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+        return mappedBuffer;
+    }
+
+    /**
+     * Open a stream over the whole file, read from the shared mapping when
+     * the file is small enough to map in one piece.
+     */
+    public InputStream newInputStream() throws IOException {
+        if (getAttributes().size() > Integer.MAX_VALUE) {
+            return Files.newInputStream(path);
+        }
+        return new MappedInputStream(getMappedBuffer().duplicate());
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Read-only channel, nothing to flush
+            }
+        }
+    }
+
+    /**
+     * Reads a buffer from its position to its limit, advancing the position.
+     */
+    static final class MappedInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
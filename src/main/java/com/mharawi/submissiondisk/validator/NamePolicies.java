@@ -0,0 +1,37 @@
+package com.mharawi.submissiondisk.validator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * The configured {@link NamePolicy} instances: one for the name an archive is
+ * uploaded under and one for the entry names inside it.
+ */
+@Component
+public class NamePolicies {
+
+    private final NamePolicy filename;
+    private final NamePolicy zipEntry;
+
+    public NamePolicies(
+            @Value("${submission.name-policy.filename.max-length:255}") int filenameMaxLength,
+            @Value("${submission.name-policy.filename.forbidden-characters:<>:\"|?*}") String filenameForbidden,
+            @Value("${submission.name-policy.filename.allowed-extensions:zip}") List<String> filenameExtensions,
+            @Value("${submission.name-policy.zip-entry.max-length:65535}") int entryMaxLength,
+            @Value("${submission.name-policy.zip-entry.forbidden-characters:}") String entryForbidden,
+            @Value("${submission.name-policy.zip-entry.control-characters-allowed:true}") boolean entryControlAllowed) {
+        this.filename = new NamePolicy(filenameMaxLength, filenameForbidden, false, true, true, filenameExtensions);
+        // Backslashes and leading slashes make extractors write outside the target directory
+        this.zipEntry = new NamePolicy(entryMaxLength, entryForbidden, entryControlAllowed, false, false, List.of());
+    }
+
+    public NamePolicy filename() {
+        return filename;
+    }
+
+    public NamePolicy zipEntry() {
+        return zipEntry;
+    }
+}
@@ -0,0 +1,239 @@
+package com.mharawi.submissiondisk.validator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compiled rules for file and entry names, checked in a single pass over the
+ * name without regular expressions or allocation.
+ *
+ * Uploaded file names are checked as strings, ZIP entry names as the raw
+ * bytes of their header. All rules concern ASCII characters, which UTF-8 and
+ * CP437 encode the same way, so bytes need no decoding; the bytes of a
+ * multi-byte character never match a rule. Lengths count characters, not
+ * bytes.
+ *
+ * When a name breaks several rules, the first in {@link Violation} order is
+ * reported.
+ */
+public final class NamePolicy {
+
+    public enum Violation {
+        EMPTY,
+        TOO_LONG,
+        ABSOLUTE_PATH,
+        TRAVERSAL,
+        FORBIDDEN_CHARACTER,
+        EXTENSION
+    }
+
+    private final int maxLength;
+    private final boolean absolutePathsAllowed;
+    // Indexed by ASCII code
+    private final boolean[] forbidden = new boolean[128];
+    // Lower case, with the leading dot
+    private final byte[][] extensions;
+    private final String description;
+
+    /**
+     * @param forbiddenCharacters       ASCII characters a name may not contain
+     * @param controlCharactersAllowed  Whether characters below 0x20 may appear
+     * @param backslashAllowed          Whether '\' may appear; it separates path segments either way
+     * @param absolutePathsAllowed      Whether a name may start with a separator
+     * @param allowedExtensions         Extensions a name must end with, case-insensitive; empty for any
+     */
+    public NamePolicy(int maxLength, String forbiddenCharacters, boolean controlCharactersAllowed,
+                      boolean backslashAllowed, boolean absolutePathsAllowed, List<String> allowedExtensions) {
+        this.maxLength = maxLength;
+        this.absolutePathsAllowed = absolutePathsAllowed;
+
+        for (char c : forbiddenCharacters.toCharArray()) {
+            if (c >= forbidden.length) {
+                throw new IllegalArgumentException("Forbidden characters must be ASCII: " + c);
+            }
+            forbidden[c] = true;
+        }
+        for (int c = 0; c < ' '; c++) {
+            forbidden[c] |= !controlCharactersAllowed;
+        }
+        forbidden['\\'] |= !backslashAllowed;
+
+        this.extensions = new byte[allowedExtensions.size()][];
+        for (int i = 0; i < extensions.length; i++) {
+            String extension = allowedExtensions.get(i);
+            if (!StandardCharsets.US_ASCII.newEncoder().canEncode(extension)) {
+                throw new IllegalArgumentException("Extensions must be ASCII: " + extension);
+            }
+            extensions[i] = ("." + extension.toLowerCase(Locale.ROOT)).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        this.description = maxLength + ":" + forbiddenCharacters + ":" + controlCharactersAllowed + ":"
+                + backslashAllowed + ":" + absolutePathsAllowed + ":" + allowedExtensions;
+    }
+
+    /**
+     * @return The rule the name breaks, or null if it is acceptable
+     */
+    public Violation check(CharSequence name) {
+        if (name == null) {
+            return Violation.EMPTY;
+        }
+
+        int length = name.length();
+        boolean blank = true;
+        boolean forbiddenFound = false;
+        boolean traversal = false;
+        int segmentLength = 0;
+        boolean segmentDotsOnly = true;
+
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            blank &= c <= ' ';
+            if (c < forbidden.length) {
+                forbiddenFound |= forbidden[c];
+                if (c == '/' || c == '\\') {
+                    traversal |= segmentLength == 2 && segmentDotsOnly;
+                    segmentLength = 0;
+                    segmentDotsOnly = true;
+                    continue;
+                }
+            }
+            segmentLength++;
+            segmentDotsOnly &= c == '.';
+        }
+        traversal |= segmentLength == 2 && segmentDotsOnly;
+
+        boolean absolute = length > 0 && (name.charAt(0) == '/' || name.charAt(0) == '\\');
+        Violation violation = violation(blank, length, absolute, traversal, forbiddenFound);
+        if (violation != null) {
+            return violation;
+        }
+        return hasAllowedExtension(name) ? null : Violation.EXTENSION;
+    }
+
+    /**
+     * @return The rule the UTF-8 or CP437 encoded name breaks, or null if it is acceptable
+     */
+    public Violation check(byte[] name, int offset, int length) {
+        int end = offset + length;
+        int characters = 0;
+        boolean blank = true;
+        boolean forbiddenFound = false;
+        boolean traversal = false;
+        int segmentLength = 0;
+        boolean segmentDotsOnly = true;
+
+        for (int i = offset; i < end; i++) {
+            byte b = name[i];
+            // UTF-8 continuation bytes don't start a character
+            if ((b & 0xC0) != 0x80) {
+                characters++;
+            }
+            blank &= b >= 0 && b <= ' ';
+            if (b >= 0) {
+                forbiddenFound |= forbidden[b];
+                if (b == '/' || b == '\\') {
+                    traversal |= segmentLength == 2 && segmentDotsOnly;
+                    segmentLength = 0;
+                    segmentDotsOnly = true;
+                    continue;
+                }
+            }
+            segmentLength++;
+            segmentDotsOnly &= b == '.';
+        }
+        traversal |= segmentLength == 2 && segmentDotsOnly;
+
+        boolean absolute = length > 0 && (name[offset] == '/' || name[offset] == '\\');
+        Violation violation = violation(blank, characters, absolute, traversal, forbiddenFound);
+        if (violation != null) {
+            return violation;
+        }
+        return hasAllowedExtension(name, offset, length) ? null : Violation.EXTENSION;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return Extensions a name must end with, without the dot; empty if any is allowed
+     */
+    public List<String> getAllowedExtensions() {
+        return Arrays.stream(extensions).map(extension -> new String(extension, 1, extension.length - 1))
+                .toList();
+    }
+
+    /**
+     * Identifies the rules, so verdicts reached under other rules are not reused.
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    private Violation violation(boolean blank, int length, boolean absolute, boolean traversal, boolean forbiddenFound) {
+        if (blank) {
+            return Violation.EMPTY;
+        }
+        if (length > maxLength) {
+            return Violation.TOO_LONG;
+        }
+        if (absolute && !absolutePathsAllowed) {
+            return Violation.ABSOLUTE_PATH;
+        }
+        if (traversal) {
+            return Violation.TRAVERSAL;
+        }
+        if (forbiddenFound) {
+            return Violation.FORBIDDEN_CHARACTER;
+        }
+        return null;
+    }
+
+    private boolean hasAllowedExtension(CharSequence name) {
+        if (extensions.length == 0) {
+            return true;
+        }
+        nextExtension:
+        for (byte[] extension : extensions) {
+            int start = name.length() - extension.length;
+            if (start < 0) {
+                continue;
+            }
+            for (int i = 0; i < extension.length; i++) {
+                if (toLowerCase(name.charAt(start + i)) != extension[i]) {
+                    continue nextExtension;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private boolean hasAllowedExtension(byte[] name, int offset, int length) {
+        if (extensions.length == 0) {
+            return true;
+        }
+        nextExtension:
+        for (byte[] extension : extensions) {
+            int start = offset + length - extension.length;
+            if (start < offset) {
+                continue;
+            }
+            for (int i = 0; i < extension.length; i++) {
+                if (toLowerCase(name[start + i]) != extension[i]) {
+                    continue nextExtension;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static int toLowerCase(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
@@ -0,0 +1,29 @@
+package com.mharawi.submissiondisk.validator;
+
+/**
+ * A validator that can also run while an upload is still being received,
+ * so that broken or abusive uploads are rejected before they are stored.
+ *
+ * Streaming checks are a pre-filter: the full {@link #validate} still runs
+ * in the validation pipeline.
+ */
+public interface StreamingSubmissionValidator extends SubmissionValidator {
+
+    /**
+     * Validate the upload metadata before any bytes are read.
+     *
+     * @param upload Filename and declared length of the upload
+     * @return ValidationResult containing success/failure and error message
+     */
+    ValidationResult validateUpload(UploadMetadata upload);
+
+    /**
+     * Create an inspector for the bytes of this upload.
+     *
+     * @param upload Filename and declared length of the upload
+     * @return Inspector, or null if the metadata check is all this validator does
+     */
+    default UploadInspector newInspector(UploadMetadata upload) {
+        return null;
+    }
+}
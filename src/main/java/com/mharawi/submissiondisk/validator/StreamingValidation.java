@@ -0,0 +1,38 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.exception.UploadRejectedException;
+
+import java.util.List;
+
+/**
+ * The inspectors of all streaming validators for one upload. Fails the
+ * upload with {@link UploadRejectedException} as soon as any of them rejects it.
+ */
+public class StreamingValidation {
+
+    public static final StreamingValidation NONE = new StreamingValidation(List.of());
+
+    private final List<UploadInspector> inspectors;
+
+    public StreamingValidation(List<UploadInspector> inspectors) {
+        this.inspectors = inspectors;
+    }
+
+    public void update(byte[] buffer, int offset, int length) {
+        for (UploadInspector inspector : inspectors) {
+            check(inspector.inspect(buffer, offset, length));
+        }
+    }
+
+    public void complete(long size) {
+        for (UploadInspector inspector : inspectors) {
+            check(inspector.complete(size));
+        }
+    }
+
+    private static void check(ValidationResult result) {
+        if (!result.isValid()) {
+            throw new UploadRejectedException(result);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.mharawi.submissiondisk.validator;
 
 import com.mharawi.submissiondisk.event.SubmissionEvent;
 
+import java.util.Set;
+
 /**
  * Interface for all submission validators.
  * Each validator implements a specific validation rule.
@@ -16,6 +18,19 @@ public interface SubmissionValidator {
      */
     ValidationResult validate(SubmissionEvent event);
 
+    /**
+     * Validate a submission event using the inspection context shared by all
+     * validators of this submission. Validators that read the stored file
+     * should override this and take what they need from the context.
+     *
+     * @param event   The submission event to validate
+     * @param context Lazily populated facts about the stored file; do not close it
+     * @return ValidationResult containing success/failure and error message
+     */
+    default ValidationResult validate(SubmissionEvent event, InspectionContext context) {
+        return validate(event);
+    }
+
     /**
      * Get the name of this validator for logging purposes.
      *
@@ -35,5 +50,50 @@ public interface SubmissionValidator {
     default double getOrder() {
         return 100;
     }
-}
 
+    /**
+     * Whether this validator may run concurrently with other validators.
+     * Cheap metadata checks run inline before any concurrent validator starts;
+     * validators that wait on the disk, the database or a remote service
+     * should return true.
+     *
+     * @return true to run on a separate thread (default false)
+     */
+    default boolean isConcurrent() {
+        return false;
+    }
+
+    /**
+     * Get the names of validators that must pass before this one runs.
+     * Dependencies must have a lower order. If a dependency fails, this
+     * validator is skipped.
+     *
+     * @return Validator names (default none)
+     */
+    default Set<String> getDependencies() {
+        return Set.of();
+    }
+
+    /**
+     * Get the version of the rules this validator applies, for validators
+     * whose verdict depends on nothing but the file content and those rules.
+     * A passing verdict is then cached by checksum and reused until the
+     * version changes.
+     *
+     * @return Verdict version, or null if verdicts must not be cached (default)
+     */
+    default String getVerdictVersion() {
+        return null;
+    }
+
+    /**
+     * Get the exclusion group of this validator.
+     * Validators in the same group never run at the same time, e.g. because
+     * they compete for the same scarce resource.
+     *
+     * @return Group name, or null to run alongside any validator (default)
+     */
+    default String getExclusionGroup() {
+        return null;
+    }
+}
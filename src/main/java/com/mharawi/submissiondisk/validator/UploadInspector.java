@@ -0,0 +1,23 @@
+package com.mharawi.submissiondisk.validator;
+
+/**
+ * Per-upload state of a {@link StreamingSubmissionValidator}, fed with the
+ * bytes of the upload as they arrive.
+ */
+public interface UploadInspector {
+
+    /**
+     * Inspect the next bytes of the upload.
+     *
+     * @return Failure as soon as the upload can be rejected, success otherwise
+     */
+    ValidationResult inspect(byte[] buffer, int offset, int length);
+
+    /**
+     * Called once every byte has been inspected.
+     *
+     * @param size Total number of bytes received
+     * @return Final verdict for the streamed bytes
+     */
+    ValidationResult complete(long size);
+}
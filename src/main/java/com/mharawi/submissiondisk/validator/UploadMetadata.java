@@ -0,0 +1,21 @@
+package com.mharawi.submissiondisk.validator;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What is known about an upload before its bytes arrive.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadMetadata {
+
+    private String fileName;
+    private Long declaredSize;
+    private String contentType;
+    private String submittedBy;
+}
@@ -1,27 +1,189 @@
 package com.mharawi.submissiondisk.validator;
 
+import com.mharawi.submissiondisk.dto.ValidatorStatsResponse;
 import com.mharawi.submissiondisk.event.SubmissionEvent;
-import lombok.RequiredArgsConstructor;
+import com.mharawi.submissiondisk.exception.UploadRejectedException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Orchestrates the execution of all submission validators.
- * Runs validators in order and returns the first failure encountered.
+ *
+ * Inline validators (cheap metadata checks) run first, in order. Concurrent
+ * validators then run in parallel on virtual threads, honouring their
+ * dependencies and exclusion groups and each bounded by its timeout. As soon
+ * as a validator fails, every running validator later in the chain is
+ * cancelled. The reported failure is always the first one in the chain, the
+ * same failure running all validators in order would report.
+ *
+ * The chain is sorted by order once. With adaptive ordering enabled it is
+ * periodically rebuilt from the live latency and rejection rate of each
+ * validator, cheapest expected cost per rejection first, so submissions that
+ * will be rejected anyway are rejected sooner. Dependencies always run before
+ * their dependents.
+ *
+ * Validators that declare a verdict version are skipped for archives whose
+ * checksum already passed that version, see {@link VerdictCache}.
+ *
+ * All validators of a submission share one {@link InspectionContext}, closed
+ * once the outcome is known. Concurrent validators run outside the caller's
+ * transaction.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ValidationOrchestrator {
 
-    private final List<SubmissionValidator> validators;
+    private static final String TIMEOUT_PROPERTY_PREFIX = "submission.validation.timeouts.";
+
+    // Registered validators by order, the chain whenever adaptive ordering is off
+    private final List<SubmissionValidator> orderedValidators;
+    private final Map<SubmissionValidator, ValidatorStatistics> statistics = new IdentityHashMap<>();
+    private final Environment environment;
+    private final VerdictCache verdictCache;
+
+    private volatile List<SubmissionValidator> chain;
+
+    private final ExecutorService validatorExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("validator-", 0).factory());
+    private final Map<String, Duration> timeouts = new ConcurrentHashMap<>();
+
+    @Value("${submission.streaming-validation.enabled:true}")
+    private boolean streamingValidationEnabled;
+
+    @Value("${submission.validation.concurrent.enabled:true}")
+    private boolean concurrentValidationEnabled;
+
+    @Value("${submission.validation.timeouts.default:120s}")
+    private Duration defaultTimeout;
+
+    @Value("${submission.validation.adaptive-ordering.enabled:false}")
+    private boolean adaptiveOrderingEnabled;
+
+    @Value("${submission.validation.adaptive-ordering.min-samples:100}")
+    private long adaptiveOrderingMinSamples;
+
+    public ValidationOrchestrator(List<SubmissionValidator> validators,
+                                  Environment environment,
+                                  VerdictCache verdictCache,
+                                  @Value("${submission.validation.adaptive-ordering.smoothing:0.05}") double smoothing) {
+        this.orderedValidators = validators.stream()
+                .sorted(Comparator.comparingDouble(SubmissionValidator::getOrder))
+                .toList();
+        this.environment = environment;
+        this.verdictCache = verdictCache;
+        this.chain = orderedValidators;
+        for (SubmissionValidator validator : orderedValidators) {
+            statistics.put(validator, new ValidatorStatistics(smoothing));
+        }
+    }
 
     /**
-     * Execute all validators in order.
-     * Stops at the first failure and returns that result.
+     * Reject dependencies that cannot be honoured in both execution modes.
+     */
+    @PostConstruct
+    public void verifyDependencies() {
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int rank = 0; rank < orderedValidators.size(); rank++) {
+            ranks.put(orderedValidators.get(rank).getValidatorName(), rank);
+        }
+
+        for (int rank = 0; rank < orderedValidators.size(); rank++) {
+            SubmissionValidator validator = orderedValidators.get(rank);
+            for (String dependency : validator.getDependencies()) {
+                Integer dependencyRank = ranks.get(dependency);
+                if (dependencyRank == null) {
+                    throw new IllegalStateException(validator.getValidatorName()
+                            + " depends on unknown validator " + dependency);
+                }
+                if (dependencyRank >= rank) {
+                    throw new IllegalStateException(validator.getValidatorName()
+                            + " depends on " + dependency + ", which does not run before it");
+                }
+                if (!validator.isConcurrent() && orderedValidators.get(dependencyRank).isConcurrent()) {
+                    throw new IllegalStateException("Inline validator " + validator.getValidatorName()
+                            + " cannot depend on concurrent validator " + dependency);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        validatorExecutor.shutdownNow();
+    }
+
+    /**
+     * Rebuild the chain from the live statistics: repeatedly pick, among the
+     * validators whose dependencies are already placed, the one with the
+     * lowest expected cost per rejection. Keeps the current chain until every
+     * validator has enough samples.
+     */
+    @Scheduled(fixedDelayString = "${submission.validation.adaptive-ordering.interval:30000}")
+    public void reorder() {
+        if (!adaptiveOrderingEnabled) {
+            return;
+        }
+        for (ValidatorStatistics validatorStatistics : statistics.values()) {
+            if (validatorStatistics.getEvaluations() < adaptiveOrderingMinSamples) {
+                return;
+            }
+        }
+
+        Map<SubmissionValidator, Double> costs = new IdentityHashMap<>();
+        statistics.forEach((validator, validatorStatistics) ->
+                costs.put(validator, validatorStatistics.getExpectedCostPerRejection()));
+
+        List<SubmissionValidator> remaining = new ArrayList<>(orderedValidators);
+        List<SubmissionValidator> reordered = new ArrayList<>(remaining.size());
+        Set<String> placed = new HashSet<>();
+        while (!remaining.isEmpty()) {
+            // Dependencies have a lower order, so the first remaining validator is always eligible
+            SubmissionValidator next = null;
+            for (SubmissionValidator candidate : remaining) {
+                if (placed.containsAll(candidate.getDependencies())
+                        && (next == null || costs.get(candidate) < costs.get(next))) {
+                    next = candidate;
+                }
+            }
+            remaining.remove(next);
+            reordered.add(next);
+            placed.add(next.getValidatorName());
+        }
+
+        if (!reordered.equals(chain)) {
+            log.info("Validator chain reordered: {}", reordered.stream()
+                    .map(SubmissionValidator::getValidatorName).toList());
+            chain = List.copyOf(reordered);
+        }
+    }
+
+    /**
+     * Execute all validators.
+     * Returns the failure of the first validator in the chain that failed.
      *
      * @param event The submission event to validate
      * @return Aggregated validation result
@@ -29,49 +191,368 @@ public class ValidationOrchestrator {
     public ValidationResult validateAll(SubmissionEvent event) {
         log.info("Starting validation orchestration for submission {}", event.getSubmissionId());
 
-        // Sort validators by order
-        List<SubmissionValidator> sortedValidators = getValidators();
+        List<SubmissionValidator> sortedValidators = chain;
 
+        ValidationResult failure;
+        try (InspectionContext context = InspectionContext.of(event)) {
+            failure = concurrentValidationEnabled
+                    ? runConcurrently(event, context, sortedValidators)
+                    : runInOrder(event, context, sortedValidators);
+        }
+
+        if (failure != null) {
+            log.warn("Validation failed at {}: {}", failure.getValidatorName(), failure.getErrorMessage());
+            return failure;
+        }
+
+        log.info("All validations passed for submission {}", event.getSubmissionId());
+        return ValidationResult.success("ValidationOrchestrator");
+    }
+
+    /**
+     * Run the metadata checks of all streaming validators before an upload is read.
+     *
+     * @param upload Filename and declared length of the upload
+     * @throws UploadRejectedException if any streaming validator rejects the upload
+     */
+    public void validateUpload(UploadMetadata upload) {
+        if (!streamingValidationEnabled) {
+            return;
+        }
+
+        for (SubmissionValidator validator : getValidators()) {
+            if (validator instanceof StreamingSubmissionValidator streamingValidator) {
+                ValidationResult result = streamingValidator.validateUpload(upload);
+                if (!result.isValid()) {
+                    log.warn("Upload {} rejected by {}: {}",
+                            upload.getFileName(), validator.getValidatorName(), result.getErrorMessage());
+                    throw new UploadRejectedException(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the metadata checks and set up the byte inspectors of all streaming
+     * validators for an upload that is about to be read.
+     *
+     * @param upload Filename and declared length of the upload
+     * @return Streaming validation to feed with the upload bytes
+     * @throws UploadRejectedException if any streaming validator rejects the upload metadata
+     */
+    public StreamingValidation beginUpload(UploadMetadata upload) {
+        if (!streamingValidationEnabled) {
+            return StreamingValidation.NONE;
+        }
+
+        validateUpload(upload);
+
+        List<UploadInspector> inspectors = new ArrayList<>();
+        for (SubmissionValidator validator : getValidators()) {
+            if (validator instanceof StreamingSubmissionValidator streamingValidator) {
+                UploadInspector inspector = streamingValidator.newInspector(upload);
+                if (inspector != null) {
+                    inspectors.add(inspector);
+                }
+            }
+        }
+        return new StreamingValidation(inspectors);
+    }
+
+    /**
+     * Get list of all registered validators.
+     *
+     * @return List of validators in the order the chain currently runs them
+     */
+    public List<SubmissionValidator> getValidators() {
+        return chain;
+    }
+
+    /**
+     * Get the live statistics of all validators.
+     *
+     * @return Statistics in the order the chain currently runs the validators
+     */
+    public List<ValidatorStatsResponse> getValidatorStats() {
+        List<SubmissionValidator> currentChain = chain;
+        List<ValidatorStatsResponse> stats = new ArrayList<>(currentChain.size());
+        for (int position = 0; position < currentChain.size(); position++) {
+            SubmissionValidator validator = currentChain.get(position);
+            ValidatorStatistics validatorStatistics = statistics.get(validator);
+            stats.add(ValidatorStatsResponse.builder()
+                    .position(position + 1)
+                    .validatorName(validator.getValidatorName())
+                    .order(validator.getOrder())
+                    .concurrent(validator.isConcurrent())
+                    .evaluations(validatorStatistics.getEvaluations())
+                    .rejections(validatorStatistics.getRejections())
+                    .averageLatencyMillis(validatorStatistics.getAverageLatencyNanos() / 1e6)
+                    .rejectionRate(validatorStatistics.getRejectionRate())
+                    .expectedCostPerRejectionMillis(validatorStatistics.getExpectedCostPerRejection() / 1e6)
+                    .build());
+        }
+        return stats;
+    }
+
+    /**
+     * Log information about registered validators.
+     */
+    public void logValidatorInfo() {
+        log.info("Registered validators ({}, {}{}):", orderedValidators.size(),
+                concurrentValidationEnabled ? "concurrent" : "in order",
+                adaptiveOrderingEnabled ? ", adaptive ordering" : "");
+        orderedValidators.forEach(v -> log.info("  - {} (order: {}{})", v.getValidatorName(), v.getOrder(),
+                v.isConcurrent() ? ", concurrent, timeout: " + timeoutOf(v).toMillis() + " ms" : ""));
+    }
+
+    /**
+     * @return The first failure, or null if every validator passed
+     */
+    private ValidationResult runInOrder(SubmissionEvent event, InspectionContext context,
+                                        List<SubmissionValidator> sortedValidators) {
         log.debug("Executing {} validators in order", sortedValidators.size());
 
         for (SubmissionValidator validator : sortedValidators) {
             log.debug("Running validator: {} (order: {})",
                     validator.getValidatorName(), validator.getOrder());
 
-            ValidationResult result = validator.validate(event);
+            long start = System.nanoTime();
+            ValidationResult result = evaluate(validator, event, context);
+            statistics.get(validator).record(System.nanoTime() - start, isRejection(result));
 
             if (!result.isValid()) {
-                log.warn("Validation failed at {}: {}",
-                        validator.getValidatorName(), result.getErrorMessage());
                 return result;
             }
 
             log.debug("Validator {} passed", validator.getValidatorName());
         }
+        return null;
+    }
 
-        log.info("All validations passed for submission {}", event.getSubmissionId());
-        return ValidationResult.success("ValidationOrchestrator");
+    /**
+     * @return The lowest-order failure, or null if every validator passed
+     */
+    private ValidationResult runConcurrently(SubmissionEvent event, InspectionContext context,
+                                             List<SubmissionValidator> sortedValidators) {
+        // Position in the chain decides which failure is reported, the way running in order would
+        Map<SubmissionValidator, Integer> ranks = new IdentityHashMap<>();
+        for (int rank = 0; rank < sortedValidators.size(); rank++) {
+            ranks.put(sortedValidators.get(rank), rank);
+        }
+
+        Set<String> passed = new HashSet<>();
+        List<SubmissionValidator> pending = new ArrayList<>();
+        ValidationResult failure = null;
+        int failedRank = Integer.MAX_VALUE;
+
+        for (SubmissionValidator validator : sortedValidators) {
+            if (validator.isConcurrent()) {
+                pending.add(validator);
+            } else if (failure == null) {
+                log.debug("Running validator: {} (order: {})", validator.getValidatorName(), validator.getOrder());
+                long start = System.nanoTime();
+                ValidationResult result = evaluate(validator, event, context);
+                statistics.get(validator).record(System.nanoTime() - start, isRejection(result));
+                if (result.isValid()) {
+                    passed.add(validator.getValidatorName());
+                } else {
+                    failure = result;
+                    failedRank = ranks.get(validator);
+                }
+            }
+        }
+
+        BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        Map<SubmissionValidator, RunningValidator> running = new IdentityHashMap<>();
+        try {
+            while (true) {
+                // Validators ordered after the current failure can no longer change the result
+                int cutoff = failedRank;
+                pending.removeIf(validator -> ranks.get(validator) > cutoff);
+                startReadyValidators(event, context, pending, running, passed, completions);
+
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                long now = System.nanoTime();
+                long nextDeadline = Long.MAX_VALUE;
+                for (RunningValidator runningValidator : running.values()) {
+                    nextDeadline = Math.min(nextDeadline, runningValidator.deadline());
+                }
+
+                List<Completion> finished = new ArrayList<>();
+                Completion completion = completions.poll(Math.max(0, nextDeadline - now), TimeUnit.NANOSECONDS);
+                if (completion != null) {
+                    finished.add(completion);
+                } else {
+                    finished.addAll(timeOut(running));
+                }
+
+                for (Completion done : finished) {
+                    // Results of validators cancelled earlier arrive late and are ignored
+                    if (running.remove(done.validator()) == null) {
+                        continue;
+                    }
+                    statistics.get(done.validator()).record(done.latencyNanos(), isRejection(done.result()));
+                    if (done.result().isValid()) {
+                        passed.add(done.validator().getValidatorName());
+                        log.debug("Validator {} passed", done.validator().getValidatorName());
+                    } else if (ranks.get(done.validator()) < failedRank) {
+                        failure = done.result();
+                        failedRank = ranks.get(done.validator());
+                        cancelAfter(failedRank, running, ranks);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating submission " + event.getSubmissionId(), e);
+        } finally {
+            running.values().forEach(runningValidator -> runningValidator.future().cancel(true));
+        }
+
+        if (failure == null && !pending.isEmpty()) {
+            throw new IllegalStateException("Validators never became ready: " + pending.stream()
+                    .map(SubmissionValidator::getValidatorName).toList());
+        }
+        return failure;
     }
 
     /**
-     * Get list of all registered validators.
-     *
-     * @return List of validators sorted by order
+     * Start every pending validator whose dependencies passed and whose
+     * exclusion group is free, and drop those whose dependencies can no
+     * longer pass.
      */
-    public List<SubmissionValidator> getValidators() {
-        return validators.stream()
-                .sorted(Comparator.comparingDouble(SubmissionValidator::getOrder))
-                .toList();
+    private void startReadyValidators(SubmissionEvent event, InspectionContext context,
+                                      List<SubmissionValidator> pending,
+                                      Map<SubmissionValidator, RunningValidator> running, Set<String> passed,
+                                      BlockingQueue<Completion> completions) {
+        Set<String> unsettled = new HashSet<>();
+        Set<String> claimedGroups = new HashSet<>();
+        for (SubmissionValidator validator : running.keySet()) {
+            unsettled.add(validator.getValidatorName());
+            if (validator.getExclusionGroup() != null) {
+                claimedGroups.add(validator.getExclusionGroup());
+            }
+        }
+        for (SubmissionValidator validator : pending) {
+            unsettled.add(validator.getValidatorName());
+        }
+
+        for (Iterator<SubmissionValidator> iterator = pending.iterator(); iterator.hasNext(); ) {
+            SubmissionValidator validator = iterator.next();
+
+            if (!passed.containsAll(validator.getDependencies())) {
+                boolean blocked = validator.getDependencies().stream()
+                        .anyMatch(dependency -> !passed.contains(dependency) && !unsettled.contains(dependency));
+                if (blocked) {
+                    log.debug("Skipping validator {}: a dependency did not pass", validator.getValidatorName());
+                    iterator.remove();
+                    unsettled.remove(validator.getValidatorName());
+                }
+                continue;
+            }
+
+            // Within an exclusion group the lowest order goes first
+            String group = validator.getExclusionGroup();
+            if (group != null && !claimedGroups.add(group)) {
+                continue;
+            }
+
+            iterator.remove();
+            log.debug("Starting validator: {} (order: {})", validator.getValidatorName(), validator.getOrder());
+            Duration timeout = timeoutOf(validator);
+            Future<?> future = validatorExecutor.submit(() -> {
+                long start = System.nanoTime();
+                ValidationResult result = runValidator(validator, event, context);
+                completions.add(new Completion(validator, result, System.nanoTime() - start));
+            });
+            running.put(validator, new RunningValidator(future, System.nanoTime() + timeout.toNanos(), timeout));
+        }
+    }
+
+    private ValidationResult runValidator(SubmissionValidator validator, SubmissionEvent event,
+                                          InspectionContext context) {
+        try {
+            return evaluate(validator, event, context);
+        } catch (Exception e) {
+            log.error("Validator {} failed for submission {}", validator.getValidatorName(),
+                    event.getSubmissionId(), e);
+            return ValidationResult.failure(validator.getValidatorName(), "Validation error: " + e.getMessage());
+        }
     }
 
     /**
-     * Log information about registered validators.
+     * Run a validator unless an archive with the same checksum already passed
+     * the same version of it.
      */
-    public void logValidatorInfo() {
-        log.info("Registered validators ({}):", validators.size());
-        validators.stream()
-                .sorted(Comparator.comparingDouble(SubmissionValidator::getOrder))
-                .forEach(v -> log.info("  - {} (order: {})", v.getValidatorName(), v.getOrder()));
+    private ValidationResult evaluate(SubmissionValidator validator, SubmissionEvent event,
+                                      InspectionContext context) {
+        String verdictVersion = validator.getVerdictVersion();
+        if (verdictVersion != null
+                && verdictCache.hasPassed(validator.getValidatorName(), verdictVersion, event.getChecksum())) {
+            log.debug("Validator {} passed from cache for submission {}",
+                    validator.getValidatorName(), event.getSubmissionId());
+            return ValidationResult.success(validator.getValidatorName());
+        }
+
+        ValidationResult result = validator.validate(event, context);
+        if (verdictVersion != null && result.isValid()) {
+            verdictCache.recordPass(validator.getValidatorName(), verdictVersion, event.getChecksum());
+        }
+        return result;
+    }
+
+    /**
+     * A check that could not be carried out says nothing about how often the
+     * validator rejects submissions.
+     */
+    private static boolean isRejection(ValidationResult result) {
+        return !result.isValid() && !result.isRetryable();
+    }
+
+    private List<Completion> timeOut(Map<SubmissionValidator, RunningValidator> running) {
+        long now = System.nanoTime();
+        List<Completion> timedOut = new ArrayList<>();
+        for (Map.Entry<SubmissionValidator, RunningValidator> entry : running.entrySet()) {
+            RunningValidator runningValidator = entry.getValue();
+            if (runningValidator.deadline() - now <= 0) {
+                runningValidator.future().cancel(true);
+                log.warn("Validator {} timed out after {} ms",
+                        entry.getKey().getValidatorName(), runningValidator.timeout().toMillis());
+                timedOut.add(new Completion(entry.getKey(), ValidationResult.failure(
+                        entry.getKey().getValidatorName(),
+                        "Validation timed out after " + runningValidator.timeout().toMillis() + " ms"),
+                        runningValidator.timeout().toNanos()));
+            }
+        }
+        return timedOut;
+    }
+
+    private void cancelAfter(int failedRank, Map<SubmissionValidator, RunningValidator> running,
+                             Map<SubmissionValidator, Integer> ranks) {
+        running.entrySet().removeIf(entry -> {
+            if (ranks.get(entry.getKey()) < failedRank) {
+                return false;
+            }
+            log.debug("Cancelling validator {}", entry.getKey().getValidatorName());
+            entry.getValue().future().cancel(true);
+            return true;
+        });
+    }
+
+    private Duration timeoutOf(SubmissionValidator validator) {
+        return timeouts.computeIfAbsent(validator.getValidatorName(), name -> {
+            String timeout = environment.getProperty(TIMEOUT_PROPERTY_PREFIX + name);
+            return timeout != null ? DurationStyle.detectAndParse(timeout) : defaultTimeout;
+        });
+    }
+
+    private record RunningValidator(Future<?> future, long deadline, Duration timeout) {
+    }
+
+    private record Completion(SubmissionValidator validator, ValidationResult result, long latencyNanos) {
     }
 }
 
@@ -17,6 +17,8 @@ public class ValidationResult {
     private boolean valid;
     private String errorMessage;
     private String validatorName;
+    // The check could not be carried out; the submission is fine to validate again later
+    private boolean retryable;
 
     /**
      * Create a successful validation result.
@@ -38,5 +40,18 @@ public class ValidationResult {
                 .errorMessage(errorMessage)
                 .build();
     }
+
+    /**
+     * Create a failed validation result for a check that could not be
+     * carried out at the moment, e.g. because a scanner is down.
+     */
+    public static ValidationResult retryLater(String validatorName, String errorMessage) {
+        return ValidationResult.builder()
+                .valid(false)
+                .validatorName(validatorName)
+                .errorMessage(errorMessage)
+                .retryable(true)
+                .build();
+    }
 }
 
@@ -0,0 +1,76 @@
+package com.mharawi.submissiondisk.validator;
+
+/**
+ * Live latency and rejection rate of one validator, kept as exponentially
+ * weighted moving averages so the figures follow the current traffic.
+ */
+public class ValidatorStatistics {
+
+    // Floor for the rejection rate, so a validator that never rejects sorts last instead of dividing by zero
+    private static final double MIN_REJECTION_RATE = 1e-6;
+
+    private final double smoothing;
+
+    private long evaluations;
+    private long rejections;
+    private double averageLatencyNanos;
+    private double rejectionRate;
+
+    /**
+     * @param smoothing Weight of each new sample, between 0 and 1
+     */
+    public ValidatorStatistics(double smoothing) {
+        if (smoothing <= 0 || smoothing > 1) {
+            throw new IllegalArgumentException("Smoothing must be in (0, 1]: " + smoothing);
+        }
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Record one evaluation of the validator.
+     *
+     * @param latencyNanos How long the evaluation took
+     * @param rejected     Whether the submission was rejected
+     */
+    public synchronized void record(long latencyNanos, boolean rejected) {
+        double rejection = rejected ? 1 : 0;
+        if (evaluations == 0) {
+            averageLatencyNanos = latencyNanos;
+            rejectionRate = rejection;
+        } else {
+            averageLatencyNanos += smoothing * (latencyNanos - averageLatencyNanos);
+            rejectionRate += smoothing * (rejection - rejectionRate);
+        }
+        evaluations++;
+        if (rejected) {
+            rejections++;
+        }
+    }
+
+    public synchronized long getEvaluations() {
+        return evaluations;
+    }
+
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    public synchronized double getAverageLatencyNanos() {
+        return averageLatencyNanos;
+    }
+
+    public synchronized double getRejectionRate() {
+        return rejectionRate;
+    }
+
+    /**
+     * Expected time spent in this validator per submission it rejects.
+     * Running validators in ascending order of this cost minimizes the time
+     * spent before a submission that will be rejected is rejected.
+     *
+     * @return Nanoseconds per rejection
+     */
+    public synchronized double getExpectedCostPerRejection() {
+        return averageLatencyNanos / Math.max(rejectionRate, MIN_REJECTION_RATE);
+    }
+}
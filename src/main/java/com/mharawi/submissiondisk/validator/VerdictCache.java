@@ -0,0 +1,163 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.hash.XxHash64;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which archives already passed a validator, by checksum, so an
+ * identical archive submitted again skips the expensive checks.
+ *
+ * Verdicts live in Redis, shared across nodes, with a small in-process
+ * near-cache in front. Each key includes the verdict version of the
+ * validator (e.g. the virus signature database version), so verdicts become
+ * unreachable as soon as that version changes and expire through their TTL.
+ *
+ * Only passing verdicts are cached: a failure may come from an I/O error or
+ * an unreachable clamd, and rejected archives are rare enough to re-check.
+ * When Redis cannot be reached the cache is skipped.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class VerdictCache implements MeterBinder {
+
+    private static final String KEY_PREFIX = "submission:verdict:";
+    private static final String PASSED = "1";
+
+    private final StringRedisTemplate redisTemplate;
+
+    // Key -> expiry (System.nanoTime), least recently used first
+    private final Map<String, Long> nearCache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > nearCacheMaxSize;
+        }
+    };
+
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    @Value("${submission.verdict-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${submission.verdict-cache.ttl:7d}")
+    private Duration ttl;
+
+    @Value("${submission.verdict-cache.near-cache.max-size:10000}")
+    private int nearCacheMaxSize;
+
+    @Value("${submission.verdict-cache.near-cache.ttl:10m}")
+    private Duration nearCacheTtl;
+
+    /**
+     * @param validatorName Validator the verdict belongs to
+     * @param version       Verdict version of the validator
+     * @param checksum      SHA-256 of the archive, may be null
+     * @return true if an archive with this checksum already passed this version of the validator
+     */
+    public boolean hasPassed(String validatorName, String version, String checksum) {
+        if (!enabled || checksum == null) {
+            return false;
+        }
+
+        String key = key(validatorName, version, checksum);
+        if (nearCacheContains(key)) {
+            nearHits.incrementAndGet();
+            return true;
+        }
+
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                redisHits.incrementAndGet();
+                rememberNear(key);
+                return true;
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.warn("Verdict cache unavailable, running {}: {}", validatorName, e.getMessage());
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Record that an archive passed a validator.
+     */
+    public void recordPass(String validatorName, String version, String checksum) {
+        if (!enabled || checksum == null) {
+            return;
+        }
+
+        String key = key(validatorName, version, checksum);
+        rememberNear(key);
+        try {
+            redisTemplate.opsForValue().set(key, PASSED, ttl);
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.warn("Unable to cache verdict of {}: {}", validatorName, e.getMessage());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("submission.verdict-cache.hits", nearHits, AtomicLong::get)
+                .description("Verdicts found in the in-process near-cache")
+                .tag("tier", "near")
+                .register(registry);
+        FunctionCounter.builder("submission.verdict-cache.hits", redisHits, AtomicLong::get)
+                .description("Verdicts found in Redis")
+                .tag("tier", "redis")
+                .register(registry);
+        FunctionCounter.builder("submission.verdict-cache.misses", misses, AtomicLong::get)
+                .description("Verdict lookups that had to run the validator")
+                .register(registry);
+        FunctionCounter.builder("submission.verdict-cache.errors", errors, AtomicLong::get)
+                .description("Verdict cache operations that failed to reach Redis")
+                .register(registry);
+        Gauge.builder("submission.verdict-cache.near.size", this, VerdictCache::nearCacheSize)
+                .description("Verdicts held in the in-process near-cache")
+                .register(registry);
+    }
+
+    private static String key(String validatorName, String version, String checksum) {
+        // Versions can be long (e.g. the clamd version banner), so the key holds their hash
+        long versionHash = XxHash64.hash(version.getBytes(StandardCharsets.UTF_8));
+        return KEY_PREFIX + validatorName + ":" + Long.toHexString(versionHash) + ":" + checksum;
+    }
+
+    private synchronized boolean nearCacheContains(String key) {
+        Long expiresAt = nearCache.get(key);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt - System.nanoTime() <= 0) {
+            nearCache.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void rememberNear(String key) {
+        nearCache.put(key, System.nanoTime() + nearCacheTtl.toNanos());
+    }
+
+    private synchronized int nearCacheSize() {
+        return nearCache.size();
+    }
+}
@@ -1,14 +1,37 @@
 package com.mharawi.submissiondisk.validator;
 
+import com.mharawi.submissiondisk.clamav.ClamdUnavailableException;
+import com.mharawi.submissiondisk.clamav.ClamdVerdict;
 import com.mharawi.submissiondisk.event.SubmissionEvent;
 import com.mharawi.submissiondisk.service.VirusScanService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import xyz.capybara.clamav.commands.scan.result.ScanResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipException;
 
 /**
  * Validates that a submission file is virus-free using ClamAV.
+ *
+ * If no clamd can scan the file the result is retryable, so the submission
+ * waits for ClamAV to come back instead of failing.
+ *
+ * Archives whose bytes are all inside their entries are scanned entry by
+ * entry: each entry is hashed, and only entries the {@link EntryVerdictIndex}
+ * doesn't know to be clean for the current signature version are streamed
+ * to clamd. Other archives, and any archive the entries can't be read from,
+ * are scanned whole.
  */
 @Component
 @RequiredArgsConstructor
@@ -16,38 +39,50 @@ import xyz.capybara.clamav.commands.scan.result.ScanResult;
 public class VirusValidator implements SubmissionValidator {
 
     private final VirusScanService virusScanService;
+    private final EntryVerdictIndex entryVerdictIndex;
+
+    @Value("${submission.zip.max-uncompressed-size:1073741824}") // Default 1GB
+    private long maxUncompressedSize;
+
+    // Entries hashed or scanned at once for one archive
+    @Value("${submission.entry-index.parallelism:4}")
+    private int entryParallelism;
 
     @Override
     public ValidationResult validate(SubmissionEvent event) {
+        try (InspectionContext context = InspectionContext.of(event)) {
+            return validate(event, context);
+        }
+    }
+
+    @Override
+    public ValidationResult validate(SubmissionEvent event, InspectionContext context) {
         log.debug("Starting virus scan for submission: {}", event.getSubmissionId());
 
         try {
-            ScanResult scanResult = virusScanService.scanFile(event.getStoragePath());
+            ClamdVerdict verdict = scan(event, context);
 
-            if (scanResult == null) {
+            if (verdict == null) {
                 log.info("Virus scan skipped (ClamAV disabled) for submission {}", event.getSubmissionId());
                 return ValidationResult.success(getValidatorName());
             }
 
-            if (scanResult instanceof ScanResult.VirusFound virusFound) {
-                log.error("VIRUS DETECTED in submission {}: {}", event.getSubmissionId(), virusFound);
-                return ValidationResult.failure(
-                        getValidatorName(),
-                        "Virus detected: " + virusFound.getFoundViruses()
-                );
-            }
-
-            if (!(scanResult instanceof ScanResult.OK)) {
-                log.warn("Unexpected scan result for submission {}: {}", event.getSubmissionId(), scanResult);
+            if (verdict.isInfected()) {
+                log.error("VIRUS DETECTED in submission {}: {}", event.getSubmissionId(), verdict.virus());
                 return ValidationResult.failure(
                         getValidatorName(),
-                        "Unexpected virus scan result: " + scanResult.getClass().getSimpleName()
+                        "Virus detected: " + verdict.virus()
                 );
             }
 
             log.info("Virus scan PASSED for submission {}", event.getSubmissionId());
             return ValidationResult.success(getValidatorName());
 
+        } catch (ClamdUnavailableException e) {
+            return ValidationResult.retryLater(
+                    getValidatorName(),
+                    "Virus scan unavailable: " + e.getMessage()
+            );
         } catch (Exception e) {
             log.error("Error during virus scan for submission {}", event.getSubmissionId(), e);
             return ValidationResult.failure(
@@ -57,6 +92,138 @@ public class VirusValidator implements SubmissionValidator {
         }
     }
 
+    /**
+     * Scan a submission, entry by entry where the archive allows it.
+     *
+     * @return Verdict of the scan, or null if ClamAV is disabled
+     * @throws ClamdUnavailableException if no clamd could scan the submission
+     * @throws IOException               if the submission can't be read
+     */
+    public ClamdVerdict scan(SubmissionEvent event, InspectionContext context) throws IOException {
+        ClamdVerdict verdict = scanNewEntries(event, context);
+        return verdict != null ? verdict : virusScanService.scanFile(context.getPath());
+    }
+
+    /**
+     * @return Verdict over the entries of the archive, or null if it has to be scanned whole
+     */
+    private ClamdVerdict scanNewEntries(SubmissionEvent event, InspectionContext context) throws IOException {
+        String version = virusScanService.getSignatureVersion();
+        if (!entryVerdictIndex.isEnabled() || version == null) {
+            return null;
+        }
+
+        ZipEntryReader reader;
+        List<byte[]> digests;
+        try {
+            reader = ZipEntryReader.open(context, maxUncompressedSize);
+            if (reader == null) {
+                return null;
+            }
+            digests = hashEntries(reader);
+        } catch (ZipException e) {
+            log.debug("Scanning submission {} whole, its entries can't be read: {}",
+                    event.getSubmissionId(), e.getMessage());
+            return null;
+        }
+
+        boolean[] clean = entryVerdictIndex.findClean(version, digests);
+        List<Integer> unknown = new ArrayList<>();
+        for (int i = 0; i < clean.length; i++) {
+            if (!clean[i]) {
+                unknown.add(i);
+            }
+        }
+        log.info("Submission {}: {} of {} entries already known clean, scanning {}", event.getSubmissionId(),
+                clean.length - unknown.size(), clean.length, unknown.size());
+
+        ClamdVerdict infected = scanEntries(event, reader, unknown);
+        if (infected != null) {
+            return infected;
+        }
+        entryVerdictIndex.recordClean(version, unknown.stream().map(digests::get).toList());
+        return new ClamdVerdict(null, null);
+    }
+
+    private List<byte[]> hashEntries(ZipEntryReader reader) throws IOException {
+        byte[][] digests = new byte[reader.size()][];
+        forEachEntry(reader.size(), index -> {
+            digests[index] = reader.digest(index);
+            return false;
+        });
+        return List.of(digests);
+    }
+
+    /**
+     * @return Verdict for the first infected entry, or null if all are clean
+     */
+    private ClamdVerdict scanEntries(SubmissionEvent event, ZipEntryReader reader, List<Integer> entries)
+            throws IOException {
+        AtomicReference<ClamdVerdict> infected = new AtomicReference<>();
+        forEachEntry(entries.size(), i -> {
+            int index = entries.get(i);
+            ZipCentralDirectory.Entry entry = reader.entry(index);
+            ClamdVerdict verdict = virusScanService.scan(
+                    "entry " + entry.name() + " of submission " + event.getSubmissionId(),
+                    entry.uncompressedSize(), () -> reader.open(index));
+            if (verdict != null && verdict.isInfected()) {
+                infected.compareAndSet(null, verdict);
+                return true;
+            }
+            return false;
+        });
+        return infected.get();
+    }
+
+    /**
+     * Run a task for each index on up to {@code entryParallelism} virtual
+     * threads, until a task returns true or fails.
+     */
+    private void forEachEntry(int count, EntryTask task) throws IOException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean stop = new AtomicBoolean();
+        int workers = Math.max(1, Math.min(entryParallelism, count));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> running = new ArrayList<>(workers);
+            for (int worker = 0; worker < workers; worker++) {
+                running.add(executor.submit(() -> {
+                    int index;
+                    while (!stop.get() && (index = next.getAndIncrement()) < count) {
+                        if (task.run(index)) {
+                            stop.set(true);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> worker : running) {
+                    worker.get();
+                }
+            } catch (ExecutionException e) {
+                stop.set(true);
+                running.forEach(worker -> worker.cancel(true));
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IllegalStateException("ZIP entry task failed", e.getCause());
+            } catch (InterruptedException e) {
+                stop.set(true);
+                running.forEach(worker -> worker.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while scanning ZIP entries", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface EntryTask {
+        /**
+         * @return true to stop the remaining tasks
+         */
+        boolean run(int index) throws IOException;
+    }
+
     @Override
     public String getValidatorName() {
         return "VirusValidator";
@@ -66,5 +233,18 @@ public class VirusValidator implements SubmissionValidator {
     public double getOrder() {
         return 20;
     }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    /**
+     * Verdicts are only valid for the signature database that produced them.
+     */
+    @Override
+    public String getVerdictVersion() {
+        return virusScanService.getSignatureVersion();
+    }
 }
 
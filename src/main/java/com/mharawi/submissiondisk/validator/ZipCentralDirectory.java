@@ -0,0 +1,331 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.io.ChannelIO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a stored ZIP archive with positional reads,
+ * without touching entry data.
+ *
+ * {@link #locate(FileChannel)} only reads the end of central directory record
+ * (and its ZIP64 counterpart), so the entry count can be checked before the
+ * directory itself is parsed. Directories larger than {@link #MAP_THRESHOLD}
+ * are memory-mapped instead of read into the heap.
+ */
+public final class ZipCentralDirectory {
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+    private static final int MAP_THRESHOLD = 1024 * 1024;
+
+    // Possible data descriptor lengths: with or without signature, 32- or 64-bit sizes
+    private static final long[] DATA_DESCRIPTOR_SIZES = {0, 12, 16, 20, 24};
+
+    private final FileChannel channel;
+    private final long entryCount;
+    private final long directoryOffset;
+    private final long directorySize;
+
+    private ZipCentralDirectory(FileChannel channel, long entryCount, long directoryOffset, long directorySize) {
+        this.channel = channel;
+        this.entryCount = entryCount;
+        this.directoryOffset = directoryOffset;
+        this.directorySize = directorySize;
+    }
+
+    /**
+     * One entry as recorded in the central directory.
+     */
+    public record Entry(String name, byte[] rawName, int flags, int method, long crc,
+                        long compressedSize, long uncompressedSize, long localHeaderOffset) {
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Find the end of central directory record.
+     *
+     * @throws ZipException if the file is not a ZIP archive or the record is inconsistent
+     */
+    public static ZipCentralDirectory locate(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new ZipException("zip END header not found");
+        }
+
+        // The record sits at the very end, followed only by a comment of up to 64KB
+        int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_LENGTH);
+        long tailOffset = size - tailLength;
+        ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+        ChannelIO.readFully(channel, tail, tailOffset);
+
+        for (int position = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) != END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                    || position + END_OF_CENTRAL_DIRECTORY_SIZE + unsignedShort(tail, position + 20) != tailLength) {
+                continue;
+            }
+
+            long eocdOffset = tailOffset + position;
+            long entryCount = unsignedShort(tail, position + 10);
+            long directorySize = unsignedInt(tail, position + 12);
+            long directoryOffset = unsignedInt(tail, position + 16);
+
+            if (entryCount == 0xFFFF || directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER) {
+                return locateZip64(channel, eocdOffset);
+            }
+            return checked(channel, entryCount, directoryOffset, directorySize, eocdOffset);
+        }
+
+        throw new ZipException("zip END header not found");
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public long getDirectoryOffset() {
+        return directoryOffset;
+    }
+
+    public long getDirectorySize() {
+        return directorySize;
+    }
+
+    /**
+     * Parse every central directory header, in directory order.
+     *
+     * @throws ZipException if a header is malformed
+     */
+    public List<Entry> readEntries() throws IOException {
+        ByteBuffer directory = directorySize > MAP_THRESHOLD
+                ? channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize)
+                : readDirectory();
+        directory.order(ByteOrder.LITTLE_ENDIAN);
+
+        List<Entry> entries = new ArrayList<>((int) entryCount);
+        int position = 0;
+        for (long index = 0; index < entryCount; index++) {
+            if (directory.limit() - position < CENTRAL_HEADER_SIZE
+                    || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("invalid CEN header (bad signature)");
+            }
+
+            int flags = unsignedShort(directory, position + 8);
+            int method = unsignedShort(directory, position + 10);
+            long crc = unsignedInt(directory, position + 16);
+            long compressedSize = unsignedInt(directory, position + 20);
+            long uncompressedSize = unsignedInt(directory, position + 24);
+            int nameLength = unsignedShort(directory, position + 28);
+            int extraLength = unsignedShort(directory, position + 30);
+            int commentLength = unsignedShort(directory, position + 32);
+            long localHeaderOffset = unsignedInt(directory, position + 42);
+
+            int nameOffset = position + CENTRAL_HEADER_SIZE;
+            int next = nameOffset + nameLength + extraLength + commentLength;
+            if (next > directory.limit()) {
+                throw new ZipException("invalid CEN header (bad header size)");
+            }
+
+            byte[] rawName = new byte[nameLength];
+            directory.get(nameOffset, rawName);
+
+            if (compressedSize == ZIP64_MARKER || uncompressedSize == ZIP64_MARKER || localHeaderOffset == ZIP64_MARKER) {
+                long[] sizes = {uncompressedSize, compressedSize, localHeaderOffset};
+                readZip64Extra(directory, nameOffset + nameLength, extraLength, sizes);
+                uncompressedSize = sizes[0];
+                compressedSize = sizes[1];
+                localHeaderOffset = sizes[2];
+            }
+
+            if (localHeaderOffset >= directoryOffset) {
+                throw new ZipException("invalid LOC header offset");
+            }
+
+            // Names are decoded as UTF-8 regardless of the language encoding flag, like ZipInputStream does
+            entries.add(new Entry(new String(rawName, StandardCharsets.UTF_8), rawName, flags, method, crc,
+                    compressedSize, uncompressedSize, localHeaderOffset));
+            position = next;
+        }
+
+        return entries;
+    }
+
+    /**
+     * Check that the entries do not overlap and that their local headers agree
+     * with the central directory. A local header is only read when the space
+     * between an entry and the next one differs from what the central
+     * directory implies, which for archives written by ordinary tools is never.
+     *
+     * @throws ZipException if entries overlap or a local header disagrees
+     */
+    public void verifyLayout(List<Entry> entries) throws IOException {
+        List<Entry> byOffset = new ArrayList<>(entries);
+        byOffset.sort(Comparator.comparingLong(Entry::localHeaderOffset));
+
+        ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < byOffset.size(); i++) {
+            Entry entry = byOffset.get(i);
+            long nextOffset = i + 1 < byOffset.size() ? byOffset.get(i + 1).localHeaderOffset() : directoryOffset;
+            long available = nextOffset - entry.localHeaderOffset();
+
+            // Without a local extra field, which is what most writers produce
+            long minimumLength = LOCAL_HEADER_SIZE + entry.rawName().length + entry.compressedSize();
+            if (available < minimumLength) {
+                throw new ZipException("overlapping entries: " + entry.name());
+            }
+            if (fitsExactly(entry, available - minimumLength)) {
+                continue;
+            }
+
+            long dataEnd = entry.localHeaderOffset() + readLocalHeaderLength(entry, localHeader) + entry.compressedSize();
+            if (dataEnd > nextOffset) {
+                throw new ZipException("overlapping entries: " + entry.name());
+            }
+        }
+    }
+
+    private static boolean fitsExactly(Entry entry, long slack) {
+        if ((entry.flags() & DATA_DESCRIPTOR_FLAG) == 0) {
+            return slack == 0;
+        }
+        for (long descriptorSize : DATA_DESCRIPTOR_SIZES) {
+            if (slack == descriptorSize) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Length of the local header including name and extra field
+     */
+    private long readLocalHeaderLength(Entry entry, ByteBuffer header) throws IOException {
+        header.clear();
+        if (ChannelIO.readFully(channel, header, entry.localHeaderOffset()) < LOCAL_HEADER_SIZE
+                || header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("invalid LOC header (bad signature): " + entry.name());
+        }
+
+        int nameLength = unsignedShort(header, 26);
+        int extraLength = unsignedShort(header, 28);
+        if (nameLength != entry.rawName().length) {
+            throw new ZipException("local header name does not match central directory: " + entry.name());
+        }
+
+        ByteBuffer name = ByteBuffer.allocate(nameLength);
+        ChannelIO.readFully(channel, name, entry.localHeaderOffset() + LOCAL_HEADER_SIZE);
+        if (!name.flip().equals(ByteBuffer.wrap(entry.rawName()))) {
+            throw new ZipException("local header name does not match central directory: " + entry.name());
+        }
+
+        return LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    private ByteBuffer readDirectory() throws IOException {
+        ByteBuffer directory = ByteBuffer.allocate((int) directorySize);
+        if (ChannelIO.readFully(channel, directory, directoryOffset) < directorySize) {
+            throw new ZipException("invalid END header (bad central directory size)");
+        }
+        return directory.flip();
+    }
+
+    private static ZipCentralDirectory locateZip64(FileChannel channel, long eocdOffset) throws IOException {
+        if (eocdOffset < ZIP64_LOCATOR_SIZE) {
+            throw new ZipException("invalid END header (missing ZIP64 locator)");
+        }
+
+        ByteBuffer locator = ByteBuffer.allocate(ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ChannelIO.readFully(channel, locator, eocdOffset - ZIP64_LOCATOR_SIZE);
+        if (locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE) {
+            throw new ZipException("invalid END header (missing ZIP64 locator)");
+        }
+
+        long zip64Offset = locator.getLong(8);
+        if (zip64Offset < 0 || zip64Offset > eocdOffset - ZIP64_LOCATOR_SIZE - ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new ZipException("invalid ZIP64 END header offset");
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ChannelIO.readFully(channel, record, zip64Offset);
+        if (record.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+            throw new ZipException("invalid ZIP64 END header (bad signature)");
+        }
+
+        return checked(channel, record.getLong(32), record.getLong(48), record.getLong(40), zip64Offset);
+    }
+
+    private static ZipCentralDirectory checked(FileChannel channel, long entryCount, long directoryOffset,
+                                               long directorySize, long endOffset) throws ZipException {
+        if (entryCount < 0 || directoryOffset < 0 || directorySize < 0
+                || directoryOffset + directorySize > endOffset) {
+            throw new ZipException("invalid END header (bad central directory offset)");
+        }
+        if (directorySize > Integer.MAX_VALUE || entryCount > directorySize / CENTRAL_HEADER_SIZE) {
+            throw new ZipException("invalid END header (bad central directory size)");
+        }
+        return new ZipCentralDirectory(channel, entryCount, directoryOffset, directorySize);
+    }
+
+    private static void readZip64Extra(ByteBuffer directory, int offset, int length, long[] values)
+            throws ZipException {
+        int end = offset + length;
+        while (offset + 4 <= end) {
+            int id = unsignedShort(directory, offset);
+            int size = unsignedShort(directory, offset + 2);
+            int data = offset + 4;
+            if (data + size > end) {
+                break;
+            }
+            if (id == ZIP64_EXTRA_FIELD_ID) {
+                int position = data;
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] == ZIP64_MARKER) {
+                        if (position + 8 > data + size) {
+                            throw new ZipException("invalid ZIP64 extra field");
+                        }
+                        values[i] = directory.getLong(position);
+                        if (values[i] < 0) {
+                            throw new ZipException("invalid ZIP64 extra field");
+                        }
+                        position += 8;
+                    }
+                }
+                return;
+            }
+            offset = data + size;
+        }
+        throw new ZipException("missing ZIP64 extra field");
+    }
+
+    private static int unsignedShort(ByteBuffer buffer, int offset) {
+        return Short.toUnsignedInt(buffer.getShort(offset));
+    }
+
+    private static long unsignedInt(ByteBuffer buffer, int offset) {
+        return Integer.toUnsignedLong(buffer.getInt(offset));
+    }
+}
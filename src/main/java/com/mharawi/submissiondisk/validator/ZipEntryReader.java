@@ -0,0 +1,259 @@
+package com.mharawi.submissiondisk.validator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the uncompressed content of the entries of a stored ZIP archive from
+ * the mapping of the whole file, so entries can be read concurrently (and
+ * reads cancelled) without sharing a channel.
+ *
+ * Only archives whose bytes are all accounted for by their entries are
+ * accepted: no prefix before the first entry, no gaps between entries and
+ * no archive comment. Anything hidden there would only be seen by scanning
+ * the archive as a whole.
+ */
+final class ZipEntryReader {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ENCRYPTED_FLAG = 0x01;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // End of central directory record, optionally preceded by the ZIP64 record and locator
+    private static final long END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final long ZIP64_TRAILER_SIZE = 56 + 20 + END_OF_CENTRAL_DIRECTORY_SIZE;
+    // Possible data descriptor lengths: with or without signature, 32- or 64-bit sizes
+    private static final long[] DATA_DESCRIPTOR_SIZES = {12, 16, 20, 24};
+
+    private final ByteBuffer archive;
+    private final List<ZipCentralDirectory.Entry> entries;
+    private final long[] dataOffsets;
+
+    private ZipEntryReader(ByteBuffer archive, List<ZipCentralDirectory.Entry> entries, long[] dataOffsets) {
+        this.archive = archive;
+        this.entries = entries;
+        this.dataOffsets = dataOffsets;
+    }
+
+    /**
+     * @param maxUncompressedSize Largest total size the entries may declare
+     * @return Reader for the entries that have content, or null if the
+     * archive can't be covered entry by entry: it is too large to map, has
+     * bytes outside its entries, encrypted or unusually compressed entries,
+     * or declares more than {@code maxUncompressedSize} bytes
+     * @throws ZipException if the archive is malformed
+     */
+    static ZipEntryReader open(InspectionContext context, long maxUncompressedSize) throws IOException {
+        long size = context.getAttributes().size();
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        ZipCentralDirectory directory = context.getZipDirectory();
+        long trailer = size - directory.getDirectoryOffset() - directory.getDirectorySize();
+        if (trailer != END_OF_CENTRAL_DIRECTORY_SIZE && trailer != ZIP64_TRAILER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer archive = context.getMappedBuffer().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        List<ZipCentralDirectory.Entry> byOffset = new ArrayList<>(context.getZipEntries());
+        byOffset.sort(Comparator.comparingLong(ZipCentralDirectory.Entry::localHeaderOffset));
+
+        List<ZipCentralDirectory.Entry> withContent = new ArrayList<>(byOffset.size());
+        List<Long> offsets = new ArrayList<>(byOffset.size());
+        long expectedOffset = 0;
+        long declared = 0;
+        for (int i = 0; i < byOffset.size(); i++) {
+            ZipCentralDirectory.Entry entry = byOffset.get(i);
+            if (entry.localHeaderOffset() != expectedOffset
+                    || (entry.flags() & ENCRYPTED_FLAG) != 0
+                    || entry.method() != STORED && entry.method() != DEFLATED) {
+                return null;
+            }
+
+            long dataOffset = dataOffset(archive, entry);
+            long nextOffset = i + 1 < byOffset.size()
+                    ? byOffset.get(i + 1).localHeaderOffset()
+                    : directory.getDirectoryOffset();
+            if (!fitsExactly(entry, nextOffset - dataOffset - entry.compressedSize())) {
+                return null;
+            }
+            expectedOffset = nextOffset;
+
+            if (entry.uncompressedSize() > 0 || entry.compressedSize() > 0) {
+                declared += entry.uncompressedSize();
+                if (declared > maxUncompressedSize) {
+                    return null;
+                }
+                withContent.add(entry);
+                offsets.add(dataOffset);
+            }
+        }
+        if (expectedOffset != directory.getDirectoryOffset()) {
+            return null;
+        }
+
+        return new ZipEntryReader(archive, withContent, offsets.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    /**
+     * @return Number of entries with content
+     */
+    int size() {
+        return entries.size();
+    }
+
+    ZipCentralDirectory.Entry entry(int index) {
+        return entries.get(index);
+    }
+
+    /**
+     * Open the uncompressed content of an entry. Reading fails if the entry
+     * inflates to more than it declares.
+     */
+    InputStream open(int index) throws ZipException {
+        ZipCentralDirectory.Entry entry = entries.get(index);
+        int start = (int) dataOffsets[index];
+        InputStream data = new InspectionContext.MappedInputStream(
+                archive.slice(start, (int) entry.compressedSize()));
+        if (entry.method() == STORED) {
+            return data;
+        }
+
+        Inflater inflater = new Inflater(true);
+        InputStream inflated = new InflaterInputStream(data, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+        return new BoundedInputStream(inflated, entry);
+    }
+
+    /**
+     * @return SHA-256 of the uncompressed content of an entry
+     * @throws ZipException if the content doesn't match the size the entry declares
+     */
+    byte[] digest(int index) throws IOException {
+        MessageDigest digest = newSha256Digest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long length = 0;
+        try (InputStream input = open(index)) {
+            int count;
+            while ((count = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+                length += count;
+                // Reads from the mapping don't notice interrupts by themselves
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while hashing " + entries.get(index).name());
+                }
+            }
+        } catch (EOFException e) {
+            throw new ZipException("unexpected end of ZIP entry data: " + entries.get(index).name());
+        }
+        if (length != entries.get(index).uncompressedSize()) {
+            throw new ZipException("ZIP entry size does not match its declared size: " + entries.get(index).name());
+        }
+        return digest.digest();
+    }
+
+    private static long dataOffset(ByteBuffer archive, ZipCentralDirectory.Entry entry) throws ZipException {
+        long offset = entry.localHeaderOffset();
+        if (offset + LOCAL_HEADER_SIZE > archive.limit() || archive.getInt((int) offset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("invalid LOC header (bad signature): " + entry.name());
+        }
+        int nameLength = Short.toUnsignedInt(archive.getShort((int) offset + 26));
+        int extraLength = Short.toUnsignedInt(archive.getShort((int) offset + 28));
+        long dataOffset = offset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        if (dataOffset + entry.compressedSize() > archive.limit()) {
+            throw new ZipException("invalid ZIP entry size: " + entry.name());
+        }
+        return dataOffset;
+    }
+
+    private static boolean fitsExactly(ZipCentralDirectory.Entry entry, long slack) {
+        if (slack == 0) {
+            return true;
+        }
+        if ((entry.flags() & DATA_DESCRIPTOR_FLAG) != 0) {
+            for (long descriptorSize : DATA_DESCRIPTOR_SIZES) {
+                if (slack == descriptorSize) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Fails instead of reading past the size an entry declares, so an entry
+     * can't inflate without bound before the content validator rejects it.
+     */
+    private static final class BoundedInputStream extends InputStream {
+
+        private final InputStream input;
+        private final ZipCentralDirectory.Entry entry;
+        private long remaining;
+
+        BoundedInputStream(InputStream input, ZipCentralDirectory.Entry entry) {
+            this.input = input;
+            this.entry = entry;
+            this.remaining = entry.uncompressedSize();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            // Ask for one byte more than is left, to notice an entry that keeps going
+            int count = input.read(bytes, offset, (int) Math.min(length, remaining + 1));
+            if (count > remaining) {
+                throw new ZipException("ZIP entry inflates beyond its declared size: " + entry.name());
+            }
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.io.ChannelIO;
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import com.mharawi.submissiondisk.io.PooledBuffer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates the entries of a stored archive to measure what they really
+ * expand to, instead of trusting the sizes the archive declares.
+ *
+ * Entries are inflated in parallel on a bounded pool shared by all
+ * validations, with {@link Inflater}s and buffers that are reused between
+ * entries. Inflation stops as soon as an entry exceeds its ratio budget or
+ * the archive as a whole exceeds the global byte budget, so a hostile archive
+ * costs at most a fixed amount of work no matter what it declares. Inflated
+ * entries are also checked against their CRC.
+ */
+@Component
+@Slf4j
+public class ZipInflationScanner {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ENCRYPTED_FLAG = 0x01;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    // Lets small entries compress well without tripping the ratio budget
+    private static final long ENTRY_ALLOWANCE = 64 * 1024;
+
+    private final DirectBufferPool bufferPool;
+    private final long maxUncompressedSize;
+    private final int maxCompressionRatio;
+    private final ForkJoinPool scanPool;
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    public ZipInflationScanner(
+            DirectBufferPool bufferPool,
+            @Value("${submission.zip.max-uncompressed-size:1073741824}") long maxUncompressedSize, // Default 1GB
+            @Value("${submission.max-compression-ratio:100}") int maxCompressionRatio,
+            @Value("${submission.zip.scan-parallelism:0}") int scanParallelism) {
+        this.bufferPool = bufferPool;
+        this.maxUncompressedSize = maxUncompressedSize;
+        this.maxCompressionRatio = maxCompressionRatio;
+        this.scanPool = new ForkJoinPool(scanParallelism > 0
+                ? scanParallelism
+                : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Inflate every entry within the budgets.
+     *
+     * @return Failure message if a budget was exceeded or an entry lied about its size, otherwise null
+     * @throws ZipException if an entry cannot be inflated
+     * @throws IOException  if the archive cannot be read
+     */
+    public String scan(FileChannel channel, List<ZipCentralDirectory.Entry> entries) throws IOException {
+        ScanBudget budget = new ScanBudget();
+
+        List<Future<?>> scans = new ArrayList<>(entries.size());
+        for (ZipCentralDirectory.Entry entry : entries) {
+            if (!entry.isDirectory()) {
+                scans.add(scanPool.submit(() -> {
+                    scanEntry(channel, entry, budget);
+                    return null;
+                }));
+            }
+        }
+
+        try {
+            for (Future<?> scan : scans) {
+                scan.get();
+            }
+        } catch (ExecutionException e) {
+            budget.reject(null);
+            scans.forEach(scan -> scan.cancel(false));
+            // Fork/join wraps checked exceptions, so look for the I/O failure down the chain
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+            }
+            throw new IllegalStateException("ZIP entry scan failed", e.getCause());
+        } catch (InterruptedException e) {
+            budget.reject(null);
+            scans.forEach(scan -> scan.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning ZIP entries", e);
+        }
+
+        return budget.rejection;
+    }
+
+    public long getMaxUncompressedSize() {
+        return maxUncompressedSize;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scanPool.shutdownNow();
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+
+    private void scanEntry(FileChannel channel, ZipCentralDirectory.Entry entry, ScanBudget budget)
+            throws IOException {
+        if (budget.isRejected()) {
+            return;
+        }
+        if ((entry.flags() & ENCRYPTED_FLAG) != 0) {
+            throw new ZipException("encrypted ZIP entry not supported: " + entry.name());
+        }
+
+        long dataOffset = dataOffset(channel, entry);
+        long inflated;
+        if (entry.method() == STORED) {
+            inflated = entry.compressedSize();
+            if (!budget.consume(inflated)) {
+                return;
+            }
+        } else if (entry.method() == DEFLATED) {
+            inflated = inflate(channel, entry, dataOffset, budget);
+            if (inflated < 0) {
+                return;
+            }
+        } else {
+            throw new ZipException("invalid compression method " + entry.method() + ": " + entry.name());
+        }
+
+        if (inflated != entry.uncompressedSize()) {
+            budget.reject("ZIP entry size does not match its declared size: " + entry.name());
+        }
+    }
+
+    /**
+     * @return Number of bytes the entry inflated to, or -1 if the scan was cut off
+     */
+    private long inflate(FileChannel channel, ZipCentralDirectory.Entry entry, long dataOffset, ScanBudget budget)
+            throws IOException {
+        long entryLimit = entry.compressedSize() * maxCompressionRatio + ENTRY_ALLOWANCE;
+        long inputPosition = dataOffset;
+        long inputEnd = dataOffset + entry.compressedSize();
+        long inflated = 0;
+
+        CRC32 crc = new CRC32();
+        Inflater inflater = borrowInflater();
+        try (PooledBuffer pooledInput = bufferPool.acquire(); PooledBuffer pooledOutput = bufferPool.acquire()) {
+            ByteBuffer input = pooledInput.buffer();
+            ByteBuffer output = pooledOutput.buffer();
+
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (inputPosition >= inputEnd) {
+                        throw new ZipException("unexpected end of ZIP entry data: " + entry.name());
+                    }
+                    input.clear().limit((int) Math.min(input.capacity(), inputEnd - inputPosition));
+                    int read = ChannelIO.readFully(channel, input, inputPosition);
+                    if (read < input.limit()) {
+                        throw new ZipException("unexpected end of ZIP entry data: " + entry.name());
+                    }
+                    inputPosition += read;
+                    inflater.setInput(input.flip());
+                }
+
+                output.clear();
+                int count = inflater.inflate(output);
+                if (count == 0 && inflater.needsDictionary()) {
+                    throw new ZipException("invalid ZIP entry data: " + entry.name());
+                }
+
+                crc.update(output.flip());
+                inflated += count;
+                if (inflated > entryLimit) {
+                    log.warn("ZIP entry {} inflates beyond {}x its compressed size", entry.name(),
+                            maxCompressionRatio);
+                    budget.reject("Suspicious compression ratio detected (possible zip bomb)");
+                    return -1;
+                }
+                if (!budget.consume(count)) {
+                    return -1;
+                }
+            }
+
+            if (crc.getValue() != entry.crc()) {
+                throw new ZipException("invalid entry CRC: " + entry.name());
+            }
+            return inflated;
+
+        } catch (DataFormatException e) {
+            throw new ZipException("invalid ZIP entry data: " + entry.name() + " (" + e.getMessage() + ")");
+        } finally {
+            returnInflater(inflater);
+        }
+    }
+
+    private long dataOffset(FileChannel channel, ZipCentralDirectory.Entry entry) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (ChannelIO.readFully(channel, header, entry.localHeaderOffset()) < LOCAL_HEADER_SIZE
+                || header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("invalid LOC header (bad signature): " + entry.name());
+        }
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+        long dataOffset = entry.localHeaderOffset() + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        if (dataOffset + entry.compressedSize() > channel.size()) {
+            throw new ZipException("invalid ZIP entry size: " + entry.name());
+        }
+        return dataOffset;
+    }
+
+    private Inflater borrowInflater() {
+        Inflater inflater = inflaters.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    private void returnInflater(Inflater inflater) {
+        inflater.reset();
+        inflaters.offer(inflater);
+    }
+
+    /**
+     * Bytes inflated so far for one archive, and the first reason to stop.
+     */
+    private class ScanBudget {
+
+        private final AtomicLong inflated = new AtomicLong();
+        private volatile boolean rejected;
+        private volatile String rejection;
+
+        boolean consume(long bytes) {
+            if (rejected) {
+                return false;
+            }
+            if (inflated.addAndGet(bytes) > maxUncompressedSize) {
+                reject("ZIP contents exceed the maximum uncompressed size (" + maxUncompressedSize + " bytes)");
+                return false;
+            }
+            return true;
+        }
+
+        synchronized void reject(String reason) {
+            if (!rejected) {
+                rejected = true;
+                rejection = reason;
+            }
+        }
+
+        boolean isRejected() {
+            return rejected;
+        }
+    }
+}
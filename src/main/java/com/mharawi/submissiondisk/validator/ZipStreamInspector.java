@@ -0,0 +1,213 @@
+package com.mharawi.submissiondisk.validator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental parser for the ZIP local file headers of an upload in flight.
+ * Applies the {@link FileContentValidator} rules to each entry as soon as its
+ * header and name have arrived, without buffering or inflating entry data.
+ *
+ * Entries whose compressed size is only known from a trailing data
+ * descriptor (or a ZIP64 extra field) cannot be skipped without inflating, so
+ * parsing stops there and the remaining entries are left to the full
+ * validation in the pipeline.
+ */
+class ZipStreamInspector implements UploadInspector {
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final long ZIP64_SIZE_MARKER = 0xFFFFFFFFL;
+
+    private enum State { HEADER, NAME, EXTRA, DATA, DONE }
+
+    private final String validatorName;
+    private final NamePolicy entryNamePolicy;
+    private final int maxZipEntries;
+    private final int maxCompressionRatio;
+    private final long declaredSize;
+    private final ValidationResult success;
+
+    private final byte[] header = new byte[LOCAL_HEADER_SIZE];
+    private byte[] name = new byte[256];
+
+    private State state = State.HEADER;
+    private int headerLength;
+    private int nameLength;
+    private int nameFilled;
+    private long remaining;
+    private boolean dataSizeKnown;
+    private long entryCompressedSize;
+
+    private int entryCount;
+    private long totalUncompressedSize;
+
+    /**
+     * @param declaredSize Declared length of the upload, or 0 when unknown. When
+     *                     known, the compression ratio is enforced per entry
+     *                     instead of only once the upload is complete.
+     */
+    ZipStreamInspector(String validatorName, NamePolicy entryNamePolicy, int maxZipEntries, int maxCompressionRatio,
+                       long declaredSize) {
+        this.validatorName = validatorName;
+        this.entryNamePolicy = entryNamePolicy;
+        this.maxZipEntries = maxZipEntries;
+        this.maxCompressionRatio = maxCompressionRatio;
+        this.declaredSize = declaredSize;
+        this.success = ValidationResult.success(validatorName);
+    }
+
+    @Override
+    public ValidationResult inspect(byte[] buffer, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+
+        while (position < end && state != State.DONE) {
+            int available = end - position;
+            switch (state) {
+                case HEADER -> {
+                    int copied = Math.min(available, LOCAL_HEADER_SIZE - headerLength);
+                    System.arraycopy(buffer, position, header, headerLength, copied);
+                    headerLength += copied;
+                    position += copied;
+
+                    ValidationResult result = onHeaderBytes();
+                    if (result != null) {
+                        return result;
+                    }
+                }
+                case NAME -> {
+                    int copied = Math.min(available, nameLength - nameFilled);
+                    System.arraycopy(buffer, position, name, nameFilled, copied);
+                    nameFilled += copied;
+                    position += copied;
+
+                    if (nameFilled == nameLength) {
+                        ValidationResult result = checkEntryName();
+                        if (result != null) {
+                            return result;
+                        }
+                        state = State.EXTRA;
+                    }
+                }
+                case EXTRA, DATA -> {
+                    int skipped = (int) Math.min(available, remaining);
+                    remaining -= skipped;
+                    position += skipped;
+
+                    if (remaining == 0) {
+                        advancePastSkippedBytes();
+                    }
+                }
+                default -> throw new IllegalStateException("Unexpected state: " + state);
+            }
+        }
+
+        return success;
+    }
+
+    @Override
+    public ValidationResult complete(long size) {
+        if (state != State.DONE && (state != State.HEADER || headerLength != 0)) {
+            return ValidationResult.failure(validatorName, "Invalid ZIP file format: truncated entry");
+        }
+
+        if (entryCount == 0) {
+            return ValidationResult.failure(validatorName, "ZIP file is empty");
+        }
+
+        if (size > 0 && totalUncompressedSize / size > maxCompressionRatio) {
+            return ValidationResult.failure(validatorName, "Suspicious compression ratio detected (possible zip bomb)");
+        }
+
+        return success;
+    }
+
+    private ValidationResult onHeaderBytes() {
+        if (headerLength >= 4) {
+            int signature = readInt(header, 0);
+            if (signature == CENTRAL_DIRECTORY_SIGNATURE || signature == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                // All local entries have been seen
+                state = State.DONE;
+                return null;
+            }
+            if (signature != LOCAL_HEADER_SIGNATURE) {
+                return ValidationResult.failure(validatorName, "Invalid ZIP file format: bad local header");
+            }
+        }
+
+        if (headerLength < LOCAL_HEADER_SIZE) {
+            return null;
+        }
+
+        entryCount++;
+        if (entryCount > maxZipEntries) {
+            return ValidationResult.failure(
+                    validatorName,
+                    "ZIP file contains too many entries (maximum: " + maxZipEntries + ")"
+            );
+        }
+
+        int flags = readShort(header, 6);
+        long compressedSize = readInt(header, 18) & 0xFFFFFFFFL;
+        long uncompressedSize = readInt(header, 22) & 0xFFFFFFFFL;
+        nameLength = readShort(header, 26);
+        remaining = readShort(header, 28);
+
+        dataSizeKnown = (flags & DATA_DESCRIPTOR_FLAG) == 0
+                && compressedSize != ZIP64_SIZE_MARKER && uncompressedSize != ZIP64_SIZE_MARKER;
+        if (dataSizeKnown) {
+            totalUncompressedSize += uncompressedSize;
+            if (declaredSize > 0 && totalUncompressedSize / declaredSize > maxCompressionRatio) {
+                return ValidationResult.failure(validatorName, "Suspicious compression ratio detected (possible zip bomb)");
+            }
+        }
+
+        if (name.length < nameLength) {
+            name = new byte[nameLength];
+        }
+        nameFilled = 0;
+        headerLength = 0;
+        state = State.NAME;
+
+        entryCompressedSize = compressedSize;
+        return null;
+    }
+
+    private void advancePastSkippedBytes() {
+        if (state == State.EXTRA) {
+            if (!dataSizeKnown) {
+                state = State.DONE;
+                return;
+            }
+            remaining = entryCompressedSize;
+            state = State.DATA;
+            if (remaining > 0) {
+                return;
+            }
+        }
+        state = State.HEADER;
+    }
+
+    /**
+     * Checks run on the raw name bytes, so no decoding is needed unless the
+     * name is rejected.
+     */
+    private ValidationResult checkEntryName() {
+        if (entryNamePolicy.check(name, 0, nameLength) != null) {
+            String entryName = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+            return ValidationResult.failure(validatorName, "ZIP contains invalid entry path: " + entryName);
+        }
+        return null;
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return readShort(bytes, offset) | readShort(bytes, offset + 2) << 16;
+    }
+}
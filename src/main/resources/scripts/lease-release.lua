@@ -0,0 +1,9 @@
+-- Give up a lease, but only if this node still holds it.
+-- KEYS[1]: lease key
+-- ARGV[1]: holder token
+-- Returns 1 if the lease was released, 0 otherwise
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,9 @@
+-- Extend a lease, but only for the node that holds it.
+-- KEYS[1]: lease key
+-- ARGV[1]: holder token, ARGV[2]: new duration (milliseconds)
+-- Returns 1 if the lease was extended, 0 if it is held by someone else or expired
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,32 @@
+-- Token bucket shared by all nodes.
+-- KEYS[1]: bucket key
+-- ARGV[1]: capacity (tokens), ARGV[2]: refill rate (tokens per millisecond), ARGV[3]: tokens requested
+-- Returns {allowed (1/0), milliseconds until enough tokens are available}
+
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local refill_per_ms = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+-- Use the Redis clock so node clock skew does not matter
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local state = redis.call('HMGET', key, 'tokens', 'ts')
+local tokens = tonumber(state[1]) or capacity
+local ts = tonumber(state[2]) or now
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * refill_per_ms)
+
+local allowed = 0
+local retry_after = 0
+if tokens >= requested then
+    tokens = tokens - requested
+    allowed = 1
+else
+    retry_after = math.ceil((requested - tokens) / refill_per_ms)
+end
+
+redis.call('HSET', key, 'tokens', tostring(tokens), 'ts', now)
+redis.call('PEXPIRE', key, math.ceil(capacity / refill_per_ms) + 1000)
+
+return {allowed, retry_after}
@@ -0,0 +1,160 @@
+package com.mharawi.submissiondisk.benchmark;
+
+import com.mharawi.submissiondisk.io.ChannelIO;
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import com.mharawi.submissiondisk.io.PooledBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Sustained concurrent reads of stored archives the way the checksum, virus
+ * scan and content validation paths do them: through freshly allocated heap
+ * streams and buffers, and through the pooled direct buffers.
+ *
+ * Run with the GC profiler to compare allocation rate and GC time:
+ * {@code ./gradlew jmh -PjmhArgs="FileReadBenchmark -prof gc"}
+ * and compare {@code gc.alloc.rate.norm} and {@code gc.time} between the
+ * heap and pooled variants.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx512m"})
+public class FileReadBenchmark {
+
+    @Param({"1048576", "16777216"})
+    private int fileSize;
+
+    private Path file;
+    private Path archive;
+    private DirectBufferPool bufferPool;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+
+        file = Files.createTempFile("read-benchmark", ".bin");
+        Files.write(file, content);
+
+        archive = Files.createTempFile("read-benchmark", ".zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int entry = 0; entry < 100; entry++) {
+                zip.putNextEntry(new ZipEntry("entry-" + entry + ".bin"));
+                zip.write(content, 0, fileSize / 100);
+                zip.closeEntry();
+            }
+        }
+
+        bufferPool = new DirectBufferPool(64 * 1024, 64, 50);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public byte[] digestHeapStream() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] digestPooledChannel() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             PooledBuffer pooledBuffer = bufferPool.acquire()) {
+            ByteBuffer buffer = pooledBuffer.buffer();
+            long position = 0;
+            int read;
+            while ((read = ChannelIO.readFully(channel, buffer.clear(), position)) > 0) {
+                digest.update(buffer.flip());
+                position += read;
+            }
+        }
+        return digest.digest();
+    }
+
+    @Benchmark
+    public long streamHeap() throws IOException {
+        return drain(new BufferedInputStream(Files.newInputStream(file)));
+    }
+
+    @Benchmark
+    public long streamPooled() throws IOException {
+        return drain(ChannelIO.newInputStream(file, bufferPool));
+    }
+
+    @Benchmark
+    public int zipEntriesHeap() throws IOException {
+        return countEntries(new ZipInputStream(Files.newInputStream(archive)));
+    }
+
+    @Benchmark
+    public int zipEntriesPooled() throws IOException {
+        return countEntries(new ZipInputStream(ChannelIO.newInputStream(archive, bufferPool)));
+    }
+
+    // Mimics the ClamAV client, which copies the stream in small chunks
+    private static long drain(InputStream inputStream) throws IOException {
+        try (inputStream) {
+            byte[] chunk = new byte[2048];
+            long total = 0;
+            int bytesRead;
+            while ((bytesRead = inputStream.read(chunk)) != -1) {
+                total += bytesRead;
+            }
+            return total;
+        }
+    }
+
+    private static int countEntries(ZipInputStream zipInputStream) throws IOException {
+        try (zipInputStream) {
+            int entries = 0;
+            while (zipInputStream.getNextEntry() != null) {
+                zipInputStream.closeEntry();
+                entries++;
+            }
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.mharawi.submissiondisk.benchmark;
+
+import com.mharawi.submissiondisk.hash.TreeHasher;
+import com.mharawi.submissiondisk.hash.XxHash64;
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing throughput of a file on disk, across file sizes: sequential SHA-256
+ * (what {@code Submission.checksum} needs), the parallel SHA-256 tree digest
+ * and sequential XXH64. Divide the file size by the reported time per
+ * operation for bytes per second.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=HashingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashingBenchmark {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({"1048576", "16777216", "268435456"})
+    private int fileSize;
+
+    @Param({"4194304"})
+    private int treeChunkSize;
+
+    private Path file;
+    private TreeHasher treeHasher;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = Files.createTempFile("hashing-benchmark", ".bin");
+        byte[] block = new byte[BUFFER_SIZE];
+        Random random = new Random(42);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < fileSize; written += block.length) {
+                random.nextBytes(block);
+                channel.write(ByteBuffer.wrap(block, 0, (int) Math.min(block.length, fileSize - written)));
+            }
+        }
+        treeHasher = new TreeHasher(treeChunkSize, new DirectBufferPool(64 * 1024, 64, 50));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] sha256Sequential() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (var inputStream = Files.newInputStream(file)) {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] sha256TreeParallel() throws IOException {
+        return treeHasher.digest(file);
+    }
+
+    @Benchmark
+    public long xxHash64Sequential() throws IOException {
+        XxHash64 hash = new XxHash64();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (var inputStream = Files.newInputStream(file)) {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                hash.update(buffer, 0, bytesRead);
+            }
+        }
+        return hash.getValue();
+    }
+}
@@ -0,0 +1,86 @@
+package com.mharawi.submissiondisk.benchmark;
+
+import com.mharawi.submissiondisk.validator.NamePolicies;
+import com.mharawi.submissiondisk.validator.NamePolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Name checks for one archive the way FilenameValidator and
+ * FileContentValidator used to do them (three {@code .*}-anchored regexes for
+ * the file name, {@code contains}/{@code startsWith} on decoded entry names)
+ * against the single-pass {@link NamePolicy} on the raw entry name bytes.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=NamePolicyBenchmark}, adding
+ * {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NamePolicyBenchmark {
+
+    private static final Pattern PATH_TRAVERSAL_PATTERN = Pattern.compile(".*[/\\\\]\\.\\.[\\\\/].*");
+    private static final Pattern INVALID_CHARS_PATTERN = Pattern.compile(".*[<>:\"|?*\\x00-\\x1F].*");
+    private static final Pattern ALLOWED_EXTENSIONS = Pattern.compile(".*\\.(zip|ZIP)$");
+
+    @Param({"100", "10000"})
+    private int entries;
+
+    private String filename;
+    private byte[][] rawEntryNames;
+    private NamePolicies policies;
+
+    @Setup(Level.Trial)
+    public void createNames() {
+        filename = "assignment-3-submission-final-revised.zip";
+        rawEntryNames = new byte[entries][];
+        for (int entry = 0; entry < entries; entry++) {
+            rawEntryNames[entry] = ("project/src/main/java/module-" + entry % 10 + "/Source" + entry + ".java")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        policies = new NamePolicies(255, "<>:\"|?*", List.of("zip"), 65535, "", true);
+    }
+
+    @Benchmark
+    public boolean regexAndDecodedNames() {
+        boolean valid = filename.length() <= 255
+                && !PATH_TRAVERSAL_PATTERN.matcher(filename).matches()
+                && !INVALID_CHARS_PATTERN.matcher(filename).matches()
+                && ALLOWED_EXTENSIONS.matcher(filename).matches()
+                && !filename.contains("\0");
+        for (byte[] rawName : rawEntryNames) {
+            // The central directory reader decoded every name
+            String entryName = new String(rawName, StandardCharsets.UTF_8);
+            valid &= !(entryName.contains("..") || entryName.startsWith("/") || entryName.contains("\\"));
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public boolean namePolicyOnRawBytes() {
+        boolean valid = policies.filename().check(filename) == null;
+        NamePolicy entryPolicy = policies.zipEntry();
+        for (byte[] rawName : rawEntryNames) {
+            valid &= entryPolicy.check(rawName, 0, rawName.length) == null;
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,170 @@
+package com.mharawi.submissiondisk.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Load generator for concurrent uploads against a running instance.
+ *
+ * Every request uploads a distinct, incompressible archive to the raw-body
+ * endpoint, optionally throttled to emulate slow client sockets, and the run
+ * reports throughput and latency percentiles. Run it once against an instance
+ * started with {@code spring.threads.virtual.enabled=false} and once with
+ * {@code true} (see {@code benchmark-virtual-threads.sh}).
+ *
+ * Arguments: baseUrl concurrency requests archiveBytes [clientKbps]
+ */
+public class UploadThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int archiveBytes = args.length > 3 ? Integer.parseInt(args[3]) : 1024 * 1024;
+        int clientKbps = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        URI uri = URI.create(baseUrl + "/api/submissions/stream");
+
+        long[] latencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+        AtomicInteger next = new AtomicInteger();
+
+        // Warm up the server before measuring
+        upload(client, uri, archive(archiveBytes, -1), 0);
+
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().factory())) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int worker = 0; worker < concurrency; worker++) {
+                futures.add(workers.submit(() -> {
+                    int request;
+                    while ((request = next.getAndIncrement()) < requests) {
+                        byte[] body = archive(archiveBytes, request);
+                        long requestStart = System.nanoTime();
+                        try {
+                            int status = upload(client, uri, body, clientKbps);
+                            if (status != 201) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[request] = System.nanoTime() - requestStart;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("requests=%d concurrency=%d archiveBytes=%d clientKbps=%d%n",
+                requests, concurrency, archiveBytes, clientKbps);
+        System.out.printf("throughput=%.1f req/s (%.1f MB/s) failures=%d%n",
+                requests / elapsedSeconds, requests * (double) archiveBytes / elapsedSeconds / (1024 * 1024),
+                failures.get());
+        System.out.printf("latency p50=%.1f ms p90=%.1f ms p99=%.1f ms max=%.1f ms%n",
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static int upload(HttpClient client, URI uri, byte[] body, int clientKbps)
+            throws IOException, InterruptedException {
+        HttpRequest.BodyPublisher publisher = clientKbps > 0
+                ? HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(() -> new ThrottledInputStream(body, clientKbps)),
+                        body.length)
+                : HttpRequest.BodyPublishers.ofByteArray(body);
+
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("API-Version", "1")
+                .header("Content-Type", "application/zip")
+                .header("Content-Disposition", "attachment; filename=\"benchmark.zip\"")
+                .header("X-Submitted-By", "benchmark")
+                .timeout(Duration.ofMinutes(5))
+                .POST(publisher)
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * A single stored entry of random bytes, so every archive is distinct and
+     * its size on the wire is predictable.
+     */
+    private static byte[] archive(int size, long seed) {
+        byte[] content = new byte[Math.max(1, size - 256)];
+        new Random(seed).nextBytes(content);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            ZipEntry entry = new ZipEntry("payload.bin");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(content);
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static double percentile(long[] sortedNanos, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Emulates a slow client by pacing reads to the given bandwidth.
+     */
+    private static class ThrottledInputStream extends FilterInputStream {
+
+        private static final int SLICE = 8 * 1024;
+
+        private final long nanosPerSlice;
+
+        ThrottledInputStream(byte[] body, int kbps) {
+            super(new ByteArrayInputStream(body));
+            this.nanosPerSlice = SLICE * 1_000_000_000L / (kbps * 1024L);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                Thread.sleep(Duration.ofNanos(nanosPerSlice));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            return super.read(buffer, offset, Math.min(length, SLICE));
+        }
+    }
+}
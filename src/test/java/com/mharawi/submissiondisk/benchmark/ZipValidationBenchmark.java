@@ -0,0 +1,129 @@
+package com.mharawi.submissiondisk.benchmark;
+
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import com.mharawi.submissiondisk.validator.ZipCentralDirectory;
+import com.mharawi.submissiondisk.validator.ZipInflationScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Listing the entries of a large archive the way FileContentValidator used to
+ * (walking it with ZipInputStream, which inflates every entry) against parsing
+ * the central directory, and the budgeted inflation scan on one thread
+ * against all cores.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=ZipValidationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZipValidationBenchmark {
+
+    @Param({"100", "10000"})
+    private int entries;
+
+    @Param({"65536"})
+    private int entrySize;
+
+    private Path archive;
+    private ZipInflationScanner singleThreadScanner;
+    private ZipInflationScanner parallelScanner;
+
+    @Setup(Level.Trial)
+    public void createArchive() throws IOException {
+        archive = Files.createTempFile("zip-validation-benchmark", ".zip");
+        Random random = new Random(42);
+        byte[] content = new byte[entrySize];
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int entry = 0; entry < entries; entry++) {
+                // Half random, half repeated, so entries compress but still take inflating
+                random.nextBytes(content);
+                Arrays.fill(content, entrySize / 2, entrySize, (byte) 'a');
+                zip.putNextEntry(new ZipEntry("dir-" + entry % 10 + "/entry-" + entry + ".bin"));
+                zip.write(content);
+                zip.closeEntry();
+            }
+        }
+
+        DirectBufferPool bufferPool = new DirectBufferPool(64 * 1024, 256, 50);
+        singleThreadScanner = new ZipInflationScanner(bufferPool, Long.MAX_VALUE, 100, 1);
+        parallelScanner = new ZipInflationScanner(bufferPool, Long.MAX_VALUE, 100, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteArchive() throws IOException {
+        singleThreadScanner.shutdown();
+        parallelScanner.shutdown();
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public long zipInputStream() throws IOException {
+        long total = 0;
+        try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                total += entry.getName().length() + entry.getSize();
+                zipInputStream.closeEntry();
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long centralDirectory() throws IOException {
+        long total = 0;
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            ZipCentralDirectory directory = ZipCentralDirectory.locate(channel);
+            List<ZipCentralDirectory.Entry> directoryEntries = directory.readEntries();
+            directory.verifyLayout(directoryEntries);
+            for (ZipCentralDirectory.Entry entry : directoryEntries) {
+                total += entry.name().length() + entry.uncompressedSize();
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public String inflationScanSingleThread() throws IOException {
+        return inflationScan(singleThreadScanner);
+    }
+
+    @Benchmark
+    public String inflationScanParallel() throws IOException {
+        return inflationScan(parallelScanner);
+    }
+
+    private String inflationScan(ZipInflationScanner scanner) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            return scanner.scan(channel, ZipCentralDirectory.locate(channel).readEntries());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.mharawi.submissiondisk.clamav;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClamdBatchScannerTests {
+
+    private static final String DIRECTORY = "/data/uploads/.clamd-batches/b1";
+    private static final long MIB = 1024 * 1024;
+
+    private final ClamdClient client = mock(ClamdClient.class);
+
+    @TempDir
+    Path storage;
+
+    @Test
+    void reportsEveryFileCleanOnlyWithTheDirectoryOk() {
+        List<ClamdBatchScanner.Request> batch = batchOf(3);
+
+        List<ClamdBatchScanner.Request> unresolved = ClamdBatchScanner.resolve("MULTISCAN", batch, DIRECTORY,
+                new ClamdClient.Reply("clamd:3310", List.of(DIRECTORY + ": OK")));
+
+        assertThat(unresolved).isEmpty();
+        assertThat(batch).allSatisfy(request ->
+                assertThat(request.verdict().join()).isEqualTo(new ClamdVerdict("clamd:3310", null)));
+    }
+
+    @Test
+    void leavesTheRestOfABatchWithFindingsUnresolved() {
+        List<ClamdBatchScanner.Request> batch = batchOf(3);
+
+        List<ClamdBatchScanner.Request> unresolved = ClamdBatchScanner.resolve("MULTISCAN", batch, DIRECTORY,
+                new ClamdClient.Reply("clamd:3310", List.of(DIRECTORY + "/1: Eicar-Signature FOUND")));
+
+        assertThat(batch.get(1).verdict().join()).isEqualTo(new ClamdVerdict("clamd:3310", "Eicar-Signature"));
+        assertThat(unresolved).containsExactly(batch.get(0), batch.get(2));
+    }
+
+    @Test
+    void leavesFilesClamdCouldNotReadUnresolved() {
+        List<ClamdBatchScanner.Request> batch = batchOf(2);
+
+        List<ClamdBatchScanner.Request> unresolved = ClamdBatchScanner.resolve("MULTISCAN", batch, DIRECTORY,
+                new ClamdClient.Reply("clamd:3310", List.of(
+                        DIRECTORY + "/0: Can't open file or directory ERROR",
+                        DIRECTORY + ": OK")));
+
+        assertThat(unresolved).containsExactly(batch.get(0));
+        assertThat(batch.get(1).verdict().join().isInfected()).isFalse();
+    }
+
+    @Test
+    void ignoresLinesForUnknownFiles() {
+        List<ClamdBatchScanner.Request> batch = batchOf(2);
+
+        List<ClamdBatchScanner.Request> unresolved = ClamdBatchScanner.resolve("MULTISCAN", batch, DIRECTORY,
+                new ClamdClient.Reply("clamd:3310", List.of(
+                        DIRECTORY + "/7: Eicar-Signature FOUND",
+                        DIRECTORY + "/x: Eicar-Signature FOUND",
+                        "/elsewhere/0: Eicar-Signature FOUND")));
+
+        assertThat(unresolved).containsExactlyElementsOf(batch);
+    }
+
+    @Test
+    void parsesFileIndexBeforeSeparator() {
+        int from = DIRECTORY.length() + 1;
+
+        assertThat(ClamdBatchScanner.fileIndex(DIRECTORY + "/12: OK", from)).isEqualTo(12);
+        assertThat(ClamdBatchScanner.fileIndex(DIRECTORY + "/12", from)).isEqualTo(-1);
+        assertThat(ClamdBatchScanner.fileIndex(DIRECTORY + "/: OK", from)).isEqualTo(-1);
+        assertThat(ClamdBatchScanner.fileIndex(DIRECTORY + "/1a: OK", from)).isEqualTo(-1);
+        // Too many digits to be a position in a batch, and to fit an int
+        assertThat(ClamdBatchScanner.fileIndex(DIRECTORY + "/99999999999: OK", from)).isEqualTo(-1);
+    }
+
+    @Test
+    void waitsLongerForLargerBatchesUpToTheCap() {
+        ClamdBatchScanner scanner = scanner();
+        try {
+            assertThat(scanner.timeout(0)).isEqualTo(10_000);
+            assertThat(scanner.timeout(3 * MIB + 1)).isEqualTo(14_000);
+            assertThat(scanner.timeout(96 * MIB)).isEqualTo(75_000);
+        } finally {
+            scanner.close();
+        }
+    }
+
+    @Test
+    void reportsClamdUnavailableWhenABatchGetsNoReplyInTime() throws Exception {
+        Path file = Files.write(storage.resolve("submission.zip"), new byte[1024]);
+        when(client.execute(anyString(), anyInt())).thenThrow(new SocketTimeoutException("Read timed out"));
+        ClamdBatchScanner scanner = scanner();
+        try {
+            assertThatThrownBy(() -> scanner.scan(file)).isInstanceOf(ClamdUnavailableException.class);
+            verify(client).execute(anyString(), eq(11_000));
+            // Scanning file by file would run past the caller's timeout
+            verify(client, never()).scan(any(Path.class));
+        } finally {
+            scanner.close();
+        }
+    }
+
+    private ClamdBatchScanner scanner() {
+        return new ClamdBatchScanner(client, storage, "/data/uploads", "MULTISCAN", 32, 1,
+                10_000, 1000, 75_000, new SimpleMeterRegistry());
+    }
+
+    private static List<ClamdBatchScanner.Request> batchOf(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> new ClamdBatchScanner.Request(Path.of("file-" + i + ".zip"),
+                        new CompletableFuture<>()))
+                .toList();
+    }
+}
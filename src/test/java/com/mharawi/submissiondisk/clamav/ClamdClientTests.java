@@ -0,0 +1,191 @@
+package com.mharawi.submissiondisk.clamav;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClamdClientTests {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final FakeClamd clamd = new FakeClamd();
+    private ClamdClient client;
+
+    @TempDir
+    Path directory;
+
+    ClamdClientTests() throws IOException {
+    }
+
+    @BeforeEach
+    void setUp() {
+        client = client(endpoint(clamd.address(), 60_000));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        clamd.close();
+    }
+
+    @Test
+    void reportsCleanContent() throws IOException {
+        ClamdVerdict verdict = client.scan(file("clean.zip", "harmless content"));
+
+        assertThat(verdict).isEqualTo(new ClamdVerdict(clamd.address(), null));
+    }
+
+    @Test
+    void reportsTheSignatureOfInfectedContent() throws IOException {
+        ClamdVerdict verdict = client.scan(file("infected.zip", "X5O!P%@AP[4\\PZX54(P^)7CC)7}$EICAR"));
+
+        assertThat(verdict).isEqualTo(new ClamdVerdict(clamd.address(), "Eicar-Test-Signature"));
+    }
+
+    @Test
+    void rejectsContentClamdCouldNotScan() throws IOException {
+        Path file = file("large.zip", "TOO-LARGE");
+
+        assertThatThrownBy(() -> client.scan(file))
+                .isInstanceOf(ClamdException.class)
+                .hasMessageContaining("size limit exceeded");
+    }
+
+    @Test
+    void scansContentThatIsNotAFile() throws IOException {
+        byte[] entry = "EICAR in an archive entry".getBytes(StandardCharsets.US_ASCII);
+
+        ClamdVerdict verdict = client.scan("entry.txt", entry.length, () -> new ByteArrayInputStream(entry));
+
+        assertThat(verdict.virus()).isEqualTo("Eicar-Test-Signature");
+    }
+
+    @Test
+    void reusesTheSessionConnection() throws IOException {
+        Path file = file("clean.zip", "harmless content");
+
+        client.scan(file);
+        client.scan(file);
+        assertThat(client.version()).isEqualTo(FakeClamd.VERSION);
+
+        // Replies are numbered per session, so the second scan checked it got reply 2
+        assertThat(clamd.connections()).isEqualTo(1);
+        assertThat(client.getEndpoints().getFirst().getOpenConnections()).isEqualTo(1);
+    }
+
+    @Test
+    void failsOverToTheNextEndpoint() throws IOException {
+        ClamdEndpoint down = endpoint(FakeClamd.closedAddress(), 60_000);
+        ClamdEndpoint up = endpoint(clamd.address(), 60_000);
+        ClamdClient failover = client(down, up);
+        try {
+            ClamdVerdict verdict = failover.scan(file("clean.zip", "harmless content"));
+
+            assertThat(verdict.endpoint()).isEqualTo(clamd.address());
+            assertThat(down.isHealthy()).isFalse();
+            assertThat(up.isHealthy()).isTrue();
+        } finally {
+            failover.close();
+        }
+    }
+
+    @Test
+    void reportsClamdUnavailableWhenNoEndpointAnswers() throws IOException {
+        ClamdClient unavailable = client(endpoint(FakeClamd.closedAddress(), 60_000));
+        try {
+            Path file = file("clean.zip", "harmless content");
+
+            assertThatThrownBy(() -> unavailable.scan(file)).isInstanceOf(ClamdUnavailableException.class);
+        } finally {
+            unavailable.close();
+        }
+    }
+
+    @Test
+    void evictsIdleConnectionsBeforeClamdDropsThem() throws Exception {
+        ClamdEndpoint endpoint = ClamdEndpoint.parse(clamd.address(), 2, 1000, 60_000, 10_000, 50,
+                new CircuitBreaker(5, 30_000));
+        assertThat(endpoint.ping()).isEqualTo("PONG");
+        assertThat(endpoint.getOpenConnections()).isEqualTo(1);
+
+        Thread.sleep(100);
+        endpoint.evictIdle();
+
+        assertThat(endpoint.getOpenConnections()).isZero();
+        awaitEndedSessions(1);
+        assertThat(endpoint.ping()).isEqualTo("PONG");
+        assertThat(clamd.connections()).isEqualTo(2);
+        endpoint.close();
+    }
+
+    @Test
+    @Timeout(10)
+    void givesUpOnAClamdThatStopsReading() {
+        clamd.stall();
+        ClamdEndpoint endpoint = endpoint(clamd.address(), 500);
+
+        // Far more than the socket buffers hold, so the write blocks
+        assertThatThrownBy(() -> endpoint.execute(connection -> connection.instream(zeros(256 * CHUNK_SIZE),
+                CHUNK_SIZE)))
+                .isInstanceOf(SocketTimeoutException.class);
+        assertThat(endpoint.getOpenConnections()).isZero();
+    }
+
+    private void awaitEndedSessions(int sessions) throws InterruptedException {
+        for (int i = 0; i < 100 && clamd.endedSessions() < sessions; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(clamd.endedSessions()).isEqualTo(sessions);
+    }
+
+    private Path file(String name, String content) throws IOException {
+        return Files.writeString(directory.resolve(name), content);
+    }
+
+    private static ClamdEndpoint endpoint(String address, int writeTimeoutMillis) {
+        return ClamdEndpoint.parse(address, 2, 1000, 60_000, writeTimeoutMillis, 20_000,
+                new CircuitBreaker(5, 30_000));
+    }
+
+    private static ClamdClient client(ClamdEndpoint... endpoints) {
+        return new ClamdClient(List.of(endpoints), CHUNK_SIZE, 0.95, 500, 0, new SimpleMeterRegistry());
+    }
+
+    private static InputStream zeros(long size) {
+        return new InputStream() {
+            private long remaining = size;
+
+            @Override
+            public int read() {
+                return remaining-- > 0 ? 0 : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = (int) Math.min(length, remaining);
+                Arrays.fill(buffer, offset, offset + read, (byte) 0);
+                remaining -= read;
+                return read;
+            }
+        };
+    }
+}
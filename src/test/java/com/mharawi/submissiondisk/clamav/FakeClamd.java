@@ -0,0 +1,172 @@
+package com.mharawi.submissiondisk.clamav;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * clamd on a local port, speaking enough of its protocol for the client:
+ * IDSESSION with numbered replies, PING, VERSION, INSTREAM and END.
+ *
+ * Streamed content containing {@code EICAR} is reported infected, content
+ * containing {@code TOO-LARGE} gets the error clamd sends past its
+ * StreamMaxLength, anything else is clean. A stalled daemon stops reading
+ * once an INSTREAM starts, like clamd reloading its signatures.
+ */
+final class FakeClamd implements Closeable {
+
+    static final String VERSION = "ClamAV 1.4.1/27000/Mon Oct 12 08:00:00 2026";
+
+    private final ServerSocket server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger endedSessions = new AtomicInteger();
+    private volatile boolean stalled;
+
+    FakeClamd() throws IOException {
+        server = new ServerSocket();
+        // Small, so a client writing to a stalled daemon blocks soon
+        server.setReceiveBufferSize(4096);
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+        executor.execute(this::accept);
+    }
+
+    /**
+     * @return A host:port nothing listens on
+     */
+    static String closedAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+            return "127.0.0.1:" + socket.getLocalPort();
+        }
+    }
+
+    String address() {
+        return "127.0.0.1:" + server.getLocalPort();
+    }
+
+    /**
+     * @return Connections accepted so far
+     */
+    int connections() {
+        return connections.get();
+    }
+
+    /**
+     * @return Sessions the client ended with END
+     */
+    int endedSessions() {
+        return endedSessions.get();
+    }
+
+    void stall() {
+        stalled = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                connections.incrementAndGet();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream output = socket.getOutputStream();
+            boolean session = false;
+            int command = 0;
+            String line;
+            while ((line = readCommand(input)) != null) {
+                if (line.equals("IDSESSION")) {
+                    session = true;
+                    continue;
+                }
+                if (line.equals("END")) {
+                    endedSessions.incrementAndGet();
+                    return;
+                }
+
+                String reply;
+                if (line.equals("PING")) {
+                    reply = "PONG";
+                } else if (line.equals("VERSION")) {
+                    reply = VERSION;
+                } else if (line.equals("INSTREAM")) {
+                    if (stalled) {
+                        Thread.sleep(Long.MAX_VALUE);
+                    }
+                    reply = scan(readStream(input));
+                } else {
+                    reply = "UNKNOWN COMMAND";
+                }
+                String numbered = session ? ++command + ": " + reply : reply;
+                output.write((numbered + "\0").getBytes(StandardCharsets.US_ASCII));
+                output.flush();
+                if (!session) {
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // The client went away or the daemon was closed
+        }
+    }
+
+    private static String readCommand(DataInputStream input) throws IOException {
+        int prefix = input.read();
+        if (prefix < 0) {
+            return null;
+        }
+        if (prefix != 'z') {
+            throw new IOException("Commands must be null-terminated: " + (char) prefix);
+        }
+        ByteArrayOutputStream command = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) > 0) {
+            command.write(b);
+        }
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return command.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] readStream(DataInputStream input) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        int length;
+        while ((length = input.readInt()) > 0) {
+            content.write(input.readNBytes(length));
+        }
+        return content.toByteArray();
+    }
+
+    private static String scan(byte[] content) {
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        if (text.contains("TOO-LARGE")) {
+            return "INSTREAM size limit exceeded. ERROR";
+        }
+        return text.contains("EICAR") ? "stream: Eicar-Test-Signature FOUND" : "stream: OK";
+    }
+}
@@ -0,0 +1,66 @@
+package com.mharawi.submissiondisk.hash;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CuckooFilterTests {
+
+    @Test
+    void neverMissesAddedItemsWhileGrowing() {
+        CuckooFilter filter = new CuckooFilter(1_000);
+        long[] items = new SplittableRandom(1).longs(100_000).toArray();
+        for (long item : items) {
+            filter.add(item);
+        }
+
+        assertThat(filter.size()).isEqualTo(items.length);
+        for (long item : items) {
+            assertThat(filter.count(item)).isPositive();
+        }
+    }
+
+    @Test
+    void keepsFalsePositivesRare() {
+        CuckooFilter filter = new CuckooFilter(100_000);
+        new SplittableRandom(1).longs(100_000).forEach(filter::add);
+
+        long falsePositives = new SplittableRandom(2).longs(100_000).filter(item -> filter.count(item) > 0).count();
+
+        assertThat(falsePositives).isLessThan(100);
+    }
+
+    @Test
+    void countsAndRemovesCopies() {
+        CuckooFilter filter = new CuckooFilter(100);
+        long item = XxHash64.hash(new byte[]{1, 2, 3});
+        filter.add(item);
+        filter.add(item);
+
+        assertThat(filter.count(item)).isEqualTo(2);
+        assertThat(filter.remove(item)).isTrue();
+        assertThat(filter.count(item)).isEqualTo(1);
+        assertThat(filter.remove(item)).isTrue();
+        assertThat(filter.count(item)).isZero();
+        assertThat(filter.remove(item)).isFalse();
+    }
+
+    @Test
+    void saturatesInsteadOfGrowingOnRepeatedItem() {
+        CuckooFilter filter = new CuckooFilter(1_000);
+        long memory = filter.memoryBytes();
+        long item = XxHash64.hash(new byte[]{1, 2, 3});
+        for (int i = 0; i < 1_000; i++) {
+            filter.add(item);
+        }
+
+        assertThat(filter.memoryBytes()).isEqualTo(memory);
+        assertThat(filter.size()).isEqualTo(CuckooFilter.MAX_COPIES);
+        assertThat(filter.count(item)).isEqualTo(CuckooFilter.MAX_COPIES);
+        // Never drops below the copies that may remain
+        assertThat(filter.remove(item)).isFalse();
+        assertThat(filter.count(item)).isEqualTo(CuckooFilter.MAX_COPIES);
+    }
+}
@@ -0,0 +1,77 @@
+package com.mharawi.submissiondisk.hash;
+
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TreeHasherTests {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    // Smaller than a chunk, so each leaf is read in several slices
+    private static final DirectBufferPool BUFFER_POOL = new DirectBufferPool(300, 4, 50);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void singleChunkIsPrefixedLeafHash() throws Exception {
+        byte[] content = randomBytes(CHUNK_SIZE);
+
+        assertThat(new TreeHasher(CHUNK_SIZE, BUFFER_POOL).digest(write(content))).isEqualTo(leaf(content));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2 * CHUNK_SIZE, 3 * CHUNK_SIZE + 1, 7 * CHUNK_SIZE, 13 * CHUNK_SIZE - 5})
+    void matchesSequentialMerkleRoot(int size) throws Exception {
+        byte[] content = randomBytes(size);
+
+        assertThat(new TreeHasher(CHUNK_SIZE, BUFFER_POOL).digest(write(content))).isEqualTo(root(content, 0, chunks(size)));
+    }
+
+    private Path write(byte[] content) throws Exception {
+        Path file = Files.createTempFile(tempDir, "tree", ".bin");
+        Files.write(file, content);
+        return file;
+    }
+
+    private static int chunks(int size) {
+        return Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    // Straightforward RFC 6962 reference implementation
+    private static byte[] root(byte[] content, int first, int count) throws Exception {
+        if (count == 1) {
+            int from = first * CHUNK_SIZE;
+            return leaf(Arrays.copyOfRange(content, from, Math.min(content.length, from + CHUNK_SIZE)));
+        }
+        int split = Integer.highestOneBit(count - 1);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((byte) 0x01);
+        digest.update(root(content, first, split));
+        digest.update(root(content, first + split, count - split));
+        return digest.digest();
+    }
+
+    private static byte[] leaf(byte[] chunk) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((byte) 0x00);
+        return digest.digest(chunk);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,38 @@
+package com.mharawi.submissiondisk.hash;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class XxHash64Tests {
+
+    @Test
+    void matchesReferenceValues() {
+        assertThat(XxHash64.hash(new byte[0])).isEqualTo(0xEF46DB3751D8E999L);
+        assertThat(XxHash64.hash(bytes("abc"))).isEqualTo(0x44BC2CF5AD770999L);
+        assertThat(XxHash64.hash(bytes("Nobody inspects the spammish repetition"))).isEqualTo(0xFBCEA83C8A378BF1L);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 31, 32, 33, 4096})
+    void isIndependentOfUpdateSizes(int updateSize) {
+        byte[] content = new byte[100_003];
+        new Random(1).nextBytes(content);
+
+        XxHash64 hash = new XxHash64();
+        for (int offset = 0; offset < content.length; offset += updateSize) {
+            hash.update(content, offset, Math.min(updateSize, content.length - offset));
+        }
+
+        assertThat(hash.getValue()).isEqualTo(XxHash64.hash(content));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,95 @@
+package com.mharawi.submissiondisk.pipeline;
+
+import com.mharawi.submissiondisk.config.KafkaTopicConfig;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsResult;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConsumerLagMonitorTests {
+
+    private static final String GROUP_ID = "submission-pipeline";
+
+    private static final TopicPartition VALIDATION = new TopicPartition(KafkaTopicConfig.SUBMISSION_VALIDATION, 0);
+    private static final TopicPartition STORAGE = new TopicPartition(KafkaTopicConfig.SUBMISSION_STORAGE, 0);
+    private static final TopicPartition PROCESSING = new TopicPartition(KafkaTopicConfig.SUBMISSION_PROCESSING, 1);
+    private static final TopicPartition NOTIFICATION = new TopicPartition(KafkaTopicConfig.SUBMISSION_NOTIFICATION, 0);
+
+    private final AdminClient adminClient = mock(AdminClient.class);
+    private ConsumerLagMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        monitor = new ConsumerLagMonitor(mock(KafkaAdmin.class));
+        ReflectionTestUtils.setField(monitor, "groupId", GROUP_ID);
+        ReflectionTestUtils.setField(monitor, "adminClient", adminClient);
+    }
+
+    @Test
+    void reportsUnknownLagBeforeTheFirstMeasurement() {
+        assertThat(monitor.getCurrentLag()).isEqualTo(-1);
+    }
+
+    @Test
+    void sumsTheLagOfTheStageTopics() {
+        Map<TopicPartition, OffsetAndMetadata> committed = new HashMap<>();
+        committed.put(VALIDATION, new OffsetAndMetadata(10));
+        committed.put(STORAGE, new OffsetAndMetadata(5));
+        // Partitions the group has not committed on yet come back without an offset
+        committed.put(PROCESSING, null);
+        // The notification stage does not hold up ingest
+        committed.put(NOTIFICATION, new OffsetAndMetadata(0));
+        givenCommittedOffsets(committed);
+        givenLatestOffsets(Map.of(VALIDATION, 25L, STORAGE, 5L));
+
+        monitor.refresh();
+
+        assertThat(monitor.getCurrentLag()).isEqualTo(15);
+    }
+
+    @Test
+    void forgetsTheLagWhenKafkaCannotBeReached() {
+        givenCommittedOffsets(Map.of(VALIDATION, new OffsetAndMetadata(10)));
+        givenLatestOffsets(Map.of(VALIDATION, 25L));
+        monitor.refresh();
+
+        when(adminClient.listConsumerGroupOffsets(GROUP_ID)).thenThrow(new KafkaException("Broker unreachable"));
+        monitor.refresh();
+
+        // Admission is not held back by a stale or missing measurement
+        assertThat(monitor.getCurrentLag()).isEqualTo(-1);
+    }
+
+    private void givenCommittedOffsets(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        ListConsumerGroupOffsetsResult result = mock(ListConsumerGroupOffsetsResult.class);
+        when(result.partitionsToOffsetAndMetadata()).thenReturn(KafkaFuture.completedFuture(offsets));
+        when(adminClient.listConsumerGroupOffsets(GROUP_ID)).thenReturn(result);
+    }
+
+    private void givenLatestOffsets(Map<TopicPartition, Long> offsets) {
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> latest = new HashMap<>();
+        offsets.forEach((partition, offset) ->
+                latest.put(partition, new ListOffsetsResult.ListOffsetsResultInfo(offset, -1, Optional.empty())));
+        ListOffsetsResult result = mock(ListOffsetsResult.class);
+        when(result.all()).thenReturn(KafkaFuture.completedFuture(latest));
+        when(adminClient.listOffsets(argThat((Map<TopicPartition, OffsetSpec> request) ->
+                request.keySet().equals(offsets.keySet())))).thenReturn(result);
+    }
+}
@@ -0,0 +1,126 @@
+package com.mharawi.submissiondisk.pipeline;
+
+import com.mharawi.submissiondisk.config.KafkaTopicConfig;
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StageBatchTests {
+
+    private static final Set<SubmissionStatus> EXPECTED = Set.of(SubmissionStatus.PENDING);
+
+    private final SubmissionRepository submissionRepository = mock(SubmissionRepository.class);
+    private final SubmissionProducer submissionProducer = mock(SubmissionProducer.class);
+
+    @Test
+    void handlesEveryReadableRecordDespiteFailures() {
+        List<SubmissionEvent> records = Arrays.asList(event(1), null, event(2), event(3));
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+        StageBatch batch = new StageBatch();
+
+        batch.handle("validation", records, 2, event -> {
+            handled.add(event.getSubmissionId());
+            if (event.getSubmissionId() == 2) {
+                throw new IllegalStateException("Handler failed");
+            }
+            batch.add(StatusUpdate.to(event.getSubmissionId(), EXPECTED, SubmissionStatus.VALIDATED), event,
+                    KafkaTopicConfig.SUBMISSION_STORAGE);
+        });
+
+        assertThat(handled).containsExactlyInAnyOrder(1L, 2L, 3L);
+        when(submissionRepository.updateStatuses(anyList())).thenReturn(new int[]{1, 1});
+        batch.apply(submissionRepository, submissionProducer);
+        verify(submissionRepository).updateStatuses(argThat(updates ->
+                updates.stream().map(StatusUpdate::id).sorted().toList().equals(List.of(1L, 3L))));
+    }
+
+    @Test
+    void publishesOnlyTheChangesThatApplied() {
+        StageBatch batch = new StageBatch();
+        SubmissionEvent applied = event(1);
+        SubmissionEvent redelivered = event(2);
+        batch.add(StatusUpdate.to(1L, EXPECTED, SubmissionStatus.VALIDATED), applied,
+                KafkaTopicConfig.SUBMISSION_STORAGE, KafkaTopicConfig.SUBMISSION_COMPLETED);
+        batch.add(StatusUpdate.to(2L, EXPECTED, SubmissionStatus.VALIDATED), redelivered,
+                KafkaTopicConfig.SUBMISSION_STORAGE);
+        when(submissionRepository.updateStatuses(anyList())).thenReturn(new int[]{1, 0});
+
+        batch.apply(submissionRepository, submissionProducer);
+
+        verify(submissionProducer).sendEvents(KafkaTopicConfig.SUBMISSION_STORAGE, List.of(applied));
+        verify(submissionProducer).sendEvents(KafkaTopicConfig.SUBMISSION_COMPLETED, List.of(applied));
+    }
+
+    @Test
+    void publishesNothingWhenNoChangeApplied() {
+        StageBatch batch = new StageBatch();
+        batch.add(StatusUpdate.to(1L, EXPECTED, SubmissionStatus.VALIDATED), event(1),
+                KafkaTopicConfig.SUBMISSION_STORAGE);
+        when(submissionRepository.updateStatuses(anyList())).thenReturn(new int[]{0});
+
+        batch.apply(submissionRepository, submissionProducer);
+
+        verify(submissionProducer, never()).sendEvents(anyString(), any());
+    }
+
+    @Test
+    void republishesWhenRedeliveredAfterTheChangeCommitted() {
+        // Applies changes the way the conditional UPDATE does
+        Map<Long, SubmissionStatus> statuses = new HashMap<>(Map.of(1L, SubmissionStatus.PENDING));
+        when(submissionRepository.updateStatuses(anyList())).thenAnswer(invocation -> {
+            List<StatusUpdate> updates = invocation.getArgument(0);
+            return updates.stream().mapToInt(update -> {
+                SubmissionStatus current = statuses.get(update.id());
+                if (!update.expected().contains(current) && current != update.status()) {
+                    return 0;
+                }
+                statuses.put(update.id(), update.status());
+                return 1;
+            }).toArray();
+        });
+        doThrow(new IllegalStateException("Broker unavailable")).doNothing()
+                .when(submissionProducer).sendEvents(anyString(), any());
+        SubmissionEvent event = event(1);
+
+        StageBatch first = new StageBatch();
+        first.add(StatusUpdate.to(1L, EXPECTED, SubmissionStatus.VALIDATED), event,
+                KafkaTopicConfig.SUBMISSION_STORAGE);
+        assertThatThrownBy(() -> first.apply(submissionRepository, submissionProducer))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(statuses).containsEntry(1L, SubmissionStatus.VALIDATED);
+
+        StageBatch redelivered = new StageBatch();
+        redelivered.add(StatusUpdate.to(1L, EXPECTED, SubmissionStatus.VALIDATED), event,
+                KafkaTopicConfig.SUBMISSION_STORAGE);
+        redelivered.apply(submissionRepository, submissionProducer);
+
+        verify(submissionProducer, times(2)).sendEvents(KafkaTopicConfig.SUBMISSION_STORAGE, List.of(event));
+    }
+
+    private static SubmissionEvent event(long id) {
+        return SubmissionEvent.builder().submissionId(id).build();
+    }
+}
@@ -0,0 +1,134 @@
+package com.mharawi.submissiondisk.pipeline;
+
+import com.mharawi.submissiondisk.config.KafkaTopicConfig;
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
+import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
+import com.mharawi.submissiondisk.validator.ValidationResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ValidationPipelineTests {
+
+    private final SubmissionRepository submissionRepository = mock(SubmissionRepository.class);
+    private final SubmissionProducer submissionProducer = mock(SubmissionProducer.class);
+    private final ValidationOrchestrator validationOrchestrator = mock(ValidationOrchestrator.class);
+
+    private ValidationPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new ValidationPipeline(submissionRepository, submissionProducer, validationOrchestrator);
+        ReflectionTestUtils.setField(pipeline, "batchParallelism", 4);
+
+        when(validationOrchestrator.validateAll(any())).thenAnswer(invocation -> {
+            SubmissionEvent event = invocation.getArgument(0);
+            return switch (event.getSubmissionId().intValue()) {
+                case 2 -> throw new IllegalStateException("Validator crashed");
+                case 3 -> ValidationResult.failure("DuplicateValidator", "Already submitted");
+                case 4 -> ValidationResult.retryLater("VirusValidator", "clamd is down");
+                default -> ValidationResult.success("all");
+            };
+        });
+        when(submissionRepository.updateStatuses(anyList()))
+                .thenAnswer(invocation -> new int[invocation.<List<?>>getArgument(0).size()]);
+    }
+
+    @Test
+    void recordsTheOutcomeOfEveryReadableRecord() {
+        when(submissionRepository.updateStatuses(anyList())).thenReturn(new int[]{1, 1, 1, 1});
+
+        pipeline.validateSubmissions(Arrays.asList(event(1), null, event(2), event(3), event(4)));
+
+        verify(submissionRepository).updateStatuses(argThat(updates -> {
+            Map<Long, SubmissionStatus> statuses = updates.stream()
+                    .collect(Collectors.toMap(StatusUpdate::id, StatusUpdate::status));
+            return statuses.equals(Map.of(
+                    1L, SubmissionStatus.VALIDATED,
+                    // A validator that throws fails its own submission only
+                    2L, SubmissionStatus.FAILED,
+                    3L, SubmissionStatus.FAILED,
+                    4L, SubmissionStatus.PARKED));
+        }));
+        verify(submissionProducer).sendEvents(eq(KafkaTopicConfig.SUBMISSION_STORAGE),
+                argThat(events -> ids(events).equals(List.of(1L))));
+        verify(submissionProducer).sendEvents(eq(KafkaTopicConfig.SUBMISSION_FAILED),
+                argThat(events -> ids(events).stream().sorted().toList().equals(List.of(2L, 3L))));
+    }
+
+    @Test
+    void reportsWhyASubmissionFailed() {
+        SubmissionEvent crashed = event(2);
+        SubmissionEvent rejected = event(3);
+        when(submissionRepository.updateStatuses(anyList())).thenReturn(new int[]{1, 1});
+
+        pipeline.validateSubmissions(List.of(crashed, rejected));
+
+        assertThat(crashed.getErrorMessage()).isEqualTo("Validation error: Validator crashed");
+        assertThat(rejected.getErrorMessage()).isEqualTo("Already submitted");
+        assertThat(List.of(crashed, rejected)).allSatisfy(event -> {
+            assertThat(event.getStatus()).isEqualTo(SubmissionStatus.FAILED);
+            assertThat(event.getNextStage()).isEqualTo("FAILED");
+        });
+    }
+
+    @Test
+    void skipsABatchOfUnreadableRecords() {
+        pipeline.validateSubmissions(Arrays.asList(null, null));
+
+        verify(validationOrchestrator, never()).validateAll(any());
+        verify(submissionProducer, never()).sendEvents(anyString(), any());
+    }
+
+    @Test
+    void publishesOnlyForSubmissionsThatMoved() {
+        // Submission 1 was deleted or moved on by an earlier delivery
+        Map<Long, Integer> counts = Map.of(1L, 0, 5L, 1);
+        when(submissionRepository.updateStatuses(anyList())).thenAnswer(invocation -> invocation
+                .<List<StatusUpdate>>getArgument(0).stream().mapToInt(update -> counts.get(update.id())).toArray());
+
+        pipeline.validateSubmissions(List.of(event(1), event(5)));
+
+        verify(submissionProducer).sendEvents(eq(KafkaTopicConfig.SUBMISSION_STORAGE),
+                argThat(events -> ids(events).equals(List.of(5L))));
+    }
+
+    @Test
+    void failsTheBatchWithoutPublishingWhenTheStatusesCannotBeWritten() {
+        when(submissionRepository.updateStatuses(anyList())).thenThrow(new QueryTimeoutException("Timed out"));
+
+        // The container redelivers the whole batch
+        assertThatThrownBy(() -> pipeline.validateSubmissions(List.of(event(1), event(3))))
+                .isInstanceOf(QueryTimeoutException.class);
+        verify(submissionProducer, never()).sendEvents(anyString(), any());
+    }
+
+    private static List<Long> ids(List<SubmissionEvent> events) {
+        return events.stream().map(SubmissionEvent::getSubmissionId).toList();
+    }
+
+    private static SubmissionEvent event(long id) {
+        return SubmissionEvent.builder().submissionId(id).status(SubmissionStatus.PENDING).build();
+    }
+}
@@ -0,0 +1,133 @@
+package com.mharawi.submissiondisk.repository;
+
+import com.mharawi.submissiondisk.entity.Submission;
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Status updates against Postgres, where the expected statuses are bound as
+ * a varchar array and compared with {@code ANY}. Skipped without Docker.
+ */
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@Testcontainers(disabledWithoutDocker = true)
+class SubmissionRepositoryTests {
+
+    private static final Set<SubmissionStatus> PENDING = EnumSet.of(SubmissionStatus.PENDING);
+    private static final LocalDateTime PROCESSED_AT = LocalDateTime.of(2026, 10, 16, 12, 30);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer postgres = new PostgreSQLContainer("postgres:16-alpine");
+
+    @Autowired
+    private SubmissionRepository submissionRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void movesOnlySubmissionsInAnExpectedStatus() {
+        Long pending = save(SubmissionStatus.PENDING);
+        Long failed = save(SubmissionStatus.FAILED);
+
+        int[] counts = submissionRepository.updateStatuses(List.of(
+                StatusUpdate.to(pending, PENDING, SubmissionStatus.VALIDATED),
+                StatusUpdate.to(failed, PENDING, SubmissionStatus.VALIDATED),
+                StatusUpdate.to(Long.MAX_VALUE, PENDING, SubmissionStatus.VALIDATED)));
+
+        assertThat(counts).containsExactly(1, 0, 0);
+        assertThat(reload(pending).getStatus()).isEqualTo(SubmissionStatus.VALIDATED);
+        assertThat(reload(failed).getStatus()).isEqualTo(SubmissionStatus.FAILED);
+    }
+
+    @Test
+    void appliesAgainToASubmissionAlreadyInTheTargetStatus() {
+        Long validated = save(SubmissionStatus.VALIDATED);
+
+        int[] counts = submissionRepository.updateStatuses(List.of(
+                StatusUpdate.to(validated, PENDING, SubmissionStatus.VALIDATED)));
+
+        assertThat(counts).containsExactly(1);
+        assertThat(reload(validated).getStatus()).isEqualTo(SubmissionStatus.VALIDATED);
+    }
+
+    @Test
+    void keepsProcessedAtUnlessAnUpdateSetsIt() {
+        Long id = save(SubmissionStatus.STORED);
+
+        submissionRepository.updateStatuses(List.of(StatusUpdate.processed(id,
+                EnumSet.of(SubmissionStatus.STORED, SubmissionStatus.PROCESSING), SubmissionStatus.COMPLETED,
+                PROCESSED_AT)));
+        assertThat(reload(id).getProcessedAt()).isEqualTo(PROCESSED_AT);
+
+        submissionRepository.updateStatuses(List.of(StatusUpdate.to(id, EnumSet.of(SubmissionStatus.COMPLETED),
+                SubmissionStatus.INFECTED)));
+        Submission infected = reload(id);
+        assertThat(infected.getStatus()).isEqualTo(SubmissionStatus.INFECTED);
+        assertThat(infected.getProcessedAt()).isEqualTo(PROCESSED_AT);
+    }
+
+    @Test
+    void setsParkedAtOnlyWhileParked() {
+        Long id = save(SubmissionStatus.PENDING);
+
+        submissionRepository.updateStatuses(List.of(StatusUpdate.parked(id, PENDING, PROCESSED_AT)));
+        assertThat(reload(id).getParkedAt()).isEqualTo(PROCESSED_AT);
+
+        submissionRepository.updateStatuses(List.of(StatusUpdate.to(id, EnumSet.of(SubmissionStatus.PARKED),
+                SubmissionStatus.PENDING)));
+        Submission retried = reload(id);
+        assertThat(retried.getStatus()).isEqualTo(SubmissionStatus.PENDING);
+        assertThat(retried.getParkedAt()).isNull();
+    }
+
+    @Test
+    void writesUpdatesInSeveralJdbcBatches() {
+        List<Long> ids = IntStream.range(0, 120)
+                .mapToObj(i -> save(SubmissionStatus.PENDING))
+                .toList();
+
+        int[] counts = submissionRepository.updateStatuses(ids.stream()
+                .map(id -> StatusUpdate.to(id, PENDING, SubmissionStatus.VALIDATED))
+                .toList());
+
+        assertThat(counts).hasSize(120).containsOnly(1);
+        entityManager.clear();
+        assertThat(submissionRepository.findAllById(ids))
+                .allSatisfy(submission -> assertThat(submission.getStatus()).isEqualTo(SubmissionStatus.VALIDATED));
+    }
+
+    private Long save(SubmissionStatus status) {
+        Submission submission = submissionRepository.saveAndFlush(Submission.builder()
+                .fileName("submission.zip")
+                .originalFileName("submission.zip")
+                .fileSize(1024L)
+                .contentType("application/zip")
+                .storagePath("/data/uploads/submission.zip")
+                .status(status)
+                .build());
+        return submission.getId();
+    }
+
+    private Submission reload(Long id) {
+        // The updates bypass the persistence context
+        entityManager.clear();
+        return submissionRepository.findById(id).orElseThrow();
+    }
+}
@@ -0,0 +1,71 @@
+package com.mharawi.submissiondisk.repository;
+
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.repository.SubmissionStatusOperations.StatusUpdate;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SubmissionStatusOperationsImplTests {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void bindsExpectedStatusesAsArray() throws Exception {
+        Connection connection = mock(Connection.class);
+        Array expected = mock(Array.class);
+        AtomicReference<Object[]> expectedStatuses = new AtomicReference<>();
+        when(connection.createArrayOf(eq("varchar"), any(Object[].class))).thenAnswer(invocation -> {
+            expectedStatuses.set((Object[]) invocation.getRawArguments()[1]);
+            return expected;
+        });
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.getConnection()).thenReturn(connection);
+
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.batchUpdate(contains("status = ANY (?)"), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(invocation -> {
+                    List<StatusUpdate> updates = invocation.getArgument(1);
+                    ParameterizedPreparedStatementSetter<StatusUpdate> setter = invocation.getArgument(3);
+                    for (StatusUpdate update : updates) {
+                        setter.setValues(statement, update);
+                    }
+                    return new int[][]{{0}};
+                });
+        SubmissionStatusOperationsImpl operations = new SubmissionStatusOperationsImpl(jdbcTemplate);
+        ReflectionTestUtils.setField(operations, "batchSize", 50);
+        LocalDateTime processedAt = LocalDateTime.now();
+
+        int[] counts = operations.updateStatuses(List.of(StatusUpdate.processed(7L,
+                EnumSet.of(SubmissionStatus.STORED, SubmissionStatus.PROCESSING), SubmissionStatus.COMPLETED,
+                processedAt)));
+
+        assertThat(counts).containsExactly(0);
+        verify(statement).setString(1, "COMPLETED");
+        verify(statement).setObject(2, processedAt, Types.TIMESTAMP);
+        verify(statement).setObject(3, null, Types.TIMESTAMP);
+        verify(statement).setLong(4, 7L);
+        // The target status too, so a change redelivered after it committed applies again
+        assertThat(expectedStatuses.get()).containsExactly("STORED", "PROCESSING", "COMPLETED");
+        verify(statement).setArray(5, expected);
+    }
+}
@@ -0,0 +1,161 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.exception.AdmissionRejectedException;
+import com.mharawi.submissiondisk.pipeline.ConsumerLagMonitor;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class AdmissionServiceTests {
+
+    private static final long MAX_FILE_SIZE = 100;
+
+    private final SubmissionRepository submissionRepository = mock(SubmissionRepository.class);
+    private final ConsumerLagMonitor consumerLagMonitor = mock(ConsumerLagMonitor.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+
+    private AdmissionService admissionService;
+
+    @BeforeEach
+    void setUp() {
+        admissionService = new AdmissionService(submissionRepository, consumerLagMonitor, redisTemplate);
+        ReflectionTestUtils.setField(admissionService, "admissionEnabled", true);
+        ReflectionTestUtils.setField(admissionService, "maxConsumerLag", 1000L);
+        ReflectionTestUtils.setField(admissionService, "maxInFlightBytes", 1000L);
+        ReflectionTestUtils.setField(admissionService, "overloadRetryAfterSeconds", 30L);
+        ReflectionTestUtils.setField(admissionService, "rateLimitBurst", 20L);
+        ReflectionTestUtils.setField(admissionService, "rateLimitPerMinute", 60L);
+        ReflectionTestUtils.setField(admissionService, "maxFileSize", MAX_FILE_SIZE);
+
+        when(consumerLagMonitor.getCurrentLag()).thenReturn(0L);
+        givenTokenBucketReplies(List.of(1L, 0L));
+    }
+
+    @Test
+    void turnsUploadsAwayWhileThePipelineIsBehind() {
+        when(consumerLagMonitor.getCurrentLag()).thenReturn(1001L);
+
+        assertRejected(() -> admissionService.admit("alice", 10L), HttpStatus.SERVICE_UNAVAILABLE, 30);
+    }
+
+    @Test
+    void admitsUploadsWhileTheLagIsUnknown() {
+        // Kafka could not be reached
+        when(consumerLagMonitor.getCurrentLag()).thenReturn(-1L);
+
+        assertThatCode(() -> admissionService.admit("alice", 10L)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void countsAdmittedBytesUntilTheNextRefresh() {
+        when(submissionRepository.sumFileSizeByStatusIn(any())).thenReturn(800L);
+        admissionService.refreshInFlightBytes();
+
+        admissionService.admit("alice", 150L);
+        assertRejected(() -> admissionService.admit("alice", 100L), HttpStatus.SERVICE_UNAVAILABLE, 30);
+
+        // The refresh now sees the admitted upload among the unfinished submissions
+        when(submissionRepository.sumFileSizeByStatusIn(any())).thenReturn(850L);
+        admissionService.refreshInFlightBytes();
+        assertThatCode(() -> admissionService.admit("alice", 150L)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void reservesTheLargestUploadWhenTheSizeIsUnknown() {
+        when(submissionRepository.sumFileSizeByStatusIn(any())).thenReturn(1000L - MAX_FILE_SIZE + 1);
+        admissionService.refreshInFlightBytes();
+
+        assertThatCode(() -> admissionService.admit("alice", 10L)).doesNotThrowAnyException();
+        assertRejected(() -> admissionService.admit("alice", null), HttpStatus.SERVICE_UNAVAILABLE, 30);
+    }
+
+    @Test
+    void keepsTheLastMeasurementWhenTheDatabaseIsUnavailable() {
+        when(submissionRepository.sumFileSizeByStatusIn(any())).thenReturn(950L);
+        admissionService.refreshInFlightBytes();
+        when(submissionRepository.sumFileSizeByStatusIn(any())).thenThrow(new IllegalStateException("Pool exhausted"));
+        admissionService.refreshInFlightBytes();
+
+        assertRejected(() -> admissionService.admit("alice", 100L), HttpStatus.SERVICE_UNAVAILABLE, 30);
+    }
+
+    @Test
+    void rateLimitsWithRetryAfterRoundedUpToSeconds() {
+        givenTokenBucketReplies(List.of(0L, 1500L));
+
+        assertRejected(() -> admissionService.admit("alice", 10L), HttpStatus.TOO_MANY_REQUESTS, 2);
+    }
+
+    @Test
+    void asksForAtLeastOneSecondWhenRateLimited() {
+        givenTokenBucketReplies(List.of(0L, 0L));
+
+        assertRejected(() -> admissionService.admit("alice", 10L), HttpStatus.TOO_MANY_REQUESTS, 1);
+    }
+
+    @Test
+    void doesNotCountRateLimitedUploadsAsInFlight() {
+        givenTokenBucketReplies(List.of(0L, 1000L));
+        for (int i = 0; i < 5; i++) {
+            assertRejected(() -> admissionService.admit("alice", 900L), HttpStatus.TOO_MANY_REQUESTS, 1);
+        }
+
+        givenTokenBucketReplies(List.of(1L, 0L));
+        assertThatCode(() -> admissionService.admit("alice", 900L)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void limitsAnonymousUploadsAsOneSubmitter() {
+        admissionService.admit(null, 10L);
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("submission:rate-limit:anonymous")),
+                eq("20"), eq(String.valueOf(60 / 60_000.0)), eq("1"));
+    }
+
+    @Test
+    void admitsUploadsWhileRedisIsDown() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenThrow(new RedisConnectionFailureException("Connection refused"));
+
+        assertThatCode(() -> admissionService.admit("alice", 10L)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void admitsEverythingWhenDisabled() {
+        ReflectionTestUtils.setField(admissionService, "admissionEnabled", false);
+        when(consumerLagMonitor.getCurrentLag()).thenReturn(1001L);
+
+        assertThatCode(() -> admissionService.admit("alice", null)).doesNotThrowAnyException();
+        verifyNoInteractions(redisTemplate);
+    }
+
+    private void givenTokenBucketReplies(List<Long> reply) {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(reply);
+    }
+
+    private static void assertRejected(Runnable admission, HttpStatus status, long retryAfterSeconds) {
+        assertThatThrownBy(admission::run)
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e -> {
+                    assertThat(e.getStatus()).isEqualTo(status);
+                    assertThat(e.getRetryAfterSeconds()).isEqualTo(retryAfterSeconds);
+                });
+    }
+}
@@ -0,0 +1,194 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.dto.BulkSubmissionItem;
+import com.mharawi.submissiondisk.dto.BulkSubmissionResponse;
+import com.mharawi.submissiondisk.dto.SubmissionResponse;
+import com.mharawi.submissiondisk.entity.Submission;
+import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.mockito.ArgumentMatcher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BulkSubmissionServiceTests {
+
+    private final SubmissionService submissionService = mock(SubmissionService.class);
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+
+    private BulkSubmissionService bulkSubmissionService;
+
+    @BeforeEach
+    void setUp() {
+        bulkSubmissionService = new BulkSubmissionService(submissionService, fileStorageService,
+                mock(ValidationOrchestrator.class), 4);
+        ReflectionTestUtils.setField(bulkSubmissionService, "maxArchives", 3);
+
+        when(submissionService.newSubmission(any(), anyString(), any(), any(), any()))
+                .thenAnswer(invocation -> Submission.builder()
+                        .originalFileName(invocation.getArgument(1))
+                        .storagePath(invocation.<StoredFile>getArgument(0).getStoragePath())
+                        .build());
+        when(submissionService.registerSubmissions(anyList())).thenAnswer(invocation -> invocation
+                .<List<Submission>>getArgument(0).stream()
+                .map(submission -> SubmissionResponse.builder().fileName(submission.getOriginalFileName()).build())
+                .toList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkSubmissionService.shutdown();
+    }
+
+    @Test
+    void reportsAResultForEveryArchive() throws Exception {
+        givenStored("a.zip");
+        when(fileStorageService.ingest(argThat(named("b.zip")), isNull(), any()))
+                .thenThrow(new IllegalArgumentException("Invalid ZIP file format"));
+        when(fileStorageService.ingest(argThat(named("c.zip")), isNull(), any()))
+                .thenThrow(new MaxUploadSizeExceededException(100));
+
+        BulkSubmissionResponse response = bulkSubmissionService.createSubmissions(files("a.zip", "b.zip", "c.zip"),
+                "Homework", "alice");
+
+        assertThat(response.getAccepted()).isEqualTo(1);
+        assertThat(response.getRejected()).isEqualTo(2);
+        assertThat(response.getItems()).extracting(BulkSubmissionItem::getIndex).containsExactly(0, 1, 2);
+        assertThat(response.getItems().get(0).getSubmission().getFileName()).isEqualTo("a.zip");
+        assertThat(response.getItems()).extracting(BulkSubmissionItem::getError)
+                .containsExactly(null, "Invalid ZIP file format", "File size exceeds maximum allowed limit");
+        verify(submissionService).registerSubmissions(argThat(submissions -> submissions.size() == 1));
+    }
+
+    @Test
+    void deletesTheStoredArchivesWhenTheyCannotBeRegistered() throws Exception {
+        givenStored("a.zip");
+        givenStored("b.zip");
+        doThrow(new DataIntegrityViolationException("Connection lost"))
+                .when(submissionService).registerSubmissions(anyList());
+
+        BulkSubmissionResponse response = bulkSubmissionService.createSubmissions(files("a.zip", "b.zip"),
+                null, "alice");
+
+        assertThat(response.getAccepted()).isZero();
+        assertThat(response.getItems()).extracting(BulkSubmissionItem::getError)
+                .containsOnly("Failed to register submission");
+        verify(fileStorageService).deleteFile("/uploads/a.zip");
+        verify(fileStorageService).deleteFile("/uploads/b.zip");
+    }
+
+    @Test
+    void rejectsRequestsWithoutFilesOrWithTooMany() {
+        assertThatThrownBy(() -> bulkSubmissionService.createSubmissions(List.of(), null, "alice"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("At least one file is required");
+        assertThatThrownBy(() -> bulkSubmissionService.createSubmissions(
+                files("a.zip", "b.zip", "c.zip", "d.zip"), null, "alice"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("maximum: 3");
+    }
+
+    @Test
+    @Timeout(10)
+    void deletesEveryArchiveItWillNotRegisterWhenInterrupted() throws Exception {
+        CountDownLatch firstRegistered = new CountDownLatch(1);
+        CountDownLatch thirdStored = new CountDownLatch(1);
+        CountDownLatch releaseSecond = new CountDownLatch(1);
+        givenStored("a.zip");
+        // Keeps storing through the interrupt, so it finishes after the request gave up on it
+        when(fileStorageService.ingest(argThat(named("b.zip")), isNull(), any())).thenAnswer(invocation -> {
+            awaitUninterruptibly(releaseSecond);
+            return stored("b.zip");
+        });
+        when(fileStorageService.ingest(argThat(named("c.zip")), isNull(), any())).thenAnswer(invocation -> {
+            thirdStored.countDown();
+            return stored("c.zip");
+        });
+        doAnswer(invocation -> {
+            firstRegistered.countDown();
+            return Submission.builder().originalFileName("a.zip").build();
+        }).when(submissionService).newSubmission(any(), eq("a.zip"), any(), any(), any());
+
+        AtomicReference<BulkSubmissionResponse> response = new AtomicReference<>();
+        Thread request = Thread.ofPlatform().start(() -> response.set(
+                bulkSubmissionService.createSubmissions(files("a.zip", "b.zip", "c.zip"), null, "alice")));
+        firstRegistered.await();
+        thirdStored.await();
+        request.interrupt();
+        request.join();
+
+        assertThat(response.get().getItems()).extracting(BulkSubmissionItem::isAccepted)
+                .containsExactly(true, false, false);
+        assertThat(response.get().getItems().subList(1, 3)).extracting(BulkSubmissionItem::getError)
+                .containsOnly("Upload interrupted");
+        verify(submissionService).registerSubmissions(argThat(submissions -> submissions.size() == 1));
+
+        // Already stored when the request gave up on it
+        verify(fileStorageService, timeout(5000)).deleteFile("/uploads/c.zip");
+        // Stored after it, deleted by its own task
+        verify(fileStorageService, never()).deleteFile("/uploads/b.zip");
+        releaseSecond.countDown();
+        verify(fileStorageService, timeout(5000)).deleteFile("/uploads/b.zip");
+        verify(fileStorageService, never()).deleteFile("/uploads/a.zip");
+    }
+
+    private void givenStored(String fileName) throws Exception {
+        when(fileStorageService.ingest(argThat(named(fileName)), isNull(), any())).thenReturn(stored(fileName));
+    }
+
+    private static StoredFile stored(String fileName) {
+        return StoredFile.builder().storagePath("/uploads/" + fileName).size(1024).checksum("checksum").build();
+    }
+
+    private static ArgumentMatcher<MultipartFile> named(String fileName) {
+        return file -> file != null && fileName.equals(file.getOriginalFilename());
+    }
+
+    private static List<MultipartFile> files(String... names) {
+        return IntStream.range(0, names.length)
+                .<MultipartFile>mapToObj(i -> new MockMultipartFile("files", names[i], "application/zip",
+                        new byte[1024]))
+                .toList();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
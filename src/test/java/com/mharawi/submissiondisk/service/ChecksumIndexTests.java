@@ -0,0 +1,30 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.config.KafkaTopicConfig;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ChecksumIndexTests {
+
+    @Test
+    void indexesRepublishedSubmissionOnce() {
+        ChecksumIndex index = new ChecksumIndex(mock(SubmissionRepository.class), 1_000, 100);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        index.bindTo(registry);
+        long memory = (long) registry.get("submission.checksum-index.memory").gauge().value();
+
+        // A parked submission comes back to validation on every retry
+        SubmissionEvent event = SubmissionEvent.builder().submissionId(1L).checksum("abc").build();
+        for (int i = 0; i < 1_000; i++) {
+            index.onSubmissionEvent(event, KafkaTopicConfig.SUBMISSION_VALIDATION);
+        }
+
+        assertThat(registry.get("submission.checksum-index.entries").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("submission.checksum-index.memory").gauge().value()).isEqualTo(memory);
+    }
+}
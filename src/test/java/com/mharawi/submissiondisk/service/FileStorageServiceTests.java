@@ -0,0 +1,119 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.hash.XxHash64;
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileStorageServiceTests {
+
+    @TempDir
+    Path storageDir;
+
+    private FileStorageService fileStorageService;
+
+    @BeforeEach
+    void setUp() {
+        fileStorageService = new FileStorageService(new DirectBufferPool(64 * 1024, 4, 50));
+        ReflectionTestUtils.setField(fileStorageService, "storageBasePath", storageDir.toString());
+        ReflectionTestUtils.setField(fileStorageService, "maxFileSize", 1024L * 1024);
+    }
+
+    @Test
+    void ingestStoresArchiveAndComputesChecksumInOnePass() throws Exception {
+        ReflectionTestUtils.setField(fileStorageService, "fastHashEnabled", true);
+        byte[] archive = zipOf("hello.txt", "hello world");
+
+        StoredFile storedFile = fileStorageService.ingest(new ByteArrayInputStream(archive), "project.zip");
+
+        Path storedPath = Path.of(storedFile.getStoragePath());
+        assertThat(storedPath).startsWith(storageDir);
+        assertThat(Files.readAllBytes(storedPath)).isEqualTo(archive);
+        assertThat(storedFile.getSize()).isEqualTo(archive.length);
+        assertThat(storedFile.getChecksum()).isEqualTo(sha256(archive));
+        assertThat(storedFile.getContentHash()).isEqualTo(XxHash64.hash(archive));
+    }
+
+    @Test
+    void ingestRejectsNonZipContentAndRemovesPartialFile() throws IOException {
+        byte[] notAZip = "definitely not a zip archive".getBytes(StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> fileStorageService.ingest(new ByteArrayInputStream(notAZip), "project.zip"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid ZIP file format");
+
+        try (var files = Files.list(storageDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void ingestRejectsEmptyArchive() throws IOException {
+        // An archive without entries is just the 22-byte end of central directory record
+        byte[] emptyArchive = new byte[22];
+        emptyArchive[0] = 'P';
+        emptyArchive[1] = 'K';
+        emptyArchive[2] = 5;
+        emptyArchive[3] = 6;
+
+        assertThatThrownBy(() -> fileStorageService.ingest(new ByteArrayInputStream(emptyArchive), "project.zip"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("ZIP file is empty or corrupted");
+    }
+
+    @Test
+    void ingestRejectsWrongExtension() {
+        assertThatThrownBy(() -> fileStorageService.ingest(new ByteArrayInputStream(new byte[0]), "project.tar"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("File must be a ZIP archive");
+    }
+
+    @Test
+    void commitUploadPartHashesAssembledArchive() throws Exception {
+        ReflectionTestUtils.setField(fileStorageService, "fastHashEnabled", true);
+        // Larger than one pooled buffer even after compression
+        byte[] content = new byte[150_000];
+        new Random(7).nextBytes(content);
+        byte[] archive = zipOf("large.txt", HexFormat.of().formatHex(content));
+
+        Path partPath = fileStorageService.createUploadPart(archive.length);
+        Files.write(partPath, archive);
+        StoredFile storedFile = fileStorageService.commitUploadPart(partPath, "project.zip", sha256(archive));
+
+        assertThat(partPath).doesNotExist();
+        assertThat(Files.readAllBytes(Path.of(storedFile.getStoragePath()))).isEqualTo(archive);
+        assertThat(storedFile.getChecksum()).isEqualTo(sha256(archive));
+        assertThat(storedFile.getContentHash()).isEqualTo(XxHash64.hash(archive));
+    }
+
+    private static byte[] zipOf(String entryName, String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry(entryName));
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
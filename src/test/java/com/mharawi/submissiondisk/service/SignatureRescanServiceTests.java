@@ -0,0 +1,168 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.clamav.ClamdUnavailableException;
+import com.mharawi.submissiondisk.clamav.ClamdVerdict;
+import com.mharawi.submissiondisk.entity.Submission;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.pipeline.ConsumerLagMonitor;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.validator.VerdictCache;
+import com.mharawi.submissiondisk.validator.VirusValidator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SignatureRescanServiceTests {
+
+    private static final String CHECKPOINT_KEY = "submission:rescan:checkpoint";
+    private static final String VERSION = "27000";
+    private static final String NEXT_VERSION = "27001";
+
+    private final SubmissionRepository submissionRepository = mock(SubmissionRepository.class);
+    private final SubmissionService submissionService = mock(SubmissionService.class);
+    private final VirusValidator virusValidator = mock(VirusValidator.class);
+    private final VerdictCache verdictCache = mock(VerdictCache.class);
+
+    // Stands in for the checkpoint hash in Redis
+    private final Map<Object, Object> checkpoint = new HashMap<>();
+    private final AtomicReference<String> signatureVersion = new AtomicReference<>(VERSION);
+
+    private SignatureRescanService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        VirusScanService virusScanService = mock(VirusScanService.class);
+        when(virusScanService.getSignatureVersion()).thenAnswer(invocation -> signatureVersion.get());
+
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.entries(CHECKPOINT_KEY)).thenAnswer(invocation -> new HashMap<>(checkpoint));
+        doAnswer(invocation -> {
+            checkpoint.putAll(invocation.getArgument(1));
+            return null;
+        }).when(hashOperations).putAll(eq(CHECKPOINT_KEY), anyMap());
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L);
+
+        when(submissionRepository.findMaxId()).thenReturn(3L);
+
+        service = new SignatureRescanService(submissionRepository, submissionService, virusScanService,
+                virusValidator, verdictCache, mock(ConsumerLagMonitor.class), redisTemplate);
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        ReflectionTestUtils.setField(service, "parallelism", 1);
+        ReflectionTestUtils.setField(service, "maxConsumerLag", 100L);
+        ReflectionTestUtils.setField(service, "leaseDuration", Duration.ofMinutes(10));
+    }
+
+    @Test
+    void checkpointsEveryPageAndFlagsInfectedSubmissions() throws Exception {
+        givenPage(0, submission(1), submission(2));
+        givenPage(2, submission(3));
+        givenPage(3);
+        when(virusValidator.scan(any(), any())).thenAnswer(invocation -> {
+            SubmissionEvent event = invocation.getArgument(0);
+            return new ClamdVerdict("clamd", event.getSubmissionId() == 2 ? "Eicar-Signature" : null);
+        });
+        when(submissionService.markInfected(any(), any(), anyString())).thenReturn(true);
+
+        runPass();
+
+        assertThat(checkpoint).containsEntry("version", VERSION)
+                .containsEntry("last-id", "3")
+                .containsEntry("until-id", "3")
+                .containsKey("completed-at");
+        verify(submissionService).markInfected(any(), any(), eq("Eicar-Signature"));
+        verify(verdictCache, times(2)).recordPass(any(), eq(VERSION), any());
+    }
+
+    @Test
+    void stopsWithoutAdvancingWhenClamdIsUnavailable() throws Exception {
+        givenPage(0, submission(1), submission(2));
+        when(virusValidator.scan(any(), any()))
+                .thenReturn(new ClamdVerdict("clamd", null))
+                .thenThrow(new ClamdUnavailableException("All clamd endpoints are down", null));
+
+        runPass();
+
+        // The page resumes from its start at the next check
+        assertThat(checkpoint).containsEntry("last-id", "0").doesNotContainKey("completed-at");
+        verify(submissionRepository, never())
+                .findByIdGreaterThanAndIdLessThanEqualAndStatusInOrderById(eq(2L), anyLong(), any(), any());
+    }
+
+    @Test
+    void carriesOnWithNewSignaturesAndWrapsAroundInsteadOfStartingOver() throws Exception {
+        givenPage(0, submission(1), submission(2));
+        givenPage(2, submission(3));
+        givenPage(3);
+        // Once wrapped around, the pass covers the submissions it passed before the change
+        givenPage(0, 2, submission(1), submission(2));
+        givenPage(2, 2);
+        when(virusValidator.scan(any(), any())).thenAnswer(invocation -> {
+            SubmissionEvent event = invocation.getArgument(0);
+            if (event.getSubmissionId() == 2) {
+                signatureVersion.set(NEXT_VERSION);
+            }
+            return new ClamdVerdict("clamd", null);
+        });
+
+        runPass();
+
+        assertThat(checkpoint).containsEntry("version", NEXT_VERSION)
+                .containsEntry("wrap-until-id", "0")
+                .containsKey("completed-at");
+        verify(verdictCache, times(2)).recordPass(any(), eq(VERSION), any());
+        verify(verdictCache, times(3)).recordPass(any(), eq(NEXT_VERSION), any());
+        // Submission 3 was only scanned once, with the new signatures
+        verify(virusValidator, times(1)).scan(argThat(event -> event.getSubmissionId() == 3), any());
+    }
+
+    private void runPass() {
+        ReflectionTestUtils.invokeMethod(service, "runPass");
+    }
+
+    private void givenPage(long afterId, Submission... submissions) {
+        givenPage(afterId, 3, submissions);
+    }
+
+    private void givenPage(long afterId, long untilId, Submission... submissions) {
+        when(submissionRepository.findByIdGreaterThanAndIdLessThanEqualAndStatusInOrderById(
+                eq(afterId), eq(untilId), any(), any(Limit.class)))
+                .thenReturn(List.of(submissions));
+    }
+
+    private static Submission submission(long id) {
+        return Submission.builder()
+                .id(id)
+                .storagePath("unused-" + id + ".zip")
+                .checksum("checksum-" + id)
+                .fileSize(1024L)
+                .build();
+    }
+}
@@ -0,0 +1,110 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.dto.UploadPreflightRequest;
+import com.mharawi.submissiondisk.dto.UploadPreflightResponse;
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.exception.DuplicateSubmissionException;
+import com.mharawi.submissiondisk.pipeline.SubmissionProducer;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SubmissionServiceTests {
+
+    private static final String CHECKSUM = "ab".repeat(32);
+
+    private final SubmissionRepository submissionRepository = mock(SubmissionRepository.class);
+    private final SubmissionService submissionService = new SubmissionService(submissionRepository,
+            mock(FileStorageService.class), mock(SubmissionProducer.class), mock(ValidationOrchestrator.class));
+
+    @Test
+    void preflightReportsAnExistingSubmission() {
+        when(submissionRepository.findIdsByChecksumAndFileSize(eq(CHECKSUM), eq(1024L), any(), eq(Limit.of(1))))
+                .thenReturn(List.of(42L));
+
+        UploadPreflightResponse response = submissionService.preflight(preflight(CHECKSUM.toUpperCase(), 1024L));
+
+        assertThat(response.isExists()).isTrue();
+        assertThat(response.getSubmissionId()).isEqualTo(42L);
+    }
+
+    @Test
+    void preflightOnlyCountsSubmissionsThatKeepTheirContent() {
+        when(submissionRepository.findIdsByChecksumAndFileSize(anyString(), anyLong(), any(), any(Limit.class)))
+                .thenReturn(List.of());
+
+        UploadPreflightResponse response = submissionService.preflight(preflight(CHECKSUM, 1024L));
+
+        assertThat(response.isExists()).isFalse();
+        assertThat(response.getSubmissionId()).isNull();
+        verify(submissionRepository).findIdsByChecksumAndFileSize(eq(CHECKSUM), eq(1024L),
+                argThat((Collection<SubmissionStatus> statuses) -> statuses.contains(SubmissionStatus.PENDING)
+                        && statuses.contains(SubmissionStatus.COMPLETED)
+                        && !statuses.contains(SubmissionStatus.FAILED)
+                        && !statuses.contains(SubmissionStatus.REJECTED)
+                        && !statuses.contains(SubmissionStatus.INFECTED)
+                        && !statuses.contains(SubmissionStatus.PARKED)),
+                eq(Limit.of(1)));
+    }
+
+    @Test
+    void preflightRequiresTheFileSize() {
+        assertThatThrownBy(() -> submissionService.preflight(preflight(CHECKSUM, null)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("File size is required");
+    }
+
+    @Test
+    void rejectsADeclaredChecksumOfExistingContent() {
+        when(submissionRepository.findIdsByChecksumAndFileSize(eq(CHECKSUM), eq(1024L), any(), any(Limit.class)))
+                .thenReturn(List.of(42L));
+
+        assertThatThrownBy(() -> submissionService.checkDeclaredChecksum(CHECKSUM, 1024L))
+                .isInstanceOfSatisfying(DuplicateSubmissionException.class,
+                        e -> assertThat(e.getExistingSubmissionId()).isEqualTo(42L));
+    }
+
+    @Test
+    void acceptsContentWhoseEarlierSubmissionWasRejected() {
+        // The earlier FAILED or INFECTED row is filtered out by the query
+        when(submissionRepository.findIdsByChecksumAndFileSize(anyString(), anyLong(), any(), any(Limit.class)))
+                .thenReturn(List.of());
+
+        assertThat(submissionService.checkDeclaredChecksum(CHECKSUM.toUpperCase(), 1024L)).isEqualTo(CHECKSUM);
+    }
+
+    @Test
+    void skipsTheLookupWithoutADeclaredSize() {
+        assertThat(submissionService.checkDeclaredChecksum(CHECKSUM, null)).isEqualTo(CHECKSUM);
+        assertThat(submissionService.checkDeclaredChecksum(null, 1024L)).isNull();
+
+        verify(submissionRepository, never()).findIdsByChecksumAndFileSize(any(), any(), any(), any());
+    }
+
+    @Test
+    void rejectsAMalformedChecksum() {
+        assertThatThrownBy(() -> submissionService.checkDeclaredChecksum("not-a-digest", 1024L))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Checksum must be a hex-encoded SHA-256 digest");
+    }
+
+    private static UploadPreflightRequest preflight(String checksum, Long fileSize) {
+        return UploadPreflightRequest.builder().checksum(checksum).fileSize(fileSize).build();
+    }
+}
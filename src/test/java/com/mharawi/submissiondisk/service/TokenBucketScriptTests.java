@@ -0,0 +1,108 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.exception.AdmissionRejectedException;
+import com.mharawi.submissiondisk.pipeline.ConsumerLagMonitor;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The token bucket script run by Redis itself, through the admission check.
+ * Skipped without Docker.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class TokenBucketScriptTests {
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private AdmissionService admissionService;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+
+        admissionService = new AdmissionService(mock(SubmissionRepository.class), mock(ConsumerLagMonitor.class),
+                redisTemplate);
+        ReflectionTestUtils.setField(admissionService, "admissionEnabled", true);
+        ReflectionTestUtils.setField(admissionService, "maxConsumerLag", 1000L);
+        ReflectionTestUtils.setField(admissionService, "maxInFlightBytes", Long.MAX_VALUE / 2);
+        ReflectionTestUtils.setField(admissionService, "rateLimitBurst", 2L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void admitsABurstThenAsksToWaitForTheNextToken() {
+        ReflectionTestUtils.setField(admissionService, "rateLimitPerMinute", 6L);
+
+        admissionService.admit("alice", 10L);
+        admissionService.admit("alice", 10L);
+
+        // One token every 10 seconds
+        assertThatThrownBy(() -> admissionService.admit("alice", 10L))
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e -> {
+                    assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+                    assertThat(e.getRetryAfterSeconds()).isBetween(9L, 10L);
+                });
+    }
+
+    @Test
+    void keepsABucketPerSubmitter() {
+        ReflectionTestUtils.setField(admissionService, "rateLimitPerMinute", 6L);
+        admissionService.admit("alice", 10L);
+        admissionService.admit("alice", 10L);
+
+        assertThatCode(() -> admissionService.admit("bob", 10L)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void refillsTheBucketOverTime() throws InterruptedException {
+        // One token every 10 milliseconds
+        ReflectionTestUtils.setField(admissionService, "rateLimitPerMinute", 6000L);
+        admissionService.admit("alice", 10L);
+        admissionService.admit("alice", 10L);
+
+        Thread.sleep(50);
+
+        assertThatCode(() -> admissionService.admit("alice", 10L)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void expiresTheBucketOnceItWouldBeFullAgain() {
+        ReflectionTestUtils.setField(admissionService, "rateLimitPerMinute", 6L);
+
+        admissionService.admit("alice", 10L);
+
+        // 2 tokens at one every 10 seconds, plus a second of slack
+        assertThat(redisTemplate.getExpire("submission:rate-limit:alice")).isBetween(1L, 21L);
+    }
+}
@@ -0,0 +1,219 @@
+package com.mharawi.submissiondisk.service;
+
+import com.mharawi.submissiondisk.dto.SubmissionResponse;
+import com.mharawi.submissiondisk.dto.UploadSessionRequest;
+import com.mharawi.submissiondisk.dto.UploadSessionResponse;
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import com.mharawi.submissiondisk.validator.ValidationOrchestrator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadSessionServiceTests {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    @TempDir
+    Path storageDir;
+
+    private final SubmissionService submissionService = mock(SubmissionService.class);
+    private UploadSessionService uploadSessionService;
+
+    private byte[] archive;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileStorageService fileStorageService = new FileStorageService(new DirectBufferPool(64 * 1024, 4, 50));
+        ReflectionTestUtils.setField(fileStorageService, "storageBasePath", storageDir.toString());
+        ReflectionTestUtils.setField(fileStorageService, "maxFileSize", 1024L * 1024);
+
+        when(submissionService.checkDeclaredChecksum(any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(submissionService.registerSubmission(any(), anyString(), any(), any(), any()))
+                .thenReturn(SubmissionResponse.builder().id(1L).build());
+
+        uploadSessionService = new UploadSessionService(fileStorageService, submissionService,
+                mock(ValidationOrchestrator.class));
+        ReflectionTestUtils.setField(uploadSessionService, "chunkSize", CHUNK_SIZE);
+        ReflectionTestUtils.setField(uploadSessionService, "sessionTtlMillis", 3_600_000L);
+
+        archive = randomArchive(5 * CHUNK_SIZE);
+    }
+
+    @Test
+    void assemblesChunksWrittenInParallelAndOutOfOrder() {
+        UploadSessionResponse session = createSession(sha256(archive));
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            CompletableFuture.allOf(IntStream.iterate(session.getChunkCount() - 1, i -> i >= 0, i -> i - 1)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> writeChunk(session, i, chunk(archive, i)),
+                            executor))
+                    .toArray(CompletableFuture[]::new)).join();
+        }
+        assertThat(uploadSessionService.getSession(session.getSessionId()).isComplete()).isTrue();
+
+        uploadSessionService.commitSession(session.getSessionId());
+
+        verify(submissionService).registerSubmission(argThat(storedFile -> {
+            try {
+                return Arrays.equals(Files.readAllBytes(Path.of(storedFile.getStoragePath())), archive);
+            } catch (IOException e) {
+                return false;
+            }
+        }), eq("project.zip"), any(), any(), any());
+    }
+
+    @Test
+    void overwritesAChunkThatIsSentAgain() {
+        UploadSessionResponse session = createSession(sha256(archive));
+        writeAllChunks(session);
+
+        writeChunk(session, 2, new byte[CHUNK_SIZE]);
+        writeChunk(session, 2, chunk(archive, 2));
+
+        uploadSessionService.commitSession(session.getSessionId());
+        verify(submissionService).registerSubmission(argThat(storedFile ->
+                storedFile.getChecksum().equals(sha256(archive))), any(), any(), any(), any());
+    }
+
+    @Test
+    void refusesToCommitBeforeEveryChunkArrived() {
+        UploadSessionResponse session = createSession(null);
+        writeChunk(session, 0, chunk(archive, 0));
+        writeChunk(session, 4, chunk(archive, 4));
+
+        assertThatThrownBy(() -> uploadSessionService.commitSession(session.getSessionId()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("2 of " + session.getChunkCount() + " chunks received");
+
+        // The client can send the missing chunks and commit again
+        assertThat(uploadSessionService.getSession(session.getSessionId()).getReceivedChunks())
+                .containsExactly(0, 4);
+    }
+
+    @Test
+    void keepsTheChunksWhenTheChecksumDoesNotMatch() {
+        UploadSessionResponse session = createSession(sha256(archive));
+        writeAllChunks(session);
+        byte[] corrupted = chunk(archive, 3);
+        corrupted[0] ^= 1;
+        writeChunk(session, 3, corrupted);
+
+        assertThatThrownBy(() -> uploadSessionService.commitSession(session.getSessionId()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Checksum mismatch");
+        verify(submissionService, never()).registerSubmission(any(), any(), any(), any(), any());
+
+        UploadSessionResponse kept = uploadSessionService.getSession(session.getSessionId());
+        assertThat(kept.getReceivedChunks()).hasSize(session.getChunkCount());
+
+        writeChunk(session, 3, chunk(archive, 3));
+        uploadSessionService.commitSession(session.getSessionId());
+        verify(submissionService).registerSubmission(any(), eq("project.zip"), any(), any(), any());
+    }
+
+    @Test
+    void extendsTheExpiryWithEveryChunk() {
+        // Sessions created with a TTL in the past are due as soon as nothing arrives for them
+        ReflectionTestUtils.setField(uploadSessionService, "sessionTtlMillis", -1000L);
+        UploadSessionResponse active = createSession(null);
+        UploadSessionResponse idle = createSession(null);
+        ReflectionTestUtils.setField(uploadSessionService, "sessionTtlMillis", 3_600_000L);
+
+        writeChunk(active, 0, chunk(archive, 0));
+        uploadSessionService.expireSessions();
+
+        assertThat(uploadSessionService.getSession(active.getSessionId()).getReceivedChunks()).containsExactly(0);
+        assertThatThrownBy(() -> uploadSessionService.getSession(idle.getSessionId()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Upload session not found");
+    }
+
+    @Test
+    void keepsPartFilesOnShutdown() throws IOException {
+        UploadSessionResponse session = createSession(null);
+        writeChunk(session, 0, chunk(archive, 0));
+
+        uploadSessionService.closeSessions();
+
+        try (var parts = Files.list(storageDir.resolve(".parts"))) {
+            List<Path> files = parts.toList();
+            assertThat(files).hasSize(1);
+            assertThat(Arrays.copyOf(Files.readAllBytes(files.getFirst()), CHUNK_SIZE))
+                    .isEqualTo(chunk(archive, 0));
+        }
+    }
+
+    private UploadSessionResponse createSession(String checksum) {
+        return uploadSessionService.createSession(UploadSessionRequest.builder()
+                .fileName("project.zip")
+                .fileSize((long) archive.length)
+                .checksum(checksum)
+                .build());
+    }
+
+    private void writeAllChunks(UploadSessionResponse session) {
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            writeChunk(session, i, chunk(archive, i));
+        }
+    }
+
+    private void writeChunk(UploadSessionResponse session, int index, byte[] chunk) {
+        uploadSessionService.writeChunk(session.getSessionId(), index, new ByteArrayInputStream(chunk));
+    }
+
+    private static byte[] chunk(byte[] archive, int index) {
+        int from = index * CHUNK_SIZE;
+        return Arrays.copyOfRange(archive, from, Math.min(from + CHUNK_SIZE, archive.length));
+    }
+
+    private static byte[] randomArchive(int contentSize) throws IOException {
+        // Random content does not compress, so the archive spans several chunks
+        byte[] content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("random.bin"));
+            zip.write(content);
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.entity.SubmissionStatus;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.repository.SubmissionRepository;
+import com.mharawi.submissiondisk.service.ChecksumIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DuplicateValidatorTests {
+
+    private static final String CHECKSUM = "a".repeat(64);
+
+    private final SubmissionRepository submissionRepository = mock(SubmissionRepository.class);
+    private final ChecksumIndex checksumIndex = mock(ChecksumIndex.class);
+    private final DuplicateValidator validator = new DuplicateValidator(submissionRepository, checksumIndex);
+
+    @Test
+    void keepsTheEarliestCopyWhenAParkedSubmissionIsRetried() {
+        // Submission 1 was parked, 2 is the same content uploaded again
+        when(submissionRepository.findEarlierIdsByChecksum(eq(CHECKSUM), eq(1L), any(), any(Limit.class)))
+                .thenReturn(List.of());
+        when(submissionRepository.findEarlierIdsByChecksum(eq(CHECKSUM), eq(2L), any(), any(Limit.class)))
+                .thenReturn(List.of(1L));
+
+        ValidationResult second = validator.validate(event(2));
+        ValidationResult retried = validator.validate(event(1));
+
+        assertThat(second.isValid()).isFalse();
+        assertThat(second.getErrorMessage()).contains("Submission ID: 1");
+        assertThat(retried.isValid()).isTrue();
+    }
+
+    @Test
+    void ignoresRejectedSubmissions() {
+        when(submissionRepository.findEarlierIdsByChecksum(anyString(), anyLong(), any(), any(Limit.class)))
+                .thenReturn(List.of());
+
+        validator.validate(event(2));
+
+        verify(submissionRepository).findEarlierIdsByChecksum(eq(CHECKSUM), eq(2L),
+                argThat((Collection<SubmissionStatus> excluded) -> excluded.contains(SubmissionStatus.FAILED)
+                        && excluded.contains(SubmissionStatus.INFECTED)
+                        && !excluded.contains(SubmissionStatus.PARKED)),
+                eq(Limit.of(1)));
+    }
+
+    @Test
+    void skipsTheQueryWhenTheIndexProvesTheChecksumUnique() {
+        when(checksumIndex.isCertainlyUnique(CHECKSUM, 2L)).thenReturn(true);
+
+        assertThat(validator.validate(event(2)).isValid()).isTrue();
+        verify(submissionRepository, never())
+                .findEarlierIdsByChecksum(anyString(), anyLong(), any(), any(Limit.class));
+    }
+
+    @Test
+    void decidesByChecksumWhateverTheContentHash() {
+        // The earlier copy was stored before content hashes were recorded
+        when(submissionRepository.findEarlierIdsByChecksum(eq(CHECKSUM), eq(2L), any(), any(Limit.class)))
+                .thenReturn(List.of(1L));
+
+        ValidationResult result = validator.validate(SubmissionEvent.builder()
+                .submissionId(2L).checksum(CHECKSUM).fileSize(1024L).contentHash(7L).build());
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.getErrorMessage()).contains("Submission ID: 1");
+    }
+
+    private static SubmissionEvent event(long id) {
+        return SubmissionEvent.builder().submissionId(id).checksum(CHECKSUM).fileSize(1024L).build();
+    }
+}
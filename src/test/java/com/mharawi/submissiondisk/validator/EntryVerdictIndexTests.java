@@ -0,0 +1,120 @@
+package com.mharawi.submissiondisk.validator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EntryVerdictIndexTests {
+
+    // Stands in for the Redis sets, by key
+    private final Map<String, Set<Object>> sets = new HashMap<>();
+
+    private SetOperations<String, String> setOperations;
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        setOperations = mock(SetOperations.class);
+        when(setOperations.add(anyString(), any(String[].class))).thenAnswer(invocation -> {
+            Object[] members = (Object[]) invocation.getRawArguments()[1];
+            sets.computeIfAbsent(invocation.getArgument(0), key -> new HashSet<>()).addAll(List.of(members));
+            return (long) members.length;
+        });
+        when(setOperations.isMember(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            Set<Object> set = sets.getOrDefault(invocation.<String>getArgument(0), Set.of());
+            Map<Object, Boolean> found = new LinkedHashMap<>();
+            for (Object member : (Object[]) invocation.getRawArguments()[1]) {
+                found.put(member, set.contains(member));
+            }
+            return found;
+        });
+        redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+    }
+
+    @Test
+    void answersRecordedEntriesFromNearCache() {
+        EntryVerdictIndex index = new EntryVerdictIndex(redisTemplate, true, Duration.ofDays(2), 16);
+        byte[] clean = digest(1, 2);
+        index.recordClean("v1", List.of(clean));
+
+        assertThat(index.findClean("v1", List.of(clean, digest(3, 4)))).containsExactly(true, false);
+        // Only the unknown entry is looked up
+        verify(setOperations).isMember(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void fallsBackToRedisWhenSlotWasTaken() {
+        // A single slot, so every digest evicts the previous one
+        EntryVerdictIndex index = new EntryVerdictIndex(redisTemplate, true, Duration.ofDays(2), 1);
+        byte[] first = digest(1, 2);
+        byte[] second = digest(5, 6);
+        index.recordClean("v1", List.of(first));
+        index.recordClean("v1", List.of(second));
+
+        assertThat(index.findClean("v1", List.of(first))).containsExactly(true);
+        verify(setOperations).isMember(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void comparesFullDigestsInNearCache() {
+        EntryVerdictIndex index = new EntryVerdictIndex(redisTemplate, true, Duration.ofDays(2), 16);
+        index.recordClean("v1", List.of(digest(1, 2)));
+        sets.clear();
+
+        // Same slot and first word, different content
+        assertThat(index.findClean("v1", List.of(digest(1, 3)))).containsExactly(false);
+    }
+
+    @Test
+    void forgetsVerdictsOfOtherSignatureVersions() {
+        EntryVerdictIndex index = new EntryVerdictIndex(redisTemplate, true, Duration.ofDays(2), 16);
+        byte[] clean = digest(1, 2);
+        index.recordClean("v1", List.of(clean));
+
+        assertThat(index.findClean("v2", List.of(clean))).containsExactly(false);
+
+        // The near-cache was reset for v2, v1 is only known to Redis now
+        clearInvocations(setOperations);
+        assertThat(index.findClean("v1", List.of(clean))).containsExactly(true);
+        verify(setOperations).isMember(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void scansEverythingWhenRedisFails() {
+        when(redisTemplate.opsForSet()).thenThrow(new IllegalStateException("Redis is down"));
+        EntryVerdictIndex index = new EntryVerdictIndex(redisTemplate, true, Duration.ofDays(2), 16);
+        byte[] clean = digest(1, 2);
+        index.recordClean("v1", List.of(clean));
+
+        assertThat(index.findClean("v1", List.of(clean, digest(3, 4)))).containsExactly(true, false);
+        verify(setOperations, never()).isMember(anyString(), any(Object[].class));
+    }
+
+    /**
+     * SHA-256 sized digest whose first word picks the near-cache slot.
+     */
+    private static byte[] digest(long first, long rest) {
+        return ByteBuffer.allocate(32).putLong(first).putLong(rest).putLong(rest).putLong(rest).array();
+    }
+}
@@ -0,0 +1,80 @@
+package com.mharawi.submissiondisk.validator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static com.mharawi.submissiondisk.validator.ZipFixtures.zipFile;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InspectionContextTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void computesEachFactOnce() throws IOException {
+        Path archive = zipFile(tempDir, false, "a.txt", "b.txt");
+
+        try (InspectionContext context = new InspectionContext(archive)) {
+            assertThat(context.getAttributes().size()).isEqualTo(Files.size(archive));
+            assertThat(context.getAttributes()).isSameAs(context.getAttributes());
+            assertThat(context.getChannel()).isSameAs(context.getChannel());
+            assertThat(context.getZipDirectory()).isSameAs(context.getZipDirectory());
+            assertThat(context.getZipEntries()).isSameAs(context.getZipEntries())
+                    .extracting(ZipCentralDirectory.Entry::name)
+                    .containsExactly("a.txt", "b.txt");
+        }
+    }
+
+    @Test
+    void streamsWholeFileFromMapping() throws IOException {
+        Path archive = zipFile(tempDir, false, "a.txt");
+
+        try (InspectionContext context = new InspectionContext(archive)) {
+            try (InputStream first = context.newInputStream(); InputStream second = context.newInputStream()) {
+                assertThat(first.readAllBytes()).isEqualTo(Files.readAllBytes(archive));
+                assertThat(second.readAllBytes()).isEqualTo(Files.readAllBytes(archive));
+            }
+        }
+    }
+
+    @Test
+    void reopensChannelClosedUnderIt() throws IOException {
+        Path archive = zipFile(tempDir, false, "a.txt");
+
+        try (InspectionContext context = new InspectionContext(archive)) {
+            FileChannel channel = context.getChannel();
+            channel.close();
+
+            assertThat(context.getChannel().isOpen()).isTrue();
+            assertThat(context.getZipEntries()).hasSize(1);
+        }
+    }
+
+    @Test
+    void closesChannel() throws IOException {
+        InspectionContext context = new InspectionContext(zipFile(tempDir, false, "a.txt"));
+        FileChannel channel = context.getChannel();
+
+        context.close();
+
+        assertThat(channel.isOpen()).isFalse();
+        assertThatThrownBy(context::getChannel).isInstanceOf(ClosedChannelException.class);
+    }
+
+    @Test
+    void reportsMissingFile() {
+        try (InspectionContext context = new InspectionContext(tempDir.resolve("missing.zip"))) {
+            assertThatThrownBy(context::getAttributes).isInstanceOf(NoSuchFileException.class);
+        }
+    }
+}
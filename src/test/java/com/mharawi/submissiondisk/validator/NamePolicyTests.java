@@ -0,0 +1,66 @@
+package com.mharawi.submissiondisk.validator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NamePolicyTests {
+
+    private final NamePolicies policies = new NamePolicies(255, "<>:\"|?*", List.of("zip"), 65535, "", true);
+
+    @ParameterizedTest
+    @CsvSource(nullValues = "NULL", value = {
+            "report.zip, NULL",
+            "REPORT.ZIP, NULL",
+            "résumé.zip, NULL",
+            "'   ', EMPTY",
+            "dir/../report.zip, TRAVERSAL",
+            "..\\report.zip, TRAVERSAL",
+            "report..v2.zip, NULL",
+            "re:port.zip, FORBIDDEN_CHARACTER",
+            "report.tar, EXTENSION",
+            "zip, EXTENSION"
+    })
+    void checksFilenames(String name, NamePolicy.Violation expected) {
+        assertThat(policies.filename().check(name)).isEqualTo(expected);
+        assertThat(policies.filename().check(bytes(name), 0, bytes(name).length)).isEqualTo(expected);
+    }
+
+    @Test
+    void rejectsControlCharactersAndLongFilenames() {
+        assertThat(policies.filename().check("report\0.zip")).isEqualTo(NamePolicy.Violation.FORBIDDEN_CHARACTER);
+        assertThat(policies.filename().check("a".repeat(252) + ".zip")).isEqualTo(NamePolicy.Violation.TOO_LONG);
+        assertThat(policies.filename().check(null)).isEqualTo(NamePolicy.Violation.EMPTY);
+    }
+
+    @Test
+    void countsCharactersRatherThanBytes() {
+        byte[] name = ("é".repeat(251) + ".zip").getBytes(StandardCharsets.UTF_8);
+
+        assertThat(policies.filename().check(name, 0, name.length)).isNull();
+    }
+
+    @ParameterizedTest
+    @CsvSource(nullValues = "NULL", value = {
+            "dir/file.txt, NULL",
+            "dir/, NULL",
+            "/etc/passwd, ABSOLUTE_PATH",
+            "dir/../../evil.sh, TRAVERSAL",
+            "dir/.., TRAVERSAL",
+            "dir\\file.txt, FORBIDDEN_CHARACTER"
+    })
+    void checksEntryNames(String name, NamePolicy.Violation expected) {
+        byte[] padded = ("xx" + name + "yy").getBytes(StandardCharsets.UTF_8);
+
+        assertThat(policies.zipEntry().check(padded, 2, padded.length - 4)).isEqualTo(expected);
+    }
+
+    private static byte[] bytes(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,221 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.dto.ValidatorStatsResponse;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ValidationOrchestratorTests {
+
+    private final SubmissionEvent event = SubmissionEvent.builder().submissionId(1L).storagePath("unused.zip").build();
+
+    private ValidationOrchestrator orchestrator;
+
+    @AfterEach
+    void tearDown() {
+        if (orchestrator != null) {
+            orchestrator.shutdown();
+        }
+    }
+
+    @Test
+    void reportsLowestOrderFailureWhateverFinishesFirst() {
+        orchestrator = orchestrator(
+                new StubValidator("Slow", 10, 300, false),
+                new StubValidator("Fast", 20, 0, false));
+
+        ValidationResult result = orchestrator.validateAll(event);
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.getValidatorName()).isEqualTo("Slow");
+    }
+
+    @Test
+    void cancelsHigherOrderValidatorsOnFailure() throws InterruptedException {
+        StubValidator hanging = new StubValidator("Hanging", 20, 60_000, true);
+        orchestrator = orchestrator(new StubValidator("Failing", 10, 50, false), hanging);
+
+        long start = System.nanoTime();
+        ValidationResult result = orchestrator.validateAll(event);
+
+        assertThat(result.getValidatorName()).isEqualTo("Failing");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        assertThat(hanging.interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void failsValidatorThatExceedsItsTimeout() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("submission.validation.timeouts.Hanging", "200ms");
+        orchestrator = orchestrator(environment,
+                new StubValidator("Quick", 10, 0, true),
+                new StubValidator("Hanging", 20, 60_000, true));
+
+        ValidationResult result = orchestrator.validateAll(event);
+
+        assertThat(result.getValidatorName()).isEqualTo("Hanging");
+        assertThat(result.getErrorMessage()).isEqualTo("Validation timed out after 200 ms");
+    }
+
+    @Test
+    void skipsValidatorWhoseDependencyFailed() {
+        StubValidator dependent = new StubValidator("Dependent", 20, 0, true) {
+            @Override
+            public Set<String> getDependencies() {
+                return Set.of("Failing");
+            }
+        };
+        orchestrator = orchestrator(new StubValidator("Failing", 10, 0, false), dependent);
+
+        assertThat(orchestrator.validateAll(event).getValidatorName()).isEqualTo("Failing");
+        assertThat(dependent.calls.get()).isZero();
+    }
+
+    @Test
+    void neverOverlapsValidatorsOfOneExclusionGroup() {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        class Exclusive extends StubValidator {
+            Exclusive(String name, double order) {
+                super(name, order, 100, true);
+            }
+
+            @Override
+            public ValidationResult validate(SubmissionEvent event) {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    return super.validate(event);
+                } finally {
+                    active.decrementAndGet();
+                }
+            }
+
+            @Override
+            public String getExclusionGroup() {
+                return "scanner";
+            }
+        }
+        orchestrator = orchestrator(new Exclusive("First", 10), new Exclusive("Second", 20));
+
+        assertThat(orchestrator.validateAll(event).isValid()).isTrue();
+        assertThat(maxActive.get()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsDependencyOnLaterValidator() {
+        orchestrator = orchestrator(
+                new StubValidator("Early", 10, 0, true) {
+                    @Override
+                    public Set<String> getDependencies() {
+                        return Set.of("Late");
+                    }
+                },
+                new StubValidator("Late", 20, 0, true));
+
+        assertThatThrownBy(orchestrator::verifyDependencies)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Early depends on Late, which does not run before it");
+    }
+
+    @Test
+    void reordersChainByExpectedCostPerRejection() {
+        StubValidator slowNeverRejects = new StubValidator("SlowNeverRejects", 10, 20, true);
+        StubValidator quickDependent = new StubValidator("QuickDependent", 20, 0, true) {
+            @Override
+            public Set<String> getDependencies() {
+                return Set.of("SlowNeverRejects");
+            }
+        };
+        StubValidator quickAlwaysRejects = new StubValidator("QuickAlwaysRejects", 30, 0, false);
+        orchestrator = orchestrator(slowNeverRejects, quickDependent, quickAlwaysRejects);
+        ReflectionTestUtils.setField(orchestrator, "concurrentValidationEnabled", false);
+        ReflectionTestUtils.setField(orchestrator, "adaptiveOrderingEnabled", true);
+        ReflectionTestUtils.setField(orchestrator, "adaptiveOrderingMinSamples", 2L);
+
+        orchestrator.validateAll(event);
+        orchestrator.reorder();
+        assertThat(orchestrator.getValidators())
+                .containsExactly(slowNeverRejects, quickDependent, quickAlwaysRejects);
+
+        orchestrator.validateAll(event);
+        orchestrator.reorder();
+
+        // The dependent is cheaper than its dependency but still runs after it
+        assertThat(orchestrator.getValidators())
+                .containsExactly(quickAlwaysRejects, slowNeverRejects, quickDependent);
+        assertThat(orchestrator.getValidatorStats())
+                .extracting(ValidatorStatsResponse::getValidatorName)
+                .containsExactly("QuickAlwaysRejects", "SlowNeverRejects", "QuickDependent");
+        assertThat(orchestrator.validateAll(event).getValidatorName()).isEqualTo("QuickAlwaysRejects");
+        assertThat(slowNeverRejects.calls.get()).isEqualTo(2);
+    }
+
+    private static ValidationOrchestrator orchestrator(SubmissionValidator... validators) {
+        return orchestrator(new MockEnvironment(), validators);
+    }
+
+    private static ValidationOrchestrator orchestrator(MockEnvironment environment,
+                                                       SubmissionValidator... validators) {
+        ValidationOrchestrator orchestrator = new ValidationOrchestrator(List.of(validators), environment,
+                new VerdictCache(null), 0.5);
+        ReflectionTestUtils.setField(orchestrator, "concurrentValidationEnabled", true);
+        ReflectionTestUtils.setField(orchestrator, "defaultTimeout", Duration.ofSeconds(30));
+        return orchestrator;
+    }
+
+    private static class StubValidator implements SubmissionValidator {
+
+        private final String name;
+        private final double order;
+        private final long sleepMillis;
+        private final boolean valid;
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        StubValidator(String name, double order, long sleepMillis, boolean valid) {
+            this.name = name;
+            this.order = order;
+            this.sleepMillis = sleepMillis;
+            this.valid = valid;
+        }
+
+        @Override
+        public ValidationResult validate(SubmissionEvent event) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                return ValidationResult.failure(name, "interrupted");
+            }
+            return valid ? ValidationResult.success(name) : ValidationResult.failure(name, "rejected");
+        }
+
+        @Override
+        public String getValidatorName() {
+            return name;
+        }
+
+        @Override
+        public double getOrder() {
+            return order;
+        }
+
+        @Override
+        public boolean isConcurrent() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.hash.XxHash64;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class VerdictCacheTests {
+
+    private static final String VALIDATOR = "VirusValidator";
+    private static final String VERSION = "ClamAV 1.4.1/27000/Mon Oct 12 08:00:00 2026";
+    private static final String NEXT_VERSION = "ClamAV 1.4.1/27001/Tue Oct 13 08:00:00 2026";
+    private static final String CHECKSUM = "a".repeat(64);
+    private static final Duration TTL = Duration.ofDays(7);
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+
+    private VerdictCache verdictCache;
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.hasKey(anyString())).thenReturn(false);
+
+        verdictCache = new VerdictCache(redisTemplate);
+        ReflectionTestUtils.setField(verdictCache, "enabled", true);
+        ReflectionTestUtils.setField(verdictCache, "ttl", TTL);
+        ReflectionTestUtils.setField(verdictCache, "nearCacheMaxSize", 100);
+        ReflectionTestUtils.setField(verdictCache, "nearCacheTtl", Duration.ofMinutes(10));
+    }
+
+    @Test
+    void keysVerdictsByValidatorVersionHashAndChecksum() {
+        verdictCache.recordPass(VALIDATOR, VERSION, CHECKSUM);
+
+        verify(valueOperations).set(key(VALIDATOR, VERSION, CHECKSUM), "1", TTL);
+    }
+
+    @Test
+    void answersRepeatedLookupsFromTheNearCache() {
+        verdictCache.recordPass(VALIDATOR, VERSION, CHECKSUM);
+
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, CHECKSUM)).isTrue();
+        verify(redisTemplate, never()).hasKey(anyString());
+    }
+
+    @Test
+    void findsVerdictsRecordedByOtherNodesInRedis() {
+        when(redisTemplate.hasKey(key(VALIDATOR, VERSION, CHECKSUM))).thenReturn(true);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        verdictCache.bindTo(registry);
+
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, CHECKSUM)).isTrue();
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, CHECKSUM)).isTrue();
+
+        // The second lookup was served from the near-cache
+        verify(redisTemplate).hasKey(key(VALIDATOR, VERSION, CHECKSUM));
+        assertThat(registry.get("submission.verdict-cache.hits").tag("tier", "redis").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("submission.verdict-cache.hits").tag("tier", "near").functionCounter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void keepsVerdictsOfOtherValidatorsAndContentApart() {
+        verdictCache.recordPass(VALIDATOR, VERSION, CHECKSUM);
+
+        assertThat(verdictCache.hasPassed("ZipStructureValidator", VERSION, CHECKSUM)).isFalse();
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, "b".repeat(64))).isFalse();
+    }
+
+    @Test
+    void dropsVerdictsOfEarlierSignatureVersions() {
+        verdictCache.recordPass(VALIDATOR, VERSION, CHECKSUM);
+
+        assertThat(verdictCache.hasPassed(VALIDATOR, NEXT_VERSION, CHECKSUM)).isFalse();
+        verify(redisTemplate).hasKey(key(VALIDATOR, NEXT_VERSION, CHECKSUM));
+    }
+
+    @Test
+    void asksRedisOnceTheNearCacheEntryExpired() {
+        ReflectionTestUtils.setField(verdictCache, "nearCacheTtl", Duration.ZERO);
+        verdictCache.recordPass(VALIDATOR, VERSION, CHECKSUM);
+        when(redisTemplate.hasKey(key(VALIDATOR, VERSION, CHECKSUM))).thenReturn(true);
+
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, CHECKSUM)).isTrue();
+        verify(redisTemplate).hasKey(key(VALIDATOR, VERSION, CHECKSUM));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedVerdictFromTheNearCache() {
+        ReflectionTestUtils.setField(verdictCache, "nearCacheMaxSize", 2);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        verdictCache.bindTo(registry);
+        String first = "1".repeat(64);
+        String second = "2".repeat(64);
+        String third = "3".repeat(64);
+
+        verdictCache.recordPass(VALIDATOR, VERSION, first);
+        verdictCache.recordPass(VALIDATOR, VERSION, second);
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, first)).isTrue();
+        verdictCache.recordPass(VALIDATOR, VERSION, third);
+
+        assertThat(registry.get("submission.verdict-cache.near.size").gauge().value()).isEqualTo(2);
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, first)).isTrue();
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, second)).isFalse();
+        verify(redisTemplate).hasKey(key(VALIDATOR, VERSION, second));
+        verify(redisTemplate, never()).hasKey(key(VALIDATOR, VERSION, first));
+    }
+
+    @Test
+    void runsTheValidatorWhenRedisIsDown() {
+        when(redisTemplate.hasKey(anyString())).thenThrow(new RedisConnectionFailureException("Connection refused"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        verdictCache.bindTo(registry);
+
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, CHECKSUM)).isFalse();
+        assertThat(registry.get("submission.verdict-cache.errors").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void stillRemembersAPassLocallyWhenRedisIsDown() {
+        doThrow(new RedisConnectionFailureException("Connection refused"))
+                .when(valueOperations).set(anyString(), anyString(), any(Duration.class));
+
+        verdictCache.recordPass(VALIDATOR, VERSION, CHECKSUM);
+
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, CHECKSUM)).isTrue();
+    }
+
+    @Test
+    void skipsArchivesWithoutChecksumAndADisabledCache() {
+        verdictCache.recordPass(VALIDATOR, VERSION, null);
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, null)).isFalse();
+
+        ReflectionTestUtils.setField(verdictCache, "enabled", false);
+        verdictCache.recordPass(VALIDATOR, VERSION, CHECKSUM);
+        assertThat(verdictCache.hasPassed(VALIDATOR, VERSION, CHECKSUM)).isFalse();
+
+        verifyNoInteractions(redisTemplate);
+    }
+
+    private static String key(String validatorName, String version, String checksum) {
+        return "submission:verdict:" + validatorName + ":"
+                + Long.toHexString(XxHash64.hash(version.getBytes(StandardCharsets.UTF_8))) + ":" + checksum;
+    }
+}
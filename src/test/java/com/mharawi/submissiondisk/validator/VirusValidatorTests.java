@@ -0,0 +1,97 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.clamav.ClamdContent;
+import com.mharawi.submissiondisk.clamav.ClamdVerdict;
+import com.mharawi.submissiondisk.event.SubmissionEvent;
+import com.mharawi.submissiondisk.service.VirusScanService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.mharawi.submissiondisk.validator.ZipFixtures.contentOf;
+import static com.mharawi.submissiondisk.validator.ZipFixtures.zipFile;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VirusValidatorTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final VirusScanService virusScanService = mock(VirusScanService.class);
+    private final EntryVerdictIndex entryVerdictIndex = mock(EntryVerdictIndex.class);
+    private final SubmissionEvent event = SubmissionEvent.builder().submissionId(1L).build();
+
+    // Content of each entry streamed to clamd
+    private final List<byte[]> scanned = Collections.synchronizedList(new ArrayList<>());
+
+    private VirusValidator validator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(virusScanService.getSignatureVersion()).thenReturn("v1");
+        when(entryVerdictIndex.isEnabled()).thenReturn(true);
+        when(virusScanService.scan(anyString(), anyLong(), any())).thenAnswer(invocation -> {
+            try (InputStream input = invocation.<ClamdContent>getArgument(2).open()) {
+                byte[] content = input.readAllBytes();
+                scanned.add(content);
+                boolean evil = new String(content, StandardCharsets.UTF_8).startsWith("content of evil");
+                return new ClamdVerdict("clamd", evil ? "Eicar" : null);
+            }
+        });
+        validator = new VirusValidator(virusScanService, entryVerdictIndex);
+        ReflectionTestUtils.setField(validator, "maxUncompressedSize", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(validator, "entryParallelism", 2);
+    }
+
+    @Test
+    void scansOnlyUnknownEntriesAndRecordsThemClean() throws Exception {
+        Path archive = zipFile(tempDir, false, "known.txt", "new.txt");
+        byte[] newDigest = MessageDigest.getInstance("SHA-256").digest(contentOf("new.txt"));
+        when(entryVerdictIndex.findClean(eq("v1"), anyList())).thenReturn(new boolean[]{true, false});
+
+        ClamdVerdict verdict;
+        try (InspectionContext context = new InspectionContext(archive)) {
+            verdict = validator.scan(event, context);
+        }
+
+        assertThat(verdict.isInfected()).isFalse();
+        assertThat(scanned).containsExactly(contentOf("new.txt"));
+        verify(entryVerdictIndex).recordClean(eq("v1"), argThat(digests ->
+                digests.size() == 1 && Arrays.equals(digests.getFirst(), newDigest)));
+        verify(virusScanService, never()).scanFile(any());
+    }
+
+    @Test
+    void recordsNothingWhenAnEntryIsInfected() throws Exception {
+        Path archive = zipFile(tempDir, false, "evil.txt");
+        when(entryVerdictIndex.findClean(eq("v1"), anyList())).thenReturn(new boolean[]{false});
+
+        ClamdVerdict verdict;
+        try (InspectionContext context = new InspectionContext(archive)) {
+            verdict = validator.scan(event, context);
+        }
+
+        assertThat(verdict.virus()).isEqualTo("Eicar");
+        verify(entryVerdictIndex, never()).recordClean(anyString(), anyList());
+    }
+}
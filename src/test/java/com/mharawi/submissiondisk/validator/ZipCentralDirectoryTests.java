@@ -0,0 +1,97 @@
+package com.mharawi.submissiondisk.validator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import static com.mharawi.submissiondisk.validator.ZipFixtures.zipFile;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZipCentralDirectoryTests {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void readsSameEntriesAsZipFile(boolean stored) throws IOException {
+        Path archive = zipFile(tempDir, stored, "a.txt", "dir/", "dir/b.txt");
+
+        List<ZipCentralDirectory.Entry> entries;
+        try (FileChannel channel = FileChannel.open(archive)) {
+            ZipCentralDirectory directory = ZipCentralDirectory.locate(channel);
+            assertThat(directory.getEntryCount()).isEqualTo(3);
+            entries = directory.readEntries();
+            directory.verifyLayout(entries);
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            List<? extends ZipEntry> expected = Collections.list(zipFile.entries());
+            assertThat(entries).hasSameSizeAs(expected);
+            for (int i = 0; i < entries.size(); i++) {
+                assertThat(entries.get(i).name()).isEqualTo(expected.get(i).getName());
+                assertThat(entries.get(i).compressedSize()).isEqualTo(expected.get(i).getCompressedSize());
+                // Known even for streamed entries, unlike ZipInputStream's entry.getSize()
+                assertThat(entries.get(i).uncompressedSize()).isEqualTo(expected.get(i).getSize());
+            }
+        }
+    }
+
+    @Test
+    void rejectsOverlappingEntries() throws IOException {
+        Path archive = zipFile(tempDir, true, "a.txt", "b.txt");
+        byte[] bytes = Files.readAllBytes(archive);
+
+        // Point the second central directory header at the first entry's data
+        int secondHeader = indexOf(bytes, new byte[]{'P', 'K', 1, 2}, indexOf(bytes, new byte[]{'P', 'K', 1, 2}, 0) + 1);
+        for (int i = 42; i < 46; i++) {
+            bytes[secondHeader + i] = 0;
+        }
+        Files.write(archive, bytes);
+
+        try (FileChannel channel = FileChannel.open(archive)) {
+            ZipCentralDirectory directory = ZipCentralDirectory.locate(channel);
+            List<ZipCentralDirectory.Entry> entries = directory.readEntries();
+
+            assertThatThrownBy(() -> directory.verifyLayout(entries))
+                    .isInstanceOf(ZipException.class)
+                    .hasMessageStartingWith("overlapping entries");
+        }
+    }
+
+    @Test
+    void rejectsFileWithoutEndRecord() throws IOException {
+        Path notAZip = Files.writeString(tempDir.resolve("plain.zip"), "not a zip archive at all");
+
+        try (FileChannel channel = FileChannel.open(notAZip)) {
+            assertThatThrownBy(() -> ZipCentralDirectory.locate(channel))
+                    .isInstanceOf(ZipException.class)
+                    .hasMessage("zip END header not found");
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,76 @@
+package com.mharawi.submissiondisk.validator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+import static com.mharawi.submissiondisk.validator.ZipFixtures.contentOf;
+import static com.mharawi.submissiondisk.validator.ZipFixtures.zipFile;
+import static com.mharawi.submissiondisk.validator.ZipFixtures.zipFileWithComment;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipEntryReaderTests {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void readsAndDigestsEntriesWithContent(boolean stored) throws Exception {
+        Path archive = zipFile(tempDir, stored, "a.txt", "dir/", "dir/b.txt");
+
+        try (InspectionContext context = new InspectionContext(archive)) {
+            ZipEntryReader reader = ZipEntryReader.open(context, Long.MAX_VALUE);
+
+            assertThat(reader).isNotNull();
+            // Deflated directories hold an empty deflate stream, which is checked to inflate to nothing
+            assertThat(reader.size()).isEqualTo(stored ? 2 : 3);
+            for (int i = 0; i < reader.size(); i++) {
+                byte[] content = contentOf(reader.entry(i).name());
+                try (InputStream input = reader.open(i)) {
+                    assertThat(input.readAllBytes()).isEqualTo(content);
+                }
+                assertThat(reader.digest(i)).isEqualTo(MessageDigest.getInstance("SHA-256").digest(content));
+            }
+        }
+    }
+
+    @Test
+    void refusesArchiveWithComment() throws IOException {
+        Path archive = zipFileWithComment(tempDir, "hidden", "a.txt");
+
+        try (InspectionContext context = new InspectionContext(archive)) {
+            assertThat(ZipEntryReader.open(context, Long.MAX_VALUE)).isNull();
+        }
+    }
+
+    @Test
+    void refusesArchiveWithPrefix() throws IOException {
+        Path archive = zipFile(tempDir, false, "a.txt");
+        byte[] bytes = Files.readAllBytes(archive);
+        byte[] prefixed = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, prefixed, 4, bytes.length);
+        Files.write(archive, prefixed);
+
+        try (InspectionContext context = new InspectionContext(archive)) {
+            // Offsets in the central directory are relative to the start of the file
+            assertThat(ZipEntryReader.open(context, Long.MAX_VALUE)).isNull();
+        }
+    }
+
+    @Test
+    void refusesArchiveDeclaringTooMuch() throws IOException {
+        Path archive = zipFile(tempDir, false, "a.txt", "dir/b.txt");
+
+        try (InspectionContext context = new InspectionContext(archive)) {
+            assertThat(ZipEntryReader.open(context, contentOf("a.txt").length)).isNull();
+        }
+    }
+}
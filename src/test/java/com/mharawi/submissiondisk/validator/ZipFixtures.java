@@ -0,0 +1,86 @@
+package com.mharawi.submissiondisk.validator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP archives for tests. Every entry holds {@link #contentOf} its name, so
+ * tests can tell what an entry should contain.
+ */
+final class ZipFixtures {
+
+    private ZipFixtures() {
+    }
+
+    /**
+     * @param stored STORED entries if true, DEFLATED otherwise
+     */
+    static byte[] zipOf(boolean stored, String... entryNames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(bytes, stored, null, entryNames);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param stored STORED entries if true, DEFLATED otherwise
+     */
+    static Path zipFile(Path directory, boolean stored, String... entryNames) throws IOException {
+        return createZipFile(directory, stored, null, entryNames);
+    }
+
+    /**
+     * Deflated archive with a comment after the central directory.
+     */
+    static Path zipFileWithComment(Path directory, String comment, String... entryNames) throws IOException {
+        return createZipFile(directory, false, comment, entryNames);
+    }
+
+    private static Path createZipFile(Path directory, boolean stored, String comment, String[] entryNames)
+            throws IOException {
+        Path archive = Files.createTempFile(directory, "archive", ".zip");
+        try (OutputStream output = Files.newOutputStream(archive)) {
+            write(output, stored, comment, entryNames);
+        }
+        return archive;
+    }
+
+    /**
+     * @return Content of the entry with this name; empty for directories
+     */
+    static byte[] contentOf(String entryName) {
+        if (entryName.endsWith("/")) {
+            return new byte[0];
+        }
+        return ("content of " + entryName).repeat(50).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void write(OutputStream output, boolean stored, String comment, String... entryNames)
+            throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(output)) {
+            if (comment != null) {
+                zip.setComment(comment);
+            }
+            for (String entryName : entryNames) {
+                byte[] content = contentOf(entryName);
+                ZipEntry entry = new ZipEntry(entryName);
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(entry);
+                zip.write(content);
+                zip.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.mharawi.submissiondisk.validator;
+
+import com.mharawi.submissiondisk.io.DirectBufferPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipInflationScannerTests {
+
+    private static final long MAX_UNCOMPRESSED_SIZE = 50L * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private final ZipInflationScanner scanner =
+            new ZipInflationScanner(new DirectBufferPool(64 * 1024, 16, 50), MAX_UNCOMPRESSED_SIZE, 100, 4);
+
+    @AfterEach
+    void tearDown() {
+        scanner.shutdown();
+    }
+
+    @Test
+    void acceptsHonestArchive() throws IOException {
+        Random random = new Random(1);
+        Path archive = zipOf(20, index -> {
+            byte[] content = new byte[200_000];
+            random.nextBytes(content);
+            Arrays.fill(content, 100_000, content.length, (byte) 'a');
+            return content;
+        });
+
+        assertThat(scan(archive)).isNull();
+    }
+
+    @Test
+    void cutsOffHighlyCompressedEntry() throws IOException {
+        Path archive = zipOf(1, index -> new byte[20_000_000]);
+
+        assertThat(scan(archive)).isEqualTo("Suspicious compression ratio detected (possible zip bomb)");
+    }
+
+    @Test
+    void cutsOffArchiveOverGlobalBudget() throws IOException {
+        Random random = new Random(2);
+        Path archive = zipOf(12, index -> {
+            byte[] content = new byte[5_000_000];
+            random.nextBytes(content);
+            return content;
+        });
+
+        assertThat(scan(archive)).startsWith("ZIP contents exceed the maximum uncompressed size");
+    }
+
+    @Test
+    void rejectsUnderstatedDeclaredSize() throws IOException {
+        Path archive = zipOf(1, index -> "abc".repeat(1000).getBytes());
+        byte[] bytes = Files.readAllBytes(archive);
+
+        // Declare 1 byte in the central directory
+        for (int i = 0; i < bytes.length - 4; i++) {
+            if (bytes[i] == 'P' && bytes[i + 1] == 'K' && bytes[i + 2] == 1 && bytes[i + 3] == 2) {
+                bytes[i + 24] = 1;
+                bytes[i + 25] = 0;
+                bytes[i + 26] = 0;
+                bytes[i + 27] = 0;
+            }
+        }
+        Files.write(archive, bytes);
+
+        assertThat(scan(archive)).isEqualTo("ZIP entry size does not match its declared size: entry-0.bin");
+    }
+
+    private String scan(Path archive) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive)) {
+            return scanner.scan(channel, ZipCentralDirectory.locate(channel).readEntries());
+        }
+    }
+
+    private Path zipOf(int entries, IntFunction<byte[]> content) throws IOException {
+        Path archive = Files.createTempFile(tempDir, "archive", ".zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int index = 0; index < entries; index++) {
+                zip.putNextEntry(new ZipEntry("entry-" + index + ".bin"));
+                zip.write(content.apply(index));
+                zip.closeEntry();
+            }
+        }
+        return archive;
+    }
+}
@@ -0,0 +1,71 @@
+package com.mharawi.submissiondisk.validator;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.mharawi.submissiondisk.validator.ZipFixtures.zipOf;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipStreamInspectorTests {
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 64, 1 << 16})
+    void acceptsValidArchiveInAnyChunking(int chunkSize) throws IOException {
+        assertThat(inspect(zipOf(true, "a.txt", "dir/b.txt"), chunkSize, 0).isValid()).isTrue();
+        assertThat(inspect(zipOf(false, "a.txt", "dir/b.txt"), chunkSize, 0).isValid()).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 64, 1 << 16})
+    void rejectsTraversalEntry(int chunkSize) throws IOException {
+        ValidationResult result = inspect(zipOf(true, "a.txt", "../evil.sh"), chunkSize, 0);
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.getErrorMessage()).isEqualTo("ZIP contains invalid entry path: ../evil.sh");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 64})
+    void rejectsTooManyEntries(int chunkSize) throws IOException {
+        ValidationResult result = inspect(zipOf(true, "a", "b", "c", "d"), chunkSize, 0);
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.getErrorMessage()).isEqualTo("ZIP file contains too many entries (maximum: 3)");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 64})
+    void rejectsTruncatedArchive(int chunkSize) throws IOException {
+        byte[] truncated = Arrays.copyOf(zipOf(true, "a.txt", "b.txt"), 60);
+
+        assertThat(inspect(truncated, chunkSize, 0).isValid()).isFalse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 64})
+    void rejectsInflatedSizeAgainstDeclaredLength(int chunkSize) throws IOException {
+        byte[] archive = zipOf(true, "a.txt");
+
+        ValidationResult result = inspect(archive, chunkSize, 1);
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.getErrorMessage()).isEqualTo("Suspicious compression ratio detected (possible zip bomb)");
+    }
+
+    private static ValidationResult inspect(byte[] archive, int chunkSize, long declaredSize) {
+        NamePolicy entryNamePolicy = new NamePolicies(255, "<>:\"|?*", List.of("zip"), 65535, "", true).zipEntry();
+        ZipStreamInspector inspector = new ZipStreamInspector("FileContentValidator", entryNamePolicy, 3, 100,
+                declaredSize);
+        for (int offset = 0; offset < archive.length; offset += chunkSize) {
+            ValidationResult result = inspector.inspect(archive, offset, Math.min(chunkSize, archive.length - offset));
+            if (!result.isValid()) {
+                return result;
+            }
+        }
+        return inspector.complete(archive.length);
+    }
+}